@@ -0,0 +1,109 @@
+package com.noodle.app.collect.api.controller;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.noodle.app.collect.protocol.alarm.AlarmEngine;
+import com.noodle.app.collect.protocol.alarm.AlarmNotifier;
+import com.noodle.app.collect.protocol.alarm.AlarmState;
+import com.noodle.app.collect.protocol.config.AlarmConfig;
+
+/**
+ * 报警管理接口
+ */
+@RestController
+@RequestMapping("/api/alarm")
+public class AlarmController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlarmController.class);
+
+    @Autowired
+    private AlarmEngine alarmEngine;
+
+    @Autowired
+    private AlarmNotifier alarmNotifier;
+
+    /**
+     * 获取报警检查统计和当前报警
+     */
+    @GetMapping("/status")
+    public Map<String, Object> getStatus(@RequestParam(defaultValue = "100") int limit) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.putAll(alarmEngine.getStatistics());
+        result.put("notify", alarmNotifier.getStatistics());
+        result.put("alarms", alarmEngine.getActiveAlarms(Math.max(1, limit)));
+        return result;
+    }
+
+    /**
+     * 报警生命周期列表，state为 raised, acknowledged, cleared，为空时返回未恢复的报警
+     */
+    @GetMapping("/incidents")
+    public Map<String, Object> getIncidents(@RequestParam(required = false) String state,
+                                            @RequestParam(defaultValue = "100") int limit) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            AlarmState filter = state != null && !state.isEmpty() ? AlarmState.valueOf(state.toUpperCase()) : null;
+            result.put("success", true);
+            result.put("incidents", alarmNotifier.getIncidents(filter, Math.max(1, limit)));
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("error", "不支持的报警状态: " + state);
+        }
+        return result;
+    }
+
+    /**
+     * 确认报警，ruleId为空时确认该设备的所有报警；报警级别升高后需要重新确认
+     */
+    @PostMapping("/ack")
+    public Map<String, Object> acknowledge(@RequestParam String deviceId,
+                                           @RequestParam(required = false) String ruleId) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("acknowledged", alarmNotifier.acknowledge(deviceId, ruleId));
+        return result;
+    }
+
+    /**
+     * 获取当前报警规则
+     */
+    @GetMapping("/rules")
+    public Map<String, Object> getRules() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("rules", alarmEngine.getRules());
+        return result;
+    }
+
+    /**
+     * 热更新报警规则，所有设备的报警状态重置为正常
+     */
+    @PutMapping("/rules")
+    public Map<String, Object> reloadRules(@RequestBody List<AlarmConfig.AlarmRule> rules) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            alarmEngine.reload(rules);
+            result.put("success", true);
+            result.putAll(alarmEngine.getStatistics());
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", e.getMessage());
+            logger.error("更新报警规则失败: {}", e.getMessage());
+        }
+        return result;
+    }
+}
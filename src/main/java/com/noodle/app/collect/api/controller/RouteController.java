@@ -0,0 +1,90 @@
+package com.noodle.app.collect.api.controller;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.noodle.app.collect.protocol.config.TopicRouteConfig;
+import com.noodle.app.collect.protocol.route.CompiledRoute;
+import com.noodle.app.collect.protocol.route.TopicRouter;
+import com.noodle.app.collect.protocol.topic.TopicMatch;
+
+/**
+ * 主题路由管理接口
+ */
+@RestController
+@RequestMapping("/api/routes")
+public class RouteController {
+
+    private static final Logger logger = LoggerFactory.getLogger(RouteController.class);
+
+    @Autowired
+    private TopicRouter topicRouter;
+
+    /**
+     * 获取当前路由表
+     */
+    @GetMapping
+    public Map<String, Object> getRoutes() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("rules", topicRouter.getRules());
+        result.putAll(topicRouter.getStatistics());
+        return result;
+    }
+
+    /**
+     * 热更新路由表
+     */
+    @PutMapping
+    public Map<String, Object> reloadRoutes(@RequestBody List<TopicRouteConfig.RouteRule> rules) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            topicRouter.reload(rules);
+            result.put("success", true);
+            result.putAll(topicRouter.getStatistics());
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", e.getMessage());
+            logger.error("更新路由表失败: {}", e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * 测试主题匹配结果
+     */
+    @GetMapping("/match")
+    public Map<String, Object> matchTopic(@RequestParam String topic) {
+        Map<String, Object> result = new HashMap<>();
+        TopicMatch match = new TopicMatch();
+        CompiledRoute route = topicRouter.route(topic, match);
+        result.put("success", true);
+        result.put("topic", topic);
+        result.put("matched", route != null);
+        if (route != null) {
+            Map<String, String> variables = new HashMap<>();
+            String[] names = route.getVariables();
+            for (int i = 0; i < names.length; i++) {
+                if (names[i] != null) {
+                    variables.put(names[i], match.group(i));
+                }
+            }
+            result.put("route", route.getName());
+            result.put("decoder", route.getDecoder());
+            result.put("storage", route.getStorage());
+            result.put("variables", variables);
+        }
+        return result;
+    }
+}
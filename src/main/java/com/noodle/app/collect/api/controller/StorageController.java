@@ -0,0 +1,231 @@
+package com.noodle.app.collect.api.controller;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.noodle.app.collect.storage.DataStorage;
+import com.noodle.app.collect.storage.DataStorageService;
+import com.noodle.app.collect.storage.DeadLetterStore;
+import com.noodle.app.collect.storage.archive.ArchiveDataStorage;
+import com.noodle.app.collect.storage.impl.RocketMqDataStorage;
+import com.noodle.app.collect.storage.local.LocalDataStorage;
+
+/**
+ * 数据存储管理接口
+ */
+@RestController
+@RequestMapping("/api/storage")
+public class StorageController {
+
+    @Autowired
+    private DataStorageService dataStorageService;
+
+    @Autowired
+    private DeadLetterStore deadLetterStore;
+
+    @Autowired(required = false)
+    private LocalDataStorage localDataStorage;
+
+    @Autowired(required = false)
+    private ArchiveDataStorage archiveDataStorage;
+
+    @Autowired(required = false)
+    private RocketMqDataStorage rocketMqDataStorage;
+
+    /**
+     * 获取存储状态和各后端的写入统计
+     */
+    @GetMapping("/status")
+    public Map<String, Object> getStatus() {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            result.put("success", true);
+            result.put("type", dataStorageService.getStorageType());
+            result.putAll(dataStorageService.getStatistics());
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * 死信：分页查看写入失败被隔离的数据，storage为存储类型，为空时查看全部
+     */
+    @GetMapping("/deadletter")
+    public Map<String, Object> listDeadLetters(@RequestParam(required = false) String storage,
+                                               @RequestParam(defaultValue = "0") int offset,
+                                               @RequestParam(defaultValue = "100") int limit) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("statistics", deadLetterStore.getStatistics());
+        result.put("records", deadLetterStore.list(storage, Math.max(0, offset), Math.max(1, limit)));
+        return result;
+    }
+
+    /**
+     * 死信：回放到原存储后端，ids为空时回放该存储类型的全部死信
+     */
+    @PostMapping("/deadletter/replay")
+    public Map<String, Object> replayDeadLetters(@RequestParam(required = false) String storage,
+                                                 @RequestParam(required = false) List<Long> ids) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            result.put("success", true);
+            result.put("replayed", dataStorageService.replayDeadLetters(storage, ids));
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * 死信：删除，ids为空时删除该存储类型的全部死信
+     */
+    @DeleteMapping("/deadletter")
+    public Map<String, Object> deleteDeadLetters(@RequestParam(required = false) String storage,
+                                                 @RequestParam(required = false) List<Long> ids) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("deleted", deadLetterStore.remove(storage, ids).size());
+        return result;
+    }
+
+    /**
+     * 本地时序存储：列出序列
+     */
+    @GetMapping("/local/series")
+    public Map<String, Object> listLocalSeries(@RequestParam(required = false) String prefix,
+                                               @RequestParam(defaultValue = "1000") int limit) {
+        Map<String, Object> result = new HashMap<>();
+        if (localDataStorage == null) {
+            result.put("success", false);
+            result.put("error", "本地时序存储未启用");
+            return result;
+        }
+        result.put("success", true);
+        result.put("series", localDataStorage.listSeries(prefix, Math.max(1, limit)));
+        result.put("statistics", localDataStorage.getStatistics());
+        return result;
+    }
+
+    /**
+     * 本地时序存储：按时间范围查询序列，from/to为毫秒时间戳，默认最近一小时
+     */
+    @GetMapping("/local/query")
+    public Map<String, Object> queryLocal(@RequestParam String series,
+                                          @RequestParam(required = false) Long from,
+                                          @RequestParam(required = false) Long to,
+                                          @RequestParam(defaultValue = "10000") int limit) {
+        Map<String, Object> result = new HashMap<>();
+        if (localDataStorage == null) {
+            result.put("success", false);
+            result.put("error", "本地时序存储未启用");
+            return result;
+        }
+        try {
+            long end = to != null ? to : System.currentTimeMillis();
+            long start = from != null ? from : end - 3600_000L;
+            result.put("success", true);
+            result.putAll(localDataStorage.query(series, start, end, limit));
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * 冷数据归档：统计信息和与时间范围有交集的行组，from/to为毫秒时间戳，默认最近一天
+     */
+    @GetMapping("/archive/manifest")
+    public Map<String, Object> getArchiveManifest(@RequestParam(required = false) Long from,
+                                                  @RequestParam(required = false) Long to,
+                                                  @RequestParam(required = false) String prefix,
+                                                  @RequestParam(defaultValue = "1000") int limit) {
+        Map<String, Object> result = new HashMap<>();
+        if (archiveDataStorage == null) {
+            result.put("success", false);
+            result.put("error", "冷数据归档未启用");
+            return result;
+        }
+        long end = to != null ? to : System.currentTimeMillis();
+        long start = from != null ? from : end - 86400_000L;
+        result.put("success", true);
+        result.put("statistics", archiveDataStorage.getStatistics());
+        result.put("rowGroups", archiveDataStorage.findRowGroups(start, end, prefix, Math.max(1, limit)));
+        return result;
+    }
+
+    /**
+     * 冷数据归档：把时间范围内的数据回放到指定存储后端（target为存储类型，须已启用）
+     */
+    @PostMapping("/archive/replay")
+    public Map<String, Object> replayArchive(@RequestParam long from,
+                                             @RequestParam long to,
+                                             @RequestParam String target,
+                                             @RequestParam(required = false) String prefix) {
+        Map<String, Object> result = new HashMap<>();
+        if (archiveDataStorage == null) {
+            result.put("success", false);
+            result.put("error", "冷数据归档未启用");
+            return result;
+        }
+        DataStorage storage = dataStorageService.getStorage(target);
+        if (storage == null) {
+            result.put("success", false);
+            result.put("error", "存储后端未启用: " + target);
+            return result;
+        }
+        try {
+            result.put("success", true);
+            result.put("job", archiveDataStorage.replay(from, to, prefix, storage));
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * 冷数据归档：最近的回放任务
+     */
+    @GetMapping("/archive/replay")
+    public Map<String, Object> getArchiveReplays() {
+        Map<String, Object> result = new HashMap<>();
+        if (archiveDataStorage == null) {
+            result.put("success", false);
+            result.put("error", "冷数据归档未启用");
+            return result;
+        }
+        result.put("success", true);
+        result.put("jobs", archiveDataStorage.getReplayJobs());
+        return result;
+    }
+
+    /**
+     * 遥测转发：已发布的消息数和生产者的批量发送统计
+     */
+    @GetMapping("/rocketmq/status")
+    public Map<String, Object> getRocketMqStatus() {
+        Map<String, Object> result = new HashMap<>();
+        if (rocketMqDataStorage == null) {
+            result.put("success", false);
+            result.put("error", "RocketMQ转发未启用");
+            return result;
+        }
+        result.put("success", true);
+        result.put("statistics", rocketMqDataStorage.getStatistics());
+        return result;
+    }
+}
@@ -48,9 +48,24 @@ public class RocketMqConfig {
         private String group = "alarm-producer-group";
         private int sendMessageTimeout = 3000;
         private int retryTimesWhenSendFailed = 2;
+        /**
+         * 异步发送失败时由批量生产者重试的次数，只用于没有顺序键的消息；客户端自身的异步重试关闭
+         */
         private int retryTimesWhenSendAsyncFailed = 2;
         private int maxMessageSize = 4096;
         private int compressMessageBodyThreshold = 4096;
+        /**
+         * 批量发送：等待凑批的最长时间（毫秒）
+         */
+        private int batchLinger = 5;
+        /**
+         * 同时在途的异步发送（批次）数上限
+         */
+        private int maxInFlight = 64;
+        /**
+         * 待发送队列容量，满时发送被拒绝
+         */
+        private int queueCapacity = 10000;
         
         // Getters and Setters
         public String getGroup() {
@@ -100,6 +115,30 @@ public class RocketMqConfig {
         public void setCompressMessageBodyThreshold(int compressMessageBodyThreshold) {
             this.compressMessageBodyThreshold = compressMessageBodyThreshold;
         }
+        
+        public int getBatchLinger() {
+            return batchLinger;
+        }
+        
+        public void setBatchLinger(int batchLinger) {
+            this.batchLinger = batchLinger;
+        }
+        
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+        
+        public void setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+        
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+        
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
     }
     
     /**
@@ -0,0 +1,607 @@
+package com.noodle.app.collect.mq;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.rocketmq.client.exception.MQBrokerException;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.noodle.app.collect.config.RocketMqConfig;
+
+/**
+ * 异步批量RocketMQ生产者
+ *
+ * 调用方把消息放入有界队列后立即返回，发送线程在batchLinger内凑批：同一主题的小消息合并为一次批量发送，
+ * 编码后不超过maxMessageSize；超过compressMessageBodyThreshold的消息单条发送，由客户端压缩
+ * （客户端不压缩批量消息）。在途的发送数不超过maxInFlight，达到上限时发送线程等待，
+ * 队列随之积压，满了之后send返回false。每条消息的回调在发送完成后调用，批量发送时共用同一个SendResult。
+ * 带顺序键的消息按键的哈希选择队列（与SelectMessageQueueByHash相同），同一个键的消息按提交顺序进入同一个队列：
+ * 每个队列同时只有一个批次在途，后面的批次在确认后才发出，失败时也不由生产者重试，不会越过之前的批次。
+ * 发送失败后由调用方重发的消息会排在之后提交的消息后面，主题的队列数变化时也会短暂乱序。
+ * 没有顺序键的批次失败时由生产者重试retryTimesWhenSendAsyncFailed次；客户端自身的异步重试关闭，
+ * 否则顺序发送的重试会落在同一队列后续批次的后面。
+ * 最近一次发送因网络、超时或路由失败时认为Broker不可达，直到下一次发送成功。
+ */
+@Component
+public class AsyncBatchProducer {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncBatchProducer.class);
+
+    // 批量编码中每条消息的固定字段（总长、魔数、CRC、标志、体长、属性长）
+    private static final int MESSAGE_HEADER = 22;
+    // 客户端批量发送时为每条消息追加的唯一键等属性
+    private static final int MESSAGE_MARGIN = 64;
+    // 主题队列的刷新间隔，与客户端从Name Server拉取路由的默认间隔相同
+    private static final long ROUTE_REFRESH_MILLIS = 30_000;
+
+    @Autowired
+    private RocketMqConfig config;
+
+    private MqSender sender;
+    private BlockingQueue<Pending> queue;
+    private Semaphore inFlight;
+    private int maxInFlight;
+    private int maxMessageSize;
+    private int compressThreshold;
+    private int asyncRetries;
+    private int queueCapacity;
+    private long lingerNanos;
+    private Thread sendThread;
+    private volatile boolean running = false;
+    // 停机期限已到，等待在途名额的批次直接失败
+    private volatile boolean closed = false;
+    // 主题的可写队列，只在发送线程中访问
+    private final Map<String, TopicQueues> routes = new HashMap<>();
+    // 顺序发送的队列状态：在途批次确认后才发出下一个批次
+    private final Map<MessageQueue, Lane> lanes = new ConcurrentHashMap<>();
+    // sendAll检查剩余容量和入队之间不能插入其他消息
+    private final Object submitLock = new Object();
+    private volatile boolean reachable = true;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder oversize = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedMessages = new LongAdder();
+    private final LongAdder singles = new LongAdder();
+    private final LongAdder ordered = new LongAdder();
+    private final LongAdder laneWaits = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder routeFailures = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder sendNanos = new LongAdder();
+    private final LongAdder completedSends = new LongAdder();
+    private final AtomicLong maxSendNanos = new AtomicLong();
+
+    public AsyncBatchProducer() {
+    }
+
+    AsyncBatchProducer(RocketMqConfig config, MqSender sender) {
+        this.config = config;
+        try {
+            start(sender);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to start RocketMQ producer: " + e.getMessage(), e);
+        }
+    }
+
+    @PostConstruct
+    public void initialize() {
+        if (!config.isAvailable()) {
+            logger.info("RocketMQ is disabled, batch producer not started");
+            return;
+        }
+        try {
+            start(new RocketMqSender(config));
+        } catch (Exception e) {
+            logger.error("Failed to start RocketMQ producer: {}", e.getMessage(), e);
+        }
+    }
+
+    private synchronized void start(MqSender sender) throws Exception {
+        RocketMqConfig.Producer producerConfig = config.getProducer();
+        this.maxInFlight = Math.max(1, producerConfig.getMaxInFlight());
+        this.maxMessageSize = producerConfig.getMaxMessageSize();
+        this.compressThreshold = producerConfig.getCompressMessageBodyThreshold();
+        this.asyncRetries = Math.max(0, producerConfig.getRetryTimesWhenSendAsyncFailed());
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, producerConfig.getBatchLinger()));
+        this.queueCapacity = Math.max(1, producerConfig.getQueueCapacity());
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.inFlight = new Semaphore(maxInFlight);
+        sender.start();
+        this.sender = sender;
+        running = true;
+        sendThread = new Thread(this::runSendLoop, "rocketmq-batch-sender");
+        sendThread.setDaemon(true);
+        sendThread.start();
+        logger.info("RocketMQ batch producer started: nameServer={}, maxMessageSize={}, linger={}ms, maxInFlight={}",
+                config.getNameServer(), maxMessageSize, producerConfig.getBatchLinger(), maxInFlight);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 生产者在运行，且最近一次发送没有因为网络、超时或取不到路由而失败
+     */
+    public boolean isReachable() {
+        return running && reachable;
+    }
+
+    /**
+     * 异步发送，未启动或队列已满时返回false且不调用回调
+     */
+    public boolean send(Message message, SendCallback callback) {
+        return send(message, null, callback);
+    }
+
+    /**
+     * 按顺序键异步发送，同一个键的消息进入同一个队列
+     *
+     * @param shardingKey 顺序键（如设备ID），为null时由客户端选择队列
+     */
+    public boolean send(Message message, String shardingKey, SendCallback callback) {
+        if (!running) {
+            return false;
+        }
+        Pending pending = new Pending(message, shardingKey, callback, encodedSize(message));
+        synchronized (submitLock) {
+            if (!queue.offer(pending)) {
+                rejected.increment();
+                return false;
+            }
+        }
+        submitted.increment();
+        return true;
+    }
+
+    /**
+     * 整组提交：队列放得下所有消息时全部入队，否则一条都不入队并返回false，
+     * 调用方整组重试时不会重复发送已入队的消息，也不会让同一个键的消息前后错开
+     *
+     * @param shardingKeys 与messages一一对应的顺序键，元素可以为null
+     * @throws IllegalArgumentException 消息数超过队列容量，永远放不下
+     */
+    public boolean sendAll(List<Message> messages, List<String> shardingKeys, SendCallback callback) {
+        if (!running) {
+            return false;
+        }
+        if (messages.size() > queueCapacity) {
+            throw new IllegalArgumentException("Batch of " + messages.size()
+                    + " messages exceeds producer queue capacity " + queueCapacity);
+        }
+        List<Pending> pendings = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            pendings.add(new Pending(message, shardingKeys.get(i), callback, encodedSize(message)));
+        }
+        synchronized (submitLock) {
+            // 只有发送线程从队列取出消息，检查之后剩余容量只会变大
+            if (queue.remainingCapacity() < pendings.size()) {
+                rejected.add(pendings.size());
+                return false;
+            }
+            queue.addAll(pendings);
+        }
+        submitted.add(pendings.size());
+        return true;
+    }
+
+    private void runSendLoop() {
+        List<Pending> buffer = new ArrayList<>();
+        // 积压时一轮最多取足够填满所有在途发送的数据
+        long flushBytes = (long) maxMessageSize * maxInFlight;
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                buffer.add(first);
+                long buffered = first.size;
+                long deadline = System.nanoTime() + lingerNanos;
+                while (buffered < flushBytes) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 && running ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                            : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    buffer.add(next);
+                    buffered += next.size;
+                }
+                dispatch(buffer);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.error("RocketMQ send loop failed: {}", e.getMessage(), e);
+            } finally {
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * 按主题（有顺序键时按队列）分组，组内按顺序切成不超过maxMessageSize的批次
+     */
+    private void dispatch(List<Pending> buffer) throws InterruptedException {
+        Map<Object, List<Pending>> groups = new LinkedHashMap<>();
+        for (Pending pending : buffer) {
+            Object group = pending.message.getTopic();
+            if (pending.shardingKey != null) {
+                group = select(pending);
+                if (group == null) {
+                    continue;
+                }
+            }
+            groups.computeIfAbsent(group, k -> new ArrayList<>()).add(pending);
+        }
+        for (Map.Entry<Object, List<Pending>> entry : groups.entrySet()) {
+            MessageQueue target = entry.getKey() instanceof MessageQueue ? (MessageQueue) entry.getKey() : null;
+            String topic = entry.getValue().get(0).message.getTopic();
+            List<Pending> batch = new ArrayList<>();
+            int batchBytes = 0;
+            for (Pending pending : entry.getValue()) {
+                byte[] body = pending.message.getBody();
+                if (body == null || body.length > maxMessageSize) {
+                    oversize.increment();
+                    complete(pending.callback, null, new IllegalArgumentException(
+                            "Message body exceeds maxMessageSize " + maxMessageSize));
+                    continue;
+                }
+                if (body.length > compressThreshold) {
+                    // 有顺序键时先发出之前的消息，保持顺序
+                    if (target != null && !batch.isEmpty()) {
+                        sendBatch(topic, target, batch);
+                        batch = new ArrayList<>();
+                        batchBytes = 0;
+                    }
+                    sendSingle(topic, target, pending);
+                    continue;
+                }
+                if (!batch.isEmpty() && batchBytes + pending.size > maxMessageSize) {
+                    sendBatch(topic, target, batch);
+                    batch = new ArrayList<>();
+                    batchBytes = 0;
+                }
+                batch.add(pending);
+                batchBytes += pending.size;
+            }
+            if (!batch.isEmpty()) {
+                sendBatch(topic, target, batch);
+            }
+        }
+    }
+
+    /**
+     * 按顺序键选择队列，取不到主题的队列时以异常回调通知调用方并返回null
+     */
+    private MessageQueue select(Pending pending) {
+        String topic = pending.message.getTopic();
+        TopicQueues route = routes.get(topic);
+        long now = System.currentTimeMillis();
+        if (route == null || now - route.fetchTime > ROUTE_REFRESH_MILLIS) {
+            try {
+                List<MessageQueue> queues = sender.queues(topic);
+                if (queues == null || queues.isEmpty()) {
+                    throw new IllegalStateException("No message queue for topic " + topic);
+                }
+                route = new TopicQueues(new ArrayList<>(queues), now);
+                routes.put(topic, route);
+            } catch (Exception e) {
+                if (route == null) {
+                    routeFailures.increment();
+                    reachable = false;
+                    complete(pending.callback, null, e);
+                    return null;
+                }
+                // 刷新失败时继续使用原来的队列
+                logger.warn("Failed to refresh message queues of {}: {}", topic, e.getMessage());
+                route = new TopicQueues(route.queues, now);
+                routes.put(topic, route);
+            }
+        }
+        ordered.increment();
+        int index = pending.shardingKey.hashCode() % route.queues.size();
+        return route.queues.get(Math.abs(index));
+    }
+
+    private void sendSingle(String topic, MessageQueue target, Pending pending) throws InterruptedException {
+        List<Pending> single = new ArrayList<>(1);
+        single.add(pending);
+        singles.increment();
+        send(topic, target, single);
+    }
+
+    private void sendBatch(String topic, MessageQueue target, List<Pending> batch) throws InterruptedException {
+        if (batch.size() > 1) {
+            batches.increment();
+            batchedMessages.add(batch.size());
+        } else {
+            singles.increment();
+        }
+        send(topic, target, batch);
+    }
+
+    private void send(String topic, MessageQueue target, List<Pending> items) throws InterruptedException {
+        List<Message> messages = new ArrayList<>(items.size());
+        int size = 0;
+        for (Pending pending : items) {
+            messages.add(pending.message);
+            size += pending.size;
+        }
+        BatchCallback callback = new BatchCallback(topic, target, messages, items, size);
+        if (!acquire()) {
+            callback.onException(new IllegalStateException("RocketMQ producer shut down"));
+            return;
+        }
+        callback.acquired = true;
+        if (target != null) {
+            // 队列已有批次在途时排队，占用的在途名额在发出前不释放，积压仍受maxInFlight限制
+            Lane lane = lanes.computeIfAbsent(target, q -> new Lane());
+            synchronized (lane) {
+                if (lane.busy) {
+                    lane.waiting.add(callback);
+                    laneWaits.increment();
+                    return;
+                }
+                lane.busy = true;
+            }
+        }
+        callback.dispatch();
+    }
+
+    private boolean acquire() throws InterruptedException {
+        while (!inFlight.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+            if (closed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 批次的发送回调，释放在途名额（顺序发送时发出同一队列的下一个批次）后逐条通知调用方
+     */
+    private final class BatchCallback implements SendCallback {
+        private final String topic;
+        private final MessageQueue target;
+        private final List<Message> messages;
+        private final List<Pending> items;
+        private final int size;
+        private boolean acquired;
+        private int attempts;
+        private long start;
+
+        BatchCallback(String topic, MessageQueue target, List<Message> messages, List<Pending> items, int size) {
+            this.topic = topic;
+            this.target = target;
+            this.messages = messages;
+            this.items = items;
+            this.size = size;
+        }
+
+        void dispatch() {
+            start = System.nanoTime();
+            try {
+                sender.send(topic, target, messages, this);
+            } catch (Exception e) {
+                onException(e);
+            }
+        }
+
+        @Override
+        public void onSuccess(SendResult result) {
+            reachable = true;
+            finish();
+            sent.add(items.size());
+            bytes.add(size);
+            for (Pending pending : items) {
+                complete(pending.callback, result, null);
+            }
+        }
+
+        @Override
+        public void onException(Throwable e) {
+            if (acquired && target == null && attempts < asyncRetries && !closed) {
+                attempts++;
+                retried.increment();
+                dispatch();
+                return;
+            }
+            if (acquired && !(e instanceof MQBrokerException)) {
+                // Broker返回的错误说明它可达，网络、超时和路由错误说明不可达
+                reachable = false;
+            }
+            finish();
+            failed.add(items.size());
+            logger.debug("RocketMQ send of {} messages failed: {}", items.size(), e.getMessage());
+            for (Pending pending : items) {
+                complete(pending.callback, null, e);
+            }
+        }
+
+        private void finish() {
+            if (!acquired) {
+                return;
+            }
+            long nanos = System.nanoTime() - start;
+            sendNanos.add(nanos);
+            completedSends.increment();
+            maxSendNanos.accumulateAndGet(nanos, Math::max);
+            if (target != null) {
+                Lane lane = lanes.get(target);
+                BatchCallback next;
+                synchronized (lane) {
+                    next = lane.waiting.poll();
+                    if (next == null) {
+                        lane.busy = false;
+                    }
+                }
+                if (next != null) {
+                    next.dispatch();
+                }
+            }
+            inFlight.release();
+        }
+    }
+
+    private void complete(SendCallback callback, SendResult result, Throwable error) {
+        if (callback == null) {
+            return;
+        }
+        try {
+            if (error == null) {
+                callback.onSuccess(result);
+            } else {
+                callback.onException(error);
+            }
+        } catch (Exception e) {
+            logger.error("RocketMQ send callback failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 消息在批量编码中的字节数（估算，略大于实际值）
+     */
+    static int encodedSize(Message message) {
+        int size = MESSAGE_HEADER + MESSAGE_MARGIN + (message.getBody() != null ? message.getBody().length : 0);
+        for (Map.Entry<String, String> property : message.getProperties().entrySet()) {
+            size += utf8Length(property.getKey()) + utf8Length(property.getValue()) + 2;
+        }
+        return size;
+    }
+
+    private static int utf8Length(String text) {
+        if (text == null) {
+            return 0;
+        }
+        int length = text.length();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x800) {
+                length += 2;
+            } else if (c >= 0x80) {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 获取发送统计
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("running", running);
+        stats.put("queueSize", queue != null ? queue.size() : 0);
+        stats.put("inFlight", inFlight != null ? maxInFlight - inFlight.availablePermits() : 0);
+        stats.put("submitted", submitted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("sent", sent.sum());
+        stats.put("failed", failed.sum());
+        stats.put("oversize", oversize.sum());
+        stats.put("batches", batches.sum());
+        long batchCount = batches.sum();
+        stats.put("averageBatchSize", batchCount > 0 ? (double) batchedMessages.sum() / batchCount : 0);
+        stats.put("singles", singles.sum());
+        stats.put("ordered", ordered.sum());
+        stats.put("laneWaits", laneWaits.sum());
+        stats.put("retried", retried.sum());
+        stats.put("reachable", reachable);
+        stats.put("routeFailures", routeFailures.sum());
+        stats.put("bytes", bytes.sum());
+        long sends = completedSends.sum();
+        stats.put("averageSendMillis", sends > 0 ? sendNanos.sum() / 1e6 / sends : 0);
+        stats.put("maxSendMillis", maxSendNanos.get() / 1e6);
+        return stats;
+    }
+
+    /**
+     * 停止接收新消息，在sendMessageTimeout内发出队列中的消息并等待在途发送完成，
+     * 到期仍未发出的消息以异常回调通知调用方
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        long timeout = Math.max(1000, config.getProducer().getSendMessageTimeout());
+        try {
+            sendThread.join(timeout);
+            closed = true;
+            sendThread.join(timeout);
+            if (!inFlight.tryAcquire(maxInFlight, timeout, TimeUnit.MILLISECONDS)) {
+                logger.warn("RocketMQ producer shut down with {} sends in flight",
+                        maxInFlight - inFlight.availablePermits());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Pending> unsent = new ArrayList<>();
+        queue.drainTo(unsent);
+        for (Pending pending : unsent) {
+            complete(pending.callback, null, new IllegalStateException("RocketMQ producer shut down"));
+        }
+        sender.shutdown();
+        logger.info("RocketMQ batch producer stopped, {} unsent messages", unsent.size());
+    }
+
+    private static final class Pending {
+        final Message message;
+        final String shardingKey;
+        final SendCallback callback;
+        final int size;
+
+        Pending(Message message, String shardingKey, SendCallback callback, int size) {
+            this.message = message;
+            this.shardingKey = shardingKey;
+            this.callback = callback;
+            this.size = size;
+        }
+    }
+
+    /**
+     * 一个队列的顺序发送状态，由自身加锁保护
+     */
+    private static final class Lane {
+        boolean busy;
+        final ArrayDeque<BatchCallback> waiting = new ArrayDeque<>();
+    }
+
+    private static final class TopicQueues {
+        final List<MessageQueue> queues;
+        final long fetchTime;
+
+        TopicQueues(List<MessageQueue> queues, long fetchTime) {
+            this.queues = queues;
+            this.fetchTime = fetchTime;
+        }
+    }
+}
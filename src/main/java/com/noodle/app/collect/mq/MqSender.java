@@ -0,0 +1,31 @@
+package com.noodle.app.collect.mq;
+
+import java.util.List;
+
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+
+/**
+ * 消息发送通道
+ *
+ * 生产环境为{@link RocketMqSender}，测试中可以换成进程内的Name Server/Broker替身。
+ */
+interface MqSender {
+
+    void start() throws Exception;
+
+    /**
+     * 异步发送同一主题的一条或一批消息，一条时走单条发送（超过压缩阈值时由客户端压缩）
+     *
+     * @param queue 目标队列，为null时由客户端选择
+     */
+    void send(String topic, MessageQueue queue, List<Message> messages, SendCallback callback) throws Exception;
+
+    /**
+     * 主题的可写队列，用于按顺序键选择队列
+     */
+    List<MessageQueue> queues(String topic) throws Exception;
+
+    void shutdown();
+}
@@ -0,0 +1,67 @@
+package com.noodle.app.collect.mq;
+
+import java.util.List;
+
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+
+import com.noodle.app.collect.config.RocketMqConfig;
+
+/**
+ * 基于DefaultMQProducer的发送通道
+ *
+ * 使用单独的实例名，与rocketmq-spring-boot-starter创建的同组生产者互不影响。
+ * 客户端只压缩单条消息，批量消息（MessageBatch）不压缩，所以超过压缩阈值的消息由调用方单条发送。
+ */
+final class RocketMqSender implements MqSender {
+
+    private static final String INSTANCE_NAME = "noodle-batch-producer";
+
+    private final DefaultMQProducer producer;
+
+    RocketMqSender(RocketMqConfig config) {
+        RocketMqConfig.Producer producerConfig = config.getProducer();
+        producer = new DefaultMQProducer(producerConfig.getGroup());
+        producer.setNamesrvAddr(config.getNameServer());
+        producer.setInstanceName(INSTANCE_NAME);
+        producer.setSendMsgTimeout(producerConfig.getSendMessageTimeout());
+        producer.setRetryTimesWhenSendFailed(producerConfig.getRetryTimesWhenSendFailed());
+        // 异步发送的重试由AsyncBatchProducer负责，客户端重试会让顺序发送的批次越过同一队列后续的批次
+        producer.setRetryTimesWhenSendAsyncFailed(0);
+        producer.setMaxMessageSize(producerConfig.getMaxMessageSize());
+        producer.setCompressMsgBodyOverHowmuch(producerConfig.getCompressMessageBodyThreshold());
+    }
+
+    @Override
+    public void start() throws Exception {
+        producer.start();
+    }
+
+    @Override
+    public void send(String topic, MessageQueue queue, List<Message> messages, SendCallback callback)
+            throws Exception {
+        if (queue == null) {
+            if (messages.size() == 1) {
+                producer.send(messages.get(0), callback);
+            } else {
+                producer.send(messages, callback);
+            }
+        } else if (messages.size() == 1) {
+            producer.send(messages.get(0), queue, callback);
+        } else {
+            producer.send(messages, queue, callback);
+        }
+    }
+
+    @Override
+    public List<MessageQueue> queues(String topic) throws Exception {
+        return producer.fetchPublishMessageQueues(topic);
+    }
+
+    @Override
+    public void shutdown() {
+        producer.shutdown();
+    }
+}
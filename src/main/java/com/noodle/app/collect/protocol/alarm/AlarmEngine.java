@@ -0,0 +1,434 @@
+package com.noodle.app.collect.protocol.alarm;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.noodle.app.collect.protocol.config.AlarmConfig;
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * 流式报警
+ *
+ * 在入库路径上检查每条解码后的数据：按设备ID查到该设备编译好的报警状态（一次哈希查找），
+ * 对每个有规则的字段取值并做几次double比较。只有级别变化时才创建{@link AlarmEvent}，
+ * 正常样本不分配对象。同一设备的样本在设备状态锁内检查，入库按设备分片时锁没有竞争。
+ *
+ * 窗口类规则按接收时间计时：rate规则用固定分槽的滑动窗口增量维护最值；
+ * duration和absence规则的定时器放在分层时间轮中，由报警定时器线程每个tick推进。
+ * absence规则每个样本只更新最近接收时间，定时器到期时再检查，不在每个样本上重新调度。
+ * 规则热更新后所有设备的报警状态重置为正常。
+ */
+@Component
+public class AlarmEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlarmEngine.class);
+
+    private static final int WHEEL_SIZE = 64;
+    private static final int WHEEL_LEVELS = 4;
+
+    @Autowired
+    private AlarmConfig config;
+
+    private volatile AlarmRuleIndex index = AlarmRuleIndex.compile(null, 0, 2);
+    private volatile boolean enabled = false;
+    private final ConcurrentHashMap<String, AlarmRuleIndex.DeviceAlarms> devices = new ConcurrentHashMap<>();
+    private final List<AlarmListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile TimingWheel timingWheel;
+    private ScheduledExecutorService timerExecutor;
+
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder raised = new LongAdder();
+    private final LongAdder escalated = new LongAdder();
+    private final LongAdder cleared = new LongAdder();
+    private final LongAdder timersFired = new LongAdder();
+    private final AtomicInteger active = new AtomicInteger();
+
+    public AlarmEngine() {
+    }
+
+    public AlarmEngine(AlarmConfig config) {
+        this.config = config;
+        initialize();
+    }
+
+    @PostConstruct
+    public void initialize() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        try {
+            AlarmRuleIndex compiled = AlarmRuleIndex.compile(config.getRules(), config.getHysteresis(),
+                    config.getWindowSlots());
+            startTimer(compiled);
+            index = compiled;
+            enabled = true;
+            logger.info("Alarm rules compiled: {}", compiled.size());
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid alarm configuration, alarm check disabled: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 有窗口类规则时创建时间轮并启动定时器线程
+     */
+    private synchronized void startTimer(AlarmRuleIndex compiled) {
+        if (timerExecutor != null || !compiled.isWindowed()) {
+            return;
+        }
+        long tick = Math.max(1, config.getTickMillis());
+        timingWheel = new TimingWheel(tick, WHEEL_SIZE, WHEEL_LEVELS, System.currentTimeMillis());
+        timerExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "alarm-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timerExecutor.scheduleAtFixedRate(() -> advance(System.currentTimeMillis()), tick, tick,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void addListener(AlarmListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 检查一条数据，未启用、没有设备ID或字段时直接返回
+     */
+    public void evaluate(ProtocolData data) {
+        evaluate(data, 0);
+    }
+
+    /**
+     * 按给定的接收时间检查，now为0时在需要时读取系统时钟
+     */
+    void evaluate(ProtocolData data, long now) {
+        if (!enabled) {
+            return;
+        }
+        String deviceId = data.getDeviceId();
+        Map<String, Object> values = data.getFields();
+        if (deviceId == null || values == null) {
+            return;
+        }
+        AlarmRuleIndex current = index;
+        AlarmRuleIndex.DeviceAlarms device = devices.get(deviceId);
+        if (device == null || device.index != current) {
+            device = bind(deviceId, current);
+        }
+        if (device.fields.length == 0) {
+            return;
+        }
+        if (now == 0 && device.windowed) {
+            now = System.currentTimeMillis();
+        }
+        synchronized (device) {
+            for (AlarmRuleIndex.FieldAlarms field : device.fields) {
+                if (field.any) {
+                    for (RuleState state : field.states) {
+                        seen(state, now, data.getTimestamp());
+                    }
+                    continue;
+                }
+                Object value = values.get(field.field);
+                if (!(value instanceof Number)) {
+                    continue;
+                }
+                double sample = ((Number) value).doubleValue();
+                if (Double.isNaN(sample)) {
+                    continue;
+                }
+                samples.increment();
+                for (RuleState state : field.states) {
+                    switch (state.rule.getType()) {
+                        case THRESHOLD:
+                            int next = state.rule.evaluate(state.level, sample);
+                            if (next != state.level) {
+                                transition(state, next, sample, data.getTimestamp());
+                            }
+                            break;
+                        case DURATION:
+                            duration(state, sample, now, data.getTimestamp());
+                            break;
+                        case RATE:
+                            rate(state, sample, now, data.getTimestamp());
+                            break;
+                        default:
+                            seen(state, now, data.getTimestamp());
+                            break;
+                    }
+                }
+            }
+        }
+    }
+
+    private AlarmRuleIndex.DeviceAlarms bind(String deviceId, AlarmRuleIndex current) {
+        return devices.compute(deviceId, (key, existing) ->
+                existing != null && existing.index == current ? existing : current.bind(key));
+    }
+
+    /**
+     * absence规则收到数据：恢复报警（值为中断的秒数），没有定时器时调度一个
+     */
+    private void seen(RuleState state, long now, Instant timestamp) {
+        long previous = state.lastSeen;
+        state.lastSeen = now;
+        if (state.level != 0) {
+            transition(state, 0, (now - previous) / 1000.0, timestamp);
+        }
+        if (!state.isScheduled()) {
+            timingWheel.schedule(state, now + state.rule.getWindowMillis());
+        }
+    }
+
+    /**
+     * duration规则：每级条件从开始成立起持续一个窗口后升级，条件不成立时立即降级
+     */
+    private void duration(RuleState state, double sample, long now, Instant timestamp) {
+        state.lastValue = sample;
+        int holding = state.rule.evaluate(state.level, sample);
+        long[] conditionSince = state.conditionSince;
+        for (int k = 0; k < conditionSince.length; k++) {
+            if (k < holding) {
+                if (conditionSince[k] < 0) {
+                    conditionSince[k] = now;
+                }
+            } else {
+                conditionSince[k] = -1;
+            }
+        }
+        if (holding < state.level) {
+            transition(state, holding, sample, timestamp);
+        }
+        confirmDuration(state, now, timestamp);
+    }
+
+    /**
+     * 把持续时间已满的级别确认为报警，并为下一级调度定时器
+     */
+    private void confirmDuration(RuleState state, long now, Instant timestamp) {
+        long window = state.rule.getWindowMillis();
+        long[] conditionSince = state.conditionSince;
+        int confirmed = state.level;
+        while (confirmed < conditionSince.length && conditionSince[confirmed] >= 0
+                && now - conditionSince[confirmed] >= window) {
+            confirmed++;
+        }
+        if (confirmed > state.level) {
+            transition(state, confirmed, state.lastValue, timestamp);
+        }
+        if (confirmed < conditionSince.length && conditionSince[confirmed] >= 0) {
+            long deadline = conditionSince[confirmed] + window;
+            if (!state.isScheduled() || state.getDeadline() != deadline) {
+                timingWheel.schedule(state, deadline);
+            }
+        } else if (state.isScheduled()) {
+            timingWheel.cancel(state);
+        }
+    }
+
+    /**
+     * rate规则：相对窗口内最低值（上升）或最高值（下降）的变化百分比
+     */
+    private void rate(RuleState state, double sample, long now, Instant timestamp) {
+        SlidingWindow window = state.window;
+        window.advance(now);
+        double base = state.rule.isLower() ? window.max() : window.min();
+        window.add(sample);
+        if (Double.isInfinite(base) || base == 0) {
+            return;
+        }
+        double change = (sample - base) / Math.abs(base) * 100;
+        int next = state.rule.evaluate(state.level, change);
+        if (next != state.level) {
+            transition(state, next, change, timestamp);
+        }
+    }
+
+    /**
+     * 推进时间轮并处理到期的定时器，由定时器线程调用
+     */
+    void advance(long now) {
+        try {
+            List<TimingWheel.Timer> expired = new ArrayList<>();
+            timingWheel.advance(now, expired);
+            for (TimingWheel.Timer timer : expired) {
+                RuleState state = (RuleState) timer;
+                if (state.device.index != index) {
+                    continue;
+                }
+                timersFired.increment();
+                synchronized (state.device) {
+                    if (state.rule.getType() == RuleType.DURATION) {
+                        confirmDuration(state, now, null);
+                    } else if (state.level == 0) {
+                        long deadline = state.lastSeen + state.rule.getWindowMillis();
+                        if (now >= deadline) {
+                            transition(state, 1, (now - state.lastSeen) / 1000.0, null);
+                        } else if (!state.isScheduled()) {
+                            timingWheel.schedule(state, deadline);
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Alarm timer failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void transition(RuleState state, int next, double value, Instant timestamp) {
+        ThresholdRule rule = state.rule;
+        int previous = state.level;
+        Instant time = timestamp != null ? timestamp : Instant.now();
+        state.level = next;
+        state.value = value;
+        state.since = time.toEpochMilli();
+        // 规则热更新前绑定的旧状态不计入当前报警数
+        boolean current = state.device.index == index;
+        if (previous == 0) {
+            raised.increment();
+            if (current) {
+                active.incrementAndGet();
+            }
+        } else if (next == 0) {
+            cleared.increment();
+            if (current) {
+                active.decrementAndGet();
+            }
+        } else if (next > previous) {
+            escalated.increment();
+        }
+
+        AlarmEvent event = new AlarmEvent(rule.getId(), state.device.deviceId, state.field.field, rule.level(next),
+                rule.level(previous), value, rule.threshold(next > previous ? next : previous), time,
+                state.device.index.generation);
+        if (event.isEscalation()) {
+            logger.warn("Alarm {} on {}.{}: {} -> {}, value={}, threshold={}", event.getRuleId(),
+                    event.getDeviceId(), event.getField(), event.getPreviousLevel(), event.getLevel(),
+                    value, event.getThreshold());
+        } else {
+            logger.info("Alarm {} on {}.{}: {} -> {}, value={}", event.getRuleId(), event.getDeviceId(),
+                    event.getField(), event.getPreviousLevel(), event.getLevel(), value);
+        }
+        for (AlarmListener listener : listeners) {
+            try {
+                listener.onAlarm(event);
+            } catch (Exception e) {
+                logger.error("Alarm listener failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 热更新报警规则并启用报警检查，规则非法时抛出IllegalArgumentException并保留原规则
+     */
+    public synchronized void reload(List<AlarmConfig.AlarmRule> rules) {
+        AlarmRuleIndex compiled = AlarmRuleIndex.compile(rules, config.getHysteresis(), config.getWindowSlots());
+        // 新规则生效前通知监听器：此时还没有新规则的事件，监听器清掉的只有旧规则的报警
+        for (AlarmListener listener : listeners) {
+            try {
+                listener.onReload();
+            } catch (Exception e) {
+                logger.error("Alarm listener failed: {}", e.getMessage(), e);
+            }
+        }
+        startTimer(compiled);
+        // 时间轮中只有旧规则的定时器，旧规则的定时器到期时也会按index跳过
+        if (timingWheel != null) {
+            timingWheel.clear();
+        }
+        active.set(0);
+        index = compiled;
+        // 只移除旧规则的设备状态，切换后已按新规则绑定的设备保留
+        devices.values().removeIf(device -> device.index != compiled);
+        enabled = true;
+        logger.info("Alarm rules reloaded: {}", compiled.size());
+    }
+
+    public List<AlarmConfig.AlarmRule> getRules() {
+        return index.getRules();
+    }
+
+    AlarmRuleIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * 当前处于报警状态的规则，最多返回limit条
+     */
+    public List<Map<String, Object>> getActiveAlarms(int limit) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (AlarmRuleIndex.DeviceAlarms device : devices.values()) {
+            synchronized (device) {
+                for (AlarmRuleIndex.FieldAlarms field : device.fields) {
+                    for (RuleState state : field.states) {
+                        if (state.level == 0) {
+                            continue;
+                        }
+                        if (result.size() >= limit) {
+                            return result;
+                        }
+                        Map<String, Object> alarm = new HashMap<>();
+                        alarm.put("ruleId", state.rule.getId());
+                        alarm.put("type", state.rule.getType().name().toLowerCase());
+                        alarm.put("deviceId", device.deviceId);
+                        alarm.put("field", field.field);
+                        alarm.put("level", state.rule.level(state.level));
+                        alarm.put("value", state.value);
+                        alarm.put("threshold", state.rule.threshold(state.level));
+                        alarm.put("since", Instant.ofEpochMilli(state.since).toString());
+                        result.add(alarm);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取报警检查统计
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        TimingWheel wheel = timingWheel;
+        stats.put("enabled", enabled);
+        stats.put("rules", index.size());
+        stats.put("devices", devices.size());
+        stats.put("samples", samples.sum());
+        stats.put("raised", raised.sum());
+        stats.put("escalated", escalated.sum());
+        stats.put("cleared", cleared.sum());
+        stats.put("active", active.get());
+        stats.put("timers", wheel != null ? wheel.size() : 0);
+        stats.put("timersFired", timersFired.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (timerExecutor != null) {
+            timerExecutor.shutdownNow();
+            timerExecutor = null;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.noodle.app.collect.protocol.alarm;
+
+import java.time.Instant;
+
+/**
+ * 报警事件：某条规则在某个设备上的级别发生变化，级别为NORMAL时表示恢复
+ */
+public class AlarmEvent {
+
+    private final String ruleId;
+    private final String deviceId;
+    private final String field;
+    private final AlarmLevel level;
+    private final AlarmLevel previousLevel;
+    /**
+     * 触发变化的样本值；rate规则为变化百分比，absence规则为无数据的秒数
+     */
+    private final double value;
+    /**
+     * 触发本次变化的阈值；恢复时为原级别的阈值
+     */
+    private final double threshold;
+    private final Instant timestamp;
+    /**
+     * 产生事件的规则版本，0表示不是报警引擎产生的事件
+     */
+    private final long generation;
+
+    public AlarmEvent(String ruleId, String deviceId, String field, AlarmLevel level, AlarmLevel previousLevel,
+                      double value, double threshold, Instant timestamp) {
+        this(ruleId, deviceId, field, level, previousLevel, value, threshold, timestamp, 0);
+    }
+
+    AlarmEvent(String ruleId, String deviceId, String field, AlarmLevel level, AlarmLevel previousLevel,
+               double value, double threshold, Instant timestamp, long generation) {
+        this.ruleId = ruleId;
+        this.deviceId = deviceId;
+        this.field = field;
+        this.level = level;
+        this.previousLevel = previousLevel;
+        this.value = value;
+        this.threshold = threshold;
+        this.timestamp = timestamp;
+        this.generation = generation;
+    }
+
+    /**
+     * 是否为升级（包括从正常到报警）
+     */
+    public boolean isEscalation() {
+        return level.ordinal() > previousLevel.ordinal();
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    // Getters
+    public String getRuleId() {
+        return ruleId;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public AlarmLevel getLevel() {
+        return level;
+    }
+
+    public AlarmLevel getPreviousLevel() {
+        return previousLevel;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "AlarmEvent{" +
+                "ruleId='" + ruleId + '\'' +
+                ", deviceId='" + deviceId + '\'' +
+                ", field='" + field + '\'' +
+                ", level=" + level +
+                ", previousLevel=" + previousLevel +
+                ", value=" + value +
+                ", threshold=" + threshold +
+                ", timestamp=" + timestamp +
+                '}';
+    }
+}
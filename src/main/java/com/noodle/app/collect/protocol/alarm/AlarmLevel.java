@@ -0,0 +1,14 @@
+package com.noodle.app.collect.protocol.alarm;
+
+/**
+ * 报警级别，按严重程度递增
+ */
+public enum AlarmLevel {
+
+    /** 正常，未报警或已恢复 */
+    NORMAL,
+    /** 警告 */
+    WARNING,
+    /** 严重 */
+    CRITICAL
+}
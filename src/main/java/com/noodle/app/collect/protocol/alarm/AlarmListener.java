@@ -0,0 +1,19 @@
+package com.noodle.app.collect.protocol.alarm;
+
+/**
+ * 报警级别变化的监听器
+ *
+ * 在入库线程中同步调用，且持有该设备的报警状态锁，实现不能阻塞；需要发送网络请求的应先放入队列。
+ */
+@FunctionalInterface
+public interface AlarmListener {
+
+    void onAlarm(AlarmEvent event);
+
+    /**
+     * 规则热更新时在新规则生效前调用：之后所有设备的报警状态重置为正常，旧规则的报警不会再有恢复事件。
+     * 正在按旧规则检查的线程仍可能发出少量旧规则的事件，实现应按事件的规则版本丢弃
+     */
+    default void onReload() {
+    }
+}
@@ -0,0 +1,669 @@
+package com.noodle.app.collect.protocol.alarm;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.message.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.noodle.app.collect.config.RocketMqConfig;
+import com.noodle.app.collect.mq.AsyncBatchProducer;
+import com.noodle.app.collect.protocol.config.AlarmConfig;
+
+/**
+ * 报警通知：生命周期、去重、分组抑制和限速批量推送
+ *
+ * 每条规则在每个设备上的报警是一个{@link Incident}，按 报警 → 确认 → 恢复 流转，恢复后再次报警时复用。
+ * 入库线程只更新Incident的几个字段，状态有变化时放入待通知队列（已在队列中的不重复放入），不做其他工作。
+ * 推送线程每个batchInterval处理待通知的Incident，决定是否通知：
+ * 父设备（可多级）有报警时子设备不通知，父设备恢复后再通知子设备的最新状态；子设备的新报警先等待groupWait，
+ * 避免站点停电时子设备的数据先于父设备到达而漏过抑制；
+ * 去重窗口内同一报警的重复报警和降级不通知，级别高于窗口内已通知的级别时立即通知，窗口结束时通知最新状态；
+ * 恢复不去重，但恢复后在窗口内再次报警仍算重复；超过每秒通知上限的顺延到之后的批次。
+ * 只通知最新状态，期间已恢复的报警不再通知。
+ * 通知在发送确认后才算已通知：生产者队列满或发送失败时报警重新进入待通知队列，下一批重发；
+ * 发送中的报警有新变化时等确认后再通知。
+ * 规则热更新后丢弃所有报警，之后收到的旧规则事件按规则版本丢弃。
+ */
+@Component
+public class AlarmNotifier implements AlarmListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlarmNotifier.class);
+
+    private static final int MAX_PARENT_DEPTH = 8;
+    // 每隔多少批清理一次去重窗口已过的已恢复报警
+    private static final int SWEEP_EVERY = 60;
+    private static final Incident[] NO_INCIDENTS = new Incident[0];
+
+    @Autowired
+    private AlarmConfig config;
+
+    @Autowired
+    private AlarmEngine engine;
+
+    @Autowired
+    private RocketMqConfig rocketMqConfig;
+
+    @Autowired
+    private AsyncBatchProducer producer;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private volatile boolean enabled = false;
+    private volatile DeviceGroupIndex groups = DeviceGroupIndex.compile(null);
+    // 已热更新掉的规则版本，不大于它的事件丢弃
+    private volatile long retiredGeneration;
+    private Publisher publisher;
+    private ScheduledExecutorService flushExecutor;
+
+    private final ConcurrentHashMap<String, DeviceIncidents> devices = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Incident> dirty = new ConcurrentLinkedQueue<>();
+    // 以下只在推送线程中访问
+    private List<Incident> pending = new ArrayList<>();
+    private double tokens;
+    private long lastRefill;
+    private int flushes;
+
+    private final LongAdder events = new LongAdder();
+    private final LongAdder raised = new LongAdder();
+    private final LongAdder acknowledged = new LongAdder();
+    private final LongAdder cleared = new LongAdder();
+    private final LongAdder notified = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder suppressed = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder publishFailures = new LongAdder();
+    private final LongAdder requeued = new LongAdder();
+
+    /**
+     * 通知的发送通道
+     */
+    @FunctionalInterface
+    interface Publisher {
+        /**
+         * 发送一条通知，完成后调用completion：true表示已确认（或无法发送、不应重发），false表示应重发
+         */
+        void publish(Map<String, Object> notification, Consumer<Boolean> completion);
+    }
+
+    public AlarmNotifier() {
+    }
+
+    /**
+     * 不启动推送线程，由调用方调用{@link #flush(long)}；publisher返回即视为已确认
+     */
+    AlarmNotifier(AlarmConfig config, AlarmEngine engine, Consumer<Map<String, Object>> publisher) {
+        this(config, engine, (Publisher) (notification, completion) -> {
+            publisher.accept(notification);
+            completion.accept(true);
+        });
+    }
+
+    AlarmNotifier(AlarmConfig config, AlarmEngine engine, Publisher publisher) {
+        this.config = config;
+        this.engine = engine;
+        this.publisher = publisher;
+        start();
+    }
+
+    @PostConstruct
+    public void initialize() {
+        if (!config.getNotify().isEnabled()) {
+            return;
+        }
+        try {
+            publisher = this::publish;
+            start();
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid alarm notify configuration, notification disabled: {}", e.getMessage());
+            return;
+        }
+        long interval = Math.max(10, config.getNotify().getBatchInterval());
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "alarm-notifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutor.scheduleWithFixedDelay(() -> flush(System.currentTimeMillis()), interval, interval,
+                TimeUnit.MILLISECONDS);
+        if (!rocketMqConfig.isAvailable()) {
+            logger.warn("RocketMQ is disabled, alarm notifications are tracked but not published");
+        }
+    }
+
+    private void start() {
+        groups = DeviceGroupIndex.compile(config.getGroups());
+        tokens = Math.max(1, config.getNotify().getBurst());
+        enabled = true;
+        engine.addListener(this);
+        logger.info("Alarm notifier started: groups={}, dedupWindow={}s, maxPerSecond={}", groups.size(),
+                config.getNotify().getDedupWindow(), config.getNotify().getMaxPerSecond());
+    }
+
+    /**
+     * 在入库线程中调用，只更新报警状态
+     */
+    @Override
+    public void onAlarm(AlarmEvent event) {
+        if (!enabled || isRetired(event)) {
+            return;
+        }
+        events.increment();
+        long time = event.getTimestamp().toEpochMilli();
+        while (true) {
+            DeviceIncidents device = devices.get(event.getDeviceId());
+            if (device == null) {
+                if (event.getLevel() == AlarmLevel.NORMAL) {
+                    return;
+                }
+                DeviceIncidents created = new DeviceIncidents(event.getDeviceId(),
+                        groups.parentOf(event.getDeviceId()));
+                device = devices.putIfAbsent(created.deviceId, created);
+                if (device == null) {
+                    device = created;
+                }
+            }
+            synchronized (device) {
+                // 已被清理的设备重新查找
+                if (device.removed) {
+                    continue;
+                }
+                // 在设备锁内再检查一次：onReload先更新版本再逐个锁住设备清理，检查通过后放入的旧事件会被清掉
+                if (isRetired(event)) {
+                    return;
+                }
+                Incident incident = device.find(event.getRuleId());
+                if (incident == null) {
+                    if (event.getLevel() == AlarmLevel.NORMAL) {
+                        return;
+                    }
+                    incident = device.add(new Incident(device, event.getRuleId(), event.getField(),
+                            engine.getIndex().dedupMillis(event.getRuleId(),
+                                    config.getNotify().getDedupWindow() * 1000L)));
+                }
+                update(device, incident, event, time);
+            }
+            return;
+        }
+    }
+
+    private boolean isRetired(AlarmEvent event) {
+        return event.getGeneration() != 0 && event.getGeneration() <= retiredGeneration;
+    }
+
+    private void update(DeviceIncidents device, Incident incident, AlarmEvent event, long time) {
+        boolean wasActive = incident.level != AlarmLevel.NORMAL;
+        incident.value = event.getValue();
+        incident.threshold = event.getThreshold();
+        incident.changedAt = time;
+        if (event.getLevel() == AlarmLevel.NORMAL) {
+            incident.state = AlarmState.CLEARED;
+            incident.clearedAt = time;
+            cleared.increment();
+        } else if (incident.state == AlarmState.CLEARED) {
+            // 去重窗口内再次报警算同一次报警的重复发生
+            if (incident.occurrences > 0 && time - incident.clearedAt < incident.dedupMillis) {
+                incident.occurrences++;
+            } else {
+                incident.occurrences = 1;
+                incident.raisedAt = time;
+            }
+            incident.state = AlarmState.RAISED;
+            raised.increment();
+        } else if (event.isEscalation()) {
+            // 升级后需要重新确认
+            incident.state = AlarmState.RAISED;
+        }
+        incident.level = event.getLevel();
+        boolean active = incident.level != AlarmLevel.NORMAL;
+        if (active != wasActive) {
+            device.active += active ? 1 : -1;
+        }
+        markDirty(incident);
+    }
+
+    private void markDirty(Incident incident) {
+        if (!incident.dirty) {
+            incident.dirty = true;
+            dirty.add(incident);
+        }
+    }
+
+    /**
+     * 确认报警，ruleId为null时确认设备的所有报警
+     *
+     * @return 确认的报警数
+     */
+    public int acknowledge(String deviceId, String ruleId) {
+        DeviceIncidents device = devices.get(deviceId);
+        if (device == null) {
+            return 0;
+        }
+        int count = 0;
+        synchronized (device) {
+            for (int i = 0; i < device.count; i++) {
+                Incident incident = device.incidents[i];
+                if (incident.state == AlarmState.RAISED && (ruleId == null || ruleId.equals(incident.ruleId))) {
+                    incident.state = AlarmState.ACKNOWLEDGED;
+                    incident.acknowledgedAt = System.currentTimeMillis();
+                    markDirty(incident);
+                    count++;
+                }
+            }
+        }
+        acknowledged.add(count);
+        return count;
+    }
+
+    /**
+     * 处理待通知的报警并推送，由推送线程按batchInterval调用
+     */
+    synchronized void flush(long now) {
+        try {
+            Incident next;
+            while ((next = dirty.poll()) != null) {
+                if (next.pendingSince == 0) {
+                    next.pendingSince = now;
+                }
+                pending.add(next);
+            }
+            AlarmConfig.NotifyConfig notify = config.getNotify();
+            if (lastRefill == 0) {
+                lastRefill = now;
+            }
+            tokens = Math.min(Math.max(1, notify.getBurst()),
+                    tokens + (now - lastRefill) * Math.max(1, notify.getMaxPerSecond()) / 1000.0);
+            lastRefill = now;
+
+            List<Map<String, Object>> alarms = new ArrayList<>();
+            List<Incident> sending = new ArrayList<>();
+            List<Incident> carry = new ArrayList<>();
+            int held = 0;
+            int limited = 0;
+            int withheld = 0;
+            for (Incident incident : pending) {
+                // 父设备报警是volatile计数，在子设备锁外读取
+                boolean parentActive = isParentActive(incident.device);
+                synchronized (incident.device) {
+                    if (incident.device.removed) {
+                        continue;
+                    }
+                    if (incident.inFlight) {
+                        // 上一次通知还没确认，确认后再比较
+                        carry.add(incident);
+                        continue;
+                    }
+                    if (incident.level == incident.announcedLevel && incident.state == incident.announcedState) {
+                        incident.dirty = false;
+                        incident.pendingSince = 0;
+                        continue;
+                    }
+                    if (parentActive) {
+                        if (!incident.suppressed) {
+                            incident.suppressed = true;
+                            suppressed.increment();
+                        }
+                        // 父设备恢复后子设备的数据可能还没到，重新等待groupWait
+                        incident.pendingSince = now;
+                        carry.add(incident);
+                        withheld++;
+                        continue;
+                    }
+                    boolean levelChanged = incident.level != incident.announcedLevel;
+                    if (incident.device.parentId != null && incident.announcedLevel == AlarmLevel.NORMAL
+                            && now - incident.pendingSince < notify.getGroupWait()) {
+                        carry.add(incident);
+                        continue;
+                    }
+                    boolean newWindow = now - incident.windowStart >= incident.dedupMillis;
+                    if (levelChanged && incident.level != AlarmLevel.NORMAL && !newWindow
+                            && incident.level.ordinal() <= incident.windowPeak.ordinal()) {
+                        if (!incident.duplicate) {
+                            incident.duplicate = true;
+                            deduplicated.increment();
+                        }
+                        carry.add(incident);
+                        held++;
+                        continue;
+                    }
+                    if (tokens < 1) {
+                        if (!incident.limited) {
+                            incident.limited = true;
+                            rateLimited.increment();
+                        }
+                        carry.add(incident);
+                        limited++;
+                        continue;
+                    }
+                    tokens -= 1;
+                    alarms.add(incident.toMap());
+                    sending.add(incident);
+                    // 已通知的状态和去重窗口在确认后更新
+                    incident.inFlight = true;
+                    incident.sendingLevel = incident.level;
+                    incident.sendingState = incident.state;
+                    incident.dirty = false;
+                    incident.pendingSince = 0;
+                    incident.suppressed = false;
+                    incident.duplicate = false;
+                    incident.limited = false;
+                }
+            }
+            pending = carry;
+            int maxBatch = Math.max(1, notify.getMaxBatch());
+            for (int from = 0; from < alarms.size(); from += maxBatch) {
+                int to = Math.min(from + maxBatch, alarms.size());
+                Map<String, Object> message = new LinkedHashMap<>();
+                message.put("timestamp", now);
+                message.put("alarms", alarms.subList(from, to));
+                message.put("pending", carry.size());
+                message.put("suppressed", withheld);
+                message.put("deduplicated", held);
+                message.put("rateLimited", limited);
+                List<Incident> batch = sending.subList(from, to);
+                publisher.publish(message, done -> complete(batch, done, now));
+            }
+            if (++flushes % SWEEP_EVERY == 0) {
+                sweep(now);
+            }
+        } catch (Exception e) {
+            logger.error("Alarm notification failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 通知发送完成：确认时更新已通知的状态和去重窗口，失败时重新放入待通知队列
+     *
+     * @param sentAt 发送时推送线程的时钟
+     */
+    private void complete(List<Incident> batch, boolean done, long sentAt) {
+        for (Incident incident : batch) {
+            synchronized (incident.device) {
+                incident.inFlight = false;
+                if (!done) {
+                    if (!incident.device.removed) {
+                        requeued.increment();
+                        markDirty(incident);
+                    }
+                    continue;
+                }
+                if (incident.sendingLevel != incident.announcedLevel && incident.sendingLevel != AlarmLevel.NORMAL) {
+                    if (sentAt - incident.windowStart >= incident.dedupMillis) {
+                        incident.windowStart = sentAt;
+                    }
+                    incident.windowPeak = incident.sendingLevel;
+                }
+                incident.announcedLevel = incident.sendingLevel;
+                incident.announcedState = incident.sendingState;
+            }
+        }
+        if (done) {
+            notified.add(batch.size());
+        }
+    }
+
+    private boolean isParentActive(DeviceIncidents device) {
+        String parentId = device.parentId;
+        for (int depth = 0; parentId != null && depth < MAX_PARENT_DEPTH; depth++) {
+            DeviceIncidents parent = devices.get(parentId);
+            if (parent != null && parent.active > 0) {
+                return true;
+            }
+            parentId = parent != null ? parent.parentId : groups.parentOf(parentId);
+        }
+        return false;
+    }
+
+    /**
+     * 清理已恢复、已通知且去重窗口已过的报警，没有报警的设备一并移除
+     */
+    private void sweep(long now) {
+        for (DeviceIncidents device : devices.values()) {
+            synchronized (device) {
+                int kept = 0;
+                for (int i = 0; i < device.count; i++) {
+                    Incident incident = device.incidents[i];
+                    boolean expired = incident.state == AlarmState.CLEARED && !incident.dirty && !incident.inFlight
+                            && incident.announcedState == AlarmState.CLEARED
+                            && now - incident.clearedAt >= incident.dedupMillis;
+                    if (!expired) {
+                        device.incidents[kept++] = incident;
+                    }
+                }
+                Arrays.fill(device.incidents, kept, device.count, null);
+                device.count = kept;
+                if (kept == 0) {
+                    device.removed = true;
+                    devices.remove(device.deviceId, device);
+                }
+            }
+        }
+    }
+
+    /**
+     * 规则热更新前调用，旧规则的报警不会再有恢复事件，丢弃所有报警
+     */
+    @Override
+    public void onReload() {
+        retiredGeneration = engine.getIndex().generation;
+        for (DeviceIncidents device : devices.values()) {
+            synchronized (device) {
+                device.removed = true;
+            }
+        }
+        devices.clear();
+        dirty.clear();
+    }
+
+    /**
+     * 通过RocketMQ发送通知。生产者队列满或发送失败时要求重发；
+     * 未启用RocketMQ或编码失败时重发也不会成功，只计数
+     */
+    private void publish(Map<String, Object> notification, Consumer<Boolean> completion) {
+        Message message;
+        try {
+            message = new Message(rocketMqConfig.getAlarmTopic(), "alarm", objectMapper.writeValueAsBytes(notification));
+        } catch (Exception e) {
+            publishFailures.increment();
+            logger.error("Failed to encode alarm notification: {}", e.getMessage());
+            completion.accept(true);
+            return;
+        }
+        if (!rocketMqConfig.isAvailable()) {
+            completion.accept(true);
+            return;
+        }
+        boolean queued = producer.send(message, new SendCallback() {
+            @Override
+            public void onSuccess(SendResult result) {
+                messages.increment();
+                completion.accept(true);
+            }
+
+            @Override
+            public void onException(Throwable e) {
+                publishFailures.increment();
+                logger.warn("Failed to publish alarm notification, will retry: {}", e.getMessage());
+                completion.accept(false);
+            }
+        });
+        if (!queued) {
+            publishFailures.increment();
+            logger.debug("Alarm notification not queued, RocketMQ producer is full or not running, will retry");
+            completion.accept(false);
+        }
+    }
+
+    /**
+     * 报警列表，state为null时返回未恢复的报警，最多返回limit条
+     */
+    public List<Map<String, Object>> getIncidents(AlarmState state, int limit) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (DeviceIncidents device : devices.values()) {
+            synchronized (device) {
+                for (int i = 0; i < device.count; i++) {
+                    Incident incident = device.incidents[i];
+                    boolean match = state != null ? incident.state == state : incident.state != AlarmState.CLEARED;
+                    if (!match) {
+                        continue;
+                    }
+                    if (result.size() >= limit) {
+                        return result;
+                    }
+                    result.add(incident.toMap());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取通知统计
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("devices", devices.size());
+        stats.put("events", events.sum());
+        stats.put("raised", raised.sum());
+        stats.put("acknowledged", acknowledged.sum());
+        stats.put("cleared", cleared.sum());
+        stats.put("notified", notified.sum());
+        stats.put("deduplicated", deduplicated.sum());
+        stats.put("suppressed", suppressed.sum());
+        stats.put("rateLimited", rateLimited.sum());
+        stats.put("queued", dirty.size());
+        stats.put("messages", messages.sum());
+        stats.put("publishFailures", publishFailures.sum());
+        stats.put("requeued", requeued.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdownNow();
+            flushExecutor = null;
+        }
+    }
+
+    /**
+     * 一个设备上的报警，按规则数很少，线性查找
+     */
+    private static final class DeviceIncidents {
+        final String deviceId;
+        final String parentId;
+        Incident[] incidents = NO_INCIDENTS;
+        int count;
+        // 未恢复的报警数，子设备抑制检查时在锁外读取
+        volatile int active;
+        boolean removed;
+
+        DeviceIncidents(String deviceId, String parentId) {
+            this.deviceId = deviceId;
+            this.parentId = parentId;
+        }
+
+        Incident find(String ruleId) {
+            for (int i = 0; i < count; i++) {
+                if (incidents[i].ruleId.equals(ruleId)) {
+                    return incidents[i];
+                }
+            }
+            return null;
+        }
+
+        Incident add(Incident incident) {
+            if (count == incidents.length) {
+                incidents = Arrays.copyOf(incidents, Math.max(2, count * 2));
+            }
+            incidents[count++] = incident;
+            return incident;
+        }
+    }
+
+    /**
+     * 一条规则在一个设备上的报警，字段在设备锁内读写
+     */
+    private static final class Incident {
+        final DeviceIncidents device;
+        final String ruleId;
+        final String field;
+        final long dedupMillis;
+        AlarmLevel level = AlarmLevel.NORMAL;
+        AlarmState state = AlarmState.CLEARED;
+        double value;
+        double threshold;
+        int occurrences;
+        long raisedAt;
+        long changedAt;
+        long clearedAt;
+        long acknowledgedAt;
+        // 已通知的状态和当前去重窗口
+        AlarmLevel announcedLevel = AlarmLevel.NORMAL;
+        AlarmState announcedState = AlarmState.CLEARED;
+        long windowStart = Long.MIN_VALUE / 2;
+        // 进入待通知列表的时间（推送线程的时钟），0表示不在列表中
+        long pendingSince;
+        AlarmLevel windowPeak = AlarmLevel.NORMAL;
+        // 已发出、等待确认的通知内容
+        AlarmLevel sendingLevel;
+        AlarmState sendingState;
+        boolean inFlight;
+        boolean dirty;
+        boolean suppressed;
+        boolean duplicate;
+        boolean limited;
+
+        Incident(DeviceIncidents device, String ruleId, String field, long dedupMillis) {
+            this.device = device;
+            this.ruleId = ruleId;
+            this.field = field;
+            this.dedupMillis = dedupMillis;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> alarm = new LinkedHashMap<>();
+            alarm.put("ruleId", ruleId);
+            alarm.put("deviceId", device.deviceId);
+            alarm.put("field", field);
+            alarm.put("level", level);
+            alarm.put("state", state);
+            alarm.put("value", value);
+            alarm.put("threshold", threshold);
+            alarm.put("occurrences", occurrences);
+            alarm.put("raisedAt", Instant.ofEpochMilli(raisedAt).toString());
+            alarm.put("changedAt", Instant.ofEpochMilli(changedAt).toString());
+            if (state == AlarmState.ACKNOWLEDGED) {
+                alarm.put("acknowledgedAt", Instant.ofEpochMilli(acknowledgedAt).toString());
+            }
+            if (device.parentId != null) {
+                alarm.put("parent", device.parentId);
+            }
+            return alarm;
+        }
+    }
+}
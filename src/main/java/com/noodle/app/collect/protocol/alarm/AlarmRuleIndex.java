@@ -0,0 +1,145 @@
+package com.noodle.app.collect.protocol.alarm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.noodle.app.collect.protocol.config.AlarmConfig;
+
+/**
+ * 报警规则索引
+ *
+ * 由规则列表一次性编译，编译后不可变；热更新时整体替换。设备第一次出现时按设备ID筛选规则，
+ * 按字段分组生成该设备的报警状态{@link DeviceAlarms}，之后该设备的样本不再做规则匹配。
+ */
+final class AlarmRuleIndex {
+
+    private static final FieldAlarms[] NO_FIELDS = new FieldAlarms[0];
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+
+    private final List<AlarmConfig.AlarmRule> rules;
+    private final ThresholdRule[] compiled;
+    private final int windowSlots;
+    private final boolean windowed;
+    private final Map<String, Long> dedup = new HashMap<>();
+    /**
+     * 编译序号，报警事件带上产生它的规则版本，热更新后监听器据此丢弃旧规则的事件
+     */
+    final long generation = GENERATIONS.incrementAndGet();
+
+    private AlarmRuleIndex(List<AlarmConfig.AlarmRule> rules, ThresholdRule[] compiled, int windowSlots) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        this.compiled = compiled;
+        this.windowSlots = windowSlots;
+        boolean any = false;
+        for (ThresholdRule rule : compiled) {
+            any |= rule.getType().isWindowed();
+            if (rule.getDedupMillis() >= 0) {
+                dedup.put(rule.getId(), rule.getDedupMillis());
+            }
+        }
+        this.windowed = any;
+    }
+
+    /**
+     * 编译报警规则，规则非法时抛出IllegalArgumentException
+     */
+    static AlarmRuleIndex compile(List<AlarmConfig.AlarmRule> rules, double defaultHysteresis, int windowSlots) {
+        if (windowSlots < 2) {
+            throw new IllegalArgumentException("Alarm window slots must be at least 2: " + windowSlots);
+        }
+        List<AlarmConfig.AlarmRule> source = rules != null ? rules : Collections.emptyList();
+        List<ThresholdRule> compiled = new ArrayList<>(source.size());
+        for (AlarmConfig.AlarmRule rule : source) {
+            if (rule.isEnabled()) {
+                compiled.add(new ThresholdRule(rule, defaultHysteresis));
+            }
+        }
+        return new AlarmRuleIndex(source, compiled.toArray(new ThresholdRule[0]), windowSlots);
+    }
+
+    /**
+     * 为设备生成报警状态，没有匹配规则时返回字段为空的状态
+     */
+    DeviceAlarms bind(String deviceId) {
+        Map<String, List<ThresholdRule>> byField = new LinkedHashMap<>();
+        boolean deviceWindowed = false;
+        for (ThresholdRule rule : compiled) {
+            if (rule.matches(deviceId)) {
+                byField.computeIfAbsent(rule.getField(), k -> new ArrayList<>()).add(rule);
+                deviceWindowed |= rule.getType().isWindowed();
+            }
+        }
+        if (byField.isEmpty()) {
+            return new DeviceAlarms(this, deviceId, NO_FIELDS, false);
+        }
+        DeviceAlarms device = new DeviceAlarms(this, deviceId, new FieldAlarms[byField.size()], deviceWindowed);
+        int i = 0;
+        for (Map.Entry<String, List<ThresholdRule>> entry : byField.entrySet()) {
+            device.fields[i++] = new FieldAlarms(device, entry.getKey(), entry.getValue(), windowSlots);
+        }
+        return device;
+    }
+
+    int size() {
+        return compiled.length;
+    }
+
+    /**
+     * 是否有需要定时器或时钟的规则
+     */
+    boolean isWindowed() {
+        return windowed;
+    }
+
+    List<AlarmConfig.AlarmRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * 规则的通知去重窗口，规则未设置时返回defaultMillis
+     */
+    long dedupMillis(String ruleId, long defaultMillis) {
+        Long millis = dedup.get(ruleId);
+        return millis != null ? millis : defaultMillis;
+    }
+
+    /**
+     * 一个设备的报警状态，由入库线程和定时器线程在对象锁内更新
+     */
+    static final class DeviceAlarms {
+        final AlarmRuleIndex index;
+        final String deviceId;
+        final FieldAlarms[] fields;
+        final boolean windowed;
+
+        DeviceAlarms(AlarmRuleIndex index, String deviceId, FieldAlarms[] fields, boolean windowed) {
+            this.index = index;
+            this.deviceId = deviceId;
+            this.fields = fields;
+            this.windowed = windowed;
+        }
+    }
+
+    /**
+     * 一个设备一个字段上的规则状态，field为*时对设备的任意数据生效
+     */
+    static final class FieldAlarms {
+        final String field;
+        final boolean any;
+        final RuleState[] states;
+
+        FieldAlarms(DeviceAlarms device, String field, List<ThresholdRule> rules, int windowSlots) {
+            this.field = field;
+            this.any = ThresholdRule.ANY_FIELD.equals(field);
+            this.states = new RuleState[rules.size()];
+            for (int i = 0; i < states.length; i++) {
+                states[i] = new RuleState(device, this, rules.get(i), windowSlots);
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.noodle.app.collect.protocol.alarm;
+
+/**
+ * 报警的生命周期状态
+ */
+public enum AlarmState {
+
+    /** 已报警，未确认；级别升高时从确认状态回到此状态 */
+    RAISED,
+    /** 已由运维人员确认，仍在报警 */
+    ACKNOWLEDGED,
+    /** 已恢复 */
+    CLEARED
+}
@@ -0,0 +1,82 @@
+package com.noodle.app.collect.protocol.alarm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.noodle.app.collect.protocol.config.AlarmConfig;
+
+/**
+ * 设备分组索引：子设备到父设备的映射
+ *
+ * 精确匹配优先，其次是最长的前缀匹配；设备不会是自己的父设备。
+ */
+final class DeviceGroupIndex {
+
+    private final Map<String, String> exact;
+    private final String[] prefixes;
+    private final String[] prefixParents;
+
+    private DeviceGroupIndex(Map<String, String> exact, List<String[]> prefixed) {
+        this.exact = exact;
+        // 按前缀长度降序，第一个匹配的就是最长前缀
+        prefixed.sort((a, b) -> Integer.compare(b[0].length(), a[0].length()));
+        this.prefixes = new String[prefixed.size()];
+        this.prefixParents = new String[prefixed.size()];
+        for (int i = 0; i < prefixes.length; i++) {
+            prefixes[i] = prefixed.get(i)[0];
+            prefixParents[i] = prefixed.get(i)[1];
+        }
+    }
+
+    /**
+     * 编译设备分组，分组非法时抛出IllegalArgumentException
+     */
+    static DeviceGroupIndex compile(List<AlarmConfig.DeviceGroup> groups) {
+        Map<String, String> exact = new HashMap<>();
+        List<String[]> prefixed = new ArrayList<>();
+        for (AlarmConfig.DeviceGroup group : groups != null ? groups : Collections.<AlarmConfig.DeviceGroup>emptyList()) {
+            String parent = group.getParent() != null ? group.getParent().trim() : "";
+            if (parent.isEmpty()) {
+                throw new IllegalArgumentException("Device group parent must not be empty: " + group.getId());
+            }
+            if (group.getDevices() == null) {
+                continue;
+            }
+            for (String device : group.getDevices()) {
+                String pattern = device != null ? device.trim() : "";
+                if (pattern.isEmpty()) {
+                    continue;
+                }
+                if (pattern.endsWith("*")) {
+                    prefixed.add(new String[] {pattern.substring(0, pattern.length() - 1), parent});
+                } else if (!pattern.equals(parent)) {
+                    exact.put(pattern, parent);
+                }
+            }
+        }
+        return new DeviceGroupIndex(exact, prefixed);
+    }
+
+    /**
+     * 设备的父设备，不在任何分组中时返回null
+     */
+    String parentOf(String deviceId) {
+        String parent = exact.get(deviceId);
+        if (parent != null) {
+            return parent;
+        }
+        for (int i = 0; i < prefixes.length; i++) {
+            if (deviceId.startsWith(prefixes[i]) && !deviceId.equals(prefixParents[i])) {
+                return prefixParents[i];
+            }
+        }
+        return null;
+    }
+
+    int size() {
+        return exact.size() + prefixes.length;
+    }
+}
@@ -0,0 +1,45 @@
+package com.noodle.app.collect.protocol.alarm;
+
+import java.util.Arrays;
+
+/**
+ * 一条规则在一个设备上的状态
+ *
+ * 绑定设备时创建，大小固定：duration规则每级一个条件开始时间，rate规则一个滑动窗口。
+ * 本身就是时间轮的定时器节点，调度不再分配对象。除定时器字段外都在设备状态锁内读写。
+ */
+final class RuleState extends TimingWheel.Timer {
+
+    final AlarmRuleIndex.DeviceAlarms device;
+    final AlarmRuleIndex.FieldAlarms field;
+    final ThresholdRule rule;
+
+    /** 当前级别状态，0为正常 */
+    int level;
+    /** 最近一次级别变化时的值和时间（毫秒） */
+    double value;
+    long since;
+
+    /** 最近一个样本的值和接收时间，duration和absence规则使用 */
+    double lastValue;
+    long lastSeen;
+
+    /** duration规则：第k级条件开始成立的时间，-1表示不成立 */
+    final long[] conditionSince;
+    /** rate规则的滑动窗口 */
+    final SlidingWindow window;
+
+    RuleState(AlarmRuleIndex.DeviceAlarms device, AlarmRuleIndex.FieldAlarms field, ThresholdRule rule,
+              int windowSlots) {
+        this.device = device;
+        this.field = field;
+        this.rule = rule;
+        if (rule.getType() == RuleType.DURATION) {
+            conditionSince = new long[2];
+            Arrays.fill(conditionSince, -1);
+        } else {
+            conditionSince = null;
+        }
+        window = rule.getType() == RuleType.RATE ? new SlidingWindow(rule.getWindowMillis(), windowSlots) : null;
+    }
+}
@@ -0,0 +1,31 @@
+package com.noodle.app.collect.protocol.alarm;
+
+/**
+ * 报警规则类型
+ */
+enum RuleType {
+
+    /** 样本越过阈值即报警 */
+    THRESHOLD,
+    /** 持续越过阈值一个窗口后报警 */
+    DURATION,
+    /** 窗口内变化百分比越过阈值时报警 */
+    RATE,
+    /** 一个窗口内没有数据时报警 */
+    ABSENCE;
+
+    static RuleType fromName(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return THRESHOLD;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported alarm rule type: " + name);
+        }
+    }
+
+    boolean isWindowed() {
+        return this != THRESHOLD;
+    }
+}
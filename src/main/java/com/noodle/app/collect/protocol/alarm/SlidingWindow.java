@@ -0,0 +1,84 @@
+package com.noodle.app.collect.protocol.alarm;
+
+import java.util.Arrays;
+
+/**
+ * 增量滑动窗口最小值/最大值
+ *
+ * 窗口分为固定个数的时间槽，每槽只保存最小值和最大值，内存与样本数无关。
+ * 加入样本只更新当前槽；进入新槽时清掉过期的槽并重新汇总其余各槽，槽数为常数，
+ * 每个样本摊还O(1)。窗口实际覆盖 (slots - 1) 到 slots 个槽的时长。
+ */
+final class SlidingWindow {
+
+    private final long slotMillis;
+    private final double[] min;
+    private final double[] max;
+    private long slot = Long.MIN_VALUE;
+    private int position;
+    // 除当前槽以外各槽的汇总
+    private double closedMin = Double.POSITIVE_INFINITY;
+    private double closedMax = Double.NEGATIVE_INFINITY;
+
+    SlidingWindow(long windowMillis, int slots) {
+        this.slotMillis = Math.max(1, windowMillis / slots);
+        this.min = new double[slots];
+        this.max = new double[slots];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * 推进到now所在的槽
+     */
+    void advance(long now) {
+        long current = now / slotMillis;
+        if (current == slot) {
+            return;
+        }
+        int slots = min.length;
+        if (slot == Long.MIN_VALUE || current - slot >= slots || current < slot) {
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        } else {
+            for (long s = slot + 1; s <= current; s++) {
+                int p = (int) Math.floorMod(s, (long) slots);
+                min[p] = Double.POSITIVE_INFINITY;
+                max[p] = Double.NEGATIVE_INFINITY;
+            }
+        }
+        slot = current;
+        position = (int) Math.floorMod(current, (long) slots);
+        closedMin = Double.POSITIVE_INFINITY;
+        closedMax = Double.NEGATIVE_INFINITY;
+        for (int p = 0; p < slots; p++) {
+            if (p != position) {
+                closedMin = Math.min(closedMin, min[p]);
+                closedMax = Math.max(closedMax, max[p]);
+            }
+        }
+    }
+
+    void add(double value) {
+        if (value < min[position]) {
+            min[position] = value;
+        }
+        if (value > max[position]) {
+            max[position] = value;
+        }
+    }
+
+    /**
+     * 窗口内的最小值，没有样本时为正无穷
+     */
+    double min() {
+        return Math.min(closedMin, min[position]);
+    }
+
+    /**
+     * 窗口内的最大值，没有样本时为负无穷
+     */
+    double max() {
+        return Math.max(closedMax, max[position]);
+    }
+}
@@ -0,0 +1,171 @@
+package com.noodle.app.collect.protocol.alarm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.noodle.app.collect.protocol.config.AlarmConfig;
+
+/**
+ * 编译后的报警规则
+ *
+ * 下限规则把阈值和样本取反后按上限规则比较，每个样本只有几次double比较。
+ * 状态为0表示正常，k表示已越过第k个阈值（阈值按严重程度递增排列）。
+ * rate规则比较的是变化百分比，absence规则没有阈值，只有一个报警级别。
+ */
+final class ThresholdRule {
+
+    /** absence规则field为*时匹配任意数据 */
+    static final String ANY_FIELD = "*";
+
+    private final String id;
+    private final RuleType type;
+    private final long windowMillis;
+    private final String field;
+    private final String device;
+    private final boolean prefix;
+    private final boolean lower;
+    private final boolean inclusive;
+    // 取反后的阈值，严格递增
+    private final double[] thresholds;
+    private final AlarmLevel[] levels;
+    private final double hysteresis;
+    // 通知去重窗口，-1表示使用默认值
+    private final long dedupMillis;
+
+    ThresholdRule(AlarmConfig.AlarmRule rule, double defaultHysteresis) {
+        type = RuleType.fromName(rule.getType());
+        windowMillis = rule.getWindow() * 1000L;
+        if (type.isWindowed() && windowMillis <= 0) {
+            throw new IllegalArgumentException("Alarm rule window must be positive: " + rule);
+        }
+        String fieldName = rule.getField() != null ? rule.getField().trim() : "";
+        if (fieldName.isEmpty()) {
+            if (type != RuleType.ABSENCE) {
+                throw new IllegalArgumentException("Alarm rule field must not be empty: " + rule);
+            }
+            fieldName = ANY_FIELD;
+        }
+        String operator = rule.getOperator() != null ? rule.getOperator().trim() : ">";
+        switch (operator) {
+            case ">":
+            case ">=":
+                lower = false;
+                break;
+            case "<":
+            case "<=":
+                lower = true;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported alarm operator: " + rule);
+        }
+        inclusive = operator.endsWith("=");
+        hysteresis = rule.getHysteresis() != null ? rule.getHysteresis() : defaultHysteresis;
+        if (!(hysteresis >= 0)) {
+            throw new IllegalArgumentException("Alarm hysteresis must not be negative: " + rule);
+        }
+        if (rule.getDedupWindow() != null && rule.getDedupWindow() < 0) {
+            throw new IllegalArgumentException("Alarm dedup window must not be negative: " + rule);
+        }
+        dedupMillis = rule.getDedupWindow() != null ? rule.getDedupWindow() * 1000L : -1;
+
+        List<AlarmLevel> levelList = new ArrayList<>(2);
+        List<Double> thresholdList = new ArrayList<>(2);
+        if (type == RuleType.ABSENCE) {
+            // 阈值为窗口秒数，只用于报警事件
+            String level = rule.getLevel() != null ? rule.getLevel().trim() : "warning";
+            if ("critical".equalsIgnoreCase(level)) {
+                levelList.add(AlarmLevel.CRITICAL);
+            } else if ("warning".equalsIgnoreCase(level)) {
+                levelList.add(AlarmLevel.WARNING);
+            } else {
+                throw new IllegalArgumentException("Unsupported alarm level: " + rule);
+            }
+            thresholdList.add(lower ? -rule.getWindow() : (double) rule.getWindow());
+        } else if (rule.getWarning() != null) {
+            levelList.add(AlarmLevel.WARNING);
+            thresholdList.add(lower ? -rule.getWarning() : rule.getWarning());
+        }
+        if (rule.getCritical() != null && type != RuleType.ABSENCE) {
+            levelList.add(AlarmLevel.CRITICAL);
+            thresholdList.add(lower ? -rule.getCritical() : rule.getCritical());
+        }
+        if (levelList.isEmpty()) {
+            throw new IllegalArgumentException("Alarm rule needs a warning or critical threshold: " + rule);
+        }
+        levels = levelList.toArray(new AlarmLevel[0]);
+        thresholds = new double[thresholdList.size()];
+        for (int i = 0; i < thresholds.length; i++) {
+            thresholds[i] = thresholdList.get(i);
+            if (i > 0 && !(thresholds[i] > thresholds[i - 1])) {
+                throw new IllegalArgumentException("Critical threshold must be beyond warning threshold: " + rule);
+            }
+        }
+
+        field = fieldName;
+        String pattern = rule.getDevice() != null ? rule.getDevice().trim() : "*";
+        prefix = pattern.endsWith("*");
+        device = prefix ? pattern.substring(0, pattern.length() - 1) : pattern;
+        id = rule.getId() != null && !rule.getId().isEmpty() ? rule.getId() : pattern + ":" + field;
+    }
+
+    RuleType getType() {
+        return type;
+    }
+
+    long getWindowMillis() {
+        return windowMillis;
+    }
+
+    long getDedupMillis() {
+        return dedupMillis;
+    }
+
+    /**
+     * rate规则：上升规则以窗口最小值为基准，下降规则以最大值为基准
+     */
+    boolean isLower() {
+        return lower;
+    }
+
+    boolean matches(String deviceId) {
+        return prefix ? deviceId.startsWith(device) : deviceId.equals(device);
+    }
+
+    /**
+     * 根据样本计算新状态
+     */
+    int evaluate(int state, double value) {
+        double v = lower ? -value : value;
+        while (state < thresholds.length && exceeds(v, thresholds[state])) {
+            state++;
+        }
+        while (state > 0 && !exceeds(v, thresholds[state - 1] - hysteresis)) {
+            state--;
+        }
+        return state;
+    }
+
+    private boolean exceeds(double v, double threshold) {
+        return inclusive ? v >= threshold : v > threshold;
+    }
+
+    AlarmLevel level(int state) {
+        return state == 0 ? AlarmLevel.NORMAL : levels[state - 1];
+    }
+
+    /**
+     * 状态对应的原始阈值，正常状态返回最低一级的阈值
+     */
+    double threshold(int state) {
+        double threshold = thresholds[Math.max(state, 1) - 1];
+        return lower ? -threshold : threshold;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    String getField() {
+        return field;
+    }
+}
@@ -0,0 +1,166 @@
+package com.noodle.app.collect.protocol.alarm;
+
+import java.util.List;
+
+/**
+ * 分层时间轮
+ *
+ * 每层wheelSize个槽，第0层每槽一个tick，第l层每槽 wheelSize^l 个tick，4层64槽、1秒一个tick可覆盖约194天。
+ * 定时器是侵入式双向链表节点，调度和取消都是O(1)且不分配对象；推进时高层槽到期后整体下沉到低层，
+ * 每个定时器最多下沉 层数 次。超出覆盖范围的定时器先放在最高层，下沉时按真实到期时间重新放置。
+ * 所有方法在时间轮的锁内执行，到期的定时器只放入调用方的列表，回调在锁外执行。
+ */
+final class TimingWheel {
+
+    /**
+     * 定时器节点
+     */
+    static class Timer {
+        private Timer prev;
+        private Timer next;
+        private long deadline;
+        private volatile boolean scheduled;
+
+        boolean isScheduled() {
+            return scheduled;
+        }
+
+        long getDeadline() {
+            return deadline;
+        }
+    }
+
+    private final long tickMillis;
+    private final int bits;
+    private final int mask;
+    private final int levels;
+    // 每个槽一个哨兵节点，下标为 层 × wheelSize + 槽
+    private final Timer[] buckets;
+    private long currentTick;
+    private int size;
+
+    TimingWheel(long tickMillis, int wheelSize, int levels, long now) {
+        if (tickMillis <= 0 || wheelSize < 2 || Integer.bitCount(wheelSize) != 1 || levels < 1) {
+            throw new IllegalArgumentException("Invalid timing wheel: tick=" + tickMillis + ", size=" + wheelSize
+                    + ", levels=" + levels);
+        }
+        this.tickMillis = tickMillis;
+        this.bits = Integer.numberOfTrailingZeros(wheelSize);
+        this.mask = wheelSize - 1;
+        this.levels = levels;
+        this.buckets = new Timer[levels * wheelSize];
+        for (int i = 0; i < buckets.length; i++) {
+            Timer head = new Timer();
+            head.prev = head;
+            head.next = head;
+            buckets[i] = head;
+        }
+        this.currentTick = now / tickMillis;
+    }
+
+    /**
+     * 调度或重新调度定时器，已到期的在下一个tick触发
+     */
+    synchronized void schedule(Timer timer, long deadline) {
+        if (timer.scheduled) {
+            unlink(timer);
+        }
+        timer.deadline = deadline;
+        timer.scheduled = true;
+        size++;
+        place(timer);
+    }
+
+    synchronized void cancel(Timer timer) {
+        if (timer.scheduled) {
+            unlink(timer);
+            timer.scheduled = false;
+            size--;
+        }
+    }
+
+    /**
+     * 推进到now，把到期的定时器移出时间轮并放入expired
+     */
+    synchronized void advance(long now, List<Timer> expired) {
+        long targetTick = now / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            // 从高层到低层下沉进入新周期的槽
+            for (int level = levels - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (bits * level)) - 1)) == 0) {
+                    cascade(level * (mask + 1) + (int) ((currentTick >>> (bits * level)) & mask), expired);
+                }
+            }
+            Timer head = buckets[(int) (currentTick & mask)];
+            while (head.next != head) {
+                Timer timer = head.next;
+                unlink(timer);
+                if (timer.deadline / tickMillis > currentTick) {
+                    // 超出覆盖范围时截断放置的定时器，还没到期
+                    place(timer);
+                } else {
+                    timer.scheduled = false;
+                    size--;
+                    expired.add(timer);
+                }
+            }
+        }
+    }
+
+    synchronized void clear() {
+        for (Timer head : buckets) {
+            while (head.next != head) {
+                Timer timer = head.next;
+                unlink(timer);
+                timer.scheduled = false;
+            }
+        }
+        size = 0;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private void cascade(int bucket, List<Timer> expired) {
+        Timer head = buckets[bucket];
+        while (head.next != head) {
+            Timer timer = head.next;
+            unlink(timer);
+            if (timer.deadline / tickMillis <= currentTick) {
+                timer.scheduled = false;
+                size--;
+                expired.add(timer);
+            } else {
+                place(timer);
+            }
+        }
+    }
+
+    private void place(Timer timer) {
+        long ticks = Math.max(timer.deadline / tickMillis, currentTick + 1);
+        long maxTick = currentTick + (1L << (bits * levels)) - 1;
+        if (ticks > maxTick) {
+            ticks = maxTick;
+        }
+        long diff = ticks - currentTick;
+        int level = 0;
+        while (level < levels - 1 && diff >= (1L << (bits * (level + 1)))) {
+            level++;
+        }
+        int slot = (int) ((ticks >>> (bits * level)) & mask);
+        Timer head = buckets[level * (mask + 1) + slot];
+        timer.prev = head.prev;
+        timer.next = head;
+        head.prev.next = timer;
+        head.prev = timer;
+    }
+
+    private static void unlink(Timer timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+    }
+}
@@ -0,0 +1,87 @@
+package com.noodle.app.collect.protocol.codec;
+
+/**
+ * 负载压缩格式
+ */
+public enum CompressionCodec {
+
+    /** 不解压 */
+    NONE,
+    /** 按主题后缀或魔数识别 */
+    AUTO,
+    /** gzip（RFC 1952） */
+    GZIP,
+    /** zlib封装的deflate（RFC 1950） */
+    DEFLATE,
+    /** LZ4帧格式 */
+    LZ4,
+    /** Zstandard帧格式 */
+    ZSTD;
+
+    private static final String[] SUFFIXES = {"gz", "gzip", "deflate", "zlib", "lz4", "zst", "zstd"};
+    private static final CompressionCodec[] SUFFIX_CODECS = {GZIP, GZIP, DEFLATE, DEFLATE, LZ4, ZSTD, ZSTD};
+
+    /**
+     * 按配置名称解析，不区分大小写
+     */
+    public static CompressionCodec fromName(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return AUTO;
+        }
+        CompressionCodec codec = fromSuffix(name.trim().toLowerCase());
+        if (codec != null) {
+            return codec;
+        }
+        return valueOf(name.trim().toUpperCase());
+    }
+
+    /**
+     * 按主题末级后缀识别，不是压缩后缀时返回null
+     */
+    public static CompressionCodec fromSuffix(String level) {
+        return fromSuffix(level, 0);
+    }
+
+    /**
+     * 按topic中从start到末尾的部分识别后缀，不截取子串，不是压缩后缀时返回null
+     */
+    public static CompressionCodec fromSuffix(String topic, int start) {
+        int length = topic.length() - start;
+        for (int i = 0; i < SUFFIXES.length; i++) {
+            if (SUFFIXES[i].length() == length && topic.regionMatches(start, SUFFIXES[i], 0, length)) {
+                return SUFFIX_CODECS[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按负载开头的魔数识别，无法识别时返回NONE
+     */
+    public static CompressionCodec detect(byte[] payload) {
+        if (payload.length < 2) {
+            return NONE;
+        }
+        int b0 = payload[0] & 0xff;
+        int b1 = payload[1] & 0xff;
+        if (b0 == 0x1f && b1 == 0x8b) {
+            return GZIP;
+        }
+        if (payload.length >= 4) {
+            int b2 = payload[2] & 0xff;
+            int b3 = payload[3] & 0xff;
+            if (b0 == 0x28 && b1 == 0xb5 && b2 == 0x2f && b3 == 0xfd) {
+                return ZSTD;
+            }
+            if (b0 == 0x04 && b1 == 0x22 && b2 == 0x4d && b3 == 0x18) {
+                return LZ4;
+            }
+        }
+        // zlib头只识别32K窗口（0x78），避免把以其他字节开头的文本误判为压缩数据；
+        // CMF/FLG组成的16位数是31的倍数，且未设置预置字典
+        if (b0 == 0x78 && ((b0 << 8) | b1) % 31 == 0 && (b1 & 0x20) == 0) {
+            return DEFLATE;
+        }
+        return NONE;
+    }
+}
@@ -0,0 +1,527 @@
+package com.noodle.app.collect.protocol.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdException;
+import com.noodle.app.collect.protocol.config.PayloadCompressionConfig;
+import com.noodle.app.collect.protocol.topic.TopicTrie;
+
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import net.jpountz.xxhash.XXHash32;
+import net.jpountz.xxhash.XXHashFactory;
+
+/**
+ * 压缩负载解压
+ *
+ * 按主题规则决定解压方式，auto时依次按主题后缀和魔数识别。
+ * 每个线程复用一个输出缓冲区、Inflater和zstd解压上下文，缓冲区按需增长但不超过解压上限，
+ * 解压结果只按实际长度复制一次；LZ4帧的块相互独立时直接按块解压到缓冲区，不创建流。
+ * 解压失败或超过上限时返回null，由调用方丢弃消息。
+ */
+@Component
+public class PayloadDecompressor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PayloadDecompressor.class);
+
+    private static final int INITIAL_BUFFER = 4096;
+    private static final int LZ4_MAGIC = 0x184D2204;
+
+    // 无状态，可被多个线程共用
+    private static final LZ4SafeDecompressor LZ4_DECOMPRESSOR = LZ4Factory.fastestInstance().safeDecompressor();
+    private static final XXHash32 XXHASH = XXHashFactory.fastestInstance().hash32();
+
+    @Autowired
+    private PayloadCompressionConfig config;
+
+    private volatile TopicTrie<CompressionCodec> rules;
+
+    private final Map<CompressionCodec, CodecStatistics> codecStatistics = new EnumMap<>(CompressionCodec.class);
+    private final LongAdder passthrough = new LongAdder();
+    private final LongAdder oversized = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private final ThreadLocal<Workspace> workspaces = ThreadLocal.withInitial(Workspace::new);
+
+    public PayloadDecompressor() {
+        for (CompressionCodec codec : CompressionCodec.values()) {
+            codecStatistics.put(codec, new CodecStatistics());
+        }
+    }
+
+    public PayloadDecompressor(PayloadCompressionConfig config) {
+        this();
+        this.config = config;
+        compile();
+    }
+
+    @PostConstruct
+    public void compile() {
+        TopicTrie<CompressionCodec> trie = new TopicTrie<>();
+        if (config.getRules() != null) {
+            for (PayloadCompressionConfig.Rule rule : config.getRules()) {
+                trie.add(rule.getTopic(), CompressionCodec.fromName(rule.getCodec()));
+            }
+        }
+        rules = trie;
+        if (config.isEnabled()) {
+            logger.info("压缩负载解压已启用: 规则数={}, 解压上限={}字节", trie.size(), config.getMaxDecompressedSize());
+        }
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * 去掉主题末级的压缩后缀，没有后缀时返回原主题
+     */
+    public String stripSuffix(String topic) {
+        if (!config.isEnabled() || !config.isTopicSuffix()) {
+            return topic;
+        }
+        int slash = topic.lastIndexOf('/');
+        if (slash <= 0 || CompressionCodec.fromSuffix(topic, slash + 1) == null) {
+            return topic;
+        }
+        return topic.substring(0, slash);
+    }
+
+    /**
+     * 解压消息
+     *
+     * @return 解压结果（主题去掉压缩后缀）；未压缩时返回原主题和原负载；失败或超限时返回null
+     */
+    public Decoded decode(String topic, byte[] payload) {
+        if (!config.isEnabled()) {
+            return new Decoded(topic, payload, CompressionCodec.NONE);
+        }
+        String logicalTopic = topic;
+        CompressionCodec suffixCodec = null;
+        if (config.isTopicSuffix()) {
+            int slash = topic.lastIndexOf('/');
+            if (slash > 0) {
+                suffixCodec = CompressionCodec.fromSuffix(topic, slash + 1);
+                if (suffixCodec != null) {
+                    logicalTopic = topic.substring(0, slash);
+                }
+            }
+        }
+
+        TopicTrie<CompressionCodec> trie = rules;
+        CompressionCodec codec = trie.size() == 0 ? CompressionCodec.AUTO : trie.match(logicalTopic, null);
+        if (codec == null || codec == CompressionCodec.NONE) {
+            passthrough.increment();
+            return new Decoded(logicalTopic, payload, CompressionCodec.NONE);
+        }
+        if (codec == CompressionCodec.AUTO) {
+            codec = suffixCodec != null ? suffixCodec : CompressionCodec.detect(payload);
+            if (codec == CompressionCodec.NONE) {
+                passthrough.increment();
+                return new Decoded(logicalTopic, payload, CompressionCodec.NONE);
+            }
+        }
+
+        long start = System.nanoTime();
+        try {
+            byte[] decoded = decompress(codec, payload);
+            codecStatistics.get(codec).record(payload.length, decoded.length, System.nanoTime() - start);
+            return new Decoded(logicalTopic, decoded, codec);
+        } catch (LimitExceededException e) {
+            oversized.increment();
+            logger.warn("解压后超过上限{}字节，丢弃消息: 主题={}, 压缩格式={}", config.getMaxDecompressedSize(), topic, codec);
+        } catch (Exception e) {
+            failures.increment();
+            logger.warn("解压消息失败: 主题={}, 压缩格式={}, 错误={}", topic, codec, e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 按指定格式解压
+     */
+    public byte[] decompress(CompressionCodec codec, byte[] payload) throws IOException {
+        Workspace workspace = workspaces.get();
+        int limit = config.getMaxDecompressedSize();
+        int length;
+        switch (codec) {
+            case GZIP:
+                length = gunzip(workspace, payload, limit);
+                break;
+            case DEFLATE:
+                length = inflate(workspace, workspace.zlibInflater, payload, 0, payload.length, limit);
+                break;
+            case LZ4:
+                length = lz4Frame(workspace, payload, limit);
+                if (length < 0) {
+                    length = readFully(workspace, new LZ4FrameInputStream(new ByteArrayInputStream(payload)), limit);
+                }
+                break;
+            case ZSTD:
+                length = unzstd(workspace, payload, limit);
+                break;
+            default:
+                return payload;
+        }
+        return Arrays.copyOf(workspace.buffer, length);
+    }
+
+    /**
+     * gzip：跳过头部后按原始deflate解压，再校验尾部的CRC32和长度
+     */
+    private int gunzip(Workspace workspace, byte[] src, int limit) throws IOException {
+        if (src.length < 18 || (src[0] & 0xff) != 0x1f || (src[1] & 0xff) != 0x8b || src[2] != 8) {
+            throw new IOException("Not in GZIP format");
+        }
+        int flags = src[3] & 0xff;
+        int pos = 10;
+        if ((flags & 0x04) != 0) {
+            pos += 2 + ((src[pos] & 0xff) | (src[pos + 1] & 0xff) << 8);
+        }
+        if ((flags & 0x08) != 0) {
+            pos = skipZeroTerminated(src, pos);
+        }
+        if ((flags & 0x10) != 0) {
+            pos = skipZeroTerminated(src, pos);
+        }
+        if ((flags & 0x02) != 0) {
+            pos += 2;
+        }
+        if (pos > src.length - 8) {
+            throw new IOException("Corrupt GZIP header");
+        }
+        int length = inflate(workspace, workspace.rawInflater, src, pos, src.length - 8 - pos, limit);
+
+        int trailer = src.length - 8;
+        long crc = readIntLe(src, trailer) & 0xffffffffL;
+        long size = readIntLe(src, trailer + 4) & 0xffffffffL;
+        workspace.crc.reset();
+        workspace.crc.update(workspace.buffer, 0, length);
+        if (workspace.crc.getValue() != crc || size != (length & 0xffffffffL)) {
+            throw new IOException("Corrupt GZIP trailer");
+        }
+        return length;
+    }
+
+    private static int skipZeroTerminated(byte[] src, int pos) throws IOException {
+        while (pos < src.length && src[pos] != 0) {
+            pos++;
+        }
+        if (pos >= src.length) {
+            throw new IOException("Corrupt GZIP header");
+        }
+        return pos + 1;
+    }
+
+    private static int readIntLe(byte[] src, int pos) {
+        return (src[pos] & 0xff) | (src[pos + 1] & 0xff) << 8 | (src[pos + 2] & 0xff) << 16 | (src[pos + 3] & 0xff) << 24;
+    }
+
+    private static int inflate(Workspace workspace, Inflater inflater, byte[] src, int offset, int length, int limit)
+            throws IOException {
+        inflater.reset();
+        inflater.setInput(src, offset, length);
+        int count = 0;
+        try {
+            while (!inflater.finished()) {
+                if (count == workspace.buffer.length) {
+                    workspace.grow(limit);
+                }
+                int n = inflater.inflate(workspace.buffer, count, workspace.buffer.length - count);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated deflate stream");
+                }
+                count += n;
+                if (count > limit) {
+                    throw new LimitExceededException();
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return count;
+    }
+
+    /**
+     * zstd：用线程复用的解压上下文一次解压到缓冲区，帧头带原始长度时先扩容，否则缓冲区不足时扩容重试
+     */
+    private static int unzstd(Workspace workspace, byte[] src, int limit) throws IOException {
+        long size = Zstd.decompressedSize(src);
+        if (size > limit) {
+            throw new LimitExceededException();
+        }
+        workspace.ensure((int) size, limit);
+        ZstdDecompressCtx context = workspace.zstd();
+        while (true) {
+            try {
+                int length = context.decompressByteArray(workspace.buffer, 0, workspace.buffer.length, src, 0, src.length);
+                if (length > limit) {
+                    throw new LimitExceededException();
+                }
+                return length;
+            } catch (ZstdException e) {
+                if (e.getErrorCode() != Zstd.errDstSizeTooSmall()) {
+                    throw new IOException(e.getMessage(), e);
+                }
+                workspace.grow(limit);
+            }
+        }
+    }
+
+    /**
+     * LZ4帧：块相互独立时逐块解压到缓冲区，并校验描述符、块和内容的校验和
+     *
+     * @return 解压长度；块依赖、预置字典或多帧拼接时返回-1，由调用方按流解压
+     */
+    private static int lz4Frame(Workspace workspace, byte[] src, int limit) throws IOException {
+        if (src.length < 7 || readIntLe(src, 0) != LZ4_MAGIC) {
+            throw new IOException("Not in LZ4 frame format");
+        }
+        int flags = src[4] & 0xff;
+        int blockSizeId = (src[5] >>> 4) & 0x07;
+        if ((flags >>> 6) != 1 || blockSizeId < 4) {
+            throw new IOException("Unsupported LZ4 frame descriptor");
+        }
+        if ((flags & 0x20) == 0 || (flags & 0x01) != 0) {
+            return -1;
+        }
+        boolean blockChecksum = (flags & 0x10) != 0;
+        boolean contentChecksum = (flags & 0x04) != 0;
+        int blockMax = 1 << (8 + 2 * blockSizeId);
+        int pos = 6;
+        if ((flags & 0x08) != 0) {
+            if (src.length < pos + 9) {
+                throw new IOException("Truncated LZ4 frame");
+            }
+            long contentSize = (readIntLe(src, pos) & 0xffffffffL) | (long) readIntLe(src, pos + 4) << 32;
+            if (contentSize < 0 || contentSize > limit) {
+                throw new LimitExceededException();
+            }
+            pos += 8;
+        }
+        if (((XXHASH.hash(src, 4, pos - 4, 0) >>> 8) & 0xff) != (src[pos] & 0xff)) {
+            throw new IOException("Corrupt LZ4 frame descriptor");
+        }
+        pos++;
+
+        int count = 0;
+        while (true) {
+            if (pos > src.length - 4) {
+                throw new IOException("Truncated LZ4 frame");
+            }
+            int header = readIntLe(src, pos);
+            pos += 4;
+            if (header == 0) {
+                break;
+            }
+            int size = header & 0x7fffffff;
+            int end = pos + size;
+            if (size > blockMax || end > src.length - (blockChecksum ? 4 : 0)) {
+                throw new IOException("Corrupt LZ4 block");
+            }
+            if (blockChecksum && XXHASH.hash(src, pos, size, 0) != readIntLe(src, end)) {
+                throw new IOException("LZ4 block checksum mismatch");
+            }
+            if (header < 0) {
+                // 最高位为1表示未压缩块
+                workspace.ensure(count + size, limit);
+                System.arraycopy(src, pos, workspace.buffer, count, size);
+                count += size;
+            } else {
+                workspace.ensure((int) Math.min((long) count + blockMax, (long) limit + 1), limit);
+                int room = workspace.buffer.length - count;
+                try {
+                    count += LZ4_DECOMPRESSOR.decompress(src, pos, size, workspace.buffer, count, room);
+                } catch (LZ4Exception e) {
+                    // 剩余空间不足一个块时无法区分数据损坏和超限，按超限处理
+                    throw room < blockMax ? new LimitExceededException() : new IOException(e.getMessage(), e);
+                }
+            }
+            if (count > limit) {
+                throw new LimitExceededException();
+            }
+            pos = end + (blockChecksum ? 4 : 0);
+        }
+        if (contentChecksum) {
+            if (pos > src.length - 4) {
+                throw new IOException("Truncated LZ4 frame");
+            }
+            if (XXHASH.hash(workspace.buffer, 0, count, 0) != readIntLe(src, pos)) {
+                throw new IOException("LZ4 content checksum mismatch");
+            }
+            pos += 4;
+        }
+        return pos == src.length ? count : -1;
+    }
+
+    private static int readFully(Workspace workspace, InputStream in, int limit) throws IOException {
+        int count = 0;
+        try (InputStream stream = in) {
+            while (true) {
+                if (count == workspace.buffer.length) {
+                    workspace.grow(limit);
+                }
+                int n = stream.read(workspace.buffer, count, workspace.buffer.length - count);
+                if (n < 0) {
+                    return count;
+                }
+                count += n;
+                if (count > limit) {
+                    throw new LimitExceededException();
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", config.isEnabled());
+        stats.put("maxDecompressedSize", config.getMaxDecompressedSize());
+        stats.put("passthrough", passthrough.sum());
+        stats.put("oversized", oversized.sum());
+        stats.put("failures", failures.sum());
+        Map<String, Object> codecs = new HashMap<>();
+        for (Map.Entry<CompressionCodec, CodecStatistics> entry : codecStatistics.entrySet()) {
+            if (entry.getValue().messages.sum() > 0) {
+                codecs.put(entry.getKey().name().toLowerCase(), entry.getValue().snapshot());
+            }
+        }
+        stats.put("codecs", codecs);
+        return stats;
+    }
+
+    /**
+     * 解压结果
+     */
+    public static final class Decoded {
+        private final String topic;
+        private final byte[] payload;
+        private final CompressionCodec codec;
+
+        Decoded(String topic, byte[] payload, CompressionCodec codec) {
+            this.topic = topic;
+            this.payload = payload;
+            this.codec = codec;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        public CompressionCodec getCodec() {
+            return codec;
+        }
+
+        public boolean isCompressed() {
+            return codec != CompressionCodec.NONE;
+        }
+    }
+
+    /**
+     * 单个压缩格式的计数：压缩比 = 解压后字节 / 压缩字节
+     */
+    private static class CodecStatistics {
+        private final LongAdder messages = new LongAdder();
+        private final LongAdder compressedBytes = new LongAdder();
+        private final LongAdder decompressedBytes = new LongAdder();
+        private final LongAdder decodeNanos = new LongAdder();
+
+        void record(int compressed, int decompressed, long nanos) {
+            messages.increment();
+            compressedBytes.add(compressed);
+            decompressedBytes.add(decompressed);
+            decodeNanos.add(nanos);
+        }
+
+        Map<String, Object> snapshot() {
+            long count = messages.sum();
+            long compressed = compressedBytes.sum();
+            long decompressed = decompressedBytes.sum();
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("messages", count);
+            stats.put("compressedBytes", compressed);
+            stats.put("decompressedBytes", decompressed);
+            stats.put("ratio", compressed > 0 ? Math.round(decompressed * 100.0 / compressed) / 100.0 : 0.0);
+            stats.put("avgDecodeMicros", count > 0 ? Math.round(decodeNanos.sum() / 100.0 / count) / 10.0 : 0.0);
+            return stats;
+        }
+    }
+
+    /**
+     * 线程私有的解压工作区
+     */
+    private static class Workspace {
+        private byte[] buffer = new byte[INITIAL_BUFFER];
+        private final Inflater zlibInflater = new Inflater();
+        private final Inflater rawInflater = new Inflater(true);
+        private final CRC32 crc = new CRC32();
+        // 原生上下文随线程存活，不单独释放
+        private ZstdDecompressCtx zstd;
+
+        ZstdDecompressCtx zstd() {
+            if (zstd == null) {
+                zstd = new ZstdDecompressCtx();
+            }
+            return zstd;
+        }
+
+        /**
+         * 保证缓冲区至少有needed字节，超过上限+1时抛出LimitExceededException
+         */
+        void ensure(int needed, int limit) throws LimitExceededException {
+            if (needed > (long) limit + 1) {
+                throw new LimitExceededException();
+            }
+            while (buffer.length < needed) {
+                grow(limit);
+            }
+        }
+
+        /**
+         * 缓冲区翻倍，最多到上限+1（多出的1字节用于判断超限）
+         */
+        void grow(int limit) throws LimitExceededException {
+            if (buffer.length > limit) {
+                throw new LimitExceededException();
+            }
+            buffer = Arrays.copyOf(buffer, (int) Math.min((long) buffer.length * 2, (long) limit + 1));
+        }
+    }
+
+    /**
+     * 解压后超过上限
+     */
+    private static class LimitExceededException extends IOException {
+        LimitExceededException() {
+            super("Decompressed size limit exceeded");
+        }
+    }
+}
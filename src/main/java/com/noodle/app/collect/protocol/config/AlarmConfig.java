@@ -0,0 +1,458 @@
+package com.noodle.app.collect.protocol.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 报警配置
+ *
+ * 每条规则对匹配设备的一个数值字段设置警告、严重两级阈值，启动时编译，运行期可通过 /api/alarm/rules 热更新。
+ * 回差（hysteresis）用于防止数值在阈值附近抖动时反复报警和恢复：
+ * 超过阈值即升级，回落到 阈值 - 回差 以下才降级（下限规则方向相反）。
+ * 规则类型：
+ * threshold 样本越过阈值即报警；
+ * duration 持续越过阈值window秒后才报警（如 80°C以上持续5分钟）；
+ * rate 样本相对window秒内最低值（上升）或最高值（下降）的变化百分比越过阈值，下降用负阈值和 <；
+ * absence 设备在window秒内没有上报该字段（field为*时为任意数据），以level级别报警，收到数据后恢复。
+ * 只跟踪启动或规则更新后上报过数据的设备。
+ * 报警通知（notify）按 报警 → 确认 → 恢复 的生命周期批量推送到 rocketmq.alarm-topic：
+ * 同一规则同一设备在去重窗口内只通知一次（级别升高除外），父设备报警时抑制分组内子设备的通知，
+ * 每秒通知数超过上限的报警顺延到之后的批次。
+ */
+@Component
+@ConfigurationProperties(prefix = "alarm")
+public class AlarmConfig {
+
+    /**
+     * 是否启用报警检查
+     */
+    private boolean enabled = false;
+
+    /**
+     * 规则未设置回差时使用的默认回差
+     */
+    private double hysteresis = 0;
+
+    /**
+     * duration和absence规则的定时器精度（毫秒）
+     */
+    private long tickMillis = 1000;
+
+    /**
+     * rate规则的滑动窗口分槽数，每条规则实例固定占用 2 × slots 个double
+     */
+    private int windowSlots = 12;
+
+    /**
+     * 报警规则列表
+     */
+    private List<AlarmRule> rules = new ArrayList<>();
+
+    /**
+     * 报警通知配置
+     */
+    private NotifyConfig notify = new NotifyConfig();
+
+    /**
+     * 设备分组，父设备报警时抑制子设备的报警通知
+     */
+    private List<DeviceGroup> groups = new ArrayList<>();
+
+    /**
+     * 报警规则
+     */
+    public static class AlarmRule {
+
+        /**
+         * 规则ID，同一设备同一字段可以有多条规则
+         */
+        private String id;
+
+        /**
+         * 规则类型: threshold, duration, rate, absence
+         */
+        private String type = "threshold";
+
+        /**
+         * 设备ID，* 表示所有设备，以*结尾表示前缀匹配（如 meter-*）
+         */
+        private String device = "*";
+
+        /**
+         * 数值字段名，absence规则为*时表示任意数据
+         */
+        private String field;
+
+        /**
+         * 比较方向: > 或 >= 为上限报警，< 或 <= 为下限报警
+         */
+        private String operator = ">";
+
+        /**
+         * 警告阈值，为空表示没有警告级
+         */
+        private Double warning;
+
+        /**
+         * 严重阈值，为空表示没有严重级
+         */
+        private Double critical;
+
+        /**
+         * 回差，为空时使用默认回差
+         */
+        private Double hysteresis;
+
+        /**
+         * duration、rate、absence规则的时间窗口（秒）
+         */
+        private int window;
+
+        /**
+         * absence规则的报警级别: warning, critical
+         */
+        private String level = "warning";
+
+        /**
+         * 通知去重窗口（秒），为空时使用notify.dedup-window
+         */
+        private Integer dedupWindow;
+
+        private boolean enabled = true;
+
+        public AlarmRule() {}
+
+        public AlarmRule(String id, String device, String field, String operator, Double warning, Double critical) {
+            this.id = id;
+            this.device = device;
+            this.field = field;
+            this.operator = operator;
+            this.warning = warning;
+            this.critical = critical;
+        }
+
+        // Getters and Setters
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public void setType(String type) {
+            this.type = type;
+        }
+
+        public String getDevice() {
+            return device;
+        }
+
+        public void setDevice(String device) {
+            this.device = device;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public void setField(String field) {
+            this.field = field;
+        }
+
+        public String getOperator() {
+            return operator;
+        }
+
+        public void setOperator(String operator) {
+            this.operator = operator;
+        }
+
+        public Double getWarning() {
+            return warning;
+        }
+
+        public void setWarning(Double warning) {
+            this.warning = warning;
+        }
+
+        public Double getCritical() {
+            return critical;
+        }
+
+        public void setCritical(Double critical) {
+            this.critical = critical;
+        }
+
+        public Double getHysteresis() {
+            return hysteresis;
+        }
+
+        public void setHysteresis(Double hysteresis) {
+            this.hysteresis = hysteresis;
+        }
+
+        public int getWindow() {
+            return window;
+        }
+
+        public void setWindow(int window) {
+            this.window = window;
+        }
+
+        public String getLevel() {
+            return level;
+        }
+
+        public void setLevel(String level) {
+            this.level = level;
+        }
+
+        public Integer getDedupWindow() {
+            return dedupWindow;
+        }
+
+        public void setDedupWindow(Integer dedupWindow) {
+            this.dedupWindow = dedupWindow;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        @Override
+        public String toString() {
+            return "AlarmRule{" +
+                    "id='" + id + '\'' +
+                    ", type='" + type + '\'' +
+                    ", device='" + device + '\'' +
+                    ", field='" + field + '\'' +
+                    ", operator='" + operator + '\'' +
+                    ", warning=" + warning +
+                    ", critical=" + critical +
+                    ", hysteresis=" + hysteresis +
+                    ", window=" + window +
+                    ", level='" + level + '\'' +
+                    ", dedupWindow=" + dedupWindow +
+                    ", enabled=" + enabled +
+                    '}';
+        }
+    }
+
+    /**
+     * 报警通知配置
+     */
+    public static class NotifyConfig {
+
+        /**
+         * 是否推送报警通知，需要同时开启rocketmq.enabled
+         */
+        private boolean enabled = false;
+
+        /**
+         * 默认去重窗口（秒）：窗口内同一规则同一设备的重复报警、恢复不再通知，窗口结束时通知最新状态
+         */
+        private int dedupWindow = 300;
+
+        /**
+         * 批量推送间隔（毫秒）
+         */
+        private long batchInterval = 1000;
+
+        /**
+         * 分组内子设备新报警的等待时间（毫秒），等父设备的数据到达后再决定是否抑制，一般取设备的上报周期
+         */
+        private long groupWait = 10000;
+
+        /**
+         * 每秒最多通知的报警数，超出的顺延
+         */
+        private int maxPerSecond = 100;
+
+        /**
+         * 允许的突发通知数
+         */
+        private int burst = 500;
+
+        /**
+         * 每条消息最多包含的报警数
+         */
+        private int maxBatch = 100;
+
+        // Getters and Setters
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getDedupWindow() {
+            return dedupWindow;
+        }
+
+        public void setDedupWindow(int dedupWindow) {
+            this.dedupWindow = dedupWindow;
+        }
+
+        public long getBatchInterval() {
+            return batchInterval;
+        }
+
+        public void setBatchInterval(long batchInterval) {
+            this.batchInterval = batchInterval;
+        }
+
+        public long getGroupWait() {
+            return groupWait;
+        }
+
+        public void setGroupWait(long groupWait) {
+            this.groupWait = groupWait;
+        }
+
+        public int getMaxPerSecond() {
+            return maxPerSecond;
+        }
+
+        public void setMaxPerSecond(int maxPerSecond) {
+            this.maxPerSecond = maxPerSecond;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        public void setBurst(int burst) {
+            this.burst = burst;
+        }
+
+        public int getMaxBatch() {
+            return maxBatch;
+        }
+
+        public void setMaxBatch(int maxBatch) {
+            this.maxBatch = maxBatch;
+        }
+    }
+
+    /**
+     * 设备分组：parent为父设备（如站点的进线表、网关），devices为子设备
+     */
+    public static class DeviceGroup {
+
+        private String id;
+
+        /**
+         * 父设备ID
+         */
+        private String parent;
+
+        /**
+         * 子设备，以*结尾表示前缀匹配
+         */
+        private List<String> devices = new ArrayList<>();
+
+        public DeviceGroup() {}
+
+        public DeviceGroup(String id, String parent, List<String> devices) {
+            this.id = id;
+            this.parent = parent;
+            this.devices = devices;
+        }
+
+        // Getters and Setters
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getParent() {
+            return parent;
+        }
+
+        public void setParent(String parent) {
+            this.parent = parent;
+        }
+
+        public List<String> getDevices() {
+            return devices;
+        }
+
+        public void setDevices(List<String> devices) {
+            this.devices = devices;
+        }
+    }
+
+    // Getters and Setters
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public double getHysteresis() {
+        return hysteresis;
+    }
+
+    public void setHysteresis(double hysteresis) {
+        this.hysteresis = hysteresis;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    public void setTickMillis(long tickMillis) {
+        this.tickMillis = tickMillis;
+    }
+
+    public int getWindowSlots() {
+        return windowSlots;
+    }
+
+    public void setWindowSlots(int windowSlots) {
+        this.windowSlots = windowSlots;
+    }
+
+    public List<AlarmRule> getRules() {
+        return rules;
+    }
+
+    public void setRules(List<AlarmRule> rules) {
+        this.rules = rules;
+    }
+
+    public NotifyConfig getNotify() {
+        return notify;
+    }
+
+    public void setNotify(NotifyConfig notify) {
+        this.notify = notify;
+    }
+
+    public List<DeviceGroup> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(List<DeviceGroup> groups) {
+        this.groups = groups;
+    }
+}
@@ -1,5 +1,8 @@
 package com.noodle.app.collect.protocol.config;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -9,7 +12,7 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 public class DataStorageConfig {
     
     /**
-     * 存储类型: influxdb, redis
+     * 存储类型: influxdb, redis, local, archive, rocketmq；配置了sinks时忽略
      */
     private String type = "influxdb";
     
@@ -24,15 +27,110 @@ public class DataStorageConfig {
     private long retentionTime = 86400; // 24小时
     
     /**
-     * 批量写入大小
+     * 批量写入大小（初始条数上限，之后按写入耗时自动调整）
      */
     private int batchSize = 100;
     
     /**
-     * 写入间隔（毫秒）
+     * 自动调整时批次条数的上限，不大于batchSize时批次只会因写入变慢或失败而变小
+     */
+    private int maxBatchSize = 5000;
+    
+    /**
+     * 批次估算字节数上限，达到时立即写出
+     */
+    private long batchBytes = 1024 * 1024;
+    
+    /**
+     * 批次写入的目标确认耗时（毫秒），超过时减小批次，远低于时增大批次
+     */
+    private long targetLatency = 500;
+    
+    /**
+     * 写入间隔（毫秒）：批次第一条数据到达后最多等待的时长（linger），未攒满的批次到时写出
      */
     private long writeInterval = 5000; // 5秒
     
+    /**
+     * 每个存储后端的写入队列容量，队列满时丢弃并计数
+     */
+    private int queueCapacity = 100000;
+    
+    /**
+     * 每个存储后端同时在写的最大批次数，达到上限时写入线程等待确认
+     */
+    private int maxInFlight = 4;
+    
+    /**
+     * 停机时等待各后端写出剩余数据的最长时间（毫秒），到期没写完的保存为检查点
+     */
+    private long shutdownTimeout = 30000;
+    
+    /**
+     * 停机检查点目录，启动时重新写入其中的数据
+     */
+    private String checkpointPath = "data/checkpoint";
+    
+    /**
+     * 多后端写入：每个后端有独立的队列、批量大小和写入线程，同一条数据同时写入所有后端
+     */
+    private List<SinkConfig> sinks = new ArrayList<>();
+    
+    /**
+     * 遥测数据转发到RocketMQ的配置，连接和批量发送参数使用rocketmq.producer
+     */
+    public static class RocketMqSinkConfig {
+        /**
+         * 主题，可包含 {protocol} 占位符按协议分主题（如 telemetry-{protocol}）
+         */
+        private String topic = "telemetry-topic";
+        
+        /**
+         * 是否按设备ID选择队列，保证同一设备的数据按顺序进入同一个队列
+         */
+        private boolean ordered = true;
+        
+        /**
+         * 是否附带原始负载（文本负载原样保存，二进制负载不保存）
+         */
+        private boolean includeRaw = false;
+        
+        // Getters and Setters
+        public String getTopic() {
+            return topic;
+        }
+        
+        public void setTopic(String topic) {
+            this.topic = topic;
+        }
+        
+        public boolean isOrdered() {
+            return ordered;
+        }
+        
+        public void setOrdered(boolean ordered) {
+            this.ordered = ordered;
+        }
+        
+        public boolean isIncludeRaw() {
+            return includeRaw;
+        }
+        
+        public void setIncludeRaw(boolean includeRaw) {
+            this.includeRaw = includeRaw;
+        }
+    }
+    
+    /**
+     * 写入失败的重试配置
+     */
+    private RetryConfig retry = new RetryConfig();
+    
+    /**
+     * 死信存储配置
+     */
+    private DeadLetterConfig deadLetter = new DeadLetterConfig();
+    
     /**
      * InfluxDB配置
      */
@@ -45,6 +143,21 @@ public class DataStorageConfig {
      */
     private RedisConfig redis = new RedisConfig();
     
+    /**
+     * 本地时序存储配置
+     */
+    private LocalConfig local = new LocalConfig();
+    
+    /**
+     * 冷数据归档配置
+     */
+    private ArchiveConfig archive = new ArchiveConfig();
+    
+    /**
+     * 遥测数据转发到RocketMQ的配置
+     */
+    private RocketMqSinkConfig rocketmq = new RocketMqSinkConfig();
+    
     // Getters and Setters
     public String getType() {
         return type;
@@ -78,6 +191,30 @@ public class DataStorageConfig {
         this.batchSize = batchSize;
     }
     
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+    
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+    
+    public long getBatchBytes() {
+        return batchBytes;
+    }
+    
+    public void setBatchBytes(long batchBytes) {
+        this.batchBytes = batchBytes;
+    }
+    
+    public long getTargetLatency() {
+        return targetLatency;
+    }
+    
+    public void setTargetLatency(long targetLatency) {
+        this.targetLatency = targetLatency;
+    }
+    
     public long getWriteInterval() {
         return writeInterval;
     }
@@ -86,6 +223,62 @@ public class DataStorageConfig {
         this.writeInterval = writeInterval;
     }
     
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+    
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+    
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+    
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+    
+    public long getShutdownTimeout() {
+        return shutdownTimeout;
+    }
+    
+    public void setShutdownTimeout(long shutdownTimeout) {
+        this.shutdownTimeout = shutdownTimeout;
+    }
+    
+    public String getCheckpointPath() {
+        return checkpointPath;
+    }
+    
+    public void setCheckpointPath(String checkpointPath) {
+        this.checkpointPath = checkpointPath;
+    }
+    
+    public List<SinkConfig> getSinks() {
+        return sinks;
+    }
+    
+    public void setSinks(List<SinkConfig> sinks) {
+        this.sinks = sinks;
+    }
+    
+    public RetryConfig getRetry() {
+        return retry;
+    }
+    
+    public void setRetry(RetryConfig retry) {
+        this.retry = retry;
+    }
+    
+    public DeadLetterConfig getDeadLetter() {
+        return deadLetter;
+    }
+    
+    public void setDeadLetter(DeadLetterConfig deadLetter) {
+        this.deadLetter = deadLetter;
+    }
+    
     public InfluxConfig getInflux() {
         return influx;
     }
@@ -104,6 +297,121 @@ public class DataStorageConfig {
         this.redis = redis;
     }
     
+    public LocalConfig getLocal() {
+        return local;
+    }
+    
+    public void setLocal(LocalConfig local) {
+        this.local = local;
+    }
+    
+    public ArchiveConfig getArchive() {
+        return archive;
+    }
+    
+    public void setArchive(ArchiveConfig archive) {
+        this.archive = archive;
+    }
+    
+    public RocketMqSinkConfig getRocketmq() {
+        return rocketmq;
+    }
+    
+    public void setRocketmq(RocketMqSinkConfig rocketmq) {
+        this.rocketmq = rocketmq;
+    }
+    
+    /**
+     * 存储后端配置，数值为0时使用顶层的同名配置
+     */
+    public static class SinkConfig {
+        /**
+         * 存储类型: influxdb, redis, local, archive
+         */
+        private String type;
+        private boolean enabled = true;
+        private int batchSize = 0;
+        private int maxBatchSize = 0;
+        private long batchBytes = 0;
+        private long targetLatency = 0;
+        private long writeInterval = 0;
+        private int queueCapacity = 0;
+        private int maxInFlight = 0;
+        
+        // Getters and Setters
+        public String getType() {
+            return type;
+        }
+        
+        public void setType(String type) {
+            this.type = type;
+        }
+        
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public int getBatchSize() {
+            return batchSize;
+        }
+        
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+        
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+        
+        public void setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+        }
+        
+        public long getBatchBytes() {
+            return batchBytes;
+        }
+        
+        public void setBatchBytes(long batchBytes) {
+            this.batchBytes = batchBytes;
+        }
+        
+        public long getTargetLatency() {
+            return targetLatency;
+        }
+        
+        public void setTargetLatency(long targetLatency) {
+            this.targetLatency = targetLatency;
+        }
+        
+        public long getWriteInterval() {
+            return writeInterval;
+        }
+        
+        public void setWriteInterval(long writeInterval) {
+            this.writeInterval = writeInterval;
+        }
+        
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+        
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+        
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+        
+        public void setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+    }
+    
     /**
      * InfluxDB配置
      */
@@ -117,6 +425,27 @@ public class DataStorageConfig {
         private int connectionTimeout = 10000;
         private int readTimeout = 30000;
         private int writeTimeout = 10000;
+        /**
+         * 异步写入的I/O线程数
+         */
+        private int writeThreads = 4;
+        /**
+         * 写入时间精度: s, ms, us, ns；同一序列同一时刻的点会互相覆盖，高频采样需要ms及以上
+         */
+        private String precision = "ms";
+        /**
+         * 表结构: narrow（每个数值字段一个点，tag为 设备ID_字段名）, wide（每条消息一个点，
+         * 设备ID和主题层级作为tag，数值字段作为字段）, dual（迁移期间同时写两种结构）
+         */
+        private String schema = "narrow";
+        /**
+         * wide结构的measurement，为空时使用table；dual时默认为 table_wide
+         */
+        private String wideTable;
+        /**
+         * wide结构中主题各层级对应的tag名，按层级顺序，空字符串表示该层不作为tag
+         */
+        private List<String> topicTags = new ArrayList<>();
         
         public String getTable() {
 			return table;
@@ -182,6 +511,46 @@ public class DataStorageConfig {
         public void setWriteTimeout(int writeTimeout) {
             this.writeTimeout = writeTimeout;
         }
+        
+        public int getWriteThreads() {
+            return writeThreads;
+        }
+        
+        public void setWriteThreads(int writeThreads) {
+            this.writeThreads = writeThreads;
+        }
+        
+        public String getPrecision() {
+            return precision;
+        }
+        
+        public void setPrecision(String precision) {
+            this.precision = precision;
+        }
+        
+        public String getSchema() {
+            return schema;
+        }
+        
+        public void setSchema(String schema) {
+            this.schema = schema;
+        }
+        
+        public String getWideTable() {
+            return wideTable;
+        }
+        
+        public void setWideTable(String wideTable) {
+            this.wideTable = wideTable;
+        }
+        
+        public List<String> getTopicTags() {
+            return topicTags;
+        }
+        
+        public void setTopicTags(List<String> topicTags) {
+            this.topicTags = topicTags;
+        }
     }
     
 
@@ -196,6 +565,10 @@ public class DataStorageConfig {
         private long timeToLive = 86400; // 24小时
         private boolean useKeyExpiration = true;
         private String serialization = "json"; // json, binary
+        /**
+         * 异步写入的I/O线程数
+         */
+        private int writeThreads = 4;
         
         // Getters and Setters
         public String getKeyPrefix() {
@@ -237,5 +610,293 @@ public class DataStorageConfig {
         public void setSerialization(String serialization) {
             this.serialization = serialization;
         }
+        
+        public int getWriteThreads() {
+            return writeThreads;
+        }
+        
+        public void setWriteThreads(int writeThreads) {
+            this.writeThreads = writeThreads;
+        }
+    }
+    
+    /**
+     * 本地时序存储配置（无外部数据库的边缘部署）
+     */
+    public static class LocalConfig {
+        /**
+         * 数据目录
+         */
+        private String path = "data/tsdb";
+        /**
+         * 时间分区长度（分钟），每个分区一个段文件
+         */
+        private long segmentMinutes = 60;
+        /**
+         * 保留时长（小时），过期的分区整体删除，0表示不删除
+         */
+        private long retentionHours = 168;
+        /**
+         * 每个数据块的样本数
+         */
+        private int blockSize = 1024;
+        /**
+         * 缓冲区刷新间隔（毫秒），也是进程崩溃时最多丢失的数据时长
+         */
+        private long flushInterval = 10000;
+        /**
+         * 段文件每次映射的字节数
+         */
+        private int mapChunkSize = 64 * 1024 * 1024;
+        
+        // Getters and Setters
+        public String getPath() {
+            return path;
+        }
+        
+        public void setPath(String path) {
+            this.path = path;
+        }
+        
+        public long getSegmentMinutes() {
+            return segmentMinutes;
+        }
+        
+        public void setSegmentMinutes(long segmentMinutes) {
+            this.segmentMinutes = segmentMinutes;
+        }
+        
+        public long getRetentionHours() {
+            return retentionHours;
+        }
+        
+        public void setRetentionHours(long retentionHours) {
+            this.retentionHours = retentionHours;
+        }
+        
+        public int getBlockSize() {
+            return blockSize;
+        }
+        
+        public void setBlockSize(int blockSize) {
+            this.blockSize = blockSize;
+        }
+        
+        public long getFlushInterval() {
+            return flushInterval;
+        }
+        
+        public void setFlushInterval(long flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+        
+        public int getMapChunkSize() {
+            return mapChunkSize;
+        }
+        
+        public void setMapChunkSize(int mapChunkSize) {
+            this.mapChunkSize = mapChunkSize;
+        }
+    }
+    
+    /**
+     * 冷数据归档配置
+     */
+    public static class ArchiveConfig {
+        /**
+         * 数据目录，文件按 date=yyyy-MM-dd/prefix=设备前缀/HH.ncol 分区（UTC）
+         */
+        private String path = "data/archive";
+        
+        /**
+         * 设备前缀长度（字符数），同一前缀的设备写入同一个文件
+         */
+        private int prefixLength = 4;
+        
+        /**
+         * 每个行组的最大行数，攒够时立即压缩写出
+         */
+        private int rowGroupRows = 65536;
+        
+        /**
+         * 刷新间隔（毫秒），未攒够的行组定时写出，也是进程崩溃时最多丢失的数据时长
+         */
+        private long flushInterval = 60000;
+        
+        /**
+         * 小时结束后分区在内存中保留的时长（分钟），用于接收迟到的数据
+         */
+        private long closeDelayMinutes = 10;
+        
+        /**
+         * zstd压缩级别
+         */
+        private int compressionLevel = 3;
+        
+        /**
+         * 回放时每批写入目标存储的数据条数
+         */
+        private int replayBatchSize = 1000;
+        
+        // Getters and Setters
+        public String getPath() {
+            return path;
+        }
+        
+        public void setPath(String path) {
+            this.path = path;
+        }
+        
+        public int getPrefixLength() {
+            return prefixLength;
+        }
+        
+        public void setPrefixLength(int prefixLength) {
+            this.prefixLength = prefixLength;
+        }
+        
+        public int getRowGroupRows() {
+            return rowGroupRows;
+        }
+        
+        public void setRowGroupRows(int rowGroupRows) {
+            this.rowGroupRows = rowGroupRows;
+        }
+        
+        public long getFlushInterval() {
+            return flushInterval;
+        }
+        
+        public void setFlushInterval(long flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+        
+        public long getCloseDelayMinutes() {
+            return closeDelayMinutes;
+        }
+        
+        public void setCloseDelayMinutes(long closeDelayMinutes) {
+            this.closeDelayMinutes = closeDelayMinutes;
+        }
+        
+        public int getCompressionLevel() {
+            return compressionLevel;
+        }
+        
+        public void setCompressionLevel(int compressionLevel) {
+            this.compressionLevel = compressionLevel;
+        }
+        
+        public int getReplayBatchSize() {
+            return replayBatchSize;
+        }
+        
+        public void setReplayBatchSize(int replayBatchSize) {
+            this.replayBatchSize = replayBatchSize;
+        }
+    }
+    
+    /**
+     * 写入失败的重试配置
+     */
+    public static class RetryConfig {
+        /**
+         * 暂时性错误（超时、过载、后端不可用）按指数退避重试的次数，之后按maxBackoff一直重试，不拆分批次；
+         * 数据被后端拒绝时不重试原批次，直接拆成两半，拆到单条仍被拒绝时放入死信
+         */
+        private int maxRetries = 3;
+        
+        /**
+         * 首次重试的退避时间（毫秒），之后每次翻倍，实际等待时间在其一半到全部之间随机
+         */
+        private long initialBackoff = 500;
+        
+        /**
+         * 最大退避时间（毫秒）
+         */
+        private long maxBackoff = 30000;
+        
+        /**
+         * 每个后端等待重试的最大批次数，达到时暂停写入新批次，只处理重试
+         */
+        private int maxPendingBatches = 16;
+        
+        // Getters and Setters
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+        
+        public void setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+        }
+        
+        public long getInitialBackoff() {
+            return initialBackoff;
+        }
+        
+        public void setInitialBackoff(long initialBackoff) {
+            this.initialBackoff = initialBackoff;
+        }
+        
+        public long getMaxBackoff() {
+            return maxBackoff;
+        }
+        
+        public void setMaxBackoff(long maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+        
+        public int getMaxPendingBatches() {
+            return maxPendingBatches;
+        }
+        
+        public void setMaxPendingBatches(int maxPendingBatches) {
+            this.maxPendingBatches = maxPendingBatches;
+        }
+    }
+    
+    /**
+     * 死信存储配置
+     */
+    public static class DeadLetterConfig {
+        /**
+         * 是否启用死信存储，关闭时无法写入的数据直接丢弃并计数
+         */
+        private boolean enabled = true;
+        
+        /**
+         * 死信文件目录
+         */
+        private String path = "data/deadletter";
+        
+        /**
+         * 最多保存的死信条数，超过时丢弃最早的
+         */
+        private int maxEntries = 100000;
+        
+        // Getters and Setters
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public String getPath() {
+            return path;
+        }
+        
+        public void setPath(String path) {
+            this.path = path;
+        }
+        
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+        
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,83 @@
+package com.noodle.app.collect.protocol.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 重复消息抑制配置
+ *
+ * 服务端拦截器和MQTT客户端共用同一个过滤器。主题和负载都相同的消息在窗口内只入库一次，
+ * 用于去掉QoS 1重连后的重发和客户端重试造成的重复数据；
+ * 负载中不带时间戳或序号、会在窗口内合法重复的主题不要开启。
+ * 内存约为 expectedMessages × ln(buckets / falsePositiveRate) / (ln2)² 位，默认约2.2MB。
+ */
+@Component
+@ConfigurationProperties(prefix = "mqtt.dedup")
+public class DedupConfig {
+
+    /**
+     * 是否启用重复消息抑制
+     */
+    private boolean enabled = false;
+
+    /**
+     * 去重窗口（秒）
+     */
+    private int windowSeconds = 60;
+
+    /**
+     * 窗口分桶数，过期的桶整体清零，指纹实际保留 (buckets - 1) / buckets 到 1 个窗口
+     */
+    private int buckets = 6;
+
+    /**
+     * 一个窗口内预计的消息数，超过后误判率上升
+     */
+    private long expectedMessages = 1000000;
+
+    /**
+     * 目标误判率，误判的消息会被当作重复丢弃
+     */
+    private double falsePositiveRate = 0.001;
+
+    // Getters and Setters
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    public void setWindowSeconds(int windowSeconds) {
+        this.windowSeconds = windowSeconds;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    public void setBuckets(int buckets) {
+        this.buckets = buckets;
+    }
+
+    public long getExpectedMessages() {
+        return expectedMessages;
+    }
+
+    public void setExpectedMessages(long expectedMessages) {
+        this.expectedMessages = expectedMessages;
+    }
+
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    public void setFalsePositiveRate(double falsePositiveRate) {
+        this.falsePositiveRate = falsePositiveRate;
+    }
+}
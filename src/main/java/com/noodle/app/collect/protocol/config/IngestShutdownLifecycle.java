@@ -0,0 +1,81 @@
+package com.noodle.app.collect.protocol.config;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import com.noodle.app.collect.protocol.ProtocolServer;
+import com.noodle.app.collect.protocol.mqtt.MqttClientService;
+import com.noodle.app.collect.storage.DataStorageService;
+
+/**
+ * 有序停机
+ *
+ * 在所有Bean销毁之前按顺序停止数据链路：先停止协议服务器不再接收发布（服务器退出前把已交接的消息交给存储），
+ * 再停止MQTT客户端的消费，最后由存储服务在期限内写出队列中的数据，剩余的保存为检查点。
+ * 阶段值最大，停机时最先执行。
+ */
+@Component
+public class IngestShutdownLifecycle implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestShutdownLifecycle.class);
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private DataStorageService dataStorageService;
+
+    @Autowired(required = false)
+    private MqttClientService mqttClientService;
+
+    private volatile boolean running = false;
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        logger.info("Stopping ingest pipeline...");
+
+        Map<String, ProtocolServer> servers = applicationContext.getBeansOfType(ProtocolServer.class);
+        for (ProtocolServer server : servers.values()) {
+            if (!server.isRunning()) {
+                continue;
+            }
+            try {
+                server.stop();
+            } catch (Exception e) {
+                logger.error("Failed to stop {} server: {}", server.getServerName(), e.getMessage());
+            }
+        }
+
+        if (mqttClientService != null) {
+            mqttClientService.shutdown();
+        }
+
+        dataStorageService.shutdown();
+        logger.info("Ingest pipeline stopped");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE;
+    }
+}
@@ -12,11 +12,27 @@ import org.springframework.stereotype.Component;
 @ConfigurationProperties(prefix = "mqtt.client")
 public class MqttClientConfig {
     
+    public static final String MODE_EXTERNAL = "external";
+    public static final String MODE_EMBEDDED = "embedded";
+    
+    /**
+     * MQTT协议级别：4为3.1.1，5为MQTT 5
+     */
+    public static final int MQTT_VERSION_3_1_1 = 4;
+    public static final int MQTT_VERSION_5 = 5;
+    
     /**
      * 是否启用MQTT客户端
      */
     private boolean enabled = true;
     
+    /**
+     * 订阅模式
+     * external: 通过Paho以TCP连接MQTT服务器（默认）
+     * embedded: 直接挂接到进程内的Moquette服务器，不经过TCP和Paho
+     */
+    private String mode = MODE_EXTERNAL;
+    
     /**
      * MQTT服务器地址
      */
@@ -48,7 +64,7 @@ public class MqttClientConfig {
     private boolean cleanSession = true;
     
     /**
-     * 是否自动重连
+     * 是否自动重连；异步客户端模式下表示Paho自动重连，关闭时连接丢失后由客户端服务按reconnect-delay退避重连
      */
     private boolean autoReconnect = true;
     
@@ -62,6 +78,59 @@ public class MqttClientConfig {
      */
     private long maxReconnectDelay = 60000;
     
+    /**
+     * 是否使用异步客户端（MqttAsyncClient + 分片工作线程池 + 手动确认）
+     */
+    private boolean asyncClient = false;
+    
+    /**
+     * MQTT协议版本，4: MQTT 3.1.1（默认），5: MQTT 5
+     * MQTT 5使用异步客户端，支持主题别名、Receive Maximum流控和用户属性时间戳
+     */
+    private int mqttVersion = MQTT_VERSION_3_1_1;
+    
+    /**
+     * MQTT 5会话过期时间（秒），cleanSession为false时生效
+     */
+    private long sessionExpiryInterval = 3600;
+    
+    /**
+     * MQTT 5可接受服务器使用的主题别名数，0表示不使用
+     */
+    private int topicAliasMaximum = 64;
+    
+    /**
+     * MQTT 5携带设备时间（毫秒）的用户属性名
+     */
+    private String timestampProperty = "ts";
+    
+    /**
+     * 本端发布的QoS 1/2消息的最大在飞数，只限制出站，不限制服务器的投递；
+     * MQTT 5下同时作为Receive Maximum，限制服务器投递给本端的未确认消息数
+     */
+    private int maxInflight = 100;
+    
+    /**
+     * 异步模式下的工作线程（分片）数，0表示使用CPU核数
+     */
+    private int workerThreads = 0;
+    
+    /**
+     * 异步模式下每个分片的队列容量
+     */
+    private int workerQueueCapacity = 1024;
+    
+    /**
+     * 多连接消费时是否使用MQTT共享订阅（$share/group/topic）
+     * 为false时按主题哈希在各连接间分区，适用于不支持共享订阅的服务器
+     */
+    private boolean sharedSubscription = true;
+    
+    /**
+     * 共享订阅组名
+     */
+    private String shareGroup = "noodle-gateway";
+    
     /**
      * 订阅主题列表
      */
@@ -73,6 +142,10 @@ public class MqttClientConfig {
     public static class TopicConfig {
         private String topic;
         private int qos = 1;
+        /**
+         * 消费该主题的连接数，大于1时启用共享订阅或主题分区
+         */
+        private int connections = 1;
         
         public TopicConfig() {}
         
@@ -98,11 +171,20 @@ public class MqttClientConfig {
             this.qos = qos;
         }
         
+        public int getConnections() {
+            return connections;
+        }
+        
+        public void setConnections(int connections) {
+            this.connections = connections;
+        }
+        
         @Override
         public String toString() {
             return "TopicConfig{" +
                     "topic='" + topic + '\'' +
                     ", qos=" + qos +
+                    ", connections=" + connections +
                     '}';
         }
     }
@@ -116,6 +198,21 @@ public class MqttClientConfig {
         this.enabled = enabled;
     }
     
+    public String getMode() {
+        return mode;
+    }
+    
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+    
+    /**
+     * 是否使用进程内订阅模式
+     */
+    public boolean isEmbeddedMode() {
+        return MODE_EMBEDDED.equalsIgnoreCase(mode);
+    }
+    
     public String getBrokerUrl() {
         return brokerUrl;
     }
@@ -188,6 +285,93 @@ public class MqttClientConfig {
         this.maxReconnectDelay = maxReconnectDelay;
     }
     
+    public boolean isAsyncClient() {
+        return asyncClient;
+    }
+    
+    public void setAsyncClient(boolean asyncClient) {
+        this.asyncClient = asyncClient;
+    }
+    
+    public int getMqttVersion() {
+        return mqttVersion;
+    }
+    
+    public void setMqttVersion(int mqttVersion) {
+        this.mqttVersion = mqttVersion;
+    }
+    
+    /**
+     * 是否使用MQTT 5
+     */
+    public boolean isMqtt5() {
+        return mqttVersion == MQTT_VERSION_5;
+    }
+    
+    public long getSessionExpiryInterval() {
+        return sessionExpiryInterval;
+    }
+    
+    public void setSessionExpiryInterval(long sessionExpiryInterval) {
+        this.sessionExpiryInterval = sessionExpiryInterval;
+    }
+    
+    public int getTopicAliasMaximum() {
+        return topicAliasMaximum;
+    }
+    
+    public void setTopicAliasMaximum(int topicAliasMaximum) {
+        this.topicAliasMaximum = topicAliasMaximum;
+    }
+    
+    public String getTimestampProperty() {
+        return timestampProperty;
+    }
+    
+    public void setTimestampProperty(String timestampProperty) {
+        this.timestampProperty = timestampProperty;
+    }
+    
+    public int getMaxInflight() {
+        return maxInflight;
+    }
+    
+    public void setMaxInflight(int maxInflight) {
+        this.maxInflight = maxInflight;
+    }
+    
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+    
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+    
+    public int getWorkerQueueCapacity() {
+        return workerQueueCapacity;
+    }
+    
+    public void setWorkerQueueCapacity(int workerQueueCapacity) {
+        this.workerQueueCapacity = workerQueueCapacity;
+    }
+    
+    public boolean isSharedSubscription() {
+        return sharedSubscription;
+    }
+    
+    public void setSharedSubscription(boolean sharedSubscription) {
+        this.sharedSubscription = sharedSubscription;
+    }
+    
+    public String getShareGroup() {
+        return shareGroup;
+    }
+    
+    public void setShareGroup(String shareGroup) {
+        this.shareGroup = shareGroup;
+    }
+    
     public List<TopicConfig> getTopics() {
         return topics;
     }
@@ -200,6 +384,7 @@ public class MqttClientConfig {
     public String toString() {
         return "MqttClientConfig{" +
                 "enabled=" + enabled +
+                ", mode='" + mode + '\'' +
                 ", brokerUrl='" + brokerUrl + '\'' +
                 ", clientId='" + clientId + '\'' +
                 ", username='" + username + '\'' +
@@ -208,6 +393,11 @@ public class MqttClientConfig {
                 ", autoReconnect=" + autoReconnect +
                 ", reconnectDelay=" + reconnectDelay +
                 ", maxReconnectDelay=" + maxReconnectDelay +
+                ", asyncClient=" + asyncClient +
+                ", mqttVersion=" + mqttVersion +
+                ", maxInflight=" + maxInflight +
+                ", sharedSubscription=" + sharedSubscription +
+                ", shareGroup='" + shareGroup + '\'' +
                 ", topics=" + topics +
                 '}';
     }
@@ -1,5 +1,8 @@
 package com.noodle.app.collect.protocol.config;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -16,6 +19,21 @@ public class MqttServerConfig {
     private int keepAliveTimeout = 60;
     private String implementation = "netty"; // "netty" or "moquette"
     
+    /**
+     * 消息持久化配置
+     */
+    private PersistConfig persist = new PersistConfig();
+    
+    /**
+     * 发布限流配置
+     */
+    private RateLimitConfig rateLimit = new RateLimitConfig();
+    
+    /**
+     * 发布流量统计配置
+     */
+    private TrafficConfig traffic = new TrafficConfig();
+    
     // Getters and Setters
     public boolean isEnabled() {
         return enabled;
@@ -72,4 +90,315 @@ public class MqttServerConfig {
     public void setImplementation(String implementation) {
         this.implementation = implementation;
     }
-}
\ No newline at end of file
+    
+    public PersistConfig getPersist() {
+        return persist;
+    }
+    
+    public void setPersist(PersistConfig persist) {
+        this.persist = persist;
+    }
+    
+    public RateLimitConfig getRateLimit() {
+        return rateLimit;
+    }
+    
+    public void setRateLimit(RateLimitConfig rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+    
+    public TrafficConfig getTraffic() {
+        return traffic;
+    }
+    
+    public void setTraffic(TrafficConfig traffic) {
+        this.traffic = traffic;
+    }
+    
+    /**
+     * 消息持久化配置
+     */
+    public static class PersistConfig {
+        /**
+         * 需要持久化的主题过滤器，为空表示全部持久化
+         */
+        private List<String> include = new ArrayList<>();
+        
+        /**
+         * 忽略的主题过滤器（控制、命令类主题）
+         */
+        private List<String> exclude = new ArrayList<>();
+        
+        /**
+         * 拦截器与存储之间交接队列的容量，队列满时丢弃并计数
+         */
+        private int handoffCapacity = 10000;
+        
+        // Getters and Setters
+        public List<String> getInclude() {
+            return include;
+        }
+        
+        public void setInclude(List<String> include) {
+            this.include = include;
+        }
+        
+        public List<String> getExclude() {
+            return exclude;
+        }
+        
+        public void setExclude(List<String> exclude) {
+            this.exclude = exclude;
+        }
+        
+        public int getHandoffCapacity() {
+            return handoffCapacity;
+        }
+        
+        public void setHandoffCapacity(int handoffCapacity) {
+            this.handoffCapacity = handoffCapacity;
+        }
+    }
+    
+    /**
+     * 发布限流配置
+     *
+     * 每个客户端一个令牌桶；主题规则按主题过滤器聚合，命中同一规则的所有客户端共用一个令牌桶。
+     * 超限处理方式: drop（不入库）、disconnect（断开客户端）、low-priority（进入低优先级队列）
+     */
+    public static class RateLimitConfig {
+        /**
+         * 是否启用限流
+         */
+        private boolean enabled = false;
+        
+        /**
+         * 每个客户端每秒允许的消息数，0表示不限制
+         */
+        private double clientRate = 100;
+        
+        /**
+         * 每个客户端允许的突发消息数
+         */
+        private int clientBurst = 200;
+        
+        /**
+         * 客户端超限的处理方式
+         */
+        private String clientAction = "drop";
+        
+        /**
+         * 主题前缀限流规则，多条命中时精确层级优先于通配符
+         */
+        private List<TopicLimit> topics = new ArrayList<>();
+        
+        /**
+         * 低优先级队列容量
+         */
+        private int lowPriorityCapacity = 1000;
+        
+        /**
+         * 保留限流记录的客户端数上限，超过时清理已断开的客户端
+         */
+        private int maxTrackedClients = 100000;
+        
+        // Getters and Setters
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public double getClientRate() {
+            return clientRate;
+        }
+        
+        public void setClientRate(double clientRate) {
+            this.clientRate = clientRate;
+        }
+        
+        public int getClientBurst() {
+            return clientBurst;
+        }
+        
+        public void setClientBurst(int clientBurst) {
+            this.clientBurst = clientBurst;
+        }
+        
+        public String getClientAction() {
+            return clientAction;
+        }
+        
+        public void setClientAction(String clientAction) {
+            this.clientAction = clientAction;
+        }
+        
+        public List<TopicLimit> getTopics() {
+            return topics;
+        }
+        
+        public void setTopics(List<TopicLimit> topics) {
+            this.topics = topics;
+        }
+        
+        public int getLowPriorityCapacity() {
+            return lowPriorityCapacity;
+        }
+        
+        public void setLowPriorityCapacity(int lowPriorityCapacity) {
+            this.lowPriorityCapacity = lowPriorityCapacity;
+        }
+        
+        public int getMaxTrackedClients() {
+            return maxTrackedClients;
+        }
+        
+        public void setMaxTrackedClients(int maxTrackedClients) {
+            this.maxTrackedClients = maxTrackedClients;
+        }
+    }
+    
+    /**
+     * 主题限流规则
+     */
+    public static class TopicLimit {
+        /**
+         * 主题过滤器，支持 + 和 #
+         */
+        private String topic;
+        /**
+         * 每秒允许的消息数
+         */
+        private double rate;
+        /**
+         * 允许的突发消息数
+         */
+        private int burst;
+        /**
+         * 超限的处理方式
+         */
+        private String action = "drop";
+        
+        // Getters and Setters
+        public String getTopic() {
+            return topic;
+        }
+        
+        public void setTopic(String topic) {
+            this.topic = topic;
+        }
+        
+        public double getRate() {
+            return rate;
+        }
+        
+        public void setRate(double rate) {
+            this.rate = rate;
+        }
+        
+        public int getBurst() {
+            return burst;
+        }
+        
+        public void setBurst(int burst) {
+            this.burst = burst;
+        }
+        
+        public String getAction() {
+            return action;
+        }
+        
+        public void setAction(String action) {
+            this.action = action;
+        }
+    }
+    
+    /**
+     * 发布流量统计配置
+     *
+     * 滑动窗口由slots个时长为slotSeconds的槽组成；主题和客户端各占
+     * slots × 2 × sketchDepth × sketchWidth × 8 字节，默认约3MB，与主题数量无关。
+     */
+    public static class TrafficConfig {
+        /**
+         * 是否启用流量统计
+         */
+        private boolean enabled = true;
+        
+        /**
+         * 每个时间槽的时长（秒）
+         */
+        private int slotSeconds = 10;
+        
+        /**
+         * 时间槽数，最长窗口为 slots × slotSeconds
+         */
+        private int slots = 12;
+        
+        /**
+         * Count-Min Sketch行数
+         */
+        private int sketchDepth = 4;
+        
+        /**
+         * Count-Min Sketch每行计数器数（2的幂），误差约为窗口总消息数的 e / sketchWidth
+         */
+        private int sketchWidth = 4096;
+        
+        /**
+         * 每个时间槽保留的热点候选数
+         */
+        private int candidates = 64;
+        
+        // Getters and Setters
+        public boolean isEnabled() {
+            return enabled;
+        }
+        
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        public int getSlotSeconds() {
+            return slotSeconds;
+        }
+        
+        public void setSlotSeconds(int slotSeconds) {
+            this.slotSeconds = slotSeconds;
+        }
+        
+        public int getSlots() {
+            return slots;
+        }
+        
+        public void setSlots(int slots) {
+            this.slots = slots;
+        }
+        
+        public int getSketchDepth() {
+            return sketchDepth;
+        }
+        
+        public void setSketchDepth(int sketchDepth) {
+            this.sketchDepth = sketchDepth;
+        }
+        
+        public int getSketchWidth() {
+            return sketchWidth;
+        }
+        
+        public void setSketchWidth(int sketchWidth) {
+            this.sketchWidth = sketchWidth;
+        }
+        
+        public int getCandidates() {
+            return candidates;
+        }
+        
+        public void setCandidates(int candidates) {
+            this.candidates = candidates;
+        }
+    }
+}
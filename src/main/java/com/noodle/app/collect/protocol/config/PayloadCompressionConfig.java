@@ -0,0 +1,109 @@
+package com.noodle.app.collect.protocol.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 压缩消息解压配置
+ *
+ * 按主题过滤器指定解压方式，服务端拦截器和MQTT客户端共用。
+ * auto表示先看主题后缀（如 sensor/dev1/data/gz），再看负载的魔数。
+ */
+@Component
+@ConfigurationProperties(prefix = "mqtt.compression")
+public class PayloadCompressionConfig {
+
+    /**
+     * 是否启用解压
+     */
+    private boolean enabled = false;
+
+    /**
+     * 解压后的最大字节数，超过时丢弃消息
+     */
+    private int maxDecompressedSize = 1024 * 1024;
+
+    /**
+     * 是否识别主题末级的压缩后缀（gz、gzip、deflate、lz4、zst、zstd），识别后从主题中去掉
+     */
+    private boolean topicSuffix = true;
+
+    /**
+     * 解压规则，为空时对所有主题使用auto
+     */
+    private List<Rule> rules = new ArrayList<>();
+
+    /**
+     * 解压规则
+     */
+    public static class Rule {
+        /**
+         * 主题过滤器，支持 + 和 #
+         */
+        private String topic;
+        /**
+         * 解压方式: auto, none, gzip, deflate, lz4, zstd
+         */
+        private String codec = "auto";
+
+        public Rule() {}
+
+        public Rule(String topic, String codec) {
+            this.topic = topic;
+            this.codec = codec;
+        }
+
+        // Getters and Setters
+        public String getTopic() {
+            return topic;
+        }
+
+        public void setTopic(String topic) {
+            this.topic = topic;
+        }
+
+        public String getCodec() {
+            return codec;
+        }
+
+        public void setCodec(String codec) {
+            this.codec = codec;
+        }
+    }
+
+    // Getters and Setters
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxDecompressedSize() {
+        return maxDecompressedSize;
+    }
+
+    public void setMaxDecompressedSize(int maxDecompressedSize) {
+        this.maxDecompressedSize = maxDecompressedSize;
+    }
+
+    public boolean isTopicSuffix() {
+        return topicSuffix;
+    }
+
+    public void setTopicSuffix(boolean topicSuffix) {
+        this.topicSuffix = topicSuffix;
+    }
+
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    public void setRules(List<Rule> rules) {
+        this.rules = rules;
+    }
+}
@@ -0,0 +1,128 @@
+package com.noodle.app.collect.protocol.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 负载解码配置
+ *
+ * 内置解码器：json、cbor、msgpack、protobuf（内置Telemetry定义），
+ * 另外可注册Protobuf消息定义，路由规则中以 protobuf:名称 引用。
+ */
+@Component
+@ConfigurationProperties(prefix = "mqtt.decoders")
+public class PayloadDecoderConfig {
+
+    /**
+     * 负载中的设备ID字段名
+     */
+    private String deviceIdField = "deviceId";
+
+    /**
+     * 负载中的数据字段名（对象或map），没有时取顶层标量字段
+     */
+    private String dataField = "data";
+
+    /**
+     * 负载中的设备时间字段名，不作为数据字段；多个名称用逗号分隔，顶层和数据字段中都可以出现。
+     * 找到时作为数据的时间戳，否则使用接收时间
+     */
+    private String timestampField = "timestamp";
+
+    /**
+     * 设备时间的单位: auto（按数值大小识别）, s, ms, us, ns；秒可以带小数，字符串按ISO-8601解析
+     */
+    private String timestampUnit = "auto";
+
+    /**
+     * 注册的Protobuf消息定义
+     */
+    private List<ProtobufSchema> protobufSchemas = new ArrayList<>();
+
+    /**
+     * Protobuf消息定义
+     */
+    public static class ProtobufSchema {
+        /**
+         * 名称，路由规则中以 protobuf:名称 引用
+         */
+        private String name;
+        /**
+         * 描述符集合文件（protoc --include_imports --descriptor_set_out 生成）
+         */
+        private String descriptorFile;
+        /**
+         * 消息全名，如 com.example.MeterReading
+         */
+        private String messageType;
+
+        // Getters and Setters
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getDescriptorFile() {
+            return descriptorFile;
+        }
+
+        public void setDescriptorFile(String descriptorFile) {
+            this.descriptorFile = descriptorFile;
+        }
+
+        public String getMessageType() {
+            return messageType;
+        }
+
+        public void setMessageType(String messageType) {
+            this.messageType = messageType;
+        }
+    }
+
+    // Getters and Setters
+    public String getDeviceIdField() {
+        return deviceIdField;
+    }
+
+    public void setDeviceIdField(String deviceIdField) {
+        this.deviceIdField = deviceIdField;
+    }
+
+    public String getDataField() {
+        return dataField;
+    }
+
+    public void setDataField(String dataField) {
+        this.dataField = dataField;
+    }
+
+    public String getTimestampField() {
+        return timestampField;
+    }
+
+    public void setTimestampField(String timestampField) {
+        this.timestampField = timestampField;
+    }
+
+    public String getTimestampUnit() {
+        return timestampUnit;
+    }
+
+    public void setTimestampUnit(String timestampUnit) {
+        this.timestampUnit = timestampUnit;
+    }
+
+    public List<ProtobufSchema> getProtobufSchemas() {
+        return protobufSchemas;
+    }
+
+    public void setProtobufSchemas(List<ProtobufSchema> protobufSchemas) {
+        this.protobufSchemas = protobufSchemas;
+    }
+}
@@ -0,0 +1,129 @@
+package com.noodle.app.collect.protocol.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 主题路由配置
+ *
+ * 每条路由由主题模板（如 sensor/{deviceId}/{metric}）、解码器和存储目标组成，
+ * 启动时加载，运行期可通过 /api/routes 接口热更新。
+ */
+@Component
+@ConfigurationProperties(prefix = "mqtt.routing")
+public class TopicRouteConfig {
+
+    /**
+     * 未命中任何路由时使用的解码器
+     */
+    private String defaultDecoder = "json";
+
+    /**
+     * 路由规则列表
+     */
+    private List<RouteRule> rules = new ArrayList<>();
+
+    /**
+     * 路由规则
+     */
+    public static class RouteRule {
+        /**
+         * 规则名称
+         */
+        private String name;
+        /**
+         * 主题模板，支持 {变量}、+ 和 #
+         */
+        private String topic;
+        /**
+         * 解码器: json, cbor, msgpack, protobuf, protobuf:{注册的消息定义名}
+         */
+        private String decoder = "json";
+        /**
+         * 存储目标（存储类型），为空表示默认存储
+         */
+        private String storage;
+        private boolean enabled = true;
+
+        public RouteRule() {}
+
+        public RouteRule(String name, String topic, String decoder, String storage) {
+            this.name = name;
+            this.topic = topic;
+            this.decoder = decoder;
+            this.storage = storage;
+        }
+
+        // Getters and Setters
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public void setTopic(String topic) {
+            this.topic = topic;
+        }
+
+        public String getDecoder() {
+            return decoder;
+        }
+
+        public void setDecoder(String decoder) {
+            this.decoder = decoder;
+        }
+
+        public String getStorage() {
+            return storage;
+        }
+
+        public void setStorage(String storage) {
+            this.storage = storage;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        @Override
+        public String toString() {
+            return "RouteRule{" +
+                    "name='" + name + '\'' +
+                    ", topic='" + topic + '\'' +
+                    ", decoder='" + decoder + '\'' +
+                    ", storage='" + storage + '\'' +
+                    ", enabled=" + enabled +
+                    '}';
+        }
+    }
+
+    // Getters and Setters
+    public String getDefaultDecoder() {
+        return defaultDecoder;
+    }
+
+    public void setDefaultDecoder(String defaultDecoder) {
+        this.defaultDecoder = defaultDecoder;
+    }
+
+    public List<RouteRule> getRules() {
+        return rules;
+    }
+
+    public void setRules(List<RouteRule> rules) {
+        this.rules = rules;
+    }
+}
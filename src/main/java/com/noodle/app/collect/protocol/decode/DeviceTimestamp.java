@@ -0,0 +1,47 @@
+package com.noodle.app.collect.protocol.decode;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.noodle.app.collect.protocol.config.PayloadDecoderConfig;
+
+/**
+ * 负载中设备时间字段的识别和转换，各解码器共用
+ */
+final class DeviceTimestamp {
+
+    private final Set<String> fields = new HashSet<>();
+    private final TimestampUnit unit;
+
+    DeviceTimestamp(PayloadDecoderConfig config) {
+        if (config.getTimestampField() != null) {
+            for (String name : config.getTimestampField().split(",")) {
+                if (!name.trim().isEmpty()) {
+                    fields.add(name.trim());
+                }
+            }
+        }
+        this.unit = TimestampUnit.fromName(config.getTimestampUnit());
+    }
+
+    boolean isField(String name) {
+        return fields.contains(name);
+    }
+
+    /**
+     * 整数、小数或字符串时间转换为Instant，无法识别时返回null
+     */
+    Instant toInstant(Object value) {
+        if (value instanceof Long || value instanceof Integer) {
+            return unit.toInstant(((Number) value).longValue());
+        }
+        if (value instanceof Number) {
+            return unit.toInstant(((Number) value).doubleValue());
+        }
+        if (value instanceof String) {
+            return unit.parse(((String) value).trim());
+        }
+        return null;
+    }
+}
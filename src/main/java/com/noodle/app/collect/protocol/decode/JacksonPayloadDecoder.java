@@ -0,0 +1,147 @@
+package com.noodle.app.collect.protocol.decode;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.noodle.app.collect.protocol.config.PayloadDecoderConfig;
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * 基于Jackson流式解析的解码器，用于JSON、CBOR和MessagePack
+ *
+ * 负载约定为对象：设备ID字段可选，字段值取自数据字段（对象）；
+ * 没有数据字段时取顶层除设备时间外的标量字段。设备时间可以在顶层或数据字段中，
+ * 找到时替换数据的接收时间。只做一次流式遍历，不构建树。
+ */
+public class JacksonPayloadDecoder implements PayloadDecoder {
+
+    private final String name;
+    private final JsonFactory factory;
+    private final boolean binary;
+    private final String deviceIdField;
+    private final String dataField;
+    private final DeviceTimestamp timestamp;
+
+    public JacksonPayloadDecoder(String name, JsonFactory factory, boolean binary, PayloadDecoderConfig config) {
+        this.name = name;
+        this.factory = factory;
+        this.binary = binary;
+        this.deviceIdField = config.getDeviceIdField();
+        this.dataField = config.getDataField();
+        this.timestamp = new DeviceTimestamp(config);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isBinary() {
+        return binary;
+    }
+
+    @Override
+    public boolean decode(byte[] payload, ProtocolData data) throws IOException {
+        try (JsonParser parser = factory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return false;
+            }
+            Map<String, Object> topLevel = new HashMap<>();
+            Map<String, Object> fields = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_OBJECT) {
+                    if (dataField.equals(field)) {
+                        fields = readObject(parser, data);
+                    } else {
+                        parser.skipChildren();
+                    }
+                } else if (token == JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                } else if (deviceIdField.equals(field)) {
+                    if (token != JsonToken.VALUE_NULL) {
+                        data.setDeviceId(parser.getValueAsString());
+                    }
+                } else if (timestamp.isField(field)) {
+                    readTimestamp(parser, token, data);
+                } else {
+                    putScalar(topLevel, field, parser, token);
+                }
+            }
+            fields = fields != null ? fields : topLevel;
+            if (fields.isEmpty()) {
+                return false;
+            }
+            data.setFields(fields);
+            return true;
+        }
+    }
+
+    private Map<String, Object> readObject(JsonParser parser, ProtocolData data) throws IOException {
+        Map<String, Object> fields = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                parser.skipChildren();
+            } else if (timestamp.isField(field)) {
+                readTimestamp(parser, token, data);
+            } else {
+                putScalar(fields, field, parser, token);
+            }
+        }
+        return fields;
+    }
+
+    private void readTimestamp(JsonParser parser, JsonToken token, ProtocolData data) throws IOException {
+        Object value;
+        switch (token) {
+            case VALUE_NUMBER_INT:
+                value = parser.getLongValue();
+                break;
+            case VALUE_NUMBER_FLOAT:
+                value = parser.getDoubleValue();
+                break;
+            case VALUE_STRING:
+                value = parser.getText();
+                break;
+            default:
+                return;
+        }
+        Instant instant = timestamp.toInstant(value);
+        if (instant != null) {
+            data.setTimestamp(instant);
+        }
+    }
+
+    private static void putScalar(Map<String, Object> fields, String field, JsonParser parser, JsonToken token)
+            throws IOException {
+        switch (token) {
+            case VALUE_NUMBER_INT:
+                fields.put(field, parser.getLongValue());
+                break;
+            case VALUE_NUMBER_FLOAT:
+                fields.put(field, parser.getDoubleValue());
+                break;
+            case VALUE_TRUE:
+                fields.put(field, Boolean.TRUE);
+                break;
+            case VALUE_FALSE:
+                fields.put(field, Boolean.FALSE);
+                break;
+            case VALUE_STRING:
+                fields.put(field, parser.getText());
+                break;
+            default:
+                // null和二进制值忽略
+                break;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.noodle.app.collect.protocol.decode;
+
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * 负载解码器
+ *
+ * 各种格式统一解码为字段名到值的映射（{@link ProtocolData#getFields()}），
+ * 值为Long、Double、Boolean或String。
+ */
+public interface PayloadDecoder {
+
+    /**
+     * 解码器名称，与路由规则的decoder对应
+     */
+    String getName();
+
+    /**
+     * 是否为二进制格式，二进制格式不保留原始文本
+     */
+    boolean isBinary();
+
+    /**
+     * 解码负载，设置字段值以及负载中携带的设备ID
+     *
+     * @return 负载结构不符合约定时返回false
+     */
+    boolean decode(byte[] payload, ProtocolData data) throws Exception;
+}
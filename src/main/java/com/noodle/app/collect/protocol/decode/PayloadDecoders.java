@@ -0,0 +1,160 @@
+package com.noodle.app.collect.protocol.decode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.noodle.app.collect.protocol.config.PayloadDecoderConfig;
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * 负载解码器注册表
+ *
+ * 按路由选定的解码器名称解码消息。文本格式保留原始字符串，
+ * 二进制格式只保留解码后的字段值。解码失败时字段为空，原始数据照常入库。
+ */
+@Component
+public class PayloadDecoders {
+
+    private static final Logger logger = LoggerFactory.getLogger(PayloadDecoders.class);
+
+    public static final String JSON = "json";
+    public static final String CBOR = "cbor";
+    public static final String MSGPACK = "msgpack";
+    public static final String PROTOBUF = "protobuf";
+    public static final String PROTOBUF_PREFIX = "protobuf:";
+
+    @Autowired
+    private PayloadDecoderConfig config;
+
+    private final Map<String, Registered> decoders = new ConcurrentHashMap<>();
+    private final LongAdder unknownDecoder = new LongAdder();
+
+    public PayloadDecoders() {
+    }
+
+    public PayloadDecoders(PayloadDecoderConfig config) {
+        this.config = config;
+        initialize();
+    }
+
+    @PostConstruct
+    public void initialize() {
+        register(new JacksonPayloadDecoder(JSON, new JsonFactory(), false, config));
+        register(new JacksonPayloadDecoder(CBOR, new CBORFactory(), true, config));
+        register(new JacksonPayloadDecoder(MSGPACK, new MessagePackFactory(), true, config));
+        register(new ProtobufPayloadDecoder(PROTOBUF, ProtobufPayloadDecoder.telemetryDescriptor(), config));
+        if (config.getProtobufSchemas() != null) {
+            for (PayloadDecoderConfig.ProtobufSchema schema : config.getProtobufSchemas()) {
+                try {
+                    ProtobufPayloadDecoder decoder = new ProtobufPayloadDecoder(PROTOBUF_PREFIX + schema.getName(),
+                            ProtobufPayloadDecoder.loadDescriptor(schema.getDescriptorFile(), schema.getMessageType()),
+                            config);
+                    register(decoder);
+                    logger.info("Registered protobuf schema {}: {}", schema.getName(), decoder.getMessageType());
+                } catch (Exception e) {
+                    logger.error("Failed to load protobuf schema {} from {}: {}",
+                            schema.getName(), schema.getDescriptorFile(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 注册解码器，同名时替换
+     */
+    public void register(PayloadDecoder decoder) {
+        decoders.put(decoder.getName(), new Registered(decoder));
+    }
+
+    public boolean contains(String name) {
+        return decoders.containsKey(name);
+    }
+
+    public Set<String> getNames() {
+        return decoders.keySet();
+    }
+
+    /**
+     * 按data.getDecoder()解码负载，设置orgData、fields和负载中的设备ID
+     *
+     * @return 是否解码出字段值
+     */
+    public boolean decode(ProtocolData data, byte[] payload) {
+        String name = data.getDecoder() != null ? data.getDecoder() : JSON;
+        Registered registered = decoders.get(name);
+        if (registered == null) {
+            unknownDecoder.increment();
+            data.setOrgData(new String(payload, StandardCharsets.UTF_8));
+            logger.debug("Unknown decoder {} for topic {}", name, data.getAddress());
+            return false;
+        }
+        PayloadDecoder decoder = registered.decoder;
+        if (!decoder.isBinary()) {
+            data.setOrgData(new String(payload, StandardCharsets.UTF_8));
+        }
+        long start = System.nanoTime();
+        try {
+            boolean decoded = decoder.decode(payload, data);
+            registered.record(decoded, payload.length, System.nanoTime() - start);
+            return decoded;
+        } catch (Exception e) {
+            registered.record(false, payload.length, System.nanoTime() - start);
+            logger.debug("Failed to decode {} payload on topic {}: {}", name, data.getAddress(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        for (Map.Entry<String, Registered> entry : decoders.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        stats.put("unknownDecoder", unknownDecoder.sum());
+        return stats;
+    }
+
+    private static class Registered {
+        private final PayloadDecoder decoder;
+        private final LongAdder decoded = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        Registered(PayloadDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        void record(boolean success, int payloadBytes, long elapsedNanos) {
+            (success ? decoded : failed).increment();
+            bytes.add(payloadBytes);
+            nanos.add(elapsedNanos);
+        }
+
+        Map<String, Object> snapshot() {
+            long count = decoded.sum() + failed.sum();
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("decoded", decoded.sum());
+            stats.put("failed", failed.sum());
+            stats.put("avgPayloadBytes", count > 0 ? bytes.sum() / count : 0);
+            stats.put("avgDecodeMicros", count > 0 ? Math.round(nanos.sum() / 100.0 / count) / 10.0 : 0.0);
+            return stats;
+        }
+    }
+}
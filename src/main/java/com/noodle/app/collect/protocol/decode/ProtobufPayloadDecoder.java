@@ -0,0 +1,232 @@
+package com.noodle.app.collect.protocol.decode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.noodle.app.collect.protocol.config.PayloadDecoderConfig;
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * 按注册的Protobuf消息定义解码
+ *
+ * 设备ID字段取字符串值；map字段的每个条目和顶层除设备时间外的标量字段作为字段值，
+ * 名为数据字段的嵌套消息展开其标量字段。设备时间可以是整数、小数、字符串或
+ * google.protobuf.Timestamp结构（seconds、nanos）。内置的Telemetry定义见 proto/telemetry.proto。
+ */
+public class ProtobufPayloadDecoder implements PayloadDecoder {
+
+    private final String name;
+    private final Descriptors.Descriptor descriptor;
+    private final String deviceIdField;
+    private final String dataField;
+    private final DeviceTimestamp timestamp;
+
+    public ProtobufPayloadDecoder(String name, Descriptors.Descriptor descriptor, PayloadDecoderConfig config) {
+        this.name = name;
+        this.descriptor = descriptor;
+        this.deviceIdField = config.getDeviceIdField();
+        this.dataField = config.getDataField();
+        this.timestamp = new DeviceTimestamp(config);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isBinary() {
+        return true;
+    }
+
+    public String getMessageType() {
+        return descriptor.getFullName();
+    }
+
+    @Override
+    public boolean decode(byte[] payload, ProtocolData data) throws IOException {
+        DynamicMessage message = DynamicMessage.parseFrom(descriptor, payload);
+        Map<String, Object> fields = new HashMap<>();
+        for (Descriptors.FieldDescriptor field : descriptor.getFields()) {
+            if (field.isMapField()) {
+                readMap(message, field, fields);
+            } else if (field.isRepeated()) {
+                continue;
+            } else if (isTimestamp(field)) {
+                readTimestamp(message.getField(field), data);
+            } else if (field.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE) {
+                if (message.hasField(field) && isField(field, dataField)) {
+                    DynamicMessage nested = (DynamicMessage) message.getField(field);
+                    for (Descriptors.FieldDescriptor nestedField : field.getMessageType().getFields()) {
+                        if (isTimestamp(nestedField)) {
+                            readTimestamp(nested.getField(nestedField), data);
+                        } else {
+                            putScalar(fields, nestedField.getName(), nested.getField(nestedField));
+                        }
+                    }
+                }
+            } else if (isField(field, deviceIdField)) {
+                String deviceId = String.valueOf(message.getField(field));
+                if (!deviceId.isEmpty()) {
+                    data.setDeviceId(deviceId);
+                }
+            } else {
+                putScalar(fields, field.getName(), message.getField(field));
+            }
+        }
+        if (fields.isEmpty()) {
+            return false;
+        }
+        data.setFields(fields);
+        return true;
+    }
+
+    /**
+     * 字段名同时按proto名称（device_id）和JSON名称（deviceId）比较
+     */
+    private static boolean isField(Descriptors.FieldDescriptor field, String name) {
+        return name.equals(field.getName()) || name.equals(field.getJsonName());
+    }
+
+    private boolean isTimestamp(Descriptors.FieldDescriptor field) {
+        return timestamp.isField(field.getName()) || timestamp.isField(field.getJsonName());
+    }
+
+    /**
+     * proto3标量字段没有是否设置的区别，值为0或空字符串时视为没有携带设备时间
+     */
+    private void readTimestamp(Object value, ProtocolData data) {
+        Instant instant;
+        if (value instanceof DynamicMessage) {
+            DynamicMessage message = (DynamicMessage) value;
+            Descriptors.FieldDescriptor seconds = message.getDescriptorForType().findFieldByName("seconds");
+            Descriptors.FieldDescriptor nanos = message.getDescriptorForType().findFieldByName("nanos");
+            if (seconds == null || !message.hasField(seconds)) {
+                return;
+            }
+            instant = Instant.ofEpochSecond(((Number) message.getField(seconds)).longValue(),
+                    nanos != null ? ((Number) message.getField(nanos)).longValue() : 0);
+        } else if (value instanceof Number && ((Number) value).doubleValue() == 0 || "".equals(value)) {
+            return;
+        } else {
+            instant = timestamp.toInstant(value);
+        }
+        if (instant != null) {
+            data.setTimestamp(instant);
+        }
+    }
+
+    private static void readMap(DynamicMessage message, Descriptors.FieldDescriptor field, Map<String, Object> fields) {
+        Descriptors.FieldDescriptor keyField = field.getMessageType().findFieldByNumber(1);
+        Descriptors.FieldDescriptor valueField = field.getMessageType().findFieldByNumber(2);
+        for (Object entry : (List<?>) message.getField(field)) {
+            DynamicMessage mapEntry = (DynamicMessage) entry;
+            putScalar(fields, String.valueOf(mapEntry.getField(keyField)), mapEntry.getField(valueField));
+        }
+    }
+
+    private static void putScalar(Map<String, Object> fields, String name, Object value) {
+        if (value instanceof Integer) {
+            fields.put(name, ((Integer) value).longValue());
+        } else if (value instanceof Float) {
+            fields.put(name, ((Float) value).doubleValue());
+        } else if (value instanceof Long || value instanceof Double || value instanceof Boolean || value instanceof String) {
+            fields.put(name, value);
+        } else if (value instanceof Descriptors.EnumValueDescriptor) {
+            fields.put(name, ((Descriptors.EnumValueDescriptor) value).getName());
+        }
+    }
+
+    /**
+     * 内置遥测消息定义
+     * <pre>
+     * message Telemetry {
+     *   string device_id = 1;
+     *   int64 timestamp = 2;
+     *   map&lt;string, double&gt; data = 3;
+     * }
+     * </pre>
+     */
+    public static Descriptors.Descriptor telemetryDescriptor() {
+        DescriptorProtos.DescriptorProto dataEntry = DescriptorProtos.DescriptorProto.newBuilder()
+                .setName("DataEntry")
+                .setOptions(DescriptorProtos.MessageOptions.newBuilder().setMapEntry(true))
+                .addField(scalar("key", 1, DescriptorProtos.FieldDescriptorProto.Type.TYPE_STRING))
+                .addField(scalar("value", 2, DescriptorProtos.FieldDescriptorProto.Type.TYPE_DOUBLE))
+                .build();
+        DescriptorProtos.DescriptorProto telemetry = DescriptorProtos.DescriptorProto.newBuilder()
+                .setName("Telemetry")
+                .addField(scalar("device_id", 1, DescriptorProtos.FieldDescriptorProto.Type.TYPE_STRING))
+                .addField(scalar("timestamp", 2, DescriptorProtos.FieldDescriptorProto.Type.TYPE_INT64))
+                .addField(DescriptorProtos.FieldDescriptorProto.newBuilder()
+                        .setName("data")
+                        .setNumber(3)
+                        .setLabel(DescriptorProtos.FieldDescriptorProto.Label.LABEL_REPEATED)
+                        .setType(DescriptorProtos.FieldDescriptorProto.Type.TYPE_MESSAGE)
+                        .setTypeName(".noodle.telemetry.Telemetry.DataEntry"))
+                .addNestedType(dataEntry)
+                .build();
+        DescriptorProtos.FileDescriptorProto file = DescriptorProtos.FileDescriptorProto.newBuilder()
+                .setName("noodle/telemetry.proto")
+                .setPackage("noodle.telemetry")
+                .setSyntax("proto3")
+                .addMessageType(telemetry)
+                .build();
+        try {
+            return Descriptors.FileDescriptor.buildFrom(file, new Descriptors.FileDescriptor[0])
+                    .findMessageTypeByName("Telemetry");
+        } catch (Descriptors.DescriptorValidationException e) {
+            throw new IllegalStateException("Invalid built-in telemetry descriptor", e);
+        }
+    }
+
+    private static DescriptorProtos.FieldDescriptorProto scalar(String name, int number,
+                                                                DescriptorProtos.FieldDescriptorProto.Type type) {
+        return DescriptorProtos.FieldDescriptorProto.newBuilder()
+                .setName(name)
+                .setNumber(number)
+                .setLabel(DescriptorProtos.FieldDescriptorProto.Label.LABEL_OPTIONAL)
+                .setType(type)
+                .build();
+    }
+
+    /**
+     * 从描述符集合文件（protoc --include_imports --descriptor_set_out）加载消息定义
+     */
+    public static Descriptors.Descriptor loadDescriptor(String descriptorFile, String messageType)
+            throws IOException, Descriptors.DescriptorValidationException {
+        DescriptorProtos.FileDescriptorSet descriptorSet;
+        try (InputStream in = Files.newInputStream(Paths.get(descriptorFile))) {
+            descriptorSet = DescriptorProtos.FileDescriptorSet.parseFrom(in);
+        }
+        // --include_imports输出的文件按依赖顺序排列
+        Map<String, Descriptors.FileDescriptor> built = new HashMap<>();
+        for (DescriptorProtos.FileDescriptorProto file : descriptorSet.getFileList()) {
+            Descriptors.FileDescriptor[] dependencies = new Descriptors.FileDescriptor[file.getDependencyCount()];
+            for (int i = 0; i < dependencies.length; i++) {
+                dependencies[i] = built.get(file.getDependency(i));
+                if (dependencies[i] == null) {
+                    throw new IllegalArgumentException("Missing dependency " + file.getDependency(i)
+                            + " in " + descriptorFile + ", generate it with --include_imports");
+                }
+            }
+            Descriptors.FileDescriptor fileDescriptor = Descriptors.FileDescriptor.buildFrom(file, dependencies);
+            built.put(file.getName(), fileDescriptor);
+            for (Descriptors.Descriptor type : fileDescriptor.getMessageTypes()) {
+                if (type.getFullName().equals(messageType)) {
+                    return type;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Message type " + messageType + " not found in " + descriptorFile);
+    }
+}
@@ -0,0 +1,117 @@
+package com.noodle.app.collect.protocol.decode;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * 负载中设备时间的单位
+ */
+public enum TimestampUnit {
+
+    /** 按数值大小识别：小于1e11为秒，小于1e14为毫秒，小于1e17为微秒，否则为纳秒 */
+    AUTO(0),
+    /** 秒，可以带小数 */
+    S(1_000_000_000L),
+    /** 毫秒 */
+    MS(1_000_000L),
+    /** 微秒 */
+    US(1_000L),
+    /** 纳秒 */
+    NS(1L);
+
+    private final long nanosPerUnit;
+
+    TimestampUnit(long nanosPerUnit) {
+        this.nanosPerUnit = nanosPerUnit;
+    }
+
+    /**
+     * 按配置名称解析，不区分大小写
+     */
+    public static TimestampUnit fromName(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return AUTO;
+        }
+        switch (name.trim().toLowerCase()) {
+            case "s":
+            case "second":
+            case "seconds":
+                return S;
+            case "ms":
+            case "millis":
+            case "milliseconds":
+                return MS;
+            case "us":
+            case "micros":
+            case "microseconds":
+                return US;
+            case "ns":
+            case "nanos":
+            case "nanoseconds":
+                return NS;
+            default:
+                return valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    private TimestampUnit resolve(double magnitude) {
+        if (this != AUTO) {
+            return this;
+        }
+        magnitude = Math.abs(magnitude);
+        if (magnitude < 1e11) {
+            return S;
+        }
+        if (magnitude < 1e14) {
+            return MS;
+        }
+        return magnitude < 1e17 ? US : NS;
+    }
+
+    /**
+     * 整数时间戳转换为Instant，保留到纳秒
+     */
+    public Instant toInstant(long value) {
+        long nanosPerUnit = resolve(value).nanosPerUnit;
+        long unitsPerSecond = 1_000_000_000L / nanosPerUnit;
+        return Instant.ofEpochSecond(Math.floorDiv(value, unitsPerSecond),
+                Math.floorMod(value, unitsPerSecond) * nanosPerUnit);
+    }
+
+    /**
+     * 带小数的时间戳（如 1718000000.125 秒）转换为Instant，小数部分四舍五入到纳秒
+     */
+    public Instant toInstant(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return null;
+        }
+        TimestampUnit unit = resolve(value);
+        double whole = Math.floor(value);
+        long nanos = Math.round((value - whole) * unit.nanosPerUnit);
+        return unit.toInstant((long) whole).plusNanos(nanos);
+    }
+
+    /**
+     * 解析字符串时间戳：数字按单位转换，否则按ISO-8601（带时区偏移）解析，无法解析时返回null
+     */
+    public Instant parse(String text) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        char first = text.charAt(0);
+        if (first == '-' || (first >= '0' && first <= '9' && text.indexOf('T') < 0 && text.indexOf(':') < 0)) {
+            try {
+                return text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0
+                        ? toInstant(Long.parseLong(text)) : toInstant(Double.parseDouble(text));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        try {
+            return OffsetDateTime.parse(text).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.noodle.app.collect.protocol.dedup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.noodle.app.collect.protocol.config.DedupConfig;
+
+/**
+ * 重复消息抑制
+ *
+ * 指纹为主题和原始负载的64位哈希，写入{@link TimeBucketedBloomFilter}。
+ * 不使用报文标识符：它在确认后就会被客户端复用，而客户端应用层重试时会换新的标识符，
+ * 主题加负载对QoS 1重发和应用层重试都有效。也不含客户端ID，
+ * 外部客户端模式回环订阅内置服务器时，同一条消息经两条路径到达也只入库一次。
+ * 服务端在拦截器线程、客户端在回调线程中调用，每条消息为一次负载哈希和若干次位操作。
+ */
+@Component
+public class DuplicateFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DuplicateFilter.class);
+
+    @Autowired
+    private DedupConfig config;
+
+    private volatile TimeBucketedBloomFilter filter;
+    private final LongAdder checked = new LongAdder();
+    private final LongAdder suppressed = new LongAdder();
+
+    public DuplicateFilter() {
+    }
+
+    public DuplicateFilter(DedupConfig config) {
+        this.config = config;
+        initialize();
+    }
+
+    @PostConstruct
+    public void initialize() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        filter = new TimeBucketedBloomFilter(TimeUnit.SECONDS.toMillis(config.getWindowSeconds()),
+                config.getBuckets(), config.getExpectedMessages(), config.getFalsePositiveRate());
+        logger.info("重复消息抑制已启用: 窗口={}秒, 分桶={}, 每桶{}位, 哈希函数{}个, 内存{}KB",
+                config.getWindowSeconds(), config.getBuckets(), filter.getBitsPerBucket(), filter.getHashes(),
+                filter.memoryBytes() / 1024);
+    }
+
+    public boolean isEnabled() {
+        return filter != null;
+    }
+
+    /**
+     * 窗口内是否已收到过主题和负载都相同的消息，未启用时总是返回false
+     */
+    public boolean isDuplicate(String topic, byte[] payload) {
+        TimeBucketedBloomFilter current = filter;
+        if (current == null) {
+            return false;
+        }
+        checked.increment();
+        if (current.checkAndPut(fingerprint(topic, payload), System.currentTimeMillis())) {
+            suppressed.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 与isDuplicate相同，但不记录这条消息
+     *
+     * 消息没有入库、也不确认时不能记录，否则服务器重新投递的那一次会被当成重复丢掉；
+     * 入库后再调用{@link #record}。
+     */
+    public boolean isRecorded(String topic, byte[] payload) {
+        TimeBucketedBloomFilter current = filter;
+        if (current == null) {
+            return false;
+        }
+        checked.increment();
+        if (current.mightContain(fingerprint(topic, payload), System.currentTimeMillis())) {
+            suppressed.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 记录已入库的消息，窗口内再收到相同的消息时判为重复
+     */
+    public void record(String topic, byte[] payload) {
+        TimeBucketedBloomFilter current = filter;
+        if (current != null) {
+            current.put(fingerprint(topic, payload), System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 主题和负载的64位哈希，主题与负载之间插入分隔值，避免边界不同的两条消息得到相同的输入序列
+     */
+    static long fingerprint(String topic, byte[] payload) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < topic.length(); i++) {
+            h = (h ^ topic.charAt(i)) * 0x100000001B3L;
+        }
+        h = (h ^ 0x10000) * 0x100000001B3L;
+        for (byte b : payload) {
+            h = (h ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        h ^= payload.length;
+        // murmur3 fmix64
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1A85EC5L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        TimeBucketedBloomFilter current = filter;
+        stats.put("enabled", current != null);
+        if (current == null) {
+            return stats;
+        }
+        long checkedCount = checked.sum();
+        long suppressedCount = suppressed.sum();
+        stats.put("checked", checkedCount);
+        stats.put("suppressed", suppressedCount);
+        stats.put("suppressedRatio", checkedCount > 0 ? Math.round(suppressedCount * 10000.0 / checkedCount) / 10000.0 : 0.0);
+        stats.put("windowSeconds", current.getWindowMillis() / 1000);
+        stats.put("targetFalsePositiveRate", config.getFalsePositiveRate());
+        stats.put("estimatedFalsePositiveRate", current.estimatedFalsePositiveRate(System.currentTimeMillis()));
+        stats.put("memoryBytes", current.memoryBytes());
+        return stats;
+    }
+}
@@ -0,0 +1,183 @@
+package com.noodle.app.collect.protocol.dedup;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按时间分桶的布隆过滤器
+ *
+ * 窗口分成buckets个等长的桶，指纹写入当前时间所在的桶，查询时检查仍在窗口内的所有桶；
+ * 桶过期后整体清零复用，所以指纹在写入后保留 (buckets - 1) × 桶时长 到 buckets × 桶时长。
+ * 每个桶按 expectedInsertions / buckets 个指纹、falsePositiveRate / buckets 的误判率分配位数，
+ * 窗口内的总误判率不超过falsePositiveRate；内存只与这两个参数有关，与消息数无关。
+ *
+ * 位数组用AtomicLongArray按位CAS设置，多个线程可同时写入。桶轮换时的清零与并发写入不加锁，
+ * 轮换瞬间写入的少量指纹可能丢失，只会漏判重复，不会误判。
+ */
+public class TimeBucketedBloomFilter {
+
+    private static final double LN2 = Math.log(2);
+    private static final int MAX_HASHES = 16;
+
+    private final long bucketMillis;
+    private final int bits;
+    private final int hashes;
+    private final Bucket[] buckets;
+
+    /**
+     * @param windowMillis 窗口时长（毫秒）
+     * @param bucketCount 桶数
+     * @param expectedInsertions 一个窗口内预计写入的指纹数
+     * @param falsePositiveRate 窗口内的目标误判率
+     */
+    public TimeBucketedBloomFilter(long windowMillis, int bucketCount, long expectedInsertions,
+                                   double falsePositiveRate) {
+        int count = Math.max(1, bucketCount);
+        this.bucketMillis = Math.max(1, windowMillis / count);
+        double perBucket = Math.max(1, (double) expectedInsertions / count);
+        double rate = Math.min(0.5, Math.max(1e-9, falsePositiveRate)) / count;
+        long size = (long) Math.ceil(-perBucket * Math.log(rate) / (LN2 * LN2));
+        this.bits = (int) Math.min(Integer.MAX_VALUE - 63L, Math.max(64, size));
+        this.hashes = (int) Math.min(MAX_HASHES, Math.max(1, Math.round(bits / perBucket * LN2)));
+        this.buckets = new Bucket[count];
+        for (int i = 0; i < count; i++) {
+            buckets[i] = new Bucket((bits + 63) >>> 6);
+        }
+    }
+
+    /**
+     * 窗口内是否已有该指纹，没有时写入当前桶
+     *
+     * 已存在的指纹不重新写入，持续重复的消息在首次出现后一个窗口内被判为重复，之后重新放行一次。
+     *
+     * @return true表示指纹已存在（可能误判）
+     */
+    public boolean checkAndPut(long fingerprint, long nowMillis) {
+        if (mightContain(fingerprint, nowMillis)) {
+            return true;
+        }
+        put(fingerprint, nowMillis);
+        return false;
+    }
+
+    /**
+     * 窗口内是否已有该指纹，不写入
+     *
+     * @return true表示指纹已存在（可能误判）
+     */
+    public boolean mightContain(long fingerprint, long nowMillis) {
+        long epoch = nowMillis / bucketMillis;
+        int h1 = (int) fingerprint;
+        int h2 = (int) (fingerprint >>> 32) | 1;
+        for (Bucket bucket : buckets) {
+            long bucketEpoch = bucket.epoch;
+            if (bucketEpoch <= epoch && bucketEpoch > epoch - buckets.length && bucket.mightContain(h1, h2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 把指纹写入当前时间所在的桶
+     */
+    public void put(long fingerprint, long nowMillis) {
+        long epoch = nowMillis / bucketMillis;
+        Bucket current = buckets[(int) (epoch % buckets.length)];
+        if (current.epoch != epoch) {
+            current.rotate(epoch);
+        }
+        current.put((int) fingerprint, (int) (fingerprint >>> 32) | 1);
+    }
+
+    /**
+     * 按各桶已置位的比例估计当前的误判率
+     */
+    public double estimatedFalsePositiveRate(long nowMillis) {
+        long epoch = nowMillis / bucketMillis;
+        double miss = 1;
+        for (Bucket bucket : buckets) {
+            long bucketEpoch = bucket.epoch;
+            if (bucketEpoch <= epoch && bucketEpoch > epoch - buckets.length) {
+                miss *= 1 - Math.pow((double) bucket.setBits.sum() / bits, hashes);
+            }
+        }
+        return 1 - miss;
+    }
+
+    /**
+     * 窗口时长（毫秒）
+     */
+    public long getWindowMillis() {
+        return bucketMillis * buckets.length;
+    }
+
+    public int getBitsPerBucket() {
+        return bits;
+    }
+
+    public int getHashes() {
+        return hashes;
+    }
+
+    /**
+     * 位数组占用的字节数
+     */
+    public long memoryBytes() {
+        return buckets.length * (long) buckets[0].words.length() * 8L;
+    }
+
+    // 把32位哈希映射到[0, bits)，用乘法代替取模
+    private int index(int hash) {
+        return (int) (((hash & 0xFFFFFFFFL) * bits) >>> 32);
+    }
+
+    private class Bucket {
+        private final AtomicLongArray words;
+        private final LongAdder setBits = new LongAdder();
+        private volatile long epoch = Long.MIN_VALUE;
+
+        Bucket(int words) {
+            this.words = new AtomicLongArray(words);
+        }
+
+        synchronized void rotate(long newEpoch) {
+            if (epoch == newEpoch) {
+                return;
+            }
+            for (int i = 0; i < words.length(); i++) {
+                words.lazySet(i, 0);
+            }
+            setBits.reset();
+            epoch = newEpoch;
+        }
+
+        boolean mightContain(int h1, int h2) {
+            for (int i = 0; i < hashes; i++) {
+                int position = index(h1 + i * h2);
+                if ((words.get(position >>> 6) & (1L << position)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void put(int h1, int h2) {
+            for (int i = 0; i < hashes; i++) {
+                int position = index(h1 + i * h2);
+                int word = position >>> 6;
+                long mask = 1L << position;
+                long value;
+                do {
+                    value = words.get(word);
+                    if ((value & mask) != 0) {
+                        break;
+                    }
+                } while (!words.compareAndSet(word, value, value | mask));
+                if ((value & mask) == 0) {
+                    setBits.increment();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.noodle.app.collect.protocol.limit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.noodle.app.collect.protocol.config.MqttServerConfig;
+import com.noodle.app.collect.protocol.topic.TopicTrie;
+
+/**
+ * 发布限流器
+ *
+ * 在Broker拦截器线程中调用，先检查客户端令牌桶，再检查命中的主题规则令牌桶，
+ * 全程无锁、不分配对象。每个客户端的状态只有令牌桶的两个long和几个标记字段，
+ * 在连接时创建；断开时没有限流记录的客户端直接移除，有记录的按断开顺序排队保留用于排查，
+ * 跟踪的客户端超过上限时从队头清理仍处于断开状态的客户端。
+ */
+public class PublishRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PublishRateLimiter.class);
+
+    private final TokenBucket.Rate clientRate;
+    private final RateLimitAction clientAction;
+    private final TopicTrie<TopicRule> topicRules = new TopicTrie<>();
+    private final List<TopicRule> rules = new ArrayList<>();
+    private final int maxTrackedClients;
+
+    private final Map<String, ClientState> clients = new ConcurrentHashMap<>();
+    // 断开后保留的客户端，每个状态最多排队一次
+    private final ConcurrentLinkedQueue<String> retained = new ConcurrentLinkedQueue<>();
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder[] throttledByAction = new LongAdder[RateLimitAction.values().length];
+
+    public PublishRateLimiter(MqttServerConfig.RateLimitConfig config) {
+        this.clientRate = config.getClientRate() > 0
+                ? new TokenBucket.Rate(config.getClientRate(), config.getClientBurst()) : null;
+        this.clientAction = RateLimitAction.fromName(config.getClientAction());
+        this.maxTrackedClients = Math.max(1, config.getMaxTrackedClients());
+        for (int i = 0; i < throttledByAction.length; i++) {
+            throttledByAction[i] = new LongAdder();
+        }
+        if (config.getTopics() != null) {
+            for (MqttServerConfig.TopicLimit limit : config.getTopics()) {
+                if (limit.getTopic() == null || limit.getRate() <= 0) {
+                    logger.warn("Ignored invalid topic rate limit: topic={}, rate={}", limit.getTopic(), limit.getRate());
+                    continue;
+                }
+                TopicRule rule = new TopicRule(limit.getTopic(),
+                        new TokenBucket.Rate(limit.getRate(), limit.getBurst()),
+                        RateLimitAction.fromName(limit.getAction()));
+                topicRules.add(limit.getTopic(), rule);
+                rules.add(rule);
+            }
+        }
+    }
+
+    /**
+     * 检查一条发布消息
+     *
+     * @return 超限时的处理方式，放行时返回null
+     */
+    public RateLimitAction check(String clientId, String topic) {
+        // 断开后到达的消息不再创建状态，只检查主题规则
+        ClientState client = clients.get(clientId);
+        if (client != null && clientRate != null && !client.tryAcquire(clientRate)) {
+            client.lastThrottledAt = System.currentTimeMillis();
+            throttledByAction[clientAction.ordinal()].increment();
+            return clientAction;
+        }
+        TopicRule rule = topicRules.match(topic, null);
+        if (rule != null && !rule.bucket.tryAcquire(rule.rate)) {
+            if (client != null) {
+                ClientState.TOPIC_THROTTLED.incrementAndGet(client);
+                client.lastThrottledAt = System.currentTimeMillis();
+            }
+            throttledByAction[rule.action.ordinal()].increment();
+            return rule.action;
+        }
+        allowed.increment();
+        return null;
+    }
+
+    /**
+     * 客户端连接
+     */
+    public void onConnect(String clientId) {
+        ClientState client = clients.computeIfAbsent(clientId, id -> new ClientState());
+        client.connected = true;
+        client.disconnectRequested = 0;
+        evict();
+    }
+
+    /**
+     * 客户端断开，没有限流记录时移除状态，否则排队保留
+     */
+    public void onDisconnect(String clientId) {
+        ClientState client = clients.get(clientId);
+        if (client == null) {
+            return;
+        }
+        client.connected = false;
+        if (client.getTotalThrottled() == 0) {
+            clients.remove(clientId, client);
+        } else if (ClientState.QUEUED.compareAndSet(client, 0, 1)) {
+            retained.offer(clientId);
+        }
+        evict();
+    }
+
+    /**
+     * 超过上限时从队头清理已断开的客户端；出队时已重新连接的客户端留到下次断开再排队
+     */
+    private void evict() {
+        String clientId;
+        while (clients.size() > maxTrackedClients && (clientId = retained.poll()) != null) {
+            ClientState client = clients.get(clientId);
+            if (client == null) {
+                continue;
+            }
+            client.queued = 0;
+            if (!client.connected) {
+                clients.remove(clientId, client);
+            }
+        }
+    }
+
+    /**
+     * 标记客户端待断开，同一连接只返回一次true，避免重复断开
+     */
+    public boolean markDisconnect(String clientId) {
+        ClientState client = clients.get(clientId);
+        return client != null && ClientState.DISCONNECT_REQUESTED.compareAndSet(client, 0, 1);
+    }
+
+    /**
+     * 按限流次数排序的客户端
+     */
+    public List<Map<String, Object>> getTopOffenders(int limit) {
+        Comparator<Map.Entry<String, ClientState>> order =
+                Comparator.comparingLong(entry -> entry.getValue().getTotalThrottled());
+        PriorityQueue<Map.Entry<String, ClientState>> top = new PriorityQueue<>(order);
+        for (Map.Entry<String, ClientState> entry : clients.entrySet()) {
+            if (entry.getValue().getTotalThrottled() == 0) {
+                continue;
+            }
+            top.offer(entry);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        List<Map.Entry<String, ClientState>> sorted = new ArrayList<>(top);
+        sorted.sort(Collections.reverseOrder(order));
+        List<Map<String, Object>> offenders = new ArrayList<>();
+        for (Map.Entry<String, ClientState> entry : sorted) {
+            ClientState client = entry.getValue();
+            Map<String, Object> offender = new HashMap<>();
+            offender.put("clientId", entry.getKey());
+            offender.put("throttled", client.getTotalThrottled());
+            offender.put("clientThrottled", client.getThrottled());
+            offender.put("topicThrottled", client.topicThrottled);
+            offender.put("lastThrottledAt", client.lastThrottledAt);
+            offender.put("connected", client.connected);
+            offenders.add(offender);
+        }
+        return offenders;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("allowed", allowed.sum());
+        for (RateLimitAction action : RateLimitAction.values()) {
+            stats.put("throttled_" + action.name().toLowerCase(), throttledByAction[action.ordinal()].sum());
+        }
+        stats.put("trackedClients", clients.size());
+        if (clientRate != null) {
+            stats.put("clientRate", clientRate.getPerSecond());
+            stats.put("clientBurst", clientRate.getBurst());
+        }
+        stats.put("clientAction", clientAction.name());
+        List<Map<String, Object>> topics = new ArrayList<>();
+        for (TopicRule rule : rules) {
+            Map<String, Object> topic = new HashMap<>();
+            topic.put("topic", rule.topic);
+            topic.put("rate", rule.rate.getPerSecond());
+            topic.put("burst", rule.rate.getBurst());
+            topic.put("action", rule.action.name());
+            topic.put("throttled", rule.bucket.getThrottled());
+            topics.add(topic);
+        }
+        stats.put("topics", topics);
+        return stats;
+    }
+
+    /**
+     * 客户端限流状态
+     */
+    private static final class ClientState extends TokenBucket {
+        static final AtomicLongFieldUpdater<ClientState> TOPIC_THROTTLED =
+                AtomicLongFieldUpdater.newUpdater(ClientState.class, "topicThrottled");
+        static final AtomicIntegerFieldUpdater<ClientState> DISCONNECT_REQUESTED =
+                AtomicIntegerFieldUpdater.newUpdater(ClientState.class, "disconnectRequested");
+        static final AtomicIntegerFieldUpdater<ClientState> QUEUED =
+                AtomicIntegerFieldUpdater.newUpdater(ClientState.class, "queued");
+
+        volatile long topicThrottled;
+        volatile long lastThrottledAt;
+        volatile int disconnectRequested;
+        volatile int queued;
+        volatile boolean connected = true;
+
+        long getTotalThrottled() {
+            return getThrottled() + topicThrottled;
+        }
+    }
+
+    /**
+     * 主题限流规则，命中的所有客户端共用一个令牌桶
+     */
+    private static final class TopicRule {
+        private final String topic;
+        private final TokenBucket.Rate rate;
+        private final RateLimitAction action;
+        private final TokenBucket bucket = new TokenBucket();
+
+        TopicRule(String topic, TokenBucket.Rate rate, RateLimitAction action) {
+            this.topic = topic;
+            this.rate = rate;
+            this.action = action;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.noodle.app.collect.protocol.limit;
+
+/**
+ * 超过速率限制时的处理方式
+ */
+public enum RateLimitAction {
+
+    /** 不入库（Broker仍按MQTT语义转发给订阅者） */
+    DROP,
+    /** 断开客户端连接 */
+    DISCONNECT,
+    /** 进入低优先级队列，主队列空闲时才处理 */
+    LOW_PRIORITY;
+
+    /**
+     * 按配置名称解析，如 drop、disconnect、low-priority
+     */
+    public static RateLimitAction fromName(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return DROP;
+        }
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
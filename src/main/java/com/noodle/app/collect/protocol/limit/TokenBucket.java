@@ -0,0 +1,81 @@
+package com.noodle.app.collect.protocol.limit;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * 无锁令牌桶
+ *
+ * 采用GCRA（通用信元速率算法）：只保存理论到达时间tat一个long，
+ * 每次请求把tat推进一个发放间隔，tat超前当前时间不超过burst个间隔时放行。
+ * 等价于速率为rate、容量为burst的令牌桶，状态更新为一次CAS，不需要锁和后台补充线程。
+ * 速率参数由{@link Rate}共享，每个桶只有两个long字段，客户端会话状态直接继承本类以省去一层对象。
+ */
+public class TokenBucket {
+
+    private static final AtomicLongFieldUpdater<TokenBucket> TAT =
+            AtomicLongFieldUpdater.newUpdater(TokenBucket.class, "tat");
+    private static final AtomicLongFieldUpdater<TokenBucket> THROTTLED =
+            AtomicLongFieldUpdater.newUpdater(TokenBucket.class, "throttled");
+
+    // 以类加载时刻为原点，保证时间非负
+    private static final long ORIGIN = System.nanoTime();
+
+    private volatile long tat;
+    private volatile long throttled;
+
+    /**
+     * 尝试获取一个令牌，失败时计入限流次数
+     */
+    public boolean tryAcquire(Rate rate) {
+        return tryAcquire(rate, System.nanoTime() - ORIGIN);
+    }
+
+    boolean tryAcquire(Rate rate, long now) {
+        while (true) {
+            long current = tat;
+            long next = Math.max(current, now) + rate.intervalNanos;
+            if (next - now > rate.limitNanos) {
+                THROTTLED.incrementAndGet(this);
+                return false;
+            }
+            if (TAT.compareAndSet(this, current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 累计限流次数
+     */
+    public long getThrottled() {
+        return throttled;
+    }
+
+    /**
+     * 速率参数
+     */
+    public static final class Rate {
+        private final double perSecond;
+        private final int burst;
+        private final long intervalNanos;
+        private final long limitNanos;
+
+        public Rate(double perSecond, int burst) {
+            if (perSecond <= 0) {
+                throw new IllegalArgumentException("Rate must be positive: " + perSecond);
+            }
+            this.perSecond = perSecond;
+            this.burst = Math.max(1, burst);
+            this.intervalNanos = Math.max(1, (long) (1_000_000_000L / perSecond));
+            this.limitNanos = this.intervalNanos * this.burst;
+        }
+
+        public double getPerSecond() {
+            return perSecond;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.noodle.app.collect.protocol.mqtt;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.noodle.app.collect.protocol.config.MqttClientConfig;
+import com.noodle.app.collect.protocol.route.TopicRouter;
+
+/**
+ * 基于MqttAsyncClient的异步接收
+ *
+ * Paho回调线程只负责按设备分片提交任务，解码和入队在分片工作线程中完成；
+ * 使用手动确认，QoS 1/2消息在写入存储队列之后才向服务器确认，存储队列已满时不确认，
+ * 未确认的消息占住服务器的在途窗口，窗口满后服务器暂停投递，这些消息在重连后重新投递；
+ * 分片队列满时回调线程阻塞，由TCP向服务器形成背压。
+ *
+ * 关闭Paho自动重连时，连接丢失交给调用方安排重连。
+ */
+public class AsyncMqttIngest implements MqttIngest, MqttCallbackExtended {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncMqttIngest.class);
+
+    private final MqttClientConfig config;
+    private final ConsumerAssignment assignment;
+    private final TopicRouter topicRouter;
+    private final MqttConsumerConnection.MessageHandler handler;
+    private final MqttConsumerConnection.ConsumerStatistics statistics;
+    private final StripedWorkerPool workerPool;
+    private final Runnable connectionLostHandler;
+
+    private final LongAdder acked = new LongAdder();
+    private final LongAdder ackFailures = new LongAdder();
+    private final LongAdder unacked = new LongAdder();
+
+    private volatile MqttAsyncClient mqttClient;
+    private volatile boolean stopping;
+
+    /**
+     * @param connectionLostHandler 关闭Paho自动重连时，连接丢失后的回调
+     */
+    public AsyncMqttIngest(MqttClientConfig config, ConsumerAssignment assignment, TopicRouter topicRouter,
+                           MqttConsumerConnection.MessageHandler handler,
+                           MqttConsumerConnection.ConsumerStatistics statistics,
+                           Runnable connectionLostHandler) {
+        this.config = config;
+        this.assignment = assignment;
+        this.topicRouter = topicRouter;
+        this.handler = handler;
+        this.statistics = statistics;
+        this.connectionLostHandler = connectionLostHandler;
+        int threads = config.getWorkerThreads() > 0 ? config.getWorkerThreads() : Runtime.getRuntime().availableProcessors();
+        this.workerPool = new StripedWorkerPool("mqtt-ingest", threads, config.getWorkerQueueCapacity());
+    }
+
+    @Override
+    public void connect() throws Exception {
+        closeClient();
+        String clientId = config.getClientId() + "_" + System.currentTimeMillis();
+        mqttClient = new MqttAsyncClient(config.getBrokerUrl(), clientId, new MemoryPersistence());
+        mqttClient.setManualAcks(true);
+        mqttClient.setCallback(this);
+
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(config.isCleanSession());
+        options.setKeepAliveInterval(config.getKeepAlive());
+        options.setAutomaticReconnect(config.isAutoReconnect());
+        options.setMaxReconnectDelay((int) config.getMaxReconnectDelay());
+        options.setMqttVersion(MqttConnectOptions.MQTT_VERSION_3_1_1);
+        options.setConnectionTimeout(30);
+        options.setMaxInflight(config.getMaxInflight());
+        if (config.getUsername() != null && !config.getUsername().isEmpty()) {
+            options.setUserName(config.getUsername());
+        }
+        if (config.getPassword() != null && !config.getPassword().isEmpty()) {
+            options.setPassword(config.getPassword().toCharArray());
+        }
+
+        logger.info("正在连接到MQTT服务器(异步): {}", config.getBrokerUrl());
+        try {
+            mqttClient.connect(options).waitForCompletion(30000);
+        } catch (Exception e) {
+            mqttClient.close();
+            mqttClient = null;
+            throw e;
+        }
+    }
+
+    @Override
+    public void connectComplete(boolean reconnect, String serverURI) {
+        logger.info("{}MQTT服务器(异步): {}", reconnect ? "已重新连接到" : "成功连接到", serverURI);
+        List<MqttClientConfig.TopicConfig> topics = assignment.topicsFor(0);
+        if (topics.isEmpty()) {
+            logger.warn("没有配置要订阅的主题");
+        }
+        for (MqttClientConfig.TopicConfig topicConfig : topics) {
+            String filter = assignment.subscriptionFilter(topicConfig);
+            try {
+                mqttClient.subscribe(filter, topicConfig.getQos(), null, new IMqttActionListener() {
+                    @Override
+                    public void onSuccess(IMqttToken token) {
+                        int[] granted = token.getGrantedQos();
+                        if (granted != null && granted.length > 0 && granted[0] == 0x80) {
+                            logger.error("服务器拒绝订阅主题: {}", filter);
+                        } else {
+                            logger.info("成功订阅主题: {} (QoS: {})", filter,
+                                    granted != null && granted.length > 0 ? granted[0] : topicConfig.getQos());
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(IMqttToken token, Throwable e) {
+                        logger.error("订阅主题失败: {} - {}", filter, e.getMessage());
+                    }
+                });
+            } catch (Exception e) {
+                logger.error("订阅主题失败: {} - {}", filter, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void connectionLost(Throwable cause) {
+        logger.warn("与MQTT服务器的连接丢失(异步): {}", cause.getMessage());
+        if (!config.isAutoReconnect() && !stopping) {
+            connectionLostHandler.run();
+        }
+    }
+
+    @Override
+    public void messageArrived(String topic, MqttMessage message) throws Exception {
+        // 确认必须发给投递该消息的客户端，重连后旧消息的确认不能落到新连接上
+        MqttAsyncClient client = mqttClient;
+        if (stopping) {
+            // 不处理也不确认，由服务器重新投递
+            return;
+        }
+        if (!assignment.owns(0, topic)) {
+            ack(client, message);
+            return;
+        }
+        statistics.record(message.getPayload().length);
+        // 按设备分片，保证同一设备的消息有序
+        try {
+            workerPool.execute(topicRouter.deviceKeyHash(topic), () -> {
+                boolean queued = true;
+                try {
+                    queued = handler.handle(topic, message.getPayload(), 0L);
+                } catch (Exception e) {
+                    logger.error("处理MQTT消息失败: 主题={}, 错误={}", topic, e.getMessage(), e);
+                }
+                if (queued) {
+                    ack(client, message);
+                } else {
+                    // 存储队列已满，不确认：未确认的消息占满在途窗口后服务器暂停投递，重连后重新投递
+                    unacked.increment();
+                }
+            });
+        } catch (IllegalStateException e) {
+            // 正在停止，同上不确认
+        }
+    }
+
+    @Override
+    public void deliveryComplete(IMqttDeliveryToken token) {
+    }
+
+    /**
+     * 数据进入存储队列后再确认
+     */
+    private void ack(MqttAsyncClient client, MqttMessage message) {
+        if (message.getQos() == 0) {
+            return;
+        }
+        try {
+            client.messageArrivedComplete(message.getId(), message.getQos());
+            acked.increment();
+        } catch (Exception e) {
+            ackFailures.increment();
+            logger.warn("确认MQTT消息失败: id={}, 错误={}", message.getId(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void publish(String topic, byte[] payload, int qos) throws Exception {
+        MqttMessage message = new MqttMessage(payload);
+        message.setQos(qos);
+        mqttClient.publish(topic, message);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mqttClient != null && mqttClient.isConnected();
+    }
+
+    /**
+     * 先等工作线程处理并确认已接收的消息，再断开连接，否则这些确认发不出去，消息会被重新投递
+     */
+    @Override
+    public void stop() {
+        stopping = true;
+        workerPool.shutdown(10000);
+        try {
+            if (mqttClient != null && mqttClient.isConnected()) {
+                mqttClient.disconnect().waitForCompletion(5000);
+            }
+        } catch (Exception e) {
+            logger.warn("断开MQTT连接失败(异步): {}", e.getMessage());
+        }
+        closeClient();
+    }
+
+    private void closeClient() {
+        MqttAsyncClient client = mqttClient;
+        if (client == null) {
+            return;
+        }
+        mqttClient = null;
+        try {
+            client.close();
+        } catch (Exception e) {
+            logger.warn("关闭MQTT客户端失败(异步): {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("maxInflight", config.getMaxInflight());
+        stats.put("acked", acked.sum());
+        stats.put("ackFailures", ackFailures.sum());
+        stats.put("unacked", unacked.sum());
+        stats.put("workers", workerPool.getStatistics());
+        MqttAsyncClient client = mqttClient;
+        if (client != null) {
+            stats.put("inFlight", client.getInFlightMessageCount());
+        }
+        return stats;
+    }
+}
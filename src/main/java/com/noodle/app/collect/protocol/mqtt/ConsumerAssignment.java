@@ -0,0 +1,92 @@
+package com.noodle.app.collect.protocol.mqtt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.noodle.app.collect.protocol.config.MqttClientConfig;
+import com.noodle.app.collect.protocol.topic.TopicTrie;
+
+/**
+ * 多连接消费的主题分配
+ *
+ * 连接编号从0开始，0号为主连接。主题配置的connections为N时由0..N-1号连接共同消费：
+ * - 共享订阅：各连接订阅 $share/{group}/{topic}，由服务器负责分发
+ * - 主题分区：各连接订阅原主题，只处理主题哈希落在本连接的消息
+ *
+ * 同时命中单连接主题的消息一定会经0号连接的订阅到达，由0号连接处理，不参与分区。
+ */
+public class ConsumerAssignment {
+
+    private static final String SHARE_PREFIX = "$share/";
+
+    private final boolean sharedSubscription;
+    private final String shareGroup;
+    private final List<MqttClientConfig.TopicConfig> topics;
+    private final TopicTrie<MqttClientConfig.TopicConfig> partitioned = new TopicTrie<>();
+    private final TopicTrie<Boolean> unpartitioned = new TopicTrie<>();
+    private final int connectionCount;
+
+    public ConsumerAssignment(MqttClientConfig config) {
+        this.sharedSubscription = config.isSharedSubscription();
+        this.shareGroup = config.getShareGroup();
+        this.topics = config.getTopics() != null ? config.getTopics() : Collections.emptyList();
+        int max = 1;
+        for (MqttClientConfig.TopicConfig topicConfig : topics) {
+            max = Math.max(max, topicConfig.getConnections());
+            if (sharedSubscription) {
+                continue;
+            }
+            if (topicConfig.getConnections() > 1) {
+                partitioned.add(topicConfig.getTopic(), topicConfig);
+            } else {
+                unpartitioned.add(topicConfig.getTopic(), Boolean.TRUE);
+            }
+        }
+        this.connectionCount = max;
+    }
+
+    /**
+     * 需要的连接总数（含主连接）
+     */
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * 指定连接需要订阅的主题
+     */
+    public List<MqttClientConfig.TopicConfig> topicsFor(int index) {
+        List<MqttClientConfig.TopicConfig> result = new ArrayList<>();
+        for (MqttClientConfig.TopicConfig topicConfig : topics) {
+            if (index < Math.max(1, topicConfig.getConnections())) {
+                result.add(topicConfig);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 实际订阅的主题过滤器
+     */
+    public String subscriptionFilter(MqttClientConfig.TopicConfig topicConfig) {
+        if (sharedSubscription && topicConfig.getConnections() > 1) {
+            return SHARE_PREFIX + shareGroup + "/" + topicConfig.getTopic();
+        }
+        return topicConfig.getTopic();
+    }
+
+    /**
+     * 分区模式下判断消息是否由指定连接处理
+     */
+    public boolean owns(int index, String topic) {
+        if (partitioned.size() == 0) {
+            return true;
+        }
+        MqttClientConfig.TopicConfig topicConfig = partitioned.match(topic, null);
+        if (topicConfig == null || unpartitioned.matchesAny(topic)) {
+            return index == 0;
+        }
+        return (topic.hashCode() & 0x7fffffff) % topicConfig.getConnections() == index;
+    }
+}
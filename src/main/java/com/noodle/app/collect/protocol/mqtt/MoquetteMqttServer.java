@@ -1,7 +1,16 @@
 package com.noodle.app.collect.protocol.mqtt;
 
 import com.noodle.app.collect.protocol.AbstractProtocolServer;
+import com.noodle.app.collect.protocol.codec.PayloadDecompressor;
 import com.noodle.app.collect.protocol.config.MqttServerConfig;
+import com.noodle.app.collect.protocol.dedup.DuplicateFilter;
+import com.noodle.app.collect.protocol.decode.PayloadDecoders;
+import com.noodle.app.collect.protocol.limit.PublishRateLimiter;
+import com.noodle.app.collect.protocol.limit.RateLimitAction;
+import com.noodle.app.collect.protocol.route.TopicRouter;
+import com.noodle.app.collect.protocol.topic.TopicFilter;
+import com.noodle.app.collect.protocol.topic.TopicTrie;
+import com.noodle.app.collect.protocol.traffic.TrafficStatistics;
 import com.noodle.app.collect.storage.DataStorageService;
 import com.noodle.app.collect.storage.model.ProtocolData;
 
@@ -13,16 +22,25 @@ import io.moquette.interception.InterceptHandler;
 import io.moquette.interception.messages.InterceptConnectMessage;
 import io.moquette.interception.messages.InterceptDisconnectMessage;
 import io.moquette.interception.messages.InterceptPublishMessage;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttMessageBuilders;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttQoS;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.time.Instant;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
  * 基于Moquette的MQTT服务器
@@ -35,11 +53,35 @@ public class MoquetteMqttServer extends AbstractProtocolServer {
     private MqttServerConfig config;
     @Autowired(required = false)
     private DataStorageService dataStorageService;
+    @Autowired
+    private TopicRouter topicRouter;
+    @Autowired
+    private PayloadDecompressor payloadDecompressor;
+    @Autowired
+    private PayloadDecoders payloadDecoders;
+    @Autowired
+    private DuplicateFilter duplicateFilter;
 
     private Server mqttBroker;
     
     // 客户端会话管理
     private final Map<String, String> clientSessions = new ConcurrentHashMap<>();
+    
+    // 持久化主题过滤器及拦截器到存储的交接队列
+    private volatile TopicFilter persistFilter;
+    private PublishHandoff publishHandoff;
+    private final LongAdder filteredMessages = new LongAdder();
+    
+    // 发布流量统计，未启用时为null
+    private TrafficStatistics trafficStatistics;
+    
+    // 发布限流，未启用时为null
+    private PublishRateLimiter rateLimiter;
+    private final LongAdder rateLimitDropped = new LongAdder();
+    private final LongAdder rateLimitDisconnects = new LongAdder();
+    
+    // 进程内订阅者（embedded模式的MQTT客户端服务），不经过TCP和Paho
+    private volatile EmbeddedSubscription embeddedSubscription;
 
     @Override
     public String getServerName() {
@@ -48,8 +90,23 @@ public class MoquetteMqttServer extends AbstractProtocolServer {
 
     @Override
     protected void doInit() throws Exception {
-        // Moquette初始化不需要特殊处理
         logger.info("Initializing Moquette MQTT server");
+        MqttServerConfig.PersistConfig persistConfig = config.getPersist();
+        persistFilter = TopicFilter.compile(persistConfig.getInclude(), persistConfig.getExclude());
+        logger.info("Persist topic filters compiled: include={}, exclude={}",
+                persistFilter.getIncludeCount(), persistFilter.getExcludeCount());
+        if (config.getTraffic().isEnabled()) {
+            trafficStatistics = new TrafficStatistics(config.getTraffic());
+        }
+        MqttServerConfig.RateLimitConfig rateLimitConfig = config.getRateLimit();
+        if (rateLimitConfig.isEnabled()) {
+            rateLimiter = new PublishRateLimiter(rateLimitConfig);
+            logger.info("Publish rate limit enabled: clientRate={}/s, clientBurst={}, clientAction={}, topicRules={}",
+                    rateLimitConfig.getClientRate(), rateLimitConfig.getClientBurst(),
+                    rateLimitConfig.getClientAction(), rateLimitConfig.getTopics().size());
+        }
+        publishHandoff = new PublishHandoff("mqtt-publish-handoff", persistConfig.getHandoffCapacity(),
+                rateLimitConfig.getLowPriorityCapacity(), this::dispatch);
     }
 
     @Override
@@ -73,6 +130,7 @@ public class MoquetteMqttServer extends AbstractProtocolServer {
         
         MemoryConfig memoryConfig = new MemoryConfig(properties);
         
+        publishHandoff.start();
         try {
             // 启动服务器并添加拦截器
             mqttBroker.startServer(memoryConfig, Collections.singletonList(interceptHandler));
@@ -88,6 +146,45 @@ public class MoquetteMqttServer extends AbstractProtocolServer {
             mqttBroker.stopServer();
             logger.info("Moquette MQTT Server stopped");
         }
+        if (publishHandoff != null) {
+            publishHandoff.stop();
+        }
+    }
+    
+    /**
+     * 注册进程内订阅者
+     * 命中订阅主题的消息只交给订阅者处理，不再走服务端持久化，保证每条消息只进入一次存储管道
+     */
+    public void attachSubscriber(Collection<String> topicFilters, Consumer<PublishEnvelope> subscriber) {
+        TopicTrie<Boolean> filter = new TopicTrie<>();
+        for (String topicFilter : topicFilters) {
+            filter.add(topicFilter, Boolean.TRUE);
+        }
+        embeddedSubscription = new EmbeddedSubscription(filter, subscriber);
+        logger.info("Embedded subscriber attached, topics: {}", topicFilters);
+    }
+    
+    /**
+     * 注销进程内订阅者
+     */
+    public void detachSubscriber() {
+        embeddedSubscription = null;
+    }
+    
+    /**
+     * 在进程内直接发布消息，不经过网络连接
+     */
+    public void internalPublish(String topic, byte[] payload, int qos, String clientId) {
+        if (!isRunning() || mqttBroker == null) {
+            throw new IllegalStateException("Moquette MQTT server is not running");
+        }
+        MqttPublishMessage message = MqttMessageBuilders.publish()
+                .topicName(topic)
+                .retained(false)
+                .qos(MqttQoS.valueOf(qos))
+                .payload(Unpooled.copiedBuffer(payload))
+                .build();
+        mqttBroker.internalPublish(message, clientId);
     }
     
     /**
@@ -104,6 +201,86 @@ public class MoquetteMqttServer extends AbstractProtocolServer {
         return clientSessions.keySet();
     }
     
+    /**
+     * 获取消息持久化统计信息
+     */
+    public Map<String, Object> getPersistStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("filtered", filteredMessages.sum());
+        if (publishHandoff != null) {
+            stats.putAll(publishHandoff.getStatistics());
+        }
+        stats.put("embeddedSubscriber", embeddedSubscription != null);
+        if (rateLimiter != null) {
+            stats.put("rateLimitDropped", rateLimitDropped.sum());
+            stats.put("rateLimitDisconnects", rateLimitDisconnects.sum());
+        }
+        stats.put("compression", payloadDecompressor.getStatistics());
+        stats.put("decoders", payloadDecoders.getStatistics());
+        stats.put("dedup", duplicateFilter.getStatistics());
+        return stats;
+    }
+    
+    /**
+     * 获取流量统计，未启用时返回null
+     */
+    public TrafficStatistics getTrafficStatistics() {
+        return trafficStatistics;
+    }
+    
+    /**
+     * 获取限流统计信息，未启用限流时返回null
+     */
+    public Map<String, Object> getRateLimitStatistics() {
+        return rateLimiter != null ? rateLimiter.getStatistics() : null;
+    }
+    
+    /**
+     * 获取被限流次数最多的客户端
+     */
+    public List<Map<String, Object>> getTopOffenders(int limit) {
+        return rateLimiter != null ? rateLimiter.getTopOffenders(limit) : Collections.emptyList();
+    }
+    
+    /**
+     * 交接线程分发：进程内订阅者优先，其余按服务端持久化处理
+     */
+    private void dispatch(PublishEnvelope envelope) {
+        if (payloadDecompressor.isEnabled()) {
+            PayloadDecompressor.Decoded decoded = payloadDecompressor.decode(envelope.getTopic(), envelope.getPayload());
+            if (decoded == null) {
+                return;
+            }
+            if (decoded.isCompressed() || decoded.getTopic() != envelope.getTopic()) {
+                envelope = new PublishEnvelope(envelope.getClientId(), decoded.getTopic(), decoded.getPayload(),
+                        envelope.getReceivedAt(), envelope.isLowPriority());
+            }
+        }
+        EmbeddedSubscription subscription = embeddedSubscription;
+        if (subscription != null && subscription.filter.matchesAny(envelope.getTopic())) {
+            subscription.subscriber.accept(envelope);
+        } else if (dataStorageService != null) {
+            persist(envelope);
+        }
+    }
+    
+    /**
+     * 在交接线程中解码消息并写入存储
+     */
+    private void persist(PublishEnvelope envelope) {
+        logger.debug("Received MQTT message from client {}: topic={}, bytes={}", 
+                    envelope.getClientId(), envelope.getTopic(), envelope.getPayload().length);
+        
+        ProtocolData data = new ProtocolData();
+        data.setProtocol("mqtt");
+        data.setClient(envelope.getClientId());
+        data.setAddress(envelope.getTopic());
+        data.setTimestamp(Instant.ofEpochMilli(envelope.getReceivedAt()));
+        topicRouter.apply(data);
+        payloadDecoders.decode(data, envelope.getPayload());
+        dataStorageService.store(data);
+    }
+    
     /**
      * MQTT消息拦截处理器
      */
@@ -118,6 +295,12 @@ public class MoquetteMqttServer extends AbstractProtocolServer {
         public void onConnect(InterceptConnectMessage msg) {
             String clientId = msg.getClientID();
             clientSessions.put(clientId, clientId);
+            if (rateLimiter != null) {
+                rateLimiter.onConnect(clientId);
+            }
+            if (trafficStatistics != null) {
+                trafficStatistics.onConnect(clientId);
+            }
             logger.info("Client connected: {}", clientId);
         }
         
@@ -125,6 +308,12 @@ public class MoquetteMqttServer extends AbstractProtocolServer {
         public void onDisconnect(InterceptDisconnectMessage msg) {
             String clientId = msg.getClientID();
             clientSessions.remove(clientId);
+            if (rateLimiter != null) {
+                rateLimiter.onDisconnect(clientId);
+            }
+            if (trafficStatistics != null) {
+                trafficStatistics.onDisconnect(clientId);
+            }
             logger.info("Client disconnected: {}", clientId);
         }
         
@@ -133,32 +322,59 @@ public class MoquetteMqttServer extends AbstractProtocolServer {
             String topic = msg.getTopicName();
             String clientId = msg.getClientID();
             
-            // 安全地获取payload字节数组
-            byte[] payload;
-            if (msg.getPayload().hasArray()) {
-                payload = msg.getPayload().array();
-            } else {
-                // 对于没有直接数组支持的ByteBuf，需要复制数据
-                payload = new byte[msg.getPayload().readableBytes()];
-                msg.getPayload().getBytes(msg.getPayload().readerIndex(), payload);
+            if (clientId == null) {
+                return;
             }
-            
-            String payloadStr = new String(payload);
-            
-            logger.debug("Received MQTT message from client {}: topic={}, payload={}", 
-                        clientId, topic, payloadStr);
-            
-            // 存储MQTT消息数据
-            if (dataStorageService != null && clientId != null) {
-                try {
-                    ProtocolData data = new ProtocolData();
-                    data.setClient(clientId);
-                    data.setAddress(topic);
-                    data.setOrgData(payloadStr);
-                    dataStorageService.store(data);
-                } catch (Exception e) {
-                    logger.error("Failed to store MQTT publish data: {}", e.getMessage());
+            // 只做过滤匹配和字节复制，解压、解码与入库交给交接线程
+            String logicalTopic = payloadDecompressor.stripSuffix(topic);
+            if (trafficStatistics != null) {
+                trafficStatistics.record(clientId, logicalTopic, msg.getPayload().readableBytes());
+            }
+            boolean lowPriority = false;
+            if (rateLimiter != null) {
+                RateLimitAction action = rateLimiter.check(clientId, logicalTopic);
+                if (action == RateLimitAction.DROP) {
+                    rateLimitDropped.increment();
+                    return;
+                }
+                if (action == RateLimitAction.DISCONNECT) {
+                    disconnect(clientId);
+                    return;
                 }
+                lowPriority = action == RateLimitAction.LOW_PRIORITY;
+            }
+            EmbeddedSubscription subscription = embeddedSubscription;
+            boolean subscribed = subscription != null && subscription.filter.matchesAny(logicalTopic);
+            boolean persist = dataStorageService != null && persistFilter.accept(logicalTopic);
+            if (!subscribed && !persist) {
+                filteredMessages.increment();
+                return;
+            }
+            byte[] payload = new byte[msg.getPayload().readableBytes()];
+            msg.getPayload().getBytes(msg.getPayload().readerIndex(), payload);
+            // QoS 1重发和客户端重试的重复消息不再入库，也不交给进程内订阅者
+            if (duplicateFilter.isDuplicate(topic, payload)) {
+                return;
+            }
+            
+            if (!publishHandoff.offer(new PublishEnvelope(clientId, topic, payload, System.currentTimeMillis(), lowPriority))) {
+                logger.debug("MQTT publish handoff queue is full, dropped message on topic {}", topic);
+            }
+        }
+        
+        /**
+         * 断开超限客户端；拦截器只是通知，Broker仍会把当前消息转发给订阅者
+         */
+        private void disconnect(String clientId) {
+            if (!rateLimiter.markDisconnect(clientId)) {
+                return;
+            }
+            rateLimitDisconnects.increment();
+            logger.warn("Client {} exceeded publish rate limit, disconnecting", clientId);
+            try {
+                mqttBroker.disconnectClient(clientId);
+            } catch (Exception e) {
+                logger.error("Failed to disconnect client {}: {}", clientId, e.getMessage());
             }
         }
         
@@ -167,4 +383,17 @@ public class MoquetteMqttServer extends AbstractProtocolServer {
             logger.error("MQTT session loop error", error);
         }
     }
+    
+    /**
+     * 进程内订阅
+     */
+    private static class EmbeddedSubscription {
+        private final TopicTrie<Boolean> filter;
+        private final Consumer<PublishEnvelope> subscriber;
+        
+        EmbeddedSubscription(TopicTrie<Boolean> filter, Consumer<PublishEnvelope> subscriber) {
+            this.filter = filter;
+            this.subscriber = subscriber;
+        }
+    }
 }
\ No newline at end of file
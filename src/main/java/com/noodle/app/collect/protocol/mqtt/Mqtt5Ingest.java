@@ -0,0 +1,313 @@
+package com.noodle.app.collect.protocol.mqtt;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.paho.mqttv5.client.IMqttToken;
+import org.eclipse.paho.mqttv5.client.MqttActionListener;
+import org.eclipse.paho.mqttv5.client.MqttAsyncClient;
+import org.eclipse.paho.mqttv5.client.MqttCallback;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.client.MqttDisconnectResponse;
+import org.eclipse.paho.mqttv5.client.persist.MemoryPersistence;
+import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+import org.eclipse.paho.mqttv5.common.packet.UserProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.noodle.app.collect.protocol.config.MqttClientConfig;
+import com.noodle.app.collect.protocol.route.TopicRouter;
+
+/**
+ * 基于MQTT 5的异步接收
+ *
+ * 与{@link AsyncMqttIngest}相同的分片处理和手动确认，另外使用MQTT 5特性：
+ * - Receive Maximum：向服务器声明未确认QoS 1/2消息的上限（maxInflight），由服务器控制投递窗口
+ * - Topic Alias：声明可接受的主题别名数，服务器可用两字节别名代替重复的长主题；
+ *   服务器声明Topic Alias Maximum时，Paho对发布消息自动分配别名
+ * - User Property：发布时携带设备时间，接收时优先使用该时间作为数据时间戳
+ *
+ * 关闭Paho自动重连时，连接断开交给调用方安排重连。
+ */
+public class Mqtt5Ingest implements MqttIngest, MqttCallback {
+
+    private static final Logger logger = LoggerFactory.getLogger(Mqtt5Ingest.class);
+
+    private final MqttClientConfig config;
+    private final ConsumerAssignment assignment;
+    private final TopicRouter topicRouter;
+    private final MqttConsumerConnection.MessageHandler handler;
+    private final MqttConsumerConnection.ConsumerStatistics statistics;
+    private final StripedWorkerPool workerPool;
+    private final Runnable connectionLostHandler;
+
+    private final LongAdder acked = new LongAdder();
+    private final LongAdder ackFailures = new LongAdder();
+    private final LongAdder unacked = new LongAdder();
+    private final LongAdder deviceTimestamps = new LongAdder();
+
+    private volatile MqttAsyncClient mqttClient;
+    private volatile boolean stopping;
+    // 服务器在CONNACK中声明的限制
+    private volatile Integer serverReceiveMaximum;
+    private volatile Integer serverTopicAliasMaximum;
+
+    /**
+     * @param connectionLostHandler 关闭Paho自动重连时，连接断开后的回调
+     */
+    public Mqtt5Ingest(MqttClientConfig config, ConsumerAssignment assignment, TopicRouter topicRouter,
+                       MqttConsumerConnection.MessageHandler handler,
+                       MqttConsumerConnection.ConsumerStatistics statistics,
+                       Runnable connectionLostHandler) {
+        this.config = config;
+        this.assignment = assignment;
+        this.topicRouter = topicRouter;
+        this.handler = handler;
+        this.statistics = statistics;
+        this.connectionLostHandler = connectionLostHandler;
+        int threads = config.getWorkerThreads() > 0 ? config.getWorkerThreads() : Runtime.getRuntime().availableProcessors();
+        this.workerPool = new StripedWorkerPool("mqtt5-ingest", threads, config.getWorkerQueueCapacity());
+    }
+
+    @Override
+    public void connect() throws Exception {
+        closeClient();
+        String clientId = config.getClientId() + "_" + System.currentTimeMillis();
+        mqttClient = new MqttAsyncClient(config.getBrokerUrl(), clientId, new MemoryPersistence());
+        mqttClient.setManualAcks(true);
+        mqttClient.setCallback(this);
+
+        MqttConnectionOptions options = new MqttConnectionOptions();
+        options.setCleanStart(config.isCleanSession());
+        options.setSessionExpiryInterval(config.isCleanSession() ? 0L : config.getSessionExpiryInterval());
+        options.setKeepAliveInterval(config.getKeepAlive());
+        options.setAutomaticReconnect(config.isAutoReconnect());
+        options.setMaxReconnectDelay((int) config.getMaxReconnectDelay());
+        options.setConnectionTimeout(30);
+        options.setReceiveMaximum(config.getMaxInflight());
+        options.setTopicAliasMaximum(config.getTopicAliasMaximum());
+        if (config.getUsername() != null && !config.getUsername().isEmpty()) {
+            options.setUserName(config.getUsername());
+        }
+        if (config.getPassword() != null && !config.getPassword().isEmpty()) {
+            options.setPassword(config.getPassword().getBytes(StandardCharsets.UTF_8));
+        }
+
+        logger.info("正在连接到MQTT服务器(MQTT 5): {}", config.getBrokerUrl());
+        try {
+            IMqttToken token = mqttClient.connect(options);
+            token.waitForCompletion(30000);
+            MqttProperties properties = token.getResponseProperties();
+            if (properties != null) {
+                serverReceiveMaximum = properties.getReceiveMaximum();
+                serverTopicAliasMaximum = properties.getTopicAliasMaximum();
+            }
+        } catch (Exception e) {
+            mqttClient.close();
+            mqttClient = null;
+            throw e;
+        }
+    }
+
+    @Override
+    public void connectComplete(boolean reconnect, String serverURI) {
+        logger.info("{}MQTT服务器(MQTT 5): {}, 服务器Receive Maximum: {}, Topic Alias Maximum: {}",
+                reconnect ? "已重新连接到" : "成功连接到", serverURI, serverReceiveMaximum, serverTopicAliasMaximum);
+        List<MqttClientConfig.TopicConfig> topics = assignment.topicsFor(0);
+        if (topics.isEmpty()) {
+            logger.warn("没有配置要订阅的主题");
+        }
+        for (MqttClientConfig.TopicConfig topicConfig : topics) {
+            String filter = assignment.subscriptionFilter(topicConfig);
+            try {
+                mqttClient.subscribe(filter, topicConfig.getQos(), null, new MqttActionListener() {
+                    @Override
+                    public void onSuccess(IMqttToken token) {
+                        int[] codes = token.getReasonCodes();
+                        if (codes != null && codes.length > 0 && codes[0] >= 0x80) {
+                            logger.error("服务器拒绝订阅主题: {}, 原因码: {}", filter, codes[0]);
+                        } else {
+                            logger.info("成功订阅主题: {} (QoS: {})", filter,
+                                    codes != null && codes.length > 0 ? codes[0] : topicConfig.getQos());
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(IMqttToken token, Throwable e) {
+                        logger.error("订阅主题失败: {} - {}", filter, e.getMessage());
+                    }
+                });
+            } catch (Exception e) {
+                logger.error("订阅主题失败: {} - {}", filter, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void disconnected(MqttDisconnectResponse disconnectResponse) {
+        logger.warn("与MQTT服务器的连接断开(MQTT 5): 原因码={}, 原因={}",
+                disconnectResponse.getReturnCode(), disconnectResponse.getReasonString());
+        if (!config.isAutoReconnect() && !stopping) {
+            connectionLostHandler.run();
+        }
+    }
+
+    @Override
+    public void mqttErrorOccurred(MqttException exception) {
+        logger.error("MQTT 5客户端错误: {}", exception.getMessage());
+    }
+
+    @Override
+    public void messageArrived(String topic, MqttMessage message) throws Exception {
+        // 确认必须发给投递该消息的客户端，重连后旧消息的确认不能落到新连接上
+        MqttAsyncClient client = mqttClient;
+        if (stopping) {
+            // 不处理也不确认，由服务器重新投递
+            return;
+        }
+        // 主题别名由Paho还原，这里收到的始终是完整主题
+        if (!assignment.owns(0, topic)) {
+            ack(client, message);
+            return;
+        }
+        statistics.record(message.getPayload().length);
+        long deviceTime = deviceTime(message);
+        // 按设备分片，保证同一设备的消息有序
+        try {
+            workerPool.execute(topicRouter.deviceKeyHash(topic), () -> {
+                boolean queued = true;
+                try {
+                    queued = handler.handle(topic, message.getPayload(), deviceTime);
+                } catch (Exception e) {
+                    logger.error("处理MQTT消息失败: 主题={}, 错误={}", topic, e.getMessage(), e);
+                }
+                if (queued) {
+                    ack(client, message);
+                } else {
+                    // 存储队列已满，不确认：未确认的消息占满在途窗口后服务器暂停投递，重连后重新投递
+                    unacked.increment();
+                }
+            });
+        } catch (IllegalStateException e) {
+            // 正在停止，同上不确认
+        }
+    }
+
+    /**
+     * 读取用户属性中的设备时间（毫秒），没有或格式错误时返回0
+     */
+    private long deviceTime(MqttMessage message) {
+        MqttProperties properties = message.getProperties();
+        if (properties == null || properties.getUserProperties() == null) {
+            return 0L;
+        }
+        String key = config.getTimestampProperty();
+        for (UserProperty property : properties.getUserProperties()) {
+            if (key.equals(property.getKey())) {
+                try {
+                    long value = Long.parseLong(property.getValue());
+                    deviceTimestamps.increment();
+                    return value;
+                } catch (NumberFormatException e) {
+                    return 0L;
+                }
+            }
+        }
+        return 0L;
+    }
+
+    @Override
+    public void deliveryComplete(IMqttToken token) {
+    }
+
+    @Override
+    public void authPacketArrived(int reasonCode, MqttProperties properties) {
+    }
+
+    /**
+     * 数据进入存储队列后再确认
+     */
+    private void ack(MqttAsyncClient client, MqttMessage message) {
+        if (message.getQos() == 0) {
+            return;
+        }
+        try {
+            client.messageArrivedComplete(message.getId(), message.getQos());
+            acked.increment();
+        } catch (Exception e) {
+            ackFailures.increment();
+            logger.warn("确认MQTT消息失败: id={}, 错误={}", message.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 发布消息，携带发送时间用户属性
+     */
+    @Override
+    public void publish(String topic, byte[] payload, int qos) throws Exception {
+        MqttMessage message = new MqttMessage(payload);
+        message.setQos(qos);
+        MqttProperties properties = new MqttProperties();
+        properties.setUserProperties(Collections.singletonList(
+                new UserProperty(config.getTimestampProperty(), String.valueOf(System.currentTimeMillis()))));
+        message.setProperties(properties);
+        mqttClient.publish(topic, message);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return mqttClient != null && mqttClient.isConnected();
+    }
+
+    /**
+     * 先等工作线程处理并确认已接收的消息，再断开连接，否则这些确认发不出去，消息会被重新投递
+     */
+    @Override
+    public void stop() {
+        stopping = true;
+        workerPool.shutdown(10000);
+        try {
+            if (mqttClient != null && mqttClient.isConnected()) {
+                mqttClient.disconnect().waitForCompletion(5000);
+            }
+        } catch (Exception e) {
+            logger.warn("断开MQTT连接失败(MQTT 5): {}", e.getMessage());
+        }
+        closeClient();
+    }
+
+    private void closeClient() {
+        MqttAsyncClient client = mqttClient;
+        if (client == null) {
+            return;
+        }
+        mqttClient = null;
+        try {
+            client.close();
+        } catch (Exception e) {
+            logger.warn("关闭MQTT客户端失败(MQTT 5): {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("protocolVersion", 5);
+        stats.put("receiveMaximum", config.getMaxInflight());
+        stats.put("topicAliasMaximum", config.getTopicAliasMaximum());
+        stats.put("serverReceiveMaximum", serverReceiveMaximum);
+        stats.put("serverTopicAliasMaximum", serverTopicAliasMaximum);
+        stats.put("deviceTimestamps", deviceTimestamps.sum());
+        stats.put("acked", acked.sum());
+        stats.put("ackFailures", ackFailures.sum());
+        stats.put("unacked", unacked.sum());
+        stats.put("workers", workerPool.getStatistics());
+        return stats;
+    }
+}
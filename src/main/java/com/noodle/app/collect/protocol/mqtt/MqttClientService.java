@@ -1,11 +1,16 @@
 package com.noodle.app.collect.protocol.mqtt;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -22,7 +27,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
+import com.noodle.app.collect.protocol.codec.PayloadDecompressor;
 import com.noodle.app.collect.protocol.config.MqttClientConfig;
+import com.noodle.app.collect.protocol.dedup.DuplicateFilter;
+import com.noodle.app.collect.protocol.decode.PayloadDecoders;
+import com.noodle.app.collect.protocol.route.TopicRouter;
 import com.noodle.app.collect.storage.DataStorageService;
 import com.noodle.app.collect.storage.model.ProtocolData;
 
@@ -42,12 +51,40 @@ public class MqttClientService implements MqttCallback {
     @Autowired
     private DataStorageService dataStorageService;
     
+    @Autowired
+    private TopicRouter topicRouter;
+    
+    @Autowired
+    private PayloadDecompressor payloadDecompressor;
+    
+    @Autowired
+    private PayloadDecoders payloadDecoders;
+    
+    @Autowired
+    private DuplicateFilter duplicateFilter;
+    
+    @Autowired(required = false)
+    private MoquetteMqttServer embeddedServer;
+    
     private MqttClient mqttClient;
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
     private volatile boolean connected = false;
     private volatile boolean reconnecting = false;
     private long lastReconnectTime = 0;
     private long currentReconnectDelay;
+    private volatile boolean embeddedAttached = false;
+    private volatile boolean shutdown = false;
+    private final LongAdder messagesReceived = new LongAdder();
+    
+    // 多连接消费：0号为主连接，其余为附加消费连接
+    private ConsumerAssignment assignment;
+    private final MqttConsumerConnection.ConsumerStatistics mainStatistics = new MqttConsumerConnection.ConsumerStatistics();
+    private final List<MqttConsumerConnection> consumers = new CopyOnWriteArrayList<>();
+    
+    // 异步客户端模式（MQTT 3.1.1异步客户端或MQTT 5）
+    private volatile MqttIngest asyncIngest;
+    // 异步客户端关闭Paho自动重连后丢失了连接，由本服务重连直到成功
+    private volatile boolean asyncReconnect = false;
     
     @PostConstruct
     public void initialize() {
@@ -58,6 +95,11 @@ public class MqttClientService implements MqttCallback {
         
         logger.info("正在初始化MQTT客户端: {}", config);
         currentReconnectDelay = config.getReconnectDelay();
+        assignment = new ConsumerAssignment(config);
+        
+        if (config.isEmbeddedMode() && attachToEmbeddedServer()) {
+            return;
+        }
         
         // 延迟启动MQTT客户端，确保其他服务已启动
         scheduler.schedule(this::connectToMqttBroker, 5, TimeUnit.SECONDS);
@@ -67,6 +109,10 @@ public class MqttClientService implements MqttCallback {
      * 连接到MQTT服务器
      */
     private void connectToMqttBroker() {
+        if (config.isAsyncClient() || config.isMqtt5()) {
+            connectAsyncClient();
+            return;
+        }
         String clientId = config.getClientId() + "_" + System.currentTimeMillis();
         try {
             // 创建MQTT客户端
@@ -83,7 +129,7 @@ public class MqttClientService implements MqttCallback {
             
             // 添加更多兼容性设置
             options.setKeepAliveInterval(60); // 增加keep-alive时间
-            options.setMaxInflight(100); // 设置最大在飞消息数
+            options.setMaxInflight(config.getMaxInflight()); // 设置最大在飞消息数
             options.setServerURIs(new String[]{config.getBrokerUrl()}); // 设置服务器URI
             
             if (config.getUsername() != null && !config.getUsername().isEmpty()) {
@@ -104,6 +150,8 @@ public class MqttClientService implements MqttCallback {
             
             // 订阅主题
             subscribeToTopics();
+            // 启动附加消费连接
+            startConsumers();
             
         } catch (Exception e) {
             logger.error("连接到MQTT服务器失败: {}", e.getMessage(), e);
@@ -118,17 +166,89 @@ public class MqttClientService implements MqttCallback {
         }
     }
     
+    /**
+     * 以异步客户端模式连接到MQTT服务器，MQTT 5总是使用异步客户端
+     */
+    private void connectAsyncClient() {
+        if (asyncIngest == null) {
+            asyncIngest = config.isMqtt5()
+                    ? new Mqtt5Ingest(config, assignment, topicRouter, this::handleMessage, mainStatistics,
+                            this::asyncConnectionLost)
+                    : new AsyncMqttIngest(config, assignment, topicRouter, this::handleMessage, mainStatistics,
+                            this::asyncConnectionLost);
+        }
+        try {
+            asyncIngest.connect();
+            connected = true;
+            asyncReconnect = false;
+            reconnecting = false;
+            currentReconnectDelay = config.getReconnectDelay(); // 重置重连延迟
+            // 启动附加消费连接
+            startConsumers();
+        } catch (Exception e) {
+            logger.error("连接到MQTT服务器失败(异步): {}", e.getMessage(), e);
+            connected = false;
+            // 首次连接失败不会触发Paho自动重连，由本服务安排重连
+            if (config.isAutoReconnect() || asyncReconnect) {
+                scheduleReconnect();
+            }
+        }
+    }
+    
+    /**
+     * 以进程内订阅模式挂接到内置Moquette服务器
+     */
+    private boolean attachToEmbeddedServer() {
+        if (embeddedServer == null) {
+            logger.error("未找到内置Moquette服务器，embedded模式不可用，改用TCP连接: {}", config.getBrokerUrl());
+            return false;
+        }
+        List<String> topicFilters = new ArrayList<>();
+        if (config.getTopics() != null) {
+            for (MqttClientConfig.TopicConfig topicConfig : config.getTopics()) {
+                topicFilters.add(topicConfig.getTopic());
+            }
+        }
+        if (topicFilters.isEmpty()) {
+            logger.warn("没有配置要订阅的主题");
+        }
+        embeddedServer.attachSubscriber(topicFilters, this::embeddedMessageArrived);
+        embeddedAttached = true;
+        logger.info("已挂接到内置MQTT服务器（进程内订阅），主题: {}", topicFilters);
+        return true;
+    }
+    
+    /**
+     * 进程内订阅的消息处理，运行在服务端交接线程中；重复消息已在服务端拦截器中去掉
+     */
+    private void embeddedMessageArrived(PublishEnvelope envelope) {
+        messagesReceived.increment();
+        String topic = envelope.getTopic();
+        try {
+            logger.debug("收到MQTT消息(进程内) - 主题: {}, 字节数: {}", topic, envelope.getPayload().length);
+            
+            ProtocolData protocolData = createProtocolData(topic, envelope.getPayload(),
+                    Instant.ofEpochMilli(envelope.getReceivedAt()));
+            protocolData.setClient(envelope.getClientId());
+            dataStorageService.store(protocolData);
+        } catch (Exception e) {
+            logger.error("处理MQTT消息失败: 主题={}, 错误={}", topic, e.getMessage(), e);
+        }
+    }
+    
     /**
      * 订阅主题
      */
     private void subscribeToTopics() {
-        if (config.getTopics() != null && !config.getTopics().isEmpty()) {
-            for (MqttClientConfig.TopicConfig topicConfig : config.getTopics()) {
+        List<MqttClientConfig.TopicConfig> topics = assignment.topicsFor(0);
+        if (!topics.isEmpty()) {
+            for (MqttClientConfig.TopicConfig topicConfig : topics) {
+                String filter = assignment.subscriptionFilter(topicConfig);
                 try {
-                    mqttClient.subscribe(topicConfig.getTopic(), topicConfig.getQos());
-                    logger.info("成功订阅主题: {} (QoS: {})", topicConfig.getTopic(), topicConfig.getQos());
+                    mqttClient.subscribe(filter, topicConfig.getQos());
+                    logger.info("成功订阅主题: {} (QoS: {})", filter, topicConfig.getQos());
                 } catch (Exception e) {
-                    logger.error("订阅主题失败: {} - {}", topicConfig.getTopic(), e.getMessage());
+                    logger.error("订阅主题失败: {} - {}", filter, e.getMessage());
                 }
             }
         } else {
@@ -136,6 +256,28 @@ public class MqttClientService implements MqttCallback {
         }
     }
     
+    /**
+     * 启动附加消费连接，每个连接有独立的回调线程
+     * 附加消费连接使用MQTT 3.1.1协议，MQTT 5特性只作用于主连接
+     */
+    private synchronized void startConsumers() {
+        if (!consumers.isEmpty() || assignment.getConnectionCount() <= 1) {
+            return;
+        }
+        for (int i = 1; i < assignment.getConnectionCount(); i++) {
+            MqttConsumerConnection consumer = new MqttConsumerConnection(i, config, assignment, this::handleMessage);
+            try {
+                consumer.start();
+                consumers.add(consumer);
+                logger.info("消费连接{}已连接到MQTT服务器", i);
+            } catch (Exception e) {
+                logger.error("消费连接{}连接失败: {}", i, e.getMessage());
+                consumer.stop();
+            }
+        }
+        logger.info("多连接消费已启动: {} 个连接, 共享订阅: {}", consumers.size() + 1, config.isSharedSubscription());
+    }
+    
     /**
      * 安排重连
      */
@@ -158,16 +300,27 @@ public class MqttClientService implements MqttCallback {
         
         logger.info("安排在 {} 毫秒后重连到MQTT服务器", currentReconnectDelay);
         scheduler.schedule(() -> {
-            if (!connected) {
-                connectToMqttBroker();
-                
-                // 指数退避重连策略
+            // 先清除标记，连接失败时才能再次安排重连
+            reconnecting = false;
+            if (!connected && !shutdown) {
+                // 指数退避重连策略，连接成功后重置
                 currentReconnectDelay = Math.min(currentReconnectDelay * 2, config.getMaxReconnectDelay());
+                connectToMqttBroker();
             }
-            reconnecting = false;
         }, currentReconnectDelay, TimeUnit.MILLISECONDS);
     }
     
+    /**
+     * 异步客户端关闭了Paho自动重连时的连接丢失，按重连延迟退避重连
+     */
+    private void asyncConnectionLost() {
+        connected = false;
+        asyncReconnect = true;
+        if (!shutdown) {
+            scheduleReconnect();
+        }
+    }
+    
     @Override
     public void connectionLost(Throwable cause) {
         logger.warn("与MQTT服务器的连接丢失: {}", cause.getMessage());
@@ -180,21 +333,54 @@ public class MqttClientService implements MqttCallback {
     
     @Override
     public void messageArrived(String topic, MqttMessage message) throws Exception {
+        if (!assignment.owns(0, topic)) {
+            return;
+        }
+        mainStatistics.record(message.getPayload().length);
+        handleMessage(topic, message.getPayload(), 0L);
+    }
+    
+    /**
+     * 处理收到的消息，主连接和附加消费连接共用
+     * deviceTime为MQTT 5用户属性携带的设备时间（毫秒），为0时使用接收时间；负载中的设备时间优先
+     *
+     * @return 存储队列已满、数据没有入库时返回false，手动确认的客户端不确认这条消息
+     */
+    private boolean handleMessage(String topic, byte[] payloadBytes, long deviceTime) {
+        messagesReceived.increment();
+        // 重连后服务器重发的QoS 1消息不再入库；入库后才记录，没入库的消息重新投递时照常处理
+        if (duplicateFilter.isRecorded(topic, payloadBytes)) {
+            return true;
+        }
+        String receivedTopic = topic;
+        byte[] receivedPayload = payloadBytes;
         try {
-            // 解析消息
-            String payload = new String(message.getPayload());
-            logger.debug("收到MQTT消息 - 主题: {}, 消息: {}, QoS: {}", topic, payload, message.getQos());
+            // 解压，失败或超过解压上限时丢弃
+            if (payloadDecompressor.isEnabled()) {
+                PayloadDecompressor.Decoded decoded = payloadDecompressor.decode(topic, payloadBytes);
+                if (decoded == null) {
+                    return true;
+                }
+                topic = decoded.getTopic();
+                payloadBytes = decoded.getPayload();
+            }
+            logger.debug("收到MQTT消息 - 主题: {}, 字节数: {}", topic, payloadBytes.length);
             
-            // 创建协议数据对象
-            ProtocolData protocolData = createProtocolData(topic, payload, message);
+            // 创建协议数据对象并按路由选择的解码器解码
+            ProtocolData protocolData = createProtocolData(topic, payloadBytes,
+                    deviceTime > 0 ? Instant.ofEpochMilli(deviceTime) : Instant.now());
             // 存储数据
-            dataStorageService.store(protocolData);
+            if (!dataStorageService.store(protocolData)) {
+                return false;
+            }
             
-            logger.debug("成功存储MQTT数据: 主题={}, 数据={}", topic, payload);
+            logger.debug("成功存储MQTT数据: 主题={}, 数据={}", topic, protocolData.getFields());
             
         } catch (Exception e) {
             logger.error("处理MQTT消息失败: 主题={}, 错误={}", topic, e.getMessage(), e);
         }
+        duplicateFilter.record(receivedTopic, receivedPayload);
+        return true;
     }
     
     @Override
@@ -204,36 +390,19 @@ public class MqttClientService implements MqttCallback {
     }
     
     /**
-     * 创建协议数据对象
+     * 创建协议数据对象，负载中带设备时间时替换timestamp
      */
-    private ProtocolData createProtocolData(String topic, String payload, MqttMessage message) {
+    private ProtocolData createProtocolData(String topic, byte[] payload, Instant timestamp) {
         ProtocolData data = new ProtocolData();
-        data.setTimestamp(Instant.now());
+        data.setTimestamp(timestamp);
         data.setProtocol("mqtt");
-        data.setDeviceId(extractDeviceIdFromTopic(topic));
         data.setAddress(topic);
-        data.setOrgData(payload);
+        // 通过路由表提取设备ID、选择解码器和存储目标
+        topicRouter.apply(data);
+        payloadDecoders.decode(data, payload);
         return data;
     }
     
-    /**
-     * 从主题中提取设备ID
-     */
-    private String extractDeviceIdFromTopic(String topic) {
-        try {
-            // 尝试从主题路径中提取设备ID
-            // 例如: sensor/device001/temperature -> device001
-            String[] parts = topic.split("/");
-            if (parts.length >= 2) {
-                // 通常设备ID在第二个位置
-                return parts[1];
-            }
-            return "unknown_device";
-        } catch (Exception e) {
-            return "unknown_device";
-        }
-    }
-    
     /**
      * 确定数据类型
      */
@@ -271,6 +440,24 @@ public class MqttClientService implements MqttCallback {
      * 发布消息到MQTT服务器
      */
     public void publishMessage(String topic, String payload, int qos) {
+        if (embeddedAttached) {
+            try {
+                embeddedServer.internalPublish(topic, payload.getBytes(StandardCharsets.UTF_8), qos, config.getClientId());
+                logger.debug("成功发布MQTT消息(进程内) - 主题: {}, 消息: {}", topic, payload);
+            } catch (Exception e) {
+                logger.error("发布MQTT消息失败: 主题={}, 错误={}", topic, e.getMessage());
+            }
+            return;
+        }
+        if (asyncIngest != null) {
+            try {
+                asyncIngest.publish(topic, payload.getBytes(StandardCharsets.UTF_8), qos);
+                logger.debug("成功发布MQTT消息 - 主题: {}, 消息: {}", topic, payload);
+            } catch (Exception e) {
+                logger.error("发布MQTT消息失败: 主题={}, 错误={}", topic, e.getMessage());
+            }
+            return;
+        }
         if (!connected || mqttClient == null) {
             logger.warn("MQTT客户端未连接，无法发布消息");
             return;
@@ -290,6 +477,12 @@ public class MqttClientService implements MqttCallback {
      * 获取连接状态
      */
     public boolean isConnected() {
+        if (embeddedAttached) {
+            return embeddedServer.isRunning();
+        }
+        if (asyncIngest != null) {
+            return asyncIngest.isConnected();
+        }
         return connected && mqttClient != null && mqttClient.isConnected();
     }
     
@@ -303,6 +496,9 @@ public class MqttClientService implements MqttCallback {
         }
         
         try {
+            if (config.isEmbeddedMode() && attachToEmbeddedServer()) {
+                return isConnected();
+            }
             connectToMqttBroker();
             return isConnected();
         } catch (Exception e) {
@@ -317,11 +513,39 @@ public class MqttClientService implements MqttCallback {
     public Map<String, Object> getStatistics() {
         Map<String, Object> stats = new HashMap<>();
         stats.put("connected", isConnected());
+        stats.put("mode", embeddedAttached ? MqttClientConfig.MODE_EMBEDDED : MqttClientConfig.MODE_EXTERNAL);
+        stats.put("mqttVersion", config.isMqtt5() ? "5" : "3.1.1");
+        stats.put("messagesReceived", messagesReceived.sum());
         stats.put("brokerUrl", config.getBrokerUrl());
         stats.put("clientId", config.getClientId());
         stats.put("reconnecting", reconnecting);
         stats.put("subscribedTopics", config.getTopics() != null ? config.getTopics().size() : 0);
         
+        // 各消费连接及汇总吞吐量
+        if (!embeddedAttached) {
+            List<Map<String, Object>> connections = new ArrayList<>();
+            Map<String, Object> main = new HashMap<>(mainStatistics.snapshot());
+            main.put("index", 0);
+            main.put("connected", isConnected());
+            connections.add(main);
+            for (MqttConsumerConnection consumer : consumers) {
+                connections.add(consumer.getStatistics());
+            }
+            double totalRate = 0;
+            for (Map<String, Object> connection : connections) {
+                totalRate += (Double) connection.get("messagesPerSecond");
+            }
+            stats.put("consumers", connections);
+            stats.put("consumerConnections", connections.size());
+            stats.put("messagesPerSecond", Math.round(totalRate * 10) / 10.0);
+        }
+        if (asyncIngest != null) {
+            stats.put("async", asyncIngest.getStatistics());
+        }
+        stats.put("compression", payloadDecompressor.getStatistics());
+        stats.put("decoders", payloadDecoders.getStatistics());
+        stats.put("dedup", duplicateFilter.getStatistics());
+        
         if (mqttClient != null) {
             try {
                 stats.put("pendingDeliveryTokens", mqttClient.getPendingDeliveryTokens().length);
@@ -333,11 +557,32 @@ public class MqttClientService implements MqttCallback {
         return stats;
     }
     
+    /**
+     * 停止消费并关闭客户端，由停机流程在存储服务关闭前调用，重复调用时直接返回
+     */
     @PreDestroy
-    public void shutdown() {
+    public synchronized void shutdown() {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
         try {
             logger.info("正在关闭MQTT客户端...");
             
+            if (embeddedAttached) {
+                embeddedServer.detachSubscriber();
+                embeddedAttached = false;
+            }
+            
+            for (MqttConsumerConnection consumer : consumers) {
+                consumer.stop();
+            }
+            consumers.clear();
+            
+            if (asyncIngest != null) {
+                asyncIngest.stop();
+            }
+            
             if (mqttClient != null && mqttClient.isConnected()) {
                 mqttClient.disconnect();
                 mqttClient.close();
@@ -0,0 +1,186 @@
+package com.noodle.app.collect.protocol.mqtt;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.noodle.app.collect.protocol.config.MqttClientConfig;
+
+/**
+ * 附加消费连接
+ *
+ * 每个连接有独立的Paho回调线程，与主连接并行消费共享订阅或分区主题。
+ * 断线由Paho自动重连，重连成功后重新订阅。
+ */
+public class MqttConsumerConnection implements MqttCallbackExtended {
+
+    private static final Logger logger = LoggerFactory.getLogger(MqttConsumerConnection.class);
+
+    /**
+     * 消息处理回调
+     *
+     * deviceTime为消息携带的设备时间（毫秒），没有时为0；
+     * 返回false表示数据没有进入存储队列，手动确认的调用方不应确认该消息
+     */
+    public interface MessageHandler {
+        boolean handle(String topic, byte[] payload, long deviceTime) throws Exception;
+    }
+
+    private final int index;
+    private final MqttClientConfig config;
+    private final ConsumerAssignment assignment;
+    private final MessageHandler handler;
+    private final List<MqttClientConfig.TopicConfig> topics;
+    private final ConsumerStatistics statistics = new ConsumerStatistics();
+
+    private MqttClient mqttClient;
+
+    public MqttConsumerConnection(int index, MqttClientConfig config, ConsumerAssignment assignment, MessageHandler handler) {
+        this.index = index;
+        this.config = config;
+        this.assignment = assignment;
+        this.handler = handler;
+        this.topics = assignment.topicsFor(index);
+    }
+
+    /**
+     * 建立连接并订阅
+     */
+    public void start() throws Exception {
+        String clientId = config.getClientId() + "_" + index + "_" + System.currentTimeMillis();
+        mqttClient = new MqttClient(config.getBrokerUrl(), clientId, new MemoryPersistence());
+        mqttClient.setCallback(this);
+
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(config.isCleanSession());
+        options.setKeepAliveInterval(config.getKeepAlive());
+        options.setAutomaticReconnect(true);
+        options.setMaxReconnectDelay((int) config.getMaxReconnectDelay());
+        options.setMqttVersion(MqttConnectOptions.MQTT_VERSION_3_1_1);
+        options.setConnectionTimeout(30);
+        if (config.getUsername() != null && !config.getUsername().isEmpty()) {
+            options.setUserName(config.getUsername());
+        }
+        if (config.getPassword() != null && !config.getPassword().isEmpty()) {
+            options.setPassword(config.getPassword().toCharArray());
+        }
+        mqttClient.connect(options);
+    }
+
+    /**
+     * 断开连接
+     */
+    public void stop() {
+        try {
+            if (mqttClient != null) {
+                if (mqttClient.isConnected()) {
+                    mqttClient.disconnect();
+                }
+                mqttClient.close();
+            }
+        } catch (Exception e) {
+            logger.warn("关闭消费连接{}失败: {}", index, e.getMessage());
+        }
+    }
+
+    public boolean isConnected() {
+        return mqttClient != null && mqttClient.isConnected();
+    }
+
+    @Override
+    public void connectComplete(boolean reconnect, String serverURI) {
+        for (MqttClientConfig.TopicConfig topicConfig : topics) {
+            String filter = assignment.subscriptionFilter(topicConfig);
+            try {
+                mqttClient.subscribe(filter, topicConfig.getQos());
+                logger.info("消费连接{}订阅主题: {} (QoS: {})", index, filter, topicConfig.getQos());
+            } catch (Exception e) {
+                logger.error("消费连接{}订阅主题失败: {} - {}", index, filter, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void connectionLost(Throwable cause) {
+        logger.warn("消费连接{}与MQTT服务器的连接丢失: {}", index, cause.getMessage());
+    }
+
+    @Override
+    public void messageArrived(String topic, MqttMessage message) throws Exception {
+        if (!assignment.owns(index, topic)) {
+            return;
+        }
+        statistics.record(message.getPayload().length);
+        handler.handle(topic, message.getPayload(), 0L);
+    }
+
+    @Override
+    public void deliveryComplete(IMqttDeliveryToken token) {
+    }
+
+    /**
+     * 获取连接统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>(statistics.snapshot());
+        stats.put("index", index);
+        stats.put("connected", isConnected());
+        stats.put("topics", topics.size());
+        return stats;
+    }
+
+    public ConsumerStatistics getConsumerStatistics() {
+        return statistics;
+    }
+
+    /**
+     * 消费计数
+     *
+     * 速率按不短于1秒的采样区间计算，区间未满时返回上一次的速率，多个调用方同时查询不会把区间切碎。
+     */
+    public static class ConsumerStatistics {
+        private static final long RATE_INTERVAL_MILLIS = 1000;
+
+        private final LongAdder messages = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private long lastMessages;
+        private long lastTime = System.currentTimeMillis();
+        private double rate;
+
+        public void record(int payloadBytes) {
+            messages.increment();
+            bytes.add(payloadBytes);
+        }
+
+        public long getMessages() {
+            return messages.sum();
+        }
+
+        public synchronized Map<String, Object> snapshot() {
+            long now = System.currentTimeMillis();
+            long total = messages.sum();
+            long elapsed = now - lastTime;
+            if (elapsed >= RATE_INTERVAL_MILLIS) {
+                rate = (total - lastMessages) * 1000.0 / elapsed;
+                lastMessages = total;
+                lastTime = now;
+            }
+
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("messages", total);
+            stats.put("bytes", bytes.sum());
+            stats.put("messagesPerSecond", Math.round(rate * 10) / 10.0);
+            return stats;
+        }
+    }
+}
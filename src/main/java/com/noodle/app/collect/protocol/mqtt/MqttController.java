@@ -16,6 +16,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.noodle.app.collect.protocol.ProtocolServer;
+import com.noodle.app.collect.protocol.traffic.TrafficStatistics;
 
 /**
  * MQTT REST API控制器
@@ -42,6 +43,9 @@ public class MqttController {
         status.put("running", mqttServer.isRunning());
         status.put("serverName", mqttServer.getServerName());
         status.put("connections", 0); // 暂时返回0，后续可以实现连接计数
+        if (mqttServer instanceof MoquetteMqttServer) {
+            status.put("persist", ((MoquetteMqttServer) mqttServer).getPersistStatistics());
+        }
         return status;
     }
     /**
@@ -78,6 +82,65 @@ public class MqttController {
         return result;
     }
     
+    /**
+     * 获取滑动窗口内发布最多的主题和客户端
+     */
+    @GetMapping("/traffic")
+    public Map<String, Object> getTraffic(@RequestParam(defaultValue = "60") int window,
+                                          @RequestParam(defaultValue = "10") int limit,
+                                          @RequestParam(required = false) String clientId) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            TrafficStatistics traffic = mqttServer instanceof MoquetteMqttServer
+                    ? ((MoquetteMqttServer) mqttServer).getTrafficStatistics() : null;
+            if (traffic == null) {
+                result.put("success", false);
+                result.put("error", "流量统计未启用");
+                return result;
+            }
+            result.put("success", true);
+            result.put("statistics", traffic.getStatistics());
+            if (clientId != null && !clientId.isEmpty()) {
+                result.put("client", traffic.getClient(clientId, Math.max(1, window)));
+            } else {
+                result.putAll(traffic.getTopTalkers(Math.max(1, window), Math.max(1, limit)));
+            }
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", e.getMessage());
+        }
+        return result;
+    }
+    
+    /**
+     * 获取发布限流统计和被限流最多的客户端
+     */
+    @GetMapping("/ratelimit")
+    public Map<String, Object> getRateLimit(@RequestParam(defaultValue = "20") int limit) {
+        Map<String, Object> result = new HashMap<>();
+        try {
+            if (!(mqttServer instanceof MoquetteMqttServer)) {
+                result.put("success", false);
+                result.put("error", "当前MQTT服务器实现不支持限流");
+                return result;
+            }
+            MoquetteMqttServer moquetteServer = (MoquetteMqttServer) mqttServer;
+            Map<String, Object> statistics = moquetteServer.getRateLimitStatistics();
+            if (statistics == null) {
+                result.put("success", false);
+                result.put("error", "发布限流未启用");
+                return result;
+            }
+            result.put("success", true);
+            result.put("statistics", statistics);
+            result.put("offenders", moquetteServer.getTopOffenders(Math.max(1, limit)));
+        } catch (Exception e) {
+            result.put("success", false);
+            result.put("error", e.getMessage());
+        }
+        return result;
+    }
+    
     /**
      * 测试 MQTT 服务器写入数据
      * 该接口用于测试向 MQTT 服务器发布各种类型的数据
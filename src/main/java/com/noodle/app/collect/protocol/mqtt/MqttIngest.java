@@ -0,0 +1,31 @@
+package com.noodle.app.collect.protocol.mqtt;
+
+import java.util.Map;
+
+/**
+ * 带分片工作线程和手动确认的接收连接
+ */
+public interface MqttIngest {
+
+    /**
+     * 连接MQTT服务器，失败时抛出异常由调用方安排重连
+     */
+    void connect() throws Exception;
+
+    /**
+     * 发布消息
+     */
+    void publish(String topic, byte[] payload, int qos) throws Exception;
+
+    boolean isConnected();
+
+    /**
+     * 断开连接并等待工作线程处理完已接收的消息
+     */
+    void stop();
+
+    /**
+     * 获取统计信息
+     */
+    Map<String, Object> getStatistics();
+}
@@ -0,0 +1,53 @@
+package com.noodle.app.collect.protocol.mqtt;
+
+/**
+ * 拦截器交给存储线程的发布消息
+ *
+ * 只持有拦截时复制出的原始字节，解码和构建ProtocolData都放到交接线程中完成。
+ */
+public final class PublishEnvelope {
+
+    private final String clientId;
+    private final String topic;
+    private final byte[] payload;
+    private final long receivedAt;
+    private final boolean lowPriority;
+
+    public PublishEnvelope(String clientId, String topic, byte[] payload, long receivedAt) {
+        this(clientId, topic, payload, receivedAt, false);
+    }
+
+    public PublishEnvelope(String clientId, String topic, byte[] payload, long receivedAt, boolean lowPriority) {
+        this.clientId = clientId;
+        this.topic = topic;
+        this.payload = payload;
+        this.receivedAt = receivedAt;
+        this.lowPriority = lowPriority;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * 接收时间（毫秒）
+     */
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    /**
+     * 是否因限流降为低优先级
+     */
+    public boolean isLowPriority() {
+        return lowPriority;
+    }
+}
@@ -0,0 +1,150 @@
+package com.noodle.app.collect.protocol.mqtt;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 发布消息交接队列
+ *
+ * Broker拦截器只做一次非阻塞offer后立即返回，由独立线程把消息交给存储服务，
+ * 存储侧的阻塞或变慢不会拖住拦截器线程。队列满时丢弃消息并计数。
+ * 低优先级消息（被限流降级的客户端或主题）进入单独的队列，只在主队列为空时处理。
+ */
+public class PublishHandoff {
+
+    private static final Logger logger = LoggerFactory.getLogger(PublishHandoff.class);
+
+    private final BlockingQueue<PublishEnvelope> queue;
+    private final BlockingQueue<PublishEnvelope> lowPriorityQueue;
+    private final Consumer<PublishEnvelope> consumer;
+    private final String threadName;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder lowPriorityAccepted = new LongAdder();
+    private final LongAdder lowPriorityDropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private volatile boolean running = false;
+    private Thread worker;
+
+    public PublishHandoff(String threadName, int capacity, Consumer<PublishEnvelope> consumer) {
+        this(threadName, capacity, 1, consumer);
+    }
+
+    public PublishHandoff(String threadName, int capacity, int lowPriorityCapacity, Consumer<PublishEnvelope> consumer) {
+        this.threadName = threadName;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.lowPriorityQueue = new ArrayBlockingQueue<>(Math.max(1, lowPriorityCapacity));
+        this.consumer = consumer;
+    }
+
+    /**
+     * 提交消息（非阻塞）
+     */
+    public boolean offer(PublishEnvelope envelope) {
+        if (envelope.isLowPriority()) {
+            if (lowPriorityQueue.offer(envelope)) {
+                lowPriorityAccepted.increment();
+                return true;
+            }
+            lowPriorityDropped.increment();
+            return false;
+        }
+        if (queue.offer(envelope)) {
+            accepted.increment();
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    /**
+     * 启动交接线程
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::drainLoop, threadName);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 停止交接线程，队列中剩余的消息会在退出前交给存储
+     */
+    public synchronized void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            try {
+                worker.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+        }
+    }
+
+    private void drainLoop() {
+        while (running) {
+            try {
+                PublishEnvelope envelope = queue.poll();
+                if (envelope == null) {
+                    envelope = lowPriorityQueue.poll();
+                }
+                if (envelope == null) {
+                    // 空闲等待期间到达的低优先级消息最多延迟一个等待周期
+                    envelope = queue.poll(100, TimeUnit.MILLISECONDS);
+                }
+                if (envelope != null) {
+                    deliver(envelope);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        PublishEnvelope envelope;
+        while ((envelope = queue.poll()) != null) {
+            deliver(envelope);
+        }
+        while ((envelope = lowPriorityQueue.poll()) != null) {
+            deliver(envelope);
+        }
+    }
+
+    private void deliver(PublishEnvelope envelope) {
+        try {
+            consumer.accept(envelope);
+        } catch (Exception e) {
+            failed.increment();
+            logger.error("Failed to hand off MQTT publish: topic={}, error={}", envelope.getTopic(), e.getMessage());
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("accepted", accepted.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("failed", failed.sum());
+        stats.put("queued", queue.size());
+        stats.put("remainingCapacity", queue.remainingCapacity());
+        stats.put("lowPriorityAccepted", lowPriorityAccepted.sum());
+        stats.put("lowPriorityDropped", lowPriorityDropped.sum());
+        stats.put("lowPriorityQueued", lowPriorityQueue.size());
+        return stats;
+    }
+}
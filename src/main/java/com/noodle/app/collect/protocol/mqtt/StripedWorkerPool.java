@@ -0,0 +1,125 @@
+package com.noodle.app.collect.protocol.mqtt;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 分片工作线程池
+ *
+ * 每个分片一个线程和一个有界队列，相同key的任务总是进入同一分片，
+ * 因此同一设备的消息按到达顺序处理，不同设备之间并行。
+ * 分片队列满时提交方阻塞，形成背压。
+ */
+public class StripedWorkerPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(StripedWorkerPool.class);
+
+    private final Stripe[] stripes;
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile boolean running = true;
+
+    public StripedWorkerPool(String name, int stripeCount, int queueCapacity) {
+        int count = Math.max(1, stripeCount);
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(name + "-" + i, Math.max(1, queueCapacity));
+            stripes[i].thread.start();
+        }
+    }
+
+    /**
+     * 按key提交任务，分片队列满时阻塞等待
+     */
+    public void execute(int key, Runnable task) throws InterruptedException {
+        if (!running) {
+            throw new IllegalStateException("Worker pool is shut down");
+        }
+        stripes[(key & 0x7fffffff) % stripes.length].queue.put(task);
+    }
+
+    /**
+     * 停止接收任务，等待已提交的任务执行完毕
+     */
+    public void shutdown(long timeoutMillis) {
+        running = false;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Stripe stripe : stripes) {
+            stripe.thread.interrupt();
+        }
+        for (Stripe stripe : stripes) {
+            try {
+                stripe.thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        int queued = 0;
+        int maxDepth = 0;
+        for (Stripe stripe : stripes) {
+            int depth = stripe.queue.size();
+            queued += depth;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("stripes", stripes.length);
+        stats.put("queued", queued);
+        stats.put("maxStripeDepth", maxDepth);
+        stats.put("executed", executed.sum());
+        stats.put("failed", failed.sum());
+        return stats;
+    }
+
+    private void runTask(Runnable task) {
+        try {
+            task.run();
+            executed.increment();
+        } catch (Exception e) {
+            failed.increment();
+            logger.error("Worker task failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private class Stripe {
+        private final BlockingQueue<Runnable> queue;
+        private final Thread thread;
+
+        Stripe(String threadName, int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = new Thread(this::loop, threadName);
+            this.thread.setDaemon(true);
+        }
+
+        private void loop() {
+            while (running) {
+                try {
+                    Runnable task = queue.poll(1, TimeUnit.SECONDS);
+                    if (task != null) {
+                        runTask(task);
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            // 退出前处理完剩余任务
+            Runnable task;
+            while ((task = queue.poll()) != null) {
+                runTask(task);
+            }
+        }
+    }
+}
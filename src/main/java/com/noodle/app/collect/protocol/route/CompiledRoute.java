@@ -0,0 +1,87 @@
+package com.noodle.app.collect.protocol.route;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.noodle.app.collect.protocol.config.TopicRouteConfig;
+import com.noodle.app.collect.protocol.topic.TopicMatch;
+
+/**
+ * 编译后的路由
+ *
+ * 模板中的变量按出现顺序映射到{@link TopicMatch}的捕获下标，取值时按下标读取。
+ */
+public final class CompiledRoute {
+
+    private static final String DEVICE_ID = "deviceId";
+
+    private final String name;
+    private final String topic;
+    private final String decoder;
+    private final String storage;
+    private final String[] variables;
+    private final int deviceIdIndex;
+
+    CompiledRoute(TopicRouteConfig.RouteRule rule) {
+        this.topic = rule.getTopic().trim();
+        this.name = rule.getName() != null ? rule.getName() : this.topic;
+        this.decoder = rule.getDecoder();
+        this.storage = rule.getStorage();
+        this.variables = parseVariables(this.topic);
+        this.deviceIdIndex = Arrays.asList(variables).indexOf(DEVICE_ID);
+    }
+
+    /**
+     * 解析模板中的通配层，"+" 和 "#" 对应无名变量
+     */
+    private static String[] parseVariables(String template) {
+        List<String> names = new ArrayList<>();
+        for (String level : template.split("/")) {
+            if (level.length() > 2 && level.charAt(0) == '{' && level.charAt(level.length() - 1) == '}') {
+                String variable = level.substring(1, level.length() - 1);
+                if (names.contains(variable)) {
+                    throw new IllegalArgumentException("Duplicate variable '" + variable + "' in " + template);
+                }
+                names.add(variable);
+            } else if ("+".equals(level) || "#".equals(level)) {
+                names.add(null);
+            }
+        }
+        return names.toArray(new String[0]);
+    }
+
+    /**
+     * 获取{deviceId}变量值
+     */
+    public String deviceId(TopicMatch match) {
+        return deviceIdIndex >= 0 ? match.group(deviceIdIndex) : null;
+    }
+
+    /**
+     * {deviceId}变量的捕获下标，没有该变量时为-1
+     */
+    int getDeviceIdIndex() {
+        return deviceIdIndex;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public String getDecoder() {
+        return decoder;
+    }
+
+    public String getStorage() {
+        return storage;
+    }
+
+    public String[] getVariables() {
+        return variables.clone();
+    }
+}
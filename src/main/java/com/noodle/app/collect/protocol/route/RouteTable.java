@@ -0,0 +1,68 @@
+package com.noodle.app.collect.protocol.route;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.noodle.app.collect.protocol.config.TopicRouteConfig;
+import com.noodle.app.collect.protocol.topic.TopicMatch;
+import com.noodle.app.collect.protocol.topic.TopicTrie;
+
+/**
+ * 路由表
+ *
+ * 由路由规则一次性编译成主题前缀树，编译后不可变；热更新时整体替换。
+ */
+public final class RouteTable {
+
+    private final TopicTrie<CompiledRoute> trie = new TopicTrie<>();
+    private final List<TopicRouteConfig.RouteRule> rules;
+    private final long compiledAt;
+
+    private RouteTable(List<TopicRouteConfig.RouteRule> rules) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        this.compiledAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 编译路由规则，模板非法或与其他规则的模板形状相同（如"a/+/b"与"a/{id}/b"）时抛出IllegalArgumentException
+     */
+    public static RouteTable compile(List<TopicRouteConfig.RouteRule> rules) {
+        List<TopicRouteConfig.RouteRule> source = rules != null ? rules : Collections.emptyList();
+        RouteTable table = new RouteTable(source);
+        for (TopicRouteConfig.RouteRule rule : source) {
+            if (!rule.isEnabled()) {
+                continue;
+            }
+            if (rule.getTopic() == null || rule.getTopic().trim().isEmpty()) {
+                throw new IllegalArgumentException("Route topic must not be empty: " + rule);
+            }
+            CompiledRoute route = new CompiledRoute(rule);
+            CompiledRoute previous = table.trie.add(route.getTopic(), route);
+            if (previous != null) {
+                throw new IllegalArgumentException("Route " + route.getName() + " (" + route.getTopic()
+                        + ") duplicates route " + previous.getName() + " (" + previous.getTopic() + ")");
+            }
+        }
+        return table;
+    }
+
+    /**
+     * 匹配路由，未命中返回null
+     */
+    public CompiledRoute match(String topic, TopicMatch match) {
+        return trie.match(topic, match);
+    }
+
+    public int size() {
+        return trie.size();
+    }
+
+    public List<TopicRouteConfig.RouteRule> getRules() {
+        return rules;
+    }
+
+    public long getCompiledAt() {
+        return compiledAt;
+    }
+}
@@ -0,0 +1,147 @@
+package com.noodle.app.collect.protocol.route;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.noodle.app.collect.protocol.config.TopicRouteConfig;
+import com.noodle.app.collect.protocol.topic.TopicMatch;
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * 主题路由服务
+ *
+ * 为每条消息做一次路由决策：提取设备ID、选择解码器和存储目标。
+ * 路由表可在运行期整体替换，不需要重启Broker。
+ */
+@Component
+public class TopicRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(TopicRouter.class);
+
+    private static final String UNKNOWN_DEVICE = "unknown_device";
+
+    @Autowired
+    private TopicRouteConfig routeConfig;
+
+    private volatile RouteTable routeTable = RouteTable.compile(null);
+
+    // 每个线程复用一个匹配结果，匹配过程不分配对象
+    private final ThreadLocal<TopicMatch> matchHolder = ThreadLocal.withInitial(TopicMatch::new);
+
+    @PostConstruct
+    public void initialize() {
+        try {
+            routeTable = RouteTable.compile(routeConfig.getRules());
+            logger.info("Topic routes compiled: {}", routeTable.size());
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid topic route configuration, routing disabled: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 为协议数据设置设备ID、解码器和存储目标
+     */
+    public CompiledRoute apply(ProtocolData data) {
+        String topic = data.getAddress();
+        TopicMatch match = matchHolder.get();
+        CompiledRoute route = routeTable.match(topic, match);
+
+        String deviceId = null;
+        if (route != null) {
+            deviceId = route.deviceId(match);
+            data.setDecoder(route.getDecoder());
+            data.setStorage(route.getStorage());
+        } else {
+            data.setDecoder(routeConfig.getDefaultDecoder());
+        }
+        if (deviceId == null && data.getDeviceId() == null) {
+            deviceId = secondLevel(topic);
+        }
+        if (deviceId != null) {
+            data.setDeviceId(deviceId);
+        }
+        return route;
+    }
+
+    /**
+     * 计算主题中设备ID的哈希值，用于按设备分片保证顺序；不创建子串
+     */
+    public int deviceKeyHash(String topic) {
+        TopicMatch match = matchHolder.get();
+        CompiledRoute route = routeTable.match(topic, match);
+        if (route != null && route.getDeviceIdIndex() >= 0) {
+            int index = route.getDeviceIdIndex();
+            return hash(topic, match.start(index), match.end(index));
+        }
+        int first = topic.indexOf('/');
+        if (first < 0) {
+            return topic.hashCode();
+        }
+        int second = topic.indexOf('/', first + 1);
+        return hash(topic, first + 1, second < 0 ? topic.length() : second);
+    }
+
+    /**
+     * 匹配路由
+     */
+    public CompiledRoute route(String topic, TopicMatch match) {
+        return routeTable.match(topic, match);
+    }
+
+    /**
+     * 热更新路由表，编译失败时保留原路由表并抛出异常
+     */
+    public void reload(List<TopicRouteConfig.RouteRule> rules) {
+        RouteTable table = RouteTable.compile(rules);
+        routeTable = table;
+        logger.info("Topic routes reloaded: {}", table.size());
+    }
+
+    public List<TopicRouteConfig.RouteRule> getRules() {
+        return routeTable.getRules();
+    }
+
+    /**
+     * 获取路由统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        RouteTable table = routeTable;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("routes", table.size());
+        stats.put("compiledAt", table.getCompiledAt());
+        stats.put("defaultDecoder", routeConfig.getDefaultDecoder());
+        return stats;
+    }
+
+    private static int hash(String source, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + source.charAt(i);
+        }
+        return h;
+    }
+
+    /**
+     * 未命中路由时沿用原有规则：主题第二层作为设备ID，例如 sensor/device001/temperature -> device001
+     */
+    private static String secondLevel(String topic) {
+        if (topic == null) {
+            return UNKNOWN_DEVICE;
+        }
+        int first = topic.indexOf('/');
+        if (first < 0) {
+            return UNKNOWN_DEVICE;
+        }
+        int second = topic.indexOf('/', first + 1);
+        String deviceId = topic.substring(first + 1, second < 0 ? topic.length() : second);
+        return deviceId.isEmpty() ? UNKNOWN_DEVICE : deviceId;
+    }
+}
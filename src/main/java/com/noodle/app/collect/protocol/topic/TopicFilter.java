@@ -0,0 +1,54 @@
+package com.noodle.app.collect.protocol.topic;
+
+import java.util.Collection;
+
+/**
+ * 主题持久化过滤器
+ *
+ * 由include/exclude两组MQTT主题过滤器预编译而成：
+ * include为空时默认全部持久化，exclude命中的主题始终忽略。
+ */
+public final class TopicFilter {
+
+    private final TopicTrie<Boolean> include = new TopicTrie<>();
+    private final TopicTrie<Boolean> exclude = new TopicTrie<>();
+
+    private TopicFilter() {
+    }
+
+    /**
+     * 编译过滤器
+     */
+    public static TopicFilter compile(Collection<String> includes, Collection<String> excludes) {
+        TopicFilter filter = new TopicFilter();
+        if (includes != null) {
+            for (String pattern : includes) {
+                filter.include.add(pattern.trim(), Boolean.TRUE);
+            }
+        }
+        if (excludes != null) {
+            for (String pattern : excludes) {
+                filter.exclude.add(pattern.trim(), Boolean.TRUE);
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * 判断主题是否需要持久化
+     */
+    public boolean accept(String topic) {
+        if (include.size() > 0 && !include.matchesAny(topic)) {
+            return false;
+        }
+        return !exclude.matchesAny(topic);
+    }
+
+    public int getIncludeCount() {
+        return include.size();
+    }
+
+    public int getExcludeCount() {
+        return exclude.size();
+    }
+}
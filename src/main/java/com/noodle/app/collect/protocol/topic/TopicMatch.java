@@ -0,0 +1,66 @@
+package com.noodle.app.collect.protocol.topic;
+
+/**
+ * 主题匹配结果
+ *
+ * 只记录通配层在主题中的起止位置，匹配时不分配对象；
+ * 需要字符串时再通过{@link #group(int)}取值。实例非线程安全，按线程复用。
+ */
+public final class TopicMatch {
+
+    private static final int MAX_CAPTURES = 16;
+
+    private final int[] starts = new int[MAX_CAPTURES];
+    private final int[] ends = new int[MAX_CAPTURES];
+    private String topic;
+    private int count;
+
+    void reset(String topic) {
+        this.topic = topic;
+        this.count = 0;
+    }
+
+    void set(int index, int start, int end) {
+        if (index >= MAX_CAPTURES) {
+            return;
+        }
+        starts[index] = start;
+        ends[index] = end;
+    }
+
+    void complete(int count) {
+        this.count = Math.min(count, MAX_CAPTURES);
+    }
+
+    /**
+     * 匹配的主题
+     */
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * 捕获的通配层数量
+     */
+    public int count() {
+        return count;
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int end(int index) {
+        return ends[index];
+    }
+
+    /**
+     * 获取第index个通配层的内容
+     */
+    public String group(int index) {
+        if (index < 0 || index >= count) {
+            return null;
+        }
+        return topic.substring(starts[index], ends[index]);
+    }
+}
@@ -0,0 +1,242 @@
+package com.noodle.app.collect.protocol.topic;
+
+/**
+ * 预编译的主题前缀树
+ *
+ * 支持MQTT通配符：
+ * - "+" 或 "{name}" 匹配单层（"{name}"在匹配时记录该层的位置）
+ * - "#" 匹配剩余所有层级，只能出现在最后一层
+ *
+ * 构建完成后只读，可被多个线程并发匹配；匹配过程按"/"逐层游走，
+ * 不做split、不创建子串，匹配优先级为：精确层 > 单层通配 > 多层通配。
+ */
+public final class TopicTrie<V> {
+
+    private final Node<V> root = new Node<>();
+    private int size;
+
+    /**
+     * 添加主题过滤器/模板
+     *
+     * "+"和"{name}"是同一种单层通配，"a/+/b"与"a/{x}/b"落在同一个节点上，后添加的会替换先添加的。
+     *
+     * @return 该节点上被替换的值，没有时返回null
+     */
+    public V add(String pattern, V value) {
+        if (pattern == null || pattern.isEmpty()) {
+            throw new IllegalArgumentException("Topic pattern must not be empty");
+        }
+        Node<V> node = root;
+        int start = 0;
+        int length = pattern.length();
+        while (true) {
+            int end = pattern.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (isMultiLevel(pattern, start, end)) {
+                if (end != length) {
+                    throw new IllegalArgumentException("'#' must be the last level: " + pattern);
+                }
+                if (node.multi == null) {
+                    node.multi = new Node<>();
+                }
+                node = node.multi;
+            } else if (isSingleLevel(pattern, start, end)) {
+                if (node.single == null) {
+                    node.single = new Node<>();
+                }
+                node = node.single;
+            } else {
+                String segment = pattern.substring(start, end);
+                if (segment.indexOf('+') >= 0 || segment.indexOf('#') >= 0) {
+                    throw new IllegalArgumentException("Wildcard must occupy a whole level: " + pattern);
+                }
+                Node<V> child = node.children.get(segment, 0, segment.length());
+                if (child == null) {
+                    child = new Node<>();
+                    node.children.put(segment, child);
+                }
+                node = child;
+            }
+            if (end == length) {
+                break;
+            }
+            start = end + 1;
+        }
+        V previous = node.value;
+        if (previous == null) {
+            size++;
+        }
+        node.value = value;
+        return previous;
+    }
+
+    /**
+     * 主题是否命中任意过滤器
+     */
+    public boolean matchesAny(String topic) {
+        return match(topic, null) != null;
+    }
+
+    /**
+     * 匹配主题，返回优先级最高的值；captures不为空时记录各通配层的位置
+     */
+    public V match(String topic, TopicMatch captures) {
+        if (topic == null || size == 0) {
+            return null;
+        }
+        if (captures != null) {
+            captures.reset(topic);
+        }
+        // 以$开头的系统主题不参与首层通配匹配
+        boolean system = !topic.isEmpty() && topic.charAt(0) == '$';
+        return find(root, topic, 0, 0, captures, system);
+    }
+
+    /**
+     * 过滤器数量
+     */
+    public int size() {
+        return size;
+    }
+
+    private V find(Node<V> node, String topic, int start, int captureIndex, TopicMatch captures, boolean system) {
+        int length = topic.length();
+        if (start > length) {
+            // 已消费完所有层级；"a/#" 同样匹配 "a"
+            V found = node.value;
+            if (found == null && node.multi != null) {
+                found = node.multi.value;
+            }
+            if (found != null && captures != null) {
+                captures.complete(captureIndex);
+            }
+            return found;
+        }
+        int end = topic.indexOf('/', start);
+        if (end < 0) {
+            end = length;
+        }
+
+        Node<V> child = node.children.get(topic, start, end);
+        if (child != null) {
+            V found = find(child, topic, end + 1, captureIndex, captures, false);
+            if (found != null) {
+                return found;
+            }
+        }
+        if (system) {
+            return null;
+        }
+        if (node.single != null) {
+            if (captures != null) {
+                captures.set(captureIndex, start, end);
+            }
+            V found = find(node.single, topic, end + 1, captureIndex + 1, captures, false);
+            if (found != null) {
+                return found;
+            }
+        }
+        if (node.multi != null && node.multi.value != null) {
+            if (captures != null) {
+                captures.set(captureIndex, start, length);
+                captures.complete(captureIndex + 1);
+            }
+            return node.multi.value;
+        }
+        return null;
+    }
+
+    private static boolean isMultiLevel(String pattern, int start, int end) {
+        return end - start == 1 && pattern.charAt(start) == '#';
+    }
+
+    private static boolean isSingleLevel(String pattern, int start, int end) {
+        if (end - start == 1 && pattern.charAt(start) == '+') {
+            return true;
+        }
+        return end - start > 2 && pattern.charAt(start) == '{' && pattern.charAt(end - 1) == '}';
+    }
+
+    private static final class Node<V> {
+        final SegmentTable<Node<V>> children = new SegmentTable<>();
+        Node<V> single;
+        Node<V> multi;
+        V value;
+    }
+
+    /**
+     * 按字符区间查找的开放寻址表，查找时不需要截取子串
+     */
+    private static final class SegmentTable<T> {
+        private String[] keys = new String[4];
+        private Object[] values = new Object[4];
+        private int count;
+
+        @SuppressWarnings("unchecked")
+        T get(String source, int start, int end) {
+            if (count == 0) {
+                return null;
+            }
+            int mask = keys.length - 1;
+            int i = spread(hash(source, start, end)) & mask;
+            int len = end - start;
+            String key;
+            while ((key = keys[i]) != null) {
+                if (key.length() == len && key.regionMatches(0, source, start, len)) {
+                    return (T) values[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        void put(String key, T value) {
+            if ((count + 1) * 2 > keys.length) {
+                resize();
+            }
+            insert(keys, values, key, value);
+            count++;
+        }
+
+        private void resize() {
+            String[] newKeys = new String[keys.length * 2];
+            Object[] newValues = new Object[values.length * 2];
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) {
+                    insert(newKeys, newValues, keys[i], values[i]);
+                }
+            }
+            keys = newKeys;
+            values = newValues;
+        }
+
+        private static void insert(String[] keys, Object[] values, String key, Object value) {
+            int mask = keys.length - 1;
+            // 与String.hashCode一致，因此可以直接用区间哈希查找
+            int i = spread(key.hashCode()) & mask;
+            while (keys[i] != null) {
+                if (keys[i].equals(key)) {
+                    values[i] = value;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        private static int hash(String source, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + source.charAt(i);
+            }
+            return h;
+        }
+
+        private static int spread(int h) {
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.noodle.app.collect.protocol.traffic;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 并发Count-Min Sketch
+ *
+ * depth行（最多8行）、每行width个计数器，内存固定为 depth × width × 8 字节，与键的数量无关。
+ * 估计值只会偏大，误差上界约为 总数 × e / width（概率 1 - e^-depth）。
+ * 计数器用AtomicLongArray原子累加，多个线程可同时写入。
+ */
+public final class CountMinSketch {
+
+    // 每行一个奇数乘子，乘法后取高位作为该行的位置
+    private static final long[] MULTIPLIERS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+            0xFF51AFD7ED558CCDL, 0xC4CEB93FE1A85EC5L, 0x94D049BB133111EBL, 0xBF58476D1CE4E5B9L};
+
+    private final int depth;
+    private final int width;
+    private final int shift;
+    private final AtomicLongArray counters;
+
+    /**
+     * @param depth 哈希行数
+     * @param width 每行计数器数，向上取整为2的幂
+     */
+    public CountMinSketch(int depth, int width) {
+        this.depth = Math.min(MULTIPLIERS.length, Math.max(1, depth));
+        int size = 16;
+        while (size < width) {
+            size <<= 1;
+        }
+        this.width = size;
+        this.shift = 64 - Integer.numberOfTrailingZeros(size);
+        this.counters = new AtomicLongArray(this.depth * size);
+    }
+
+    /**
+     * 累加并返回累加后的估计值
+     */
+    public long add(long hash, long delta) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            long value = counters.addAndGet(index(row, hash), delta);
+            if (value < estimate) {
+                estimate = value;
+            }
+        }
+        return estimate;
+    }
+
+    /**
+     * 估计值
+     */
+    public long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            long value = counters.get(index(row, hash));
+            if (value < estimate) {
+                estimate = value;
+            }
+        }
+        return estimate;
+    }
+
+    /**
+     * 清零
+     */
+    public void clear() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.lazySet(i, 0);
+        }
+    }
+
+    /**
+     * 占用的计数器字节数
+     */
+    public long memoryBytes() {
+        return counters.length() * 8L;
+    }
+
+    // 各行用不同乘子做乘法移位哈希，避免两个键在所有行上同时冲突
+    private int index(int row, long hash) {
+        return row * width + (int) ((hash * MULTIPLIERS[row]) >>> shift);
+    }
+
+    /**
+     * 字符串的64位哈希，不创建子串或字节数组
+     */
+    public static long hash(String key) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        // murmur3 fmix64
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1A85EC5L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
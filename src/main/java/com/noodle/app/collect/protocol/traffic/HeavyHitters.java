@@ -0,0 +1,239 @@
+package com.noodle.app.collect.protocol.traffic;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 滑动窗口热点统计
+ *
+ * 时间按固定长度分槽，每个槽有消息数和字节数两个Count-Min Sketch，外加一个有界的候选键集合：
+ * 估计值超过槽内门槛的键进入候选集合，集合超过两倍容量时按估计值裁剪回容量并抬高门槛。
+ * 查询时合并窗口内各槽的候选键，再按窗口内各槽Sketch的估计值之和排序。
+ * 内存只与槽数、Sketch宽度和候选容量有关，与主题或客户端的数量无关。
+ *
+ * 槽轮换时的清零与并发写入不加锁，轮换瞬间可能丢失少量计数，对流量统计可以接受。
+ */
+public class HeavyHitters {
+
+    private final long slotMillis;
+    private final int capacity;
+    private final Slot[] slots;
+
+    /**
+     * @param slotCount 槽数，窗口最长为 slotCount × slotMillis
+     * @param slotMillis 每个槽的时长（毫秒）
+     * @param depth Sketch行数
+     * @param width Sketch每行的计数器数
+     * @param capacity 每个槽保留的候选键数
+     */
+    public HeavyHitters(int slotCount, long slotMillis, int depth, int width, int capacity) {
+        this.slotMillis = Math.max(1, slotMillis);
+        this.capacity = Math.max(1, capacity);
+        this.slots = new Slot[Math.max(1, slotCount)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot(depth, width);
+        }
+    }
+
+    /**
+     * 记录一条消息
+     */
+    public void add(String key, long hash, int bytes, long nowMillis) {
+        long epoch = nowMillis / slotMillis;
+        Slot slot = slots[(int) (epoch % slots.length)];
+        if (slot.epoch != epoch) {
+            slot.rotate(epoch);
+        }
+        long estimate = slot.messages.add(hash, 1);
+        slot.bytes.add(hash, bytes);
+        if (estimate > slot.threshold && !slot.candidates.contains(key)) {
+            slot.candidates.add(key);
+            if (slot.candidates.size() > capacity * 2) {
+                slot.prune(capacity);
+            }
+        }
+    }
+
+    /**
+     * 窗口内估计值最大的键
+     *
+     * @param windowMillis 窗口时长，超过最长窗口时按最长窗口计算
+     */
+    public List<Hitter> top(int limit, long windowMillis, long nowMillis) {
+        long currentEpoch = nowMillis / slotMillis;
+        int count = windowSlots(windowMillis);
+        List<Slot> window = new ArrayList<>(count);
+        Set<String> keys = new HashSet<>();
+        for (Slot slot : slots) {
+            long epoch = slot.epoch;
+            if (epoch <= currentEpoch && epoch > currentEpoch - count) {
+                window.add(slot);
+                keys.addAll(slot.candidates);
+            }
+        }
+        long elapsed = elapsedMillis(count, nowMillis);
+        List<Hitter> hitters = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            long hash = CountMinSketch.hash(key);
+            long messages = 0;
+            long bytes = 0;
+            for (Slot slot : window) {
+                messages += slot.messages.estimate(hash);
+                bytes += slot.bytes.estimate(hash);
+            }
+            hitters.add(new Hitter(key, messages, bytes, elapsed));
+        }
+        hitters.sort((a, b) -> Long.compare(b.messages, a.messages));
+        return hitters.size() > limit ? new ArrayList<>(hitters.subList(0, limit)) : hitters;
+    }
+
+    /**
+     * 单个键在窗口内的估计值
+     */
+    public Hitter estimate(String key, long windowMillis, long nowMillis) {
+        long currentEpoch = nowMillis / slotMillis;
+        int count = windowSlots(windowMillis);
+        long hash = CountMinSketch.hash(key);
+        long messages = 0;
+        long bytes = 0;
+        for (Slot slot : slots) {
+            long epoch = slot.epoch;
+            if (epoch <= currentEpoch && epoch > currentEpoch - count) {
+                messages += slot.messages.estimate(hash);
+                bytes += slot.bytes.estimate(hash);
+            }
+        }
+        return new Hitter(key, messages, bytes, elapsedMillis(count, nowMillis));
+    }
+
+    /**
+     * 最长窗口（毫秒）
+     */
+    public long getMaxWindowMillis() {
+        return slots.length * slotMillis;
+    }
+
+    /**
+     * Sketch占用的字节数
+     */
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Slot slot : slots) {
+            bytes += slot.messages.memoryBytes() + slot.bytes.memoryBytes();
+        }
+        return bytes;
+    }
+
+    private int windowSlots(long windowMillis) {
+        long count = (windowMillis + slotMillis - 1) / slotMillis;
+        return (int) Math.max(1, Math.min(slots.length, count));
+    }
+
+    // 窗口实际覆盖的时长：完整的历史槽加上当前槽已经过的部分
+    private long elapsedMillis(int count, long nowMillis) {
+        return Math.max(1, (count - 1) * slotMillis + nowMillis % slotMillis);
+    }
+
+    /**
+     * 时间槽
+     */
+    private static final class Slot {
+        private final CountMinSketch messages;
+        private final CountMinSketch bytes;
+        private final Set<String> candidates = ConcurrentHashMap.newKeySet();
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile long epoch = -1;
+        private volatile long threshold;
+
+        Slot(int depth, int width) {
+            this.messages = new CountMinSketch(depth, width);
+            this.bytes = new CountMinSketch(depth, width);
+        }
+
+        void rotate(long newEpoch) {
+            lock.lock();
+            try {
+                if (epoch >= newEpoch) {
+                    return;
+                }
+                messages.clear();
+                bytes.clear();
+                candidates.clear();
+                threshold = 0;
+                epoch = newEpoch;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void prune(int capacity) {
+            if (!lock.tryLock()) {
+                return;
+            }
+            try {
+                List<long[]> estimates = new ArrayList<>(candidates.size());
+                List<String> keys = new ArrayList<>(candidates);
+                for (int i = 0; i < keys.size(); i++) {
+                    estimates.add(new long[]{messages.estimate(CountMinSketch.hash(keys.get(i))), i});
+                }
+                if (estimates.size() <= capacity) {
+                    return;
+                }
+                estimates.sort((a, b) -> Long.compare(b[0], a[0]));
+                for (int i = capacity; i < estimates.size(); i++) {
+                    candidates.remove(keys.get((int) estimates.get(i)[1]));
+                }
+                threshold = estimates.get(capacity - 1)[0];
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 热点键及其窗口内的估计值
+     */
+    public static final class Hitter {
+        private final String key;
+        private final long messages;
+        private final long bytes;
+        private final long windowMillis;
+
+        Hitter(String key, long messages, long bytes, long windowMillis) {
+            this.key = key;
+            this.messages = messages;
+            this.bytes = bytes;
+            this.windowMillis = windowMillis;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getMessages() {
+            return messages;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * 每秒消息数
+         */
+        public double getMessageRate() {
+            return messages * 1000.0 / windowMillis;
+        }
+
+        /**
+         * 每秒字节数
+         */
+        public double getByteRate() {
+            return bytes * 1000.0 / windowMillis;
+        }
+    }
+}
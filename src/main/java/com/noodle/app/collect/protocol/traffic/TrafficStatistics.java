@@ -0,0 +1,145 @@
+package com.noodle.app.collect.protocol.traffic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.noodle.app.collect.protocol.config.MqttServerConfig;
+
+/**
+ * MQTT发布流量统计
+ *
+ * 已连接客户端按LongAdder精确计数（连接时创建，断开时移除，断开后到达的消息只计入热点统计）；
+ * 主题和客户端在滑动窗口内的热点由{@link HeavyHitters}近似统计，内存固定。
+ * 在Broker拦截器线程中调用，每条消息为若干次原子累加和一次哈希表查找。
+ */
+public class TrafficStatistics {
+
+    private final HeavyHitters topics;
+    private final HeavyHitters clients;
+    private final Map<String, ClientCounters> clientCounters = new ConcurrentHashMap<>();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    public TrafficStatistics(MqttServerConfig.TrafficConfig config) {
+        long slotMillis = config.getSlotSeconds() * 1000L;
+        this.topics = new HeavyHitters(config.getSlots(), slotMillis,
+                config.getSketchDepth(), config.getSketchWidth(), config.getCandidates());
+        this.clients = new HeavyHitters(config.getSlots(), slotMillis,
+                config.getSketchDepth(), config.getSketchWidth(), config.getCandidates());
+    }
+
+    /**
+     * 记录一条发布消息
+     */
+    public void record(String clientId, String topic, int payloadBytes) {
+        long now = System.currentTimeMillis();
+        messages.increment();
+        bytes.add(payloadBytes);
+        ClientCounters counters = clientCounters.get(clientId);
+        if (counters != null) {
+            counters.messages.increment();
+            counters.bytes.add(payloadBytes);
+        }
+        topics.add(topic, CountMinSketch.hash(topic), payloadBytes, now);
+        clients.add(clientId, CountMinSketch.hash(clientId), payloadBytes, now);
+    }
+
+    /**
+     * 客户端连接
+     */
+    public void onConnect(String clientId) {
+        clientCounters.put(clientId, new ClientCounters(System.currentTimeMillis()));
+    }
+
+    /**
+     * 客户端断开，精确计数随之移除，窗口内的热点统计保留到过期
+     */
+    public void onDisconnect(String clientId) {
+        clientCounters.remove(clientId);
+    }
+
+    /**
+     * 窗口内的热点主题和客户端
+     *
+     * @param windowSeconds 窗口时长（秒）
+     * @param limit 返回条数
+     */
+    public Map<String, Object> getTopTalkers(int windowSeconds, int limit) {
+        long now = System.currentTimeMillis();
+        long windowMillis = Math.min(windowSeconds * 1000L, topics.getMaxWindowMillis());
+        Map<String, Object> result = new HashMap<>();
+        result.put("windowSeconds", windowMillis / 1000);
+        result.put("topics", toList(topics.top(limit, windowMillis, now), null));
+        result.put("clients", toList(clients.top(limit, windowMillis, now), clientCounters));
+        return result;
+    }
+
+    /**
+     * 单个客户端的累计计数和窗口速率
+     */
+    public Map<String, Object> getClient(String clientId, int windowSeconds) {
+        long now = System.currentTimeMillis();
+        long windowMillis = Math.min(windowSeconds * 1000L, clients.getMaxWindowMillis());
+        Map<String, Object> client = toMap(clients.estimate(clientId, windowMillis, now), clientCounters);
+        client.put("windowSeconds", windowMillis / 1000);
+        return client;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("messages", messages.sum());
+        stats.put("bytes", bytes.sum());
+        stats.put("trackedClients", clientCounters.size());
+        stats.put("maxWindowSeconds", topics.getMaxWindowMillis() / 1000);
+        stats.put("sketchMemoryBytes", topics.memoryBytes() + clients.memoryBytes());
+        return stats;
+    }
+
+    private static List<Map<String, Object>> toList(List<HeavyHitters.Hitter> hitters,
+                                                    Map<String, ClientCounters> counters) {
+        List<Map<String, Object>> list = new ArrayList<>(hitters.size());
+        for (HeavyHitters.Hitter hitter : hitters) {
+            list.add(toMap(hitter, counters));
+        }
+        return list;
+    }
+
+    private static Map<String, Object> toMap(HeavyHitters.Hitter hitter, Map<String, ClientCounters> counters) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("key", hitter.getKey());
+        map.put("messages", hitter.getMessages());
+        map.put("bytes", hitter.getBytes());
+        map.put("messageRate", Math.round(hitter.getMessageRate() * 100) / 100.0);
+        map.put("byteRate", Math.round(hitter.getByteRate() * 100) / 100.0);
+        if (counters != null) {
+            ClientCounters client = counters.get(hitter.getKey());
+            map.put("connected", client != null);
+            if (client != null) {
+                map.put("totalMessages", client.messages.sum());
+                map.put("totalBytes", client.bytes.sum());
+                map.put("connectedAt", client.connectedAt);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * 客户端精确计数
+     */
+    private static final class ClientCounters {
+        private final LongAdder messages = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final long connectedAt;
+
+        ClientCounters(long connectedAt) {
+            this.connectedAt = connectedAt;
+        }
+    }
+}
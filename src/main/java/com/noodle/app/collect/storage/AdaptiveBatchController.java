@@ -0,0 +1,96 @@
+package com.noodle.app.collect.storage;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 自适应批量大小（加性增、乘性减）
+ *
+ * 每个批次确认后按确认耗时和失败率调整下一批的条数上限：
+ * 批次因条数攒满而写出、平均耗时低于目标的一半且近期没有失败时，上限增加1/8；
+ * 平均耗时超过目标时上限减为4/5，写入失败时减半。
+ * 上限在[minBatchSize, maxBatchSize]之间，流量小、靠linger写出的批次不会推动上限增长。
+ */
+final class AdaptiveBatchController {
+
+    /**
+     * 指数移动平均的权重
+     */
+    private static final double ALPHA = 0.2;
+    /**
+     * 失败率超过该值时不再增大批次
+     */
+    private static final double MAX_ERROR_RATE = 0.05;
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long targetNanos;
+
+    private volatile int limit;
+    private double avgLatencyNanos;
+    private double errorRate;
+    private long increases;
+    private long decreases;
+
+    AdaptiveBatchController(int initialBatchSize, int minBatchSize, int maxBatchSize, long targetLatencyMillis) {
+        this.minBatchSize = Math.max(1, minBatchSize);
+        this.maxBatchSize = Math.max(this.minBatchSize, maxBatchSize);
+        this.targetNanos = Math.max(1, targetLatencyMillis) * 1_000_000L;
+        this.limit = Math.min(this.maxBatchSize, Math.max(this.minBatchSize, initialBatchSize));
+    }
+
+    /**
+     * 当前批次的条数上限
+     */
+    int limit() {
+        return limit;
+    }
+
+    /**
+     * 记录一个批次的确认结果
+     *
+     * 调整上限之前提交的批次确认时，按耗时减小上限只看按当前上限攒满的批次，避免一次变慢连续减小多次。
+     *
+     * @param size 批次条数
+     * @param full 批次是否因条数或字节数攒满而写出
+     */
+    synchronized void onAck(int size, boolean full, long latencyNanos, boolean success) {
+        errorRate = errorRate * (1 - ALPHA) + (success ? 0 : ALPHA);
+        if (!success) {
+            decrease(limit / 2);
+            return;
+        }
+        avgLatencyNanos = avgLatencyNanos == 0 ? latencyNanos : avgLatencyNanos * (1 - ALPHA) + latencyNanos * ALPHA;
+        if (avgLatencyNanos > targetNanos && size >= limit) {
+            decrease(limit * 4 / 5);
+        } else if (full && avgLatencyNanos < targetNanos / 2.0 && errorRate < MAX_ERROR_RATE
+                && limit < maxBatchSize) {
+            limit = Math.min(maxBatchSize, limit + Math.max(1, limit / 8));
+            increases++;
+        }
+    }
+
+    private void decrease(int newLimit) {
+        newLimit = Math.max(minBatchSize, newLimit);
+        if (newLimit < limit) {
+            limit = newLimit;
+            decreases++;
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("batchLimit", limit);
+        stats.put("minBatchSize", minBatchSize);
+        stats.put("maxBatchSize", maxBatchSize);
+        stats.put("targetLatency", targetNanos / 1_000_000L);
+        stats.put("avgLatencyMillis", Math.round(avgLatencyNanos / 1000.0) / 1000.0);
+        stats.put("errorRate", Math.round(errorRate * 1000) / 1000.0);
+        stats.put("increases", increases);
+        stats.put("decreases", decreases);
+        return stats;
+    }
+}
@@ -0,0 +1,26 @@
+package com.noodle.app.collect.storage;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.springframework.context.annotation.Conditional;
+
+/**
+ * 存储后端被选用时才注册Bean
+ *
+ * data.storage.type 等于该类型，或 data.storage.sinks 中有启用的该类型后端时生效。
+ */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Conditional(OnStorageTypeCondition.class)
+public @interface ConditionalOnStorageType {
+
+    /**
+     * 存储类型，与{@link DataStorage#getStorageType()}一致
+     */
+    String value();
+}
@@ -1,7 +1,14 @@
 package com.noodle.app.collect.storage;
 
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.noodle.app.collect.storage.model.ProtocolData;
 
 /**
@@ -15,10 +22,48 @@ public interface DataStorage {
     void store(ProtocolData data);
     
     /**
-     * 批量存储数据点
+     * 批量存储数据点，失败时抛出异常
      */
     void storeBatch(List<ProtocolData> dataList);
     
+    /**
+     * 异步批量存储数据点
+     *
+     * 返回的CompletionStage在批次写入成功后正常完成，失败时异常完成。
+     * 实现应在调用线程完成编码，把网络I/O交给自己的线程，调用方据此让编码、I/O和确认处理重叠进行。
+     * 默认实现在调用线程同步写入。
+     */
+    default CompletionStage<Void> storeBatchAsync(List<ProtocolData> dataList) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            storeBatch(dataList);
+            future.complete(null);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+    
+    /**
+     * 写入失败后能否原样重试
+     *
+     * 超时、I/O错误、后端过载等暂时性错误返回true，调用方只退避重试；
+     * 数据本身被拒绝（格式错误、字段类型冲突、序列化失败）返回false，调用方拆分批次找出坏数据。
+     * 默认按异常链判断：链上有超时、拒绝执行或I/O异常（序列化异常除外）时可以重试。
+     */
+    default boolean isRetryable(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause() != cause ? cause.getCause() : null) {
+            if (cause instanceof TimeoutException || cause instanceof RejectedExecutionException
+                    || cause instanceof InterruptedException) {
+                return true;
+            }
+            if (cause instanceof IOException) {
+                return !(cause instanceof JsonProcessingException) && !(cause instanceof CharacterCodingException);
+            }
+        }
+        return false;
+    }
+    
     /**
      * 获取存储类型
      */
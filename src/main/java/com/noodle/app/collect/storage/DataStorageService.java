@@ -1,16 +1,23 @@
 package com.noodle.app.collect.storage;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,11 +25,21 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.noodle.app.collect.protocol.alarm.AlarmEngine;
 import com.noodle.app.collect.protocol.config.DataStorageConfig;
 import com.noodle.app.collect.storage.model.ProtocolData;
 
 /**
  * 数据存储服务
+ *
+ * 配置了data.storage.sinks时同时写入多个存储后端（如Redis存热数据、InfluxDB存历史），
+ * 否则按data.storage.type只写一个后端。每个后端由独立的{@link StorageSink}写入，
+ * 数据在进入存储服务前已完成解码，各后端共享同一个ProtocolData实例。
+ * 主题路由指定了存储目标（ProtocolData.storage）的数据只写入该类型的后端，异步、同步和批量写入都一样；
+ * 目标不是已启用的后端时丢弃并计数，每个目标只告警一次。
+ * 停机时各后端在shutdownTimeout内写出剩余数据，到期没写完的保存为检查点，下次启动时重新排队。
+ * 数据在分发到各后端之前做报警检查，存储未启用时也检查。
  */
 @Service
 public class DataStorageService {
@@ -34,12 +51,24 @@ public class DataStorageService {
 
     @Autowired
     private DataStorageConfig storageConfig;
-    
 
-    private DataStorage dataStorage;
-    private final BlockingQueue<ProtocolData> dataQueue = new LinkedBlockingQueue<>();
+    @Autowired
+    private DeadLetterStore deadLetterStore;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired(required = false)
+    private AlarmEngine alarmEngine;
+
+    private final List<StorageSink> sinks = new ArrayList<>();
     private ScheduledExecutorService scheduledExecutor;
-    private ExecutorService batchExecutor;
+    private StorageCheckpoint checkpoint;
+    // 启动时队列放不下、仍留在检查点里的数据，停机保存检查点时与新的剩余数据合并写出
+    private final Map<String, List<ProtocolData>> unrestored = new ConcurrentHashMap<>();
+    private volatile boolean shutdown = false;
+    private final LongAdder unknownTargets = new LongAdder();
+    private final Set<String> warnedTargets = ConcurrentHashMap.newKeySet();
 
     @PostConstruct
     public void initialize() {
@@ -50,21 +79,28 @@ public class DataStorageService {
 
         try {
             // 根据配置选择存储实现
-            String storageType = storageConfig.getType();
             Map<String, DataStorage> storageMap = applicationContext.getBeansOfType(DataStorage.class);
-            
-            dataStorage = storageMap.values().stream()
-                    .filter(storage -> storage.getStorageType().equals(storageType))
-                    .findFirst()
-                    .orElse(null);
-
-            if (dataStorage == null) {
-                logger.error("No storage implementation found for type: {}", storageType);
+            List<DataStorageConfig.SinkConfig> sinkConfigs = storageConfig.getSinks();
+            if (sinkConfigs != null && !sinkConfigs.isEmpty()) {
+                for (DataStorageConfig.SinkConfig sinkConfig : sinkConfigs) {
+                    if (sinkConfig.isEnabled()) {
+                        addSink(storageMap, resolve(sinkConfig));
+                    }
+                }
+            } else {
+                DataStorageConfig.SinkConfig sinkConfig = new DataStorageConfig.SinkConfig();
+                sinkConfig.setType(storageConfig.getType());
+                addSink(storageMap, resolve(sinkConfig));
+            }
+
+            if (sinks.isEmpty()) {
+                logger.error("No storage implementation available");
                 return;
             }
 
-            dataStorage.initialize();
-            logger.info("Using {} storage implementation", storageType);
+            // 上次停机时没写完的数据重新排队
+            checkpoint = new StorageCheckpoint(Paths.get(storageConfig.getCheckpointPath()), objectMapper);
+            restoreCheckpoints();
 
             // 启动批量写入服务
             startBatchWriteService();
@@ -76,35 +112,127 @@ public class DataStorageService {
         }
     }
 
+    private void restoreCheckpoints() {
+        for (StorageSink sink : sinks) {
+            String storageType = sink.getStorage().getStorageType();
+            try {
+                List<ProtocolData> records = checkpoint.load(storageType);
+                if (records.isEmpty()) {
+                    continue;
+                }
+                int restored = 0;
+                while (restored < records.size() && sink.offer(records.get(restored))) {
+                    restored++;
+                }
+                // 队列放不下的留在检查点里，下次启动再恢复
+                List<ProtocolData> rest = new ArrayList<>(records.subList(restored, records.size()));
+                checkpoint.save(storageType, rest);
+                if (!rest.isEmpty()) {
+                    unrestored.put(storageType, rest);
+                }
+                logger.info("Restored {} of {} checkpointed data points for {}", restored, records.size(), storageType);
+            } catch (IOException e) {
+                logger.error("Failed to restore checkpoint for {}: {}", storageType, e.getMessage());
+            }
+        }
+    }
+
     /**
-     * 存储数据（异步）
+     * 后端配置中为0的参数使用顶层配置
      */
-    public void store(ProtocolData data) {
-        if (!isEnabled() || data == null) {
+    private DataStorageConfig.SinkConfig resolve(DataStorageConfig.SinkConfig sinkConfig) {
+        DataStorageConfig.SinkConfig resolved = new DataStorageConfig.SinkConfig();
+        resolved.setType(sinkConfig.getType());
+        resolved.setBatchSize(sinkConfig.getBatchSize() > 0
+                ? sinkConfig.getBatchSize() : storageConfig.getBatchSize());
+        resolved.setMaxBatchSize(sinkConfig.getMaxBatchSize() > 0
+                ? sinkConfig.getMaxBatchSize() : storageConfig.getMaxBatchSize());
+        resolved.setBatchBytes(sinkConfig.getBatchBytes() > 0
+                ? sinkConfig.getBatchBytes() : storageConfig.getBatchBytes());
+        resolved.setTargetLatency(sinkConfig.getTargetLatency() > 0
+                ? sinkConfig.getTargetLatency() : storageConfig.getTargetLatency());
+        resolved.setWriteInterval(sinkConfig.getWriteInterval() > 0
+                ? sinkConfig.getWriteInterval() : storageConfig.getWriteInterval());
+        resolved.setQueueCapacity(sinkConfig.getQueueCapacity() > 0
+                ? sinkConfig.getQueueCapacity() : storageConfig.getQueueCapacity());
+        resolved.setMaxInFlight(sinkConfig.getMaxInFlight() > 0
+                ? sinkConfig.getMaxInFlight() : storageConfig.getMaxInFlight());
+        return resolved;
+    }
+
+    private void addSink(Map<String, DataStorage> storageMap, DataStorageConfig.SinkConfig sinkConfig) {
+        String storageType = sinkConfig.getType();
+        DataStorage dataStorage = storageMap.values().stream()
+                .filter(storage -> storage.getStorageType().equals(storageType))
+                .findFirst()
+                .orElse(null);
+        if (dataStorage == null) {
+            logger.error("No storage implementation found for type: {}", storageType);
             return;
         }
+        dataStorage.initialize();
+        sinks.add(new StorageSink(dataStorage, sinkConfig, storageConfig.getRetry(), deadLetterStore));
+        logger.info("Using {} storage implementation", storageType);
+    }
+
+    /**
+     * 存储数据（异步），分发到每个后端的队列
+     *
+     * @return 每个目标后端的队列都接收了数据时返回true；有队列已满时返回false，
+     *         调用方可以不确认消息，让服务器稍后重新投递。不需要存储的数据（未启用、目标不存在）返回true
+     */
+    public boolean store(ProtocolData data) {
+        if (data == null) {
+            return true;
+        }
+        checkAlarm(data);
+        if (!isEnabled()) {
+            return true;
+        }
+        if (unknownTarget(data)) {
+            return true;
+        }
+        boolean queued = true;
         try {
-            // 触发报警检查
-            dataQueue.offer(data);
+            for (StorageSink sink : sinks) {
+                if (!accepts(sink, data)) {
+                    continue;
+                }
+                if (!sink.offer(data)) {
+                    queued = false;
+                    logger.debug("Storage queue of {} is full, dropped data: {}",
+                            sink.getStorage().getStorageType(), data.getAddress());
+                }
+            }
             logger.debug("Queued data for storage: {}", data);
         } catch (Exception e) {
             logger.error("Failed to queue data for storage: {}", e.getMessage(), e);
         }
+        return queued;
     }
 
     /**
      * 存储数据（同步）
      */
     public void storeSync(ProtocolData data) {
-        if (!isEnabled() || data == null) {
+        if (data == null) {
+            return;
+        }
+        checkAlarm(data);
+        if (!isEnabled() || unknownTarget(data)) {
             return;
         }
 
-        try {
-            // 触发报警检查
-            dataStorage.store(data);
-        } catch (Exception e) {
-            logger.error("Failed to store data synchronously: {}", e.getMessage(), e);
+        for (StorageSink sink : sinks) {
+            if (!accepts(sink, data)) {
+                continue;
+            }
+            try {
+                sink.getStorage().store(data);
+            } catch (Exception e) {
+                logger.error("Failed to store data synchronously to {}: {}",
+                        sink.getStorage().getStorageType(), e.getMessage(), e);
+            }
         }
     }
 
@@ -112,14 +240,83 @@ public class DataStorageService {
      * 批量存储数据
      */
     public void storeBatch(List<ProtocolData> dataList) {
-        if (!isEnabled() || dataList == null || dataList.isEmpty()) {
+        if (dataList == null || dataList.isEmpty()) {
+            return;
+        }
+        for (ProtocolData data : dataList) {
+            checkAlarm(data);
+        }
+        if (!isEnabled()) {
+            return;
+        }
+        boolean routed = false;
+        for (ProtocolData data : dataList) {
+            if (data.getStorage() != null) {
+                routed = true;
+                break;
+            }
+        }
+        for (StorageSink sink : sinks) {
+            List<ProtocolData> batch = dataList;
+            if (routed) {
+                batch = new ArrayList<>(dataList.size());
+                for (ProtocolData data : dataList) {
+                    if (accepts(sink, data)) {
+                        batch.add(data);
+                    }
+                }
+                if (batch.isEmpty()) {
+                    continue;
+                }
+            }
+            try {
+                sink.getStorage().storeBatch(batch);
+            } catch (Exception e) {
+                logger.error("Failed to store batch data to {}: {}",
+                        sink.getStorage().getStorageType(), e.getMessage(), e);
+            }
+        }
+        if (routed) {
+            for (ProtocolData data : dataList) {
+                unknownTarget(data);
+            }
+        }
+    }
+
+    /**
+     * 数据是否写入该后端，没有存储目标时写入所有后端
+     */
+    private static boolean accepts(StorageSink sink, ProtocolData data) {
+        String target = data.getStorage();
+        return target == null || target.equals(sink.getStorage().getStorageType());
+    }
+
+    /**
+     * 存储目标不是已启用的后端时计数，每个目标只告警一次
+     */
+    private boolean unknownTarget(ProtocolData data) {
+        String target = data.getStorage();
+        if (target == null || findSink(target) != null) {
+            return false;
+        }
+        unknownTargets.increment();
+        if (warnedTargets.add(target)) {
+            logger.warn("Storage target {} is not an enabled storage, dropped data from {}", target, data.getAddress());
+        }
+        return true;
+    }
+
+    /**
+     * 报警检查，失败不影响入库
+     */
+    private void checkAlarm(ProtocolData data) {
+        if (alarmEngine == null) {
             return;
         }
         try {
-            // 对每个数据触发报警检查
-            dataStorage.storeBatch(dataList);
+            alarmEngine.evaluate(data);
         } catch (Exception e) {
-            logger.error("Failed to store batch data: {}", e.getMessage(), e);
+            logger.error("Alarm check failed for {}: {}", data.getAddress(), e.getMessage(), e);
         }
     }
 
@@ -127,83 +324,96 @@ public class DataStorageService {
      * 检查存储是否启用
      */
     public boolean isEnabled() {
-        return storageConfig.isEnabled() && dataStorage != null;
+        return storageConfig.isEnabled() && !sinks.isEmpty();
     }
 
     /**
-     * 获取存储类型
+     * 获取存储类型，多个后端时以逗号分隔
      */
     public String getStorageType() {
-        return dataStorage != null ? dataStorage.getStorageType() : "none";
+        if (sinks.isEmpty()) {
+            return "none";
+        }
+        return sinks.stream().map(sink -> sink.getStorage().getStorageType()).collect(Collectors.joining(","));
     }
 
     /**
-     * 检查连接状态
+     * 检查连接状态，所有后端都连接时为true
      */
     public boolean isConnected() {
-        return dataStorage != null && dataStorage.isConnected();
+        if (sinks.isEmpty()) {
+            return false;
+        }
+        for (StorageSink sink : sinks) {
+            if (!sink.getStorage().isConnected()) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
-     * 启动批量写入服务
+     * 按类型查找已启用的存储后端，不存在时返回null
      */
-    private void startBatchWriteService() {
-        batchExecutor = Executors.newSingleThreadExecutor(r -> {
-            Thread thread = new Thread(r, "data-storage-batch");
-            thread.setDaemon(true);
-            return thread;
-        });
-
-        batchExecutor.submit(() -> {
-            List<ProtocolData> batch = new ArrayList<>();
-            long lastFlushTime = System.currentTimeMillis();
-
-            while (!Thread.currentThread().isInterrupted()) {
-                try {
-                    // 从队列中取数据
-                    ProtocolData data = dataQueue.poll(1, TimeUnit.SECONDS);
-                    if (data != null) {
-                        batch.add(data);
-                    }
-
-                    // 检查是否需要刷新批次
-                    long currentTime = System.currentTimeMillis();
-                    boolean shouldFlush = batch.size() >= storageConfig.getBatchSize() ||
-                            (currentTime - lastFlushTime) >= storageConfig.getWriteInterval();
-
-                    if (shouldFlush && !batch.isEmpty()) {
-                        try {
-                            dataStorage.storeBatch(new ArrayList<>(batch));
-                            logger.debug("Flushed {} data points to storage", batch.size());
-                            batch.clear();
-                            lastFlushTime = currentTime;
-                        } catch (Exception e) {
-                            logger.error("Failed to flush batch data: {}", e.getMessage(), e);
-                            // 重新排队失败的数据
-                            dataQueue.addAll(batch);
-                            batch.clear();
-                        }
-                    }
+    public DataStorage getStorage(String storageType) {
+        StorageSink sink = findSink(storageType);
+        return sink != null ? sink.getStorage() : null;
+    }
 
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                } catch (Exception e) {
-                    logger.error("Error in batch write service: {}", e.getMessage(), e);
-                }
+    /**
+     * 把死信重新提交到原存储后端，ids为空时回放该存储类型的全部死信
+     *
+     * @return 重新提交的条数，后端未启用或队列已满的死信留在死信存储中
+     */
+    public int replayDeadLetters(String storageType, Collection<Long> ids) {
+        List<DeadLetterStore.Entry> entries = deadLetterStore.remove(storageType, ids);
+        int replayed = 0;
+        for (DeadLetterStore.Entry entry : entries) {
+            StorageSink sink = findSink(entry.getStorageType());
+            if (sink != null && sink.offer(entry.getData())) {
+                replayed++;
+            } else {
+                deadLetterStore.add(entry.getStorageType(), Collections.singletonList(entry.getData()), 0,
+                        sink == null ? "storage not enabled" : "queue full during replay");
             }
+        }
+        deadLetterStore.markReplayed(replayed);
+        logger.info("Replayed {} of {} dead-letter records", replayed, entries.size());
+        return replayed;
+    }
 
-            // 处理剩余数据
-            if (!batch.isEmpty()) {
-                try {
-                    dataStorage.storeBatch(batch);
-                    logger.info("Flushed remaining {} data points on shutdown", batch.size());
-                } catch (Exception e) {
-                    logger.error("Failed to flush remaining data on shutdown: {}", e.getMessage(), e);
-                }
+    private StorageSink findSink(String storageType) {
+        for (StorageSink sink : sinks) {
+            if (sink.getStorage().getStorageType().equals(storageType)) {
+                return sink;
             }
-        });
+        }
+        return null;
+    }
 
+    /**
+     * 获取各后端的写入统计
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        List<Map<String, Object>> sinkStats = new ArrayList<>();
+        for (StorageSink sink : sinks) {
+            sinkStats.add(sink.getStatistics());
+        }
+        stats.put("sinks", sinkStats);
+        stats.put("unknownTargets", unknownTargets.sum());
+        stats.put("deadLetter", deadLetterStore.getStatistics());
+        return stats;
+    }
+
+    /**
+     * 启动批量写入服务
+     */
+    private void startBatchWriteService() {
+        for (StorageSink sink : sinks) {
+            sink.start();
+        }
         logger.info("Batch write service started");
     }
 
@@ -221,19 +431,49 @@ public class DataStorageService {
 
     /**
      * 关闭服务
+     *
+     * 调用前应先停止协议服务器，不再有新数据进入。各后端同时在shutdownTimeout内写出剩余数据，
+     * 到期没写完或写入失败的数据保存为检查点。重复调用时直接返回。
      */
-    public void shutdown() {
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
         logger.info("Shutting down data storage service...");
-        
-        if (batchExecutor != null) {
-            batchExecutor.shutdown();
+        long deadline = System.currentTimeMillis() + Math.max(0, storageConfig.getShutdownTimeout());
+
+        // 各后端在各自的线程中并行排空，共用同一个期限，不占用公共线程池
+        List<CompletableFuture<List<ProtocolData>>> remaining = new ArrayList<>();
+        for (StorageSink sink : sinks) {
+            remaining.add(CompletableFuture.supplyAsync(() -> sink.stop(deadline), task -> {
+                Thread thread = new Thread(task, "storage-drain-" + sink.getStorage().getStorageType());
+                thread.setDaemon(true);
+                thread.start();
+            }));
+        }
+        for (int i = 0; i < sinks.size(); i++) {
+            String storageType = sinks.get(i).getStorage().getStorageType();
+            List<ProtocolData> records = remaining.get(i).join();
+            if (records.isEmpty()) {
+                // 检查点文件中仍是启动时没恢复的数据，保持不变
+                continue;
+            }
+            List<ProtocolData> previous = unrestored.remove(storageType);
+            if (previous != null) {
+                // 检查点会被覆盖，先放上次留下的旧数据
+                List<ProtocolData> merged = new ArrayList<>(previous.size() + records.size());
+                merged.addAll(previous);
+                merged.addAll(records);
+                records = merged;
+            }
             try {
-                if (!batchExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
-                    batchExecutor.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                batchExecutor.shutdownNow();
-                Thread.currentThread().interrupt();
+                checkpoint.save(storageType, records);
+                logger.warn("Checkpointed {} data points for {}", records.size(), storageType);
+            } catch (IOException e) {
+                logger.error("Failed to checkpoint {} data points for {}: {}", records.size(), storageType,
+                        e.getMessage());
             }
         }
 
@@ -241,10 +481,10 @@ public class DataStorageService {
             scheduledExecutor.shutdown();
         }
 
-        if (dataStorage != null) {
-            dataStorage.destroy();
+        for (StorageSink sink : sinks) {
+            sink.getStorage().destroy();
         }
 
         logger.info("Data storage service shutdown completed");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,321 @@
+package com.noodle.app.collect.storage;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.noodle.app.collect.protocol.config.DataStorageConfig;
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * 死信存储
+ *
+ * 重试和拆分后仍然写入失败的单条数据（如被InfluxDB拒绝的格式错误的点）隔离到这里，
+ * 不再占用写入管道。每条死信以一行JSON追加到文件，重启后保留；
+ * 可以按存储类型查看，修复后回放到原存储后端或删除。超过容量时丢弃最早的死信并计数。
+ */
+@Component
+public class DeadLetterStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterStore.class);
+
+    private static final String FILE_NAME = "deadletter.jsonl";
+
+    @Autowired
+    private DataStorageConfig storageConfig;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>();
+    private final LongAdder quarantined = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private Path file;
+    private BufferedWriter writer;
+    private long nextId = 1;
+    // 文件中的行数，被挤出的死信仍在文件中，行数超过容量两倍时重写
+    private int fileLines;
+
+    /**
+     * 一条死信
+     */
+    public static class Entry {
+        private final long id;
+        private final String storageType;
+        private final long time;
+        private final int attempts;
+        private final String error;
+        private final ProtocolData data;
+
+        Entry(long id, String storageType, long time, int attempts, String error, ProtocolData data) {
+            this.id = id;
+            this.storageType = storageType;
+            this.time = time;
+            this.attempts = attempts;
+            this.error = error;
+            this.data = data;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getStorageType() {
+            return storageType;
+        }
+
+        public ProtocolData getData() {
+            return data;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("id", id);
+            map.put("storageType", storageType);
+            map.put("time", time);
+            map.put("attempts", attempts);
+            map.put("error", error);
+            map.put("data", ProtocolDataJson.toMap(data));
+            return map;
+        }
+
+        @SuppressWarnings("unchecked")
+        static Entry fromMap(Map<String, Object> map) {
+            return new Entry(((Number) map.get("id")).longValue(), (String) map.get("storageType"),
+                    ((Number) map.get("time")).longValue(), ((Number) map.get("attempts")).intValue(),
+                    (String) map.get("error"), ProtocolDataJson.fromMap((Map<String, Object>) map.get("data")));
+        }
+    }
+
+    @PostConstruct
+    public synchronized void initialize() {
+        DataStorageConfig.DeadLetterConfig config = storageConfig.getDeadLetter();
+        if (!config.isEnabled()) {
+            logger.info("Dead-letter store is disabled, records that cannot be written are dropped");
+            return;
+        }
+        try {
+            Path directory = Paths.get(config.getPath());
+            Files.createDirectories(directory);
+            file = directory.resolve(FILE_NAME);
+            if (Files.exists(file)) {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        Entry entry = Entry.fromMap(objectMapper.readValue(line,
+                                new TypeReference<Map<String, Object>>() {}));
+                        entries.put(entry.id, entry);
+                        nextId = Math.max(nextId, entry.id + 1);
+                    } catch (Exception e) {
+                        logger.warn("Skipping unreadable dead-letter record: {}", e.getMessage());
+                    }
+                }
+            }
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            trim(false);
+            rewrite();
+            logger.info("Dead-letter store opened at {} with {} records", file, entries.size());
+        } catch (IOException e) {
+            logger.error("Failed to open dead-letter store, quarantined records are kept in memory only: {}",
+                    e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void destroy() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.error("Failed to close dead-letter store: {}", e.getMessage());
+            }
+            writer = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return storageConfig.getDeadLetter().isEnabled();
+    }
+
+    /**
+     * 隔离写入失败的数据
+     */
+    public synchronized void add(String storageType, List<ProtocolData> records, int attempts, String error) {
+        long now = System.currentTimeMillis();
+        for (ProtocolData data : records) {
+            Entry entry = new Entry(nextId++, storageType, now, attempts, error, data);
+            entries.put(entry.id, entry);
+            append(entry);
+            quarantined.increment();
+        }
+        trim(true);
+        if (fileLines > 2 * Math.max(1, storageConfig.getDeadLetter().getMaxEntries())) {
+            rewrite();
+        } else {
+            flush();
+        }
+    }
+
+    /**
+     * 超过容量时丢弃最早的死信
+     */
+    private void trim(boolean count) {
+        int maxEntries = Math.max(1, storageConfig.getDeadLetter().getMaxEntries());
+        Iterator<Long> iterator = entries.keySet().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            if (count) {
+                evicted.increment();
+            }
+        }
+    }
+
+    private void append(Entry entry) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.write(objectMapper.writeValueAsString(entry.toMap()));
+            writer.write('\n');
+            fileLines++;
+        } catch (IOException e) {
+            logger.error("Failed to persist dead-letter record {}: {}", entry.id, e.getMessage());
+        }
+    }
+
+    private void flush() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            logger.error("Failed to flush dead-letter store: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 按存储类型分页查看死信，storageType为空时查看全部
+     */
+    public synchronized List<Map<String, Object>> list(String storageType, int offset, int limit) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        int index = 0;
+        for (Entry entry : entries.values()) {
+            if (storageType != null && !storageType.isEmpty() && !storageType.equals(entry.storageType)) {
+                continue;
+            }
+            if (index++ < offset) {
+                continue;
+            }
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(entry.toMap());
+        }
+        return result;
+    }
+
+    /**
+     * 取出死信用于回放或删除，ids为空时取出该存储类型的全部死信
+     */
+    public synchronized List<Entry> remove(String storageType, Collection<Long> ids) {
+        List<Entry> removed = new ArrayList<>();
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            boolean typeMatches = storageType == null || storageType.isEmpty() || storageType.equals(entry.storageType);
+            if (typeMatches && (ids == null || ids.isEmpty() || ids.contains(entry.id))) {
+                removed.add(entry);
+                iterator.remove();
+            }
+        }
+        if (!removed.isEmpty()) {
+            rewrite();
+        }
+        return removed;
+    }
+
+    /**
+     * 记录回放成功提交的条数
+     */
+    public void markReplayed(int count) {
+        replayed.add(count);
+    }
+
+    /**
+     * 删除、回放或挤出死信后重写文件，先写临时文件再替换
+     */
+    private void rewrite() {
+        if (writer == null) {
+            return;
+        }
+        Path temp = file.resolveSibling(FILE_NAME + ".tmp");
+        try {
+            writer.close();
+            try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Entry entry : entries.values()) {
+                    out.write(objectMapper.writeValueAsString(entry.toMap()));
+                    out.write('\n');
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            fileLines = entries.size();
+        } catch (IOException e) {
+            logger.error("Failed to rewrite dead-letter store: {}", e.getMessage());
+        } finally {
+            try {
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                logger.error("Failed to reopen dead-letter store: {}", e.getMessage());
+                writer = null;
+            }
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Integer> byStorage = new HashMap<>();
+        for (Entry entry : entries.values()) {
+            byStorage.merge(entry.storageType, 1, Integer::sum);
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("size", entries.size());
+        stats.put("byStorage", byStorage);
+        stats.put("quarantined", quarantined.sum());
+        stats.put("evicted", evicted.sum());
+        stats.put("replayed", replayed.sum());
+        return stats;
+    }
+}
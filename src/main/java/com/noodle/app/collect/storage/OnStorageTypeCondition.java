@@ -0,0 +1,41 @@
+package com.noodle.app.collect.storage;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+import com.noodle.app.collect.protocol.config.DataStorageConfig;
+
+/**
+ * {@link ConditionalOnStorageType}的判断逻辑
+ */
+class OnStorageTypeCondition implements Condition {
+
+    @Override
+    public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+        Map<String, Object> attributes = metadata.getAnnotationAttributes(ConditionalOnStorageType.class.getName());
+        if (attributes == null) {
+            return false;
+        }
+        String type = (String) attributes.get("value");
+        Binder binder = Binder.get(context.getEnvironment());
+        List<DataStorageConfig.SinkConfig> sinks = binder
+                .bind("data.storage.sinks", Bindable.listOf(DataStorageConfig.SinkConfig.class))
+                .orElse(Collections.emptyList());
+        if (!sinks.isEmpty()) {
+            for (DataStorageConfig.SinkConfig sink : sinks) {
+                if (sink.isEnabled() && type.equals(sink.getType())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return type.equals(binder.bind("data.storage.type", String.class).orElse(null));
+    }
+}
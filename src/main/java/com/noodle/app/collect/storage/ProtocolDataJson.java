@@ -0,0 +1,54 @@
+package com.noodle.app.collect.storage;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * ProtocolData与JSON对象之间的转换，死信和停机检查点共用
+ *
+ * 时间戳保存为毫秒数，不足一毫秒的部分另存为纳秒数，不依赖ObjectMapper的日期配置；二进制的原始负载不保存。
+ */
+final class ProtocolDataJson {
+
+    private ProtocolDataJson() {
+    }
+
+    static Map<String, Object> toMap(ProtocolData data) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("protocol", data.getProtocol());
+        record.put("client", data.getClient());
+        record.put("deviceId", data.getDeviceId());
+        record.put("address", data.getAddress());
+        record.put("timestamp", data.getTimestamp() != null ? data.getTimestamp().toEpochMilli() : null);
+        if (data.getTimestamp() != null && data.getTimestamp().getNano() % 1_000_000 != 0) {
+            record.put("timestampNanos", data.getTimestamp().getNano() % 1_000_000);
+        }
+        record.put("decoder", data.getDecoder());
+        record.put("storage", data.getStorage());
+        record.put("fields", data.getFields());
+        record.put("orgData", data.getOrgData() instanceof byte[] ? null : data.getOrgData());
+        return record;
+    }
+
+    @SuppressWarnings("unchecked")
+    static ProtocolData fromMap(Map<String, Object> record) {
+        ProtocolData data = new ProtocolData();
+        data.setProtocol((String) record.get("protocol"));
+        data.setClient((String) record.get("client"));
+        data.setDeviceId((String) record.get("deviceId"));
+        data.setAddress((String) record.get("address"));
+        Object timestamp = record.get("timestamp");
+        Object nanos = record.get("timestampNanos");
+        data.setTimestamp(timestamp instanceof Number
+                ? Instant.ofEpochMilli(((Number) timestamp).longValue())
+                        .plusNanos(nanos instanceof Number ? ((Number) nanos).longValue() : 0) : null);
+        data.setDecoder((String) record.get("decoder"));
+        data.setStorage((String) record.get("storage"));
+        data.setFields((Map<String, Object>) record.get("fields"));
+        data.setOrgData(record.get("orgData"));
+        return data;
+    }
+}
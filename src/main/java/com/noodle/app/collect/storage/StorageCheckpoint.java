@@ -0,0 +1,82 @@
+package com.noodle.app.collect.storage;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * 停机检查点
+ *
+ * 停机期限内没能写入存储后端的数据按后端类型保存为 存储类型.jsonl，每行一条数据，
+ * 下次启动时重新排入该后端的队列后删除。先写临时文件再改名，停机中途被杀不会留下半个文件。
+ */
+final class StorageCheckpoint {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageCheckpoint.class);
+
+    private static final String SUFFIX = ".jsonl";
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+
+    StorageCheckpoint(Path directory, ObjectMapper objectMapper) {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 保存数据，覆盖该后端已有的检查点
+     */
+    void save(String storageType, List<ProtocolData> records) throws IOException {
+        Path file = directory.resolve(storageType + SUFFIX);
+        if (records.isEmpty()) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        Files.createDirectories(directory);
+        Path temp = directory.resolve(storageType + SUFFIX + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (ProtocolData data : records) {
+                writer.write(objectMapper.writeValueAsString(ProtocolDataJson.toMap(data)));
+                writer.write('\n');
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 读取该后端的检查点，不存在时返回空列表
+     */
+    List<ProtocolData> load(String storageType) throws IOException {
+        Path file = directory.resolve(storageType + SUFFIX);
+        List<ProtocolData> records = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return records;
+        }
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            try {
+                records.add(ProtocolDataJson.fromMap(objectMapper.readValue(line,
+                        new TypeReference<Map<String, Object>>() {})));
+            } catch (Exception e) {
+                logger.warn("Skipping unreadable checkpoint record in {}: {}", file, e.getMessage());
+            }
+        }
+        return records;
+    }
+}
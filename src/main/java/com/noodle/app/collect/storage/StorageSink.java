@@ -0,0 +1,479 @@
+package com.noodle.app.collect.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.noodle.app.collect.protocol.config.DataStorageConfig;
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * 单个存储后端的写入管道
+ *
+ * 每个后端有独立的有界队列、批量参数和写入线程，
+ * 一个后端变慢或失败只会让自己的队列积压，不影响其他后端。
+ * 攒批方式与Kafka生产者相同：批次达到条数上限或估算字节数上限时立即写出，
+ * 否则从批次第一条数据到达起最多等待linger（writeInterval）后写出；等待用纳秒计时的poll，不按固定间隔轮询。
+ * 条数上限由{@link AdaptiveBatchController}按确认耗时和失败率动态调整。
+ * 批次通过{@link DataStorage#storeBatchAsync}提交，最多maxInFlight个批次同时在写，
+ * 写入线程在等待确认的同时继续攒下一批。写入失败按{@link DataStorage#isRetryable}分类：
+ * 超时、过载等暂时性错误按指数退避加随机抖动单独重试，不阻塞后续的新批次，也不拆分；
+ * 数据被后端拒绝时把批次拆成两半分别重试，拆到单条仍被拒绝的数据放入{@link DeadLetterStore}。
+ * 后端未连接时即使错误看起来是拒绝也只退避不拆分，避免把正常数据当成坏数据隔离。
+ * 停止时在给定期限内写出剩余数据，期限内没有确认的数据交给调用方保存为检查点。
+ * 多个后端共享同一个ProtocolData实例，后端实现不能修改它。
+ */
+public class StorageSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageSink.class);
+
+    /**
+     * 队列为空时每次等待的最长时间，用于检查停止标志
+     */
+    private static final long IDLE_POLL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /**
+     * 有批次在写时每次等待的最长时间：失败批次由确认线程加入重试队列，写入线程要及时发现
+     */
+    private static final long IN_FLIGHT_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final DataStorage storage;
+    private final long writeInterval;
+    private final long lingerNanos;
+    private final long batchBytes;
+    private final AdaptiveBatchController batchController;
+    private final BlockingQueue<ProtocolData> queue;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final DataStorageConfig.RetryConfig retryConfig;
+    private final DeadLetterStore deadLetterStore;
+    private final DelayQueue<PendingBatch> retries = new DelayQueue<>();
+    // 已提交未确认的批次，停机期限到时仍未确认的批次进入检查点
+    private final Set<List<ProtocolData>> unacknowledged = Collections.newSetFromMap(new IdentityHashMap<>());
+    // 停机期间没有写出或写入失败的数据
+    private final List<ProtocolData> leftovers = new ArrayList<>();
+    private volatile long drainDeadline;
+    private boolean stopped;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder retriedBatches = new LongAdder();
+    private final LongAdder bisections = new LongAdder();
+    private final LongAdder quarantined = new LongAdder();
+    private final LongAdder ackNanos = new LongAdder();
+    private final LongAdder fullFlushes = new LongAdder();
+    private final LongAdder lingerFlushes = new LongAdder();
+    private volatile String lastError;
+    private volatile long lastFlushTime;
+
+    private volatile boolean running = false;
+    private Thread worker;
+
+    /**
+     * 等待重试的批次
+     */
+    private static final class PendingBatch implements Delayed {
+        private final List<ProtocolData> records;
+        private final int attempt;
+        private final long dueNanos;
+
+        PendingBatch(List<ProtocolData> records, int attempt, long delayMillis) {
+            this.records = records;
+            this.attempt = attempt;
+            this.dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueNanos, ((PendingBatch) other).dueNanos);
+        }
+    }
+
+    /**
+     * @param config 已合并顶层默认值的后端配置
+     * @param deadLetterStore 死信存储，为null时无法写入的数据丢弃并计数
+     */
+    public StorageSink(DataStorage storage, DataStorageConfig.SinkConfig config,
+                       DataStorageConfig.RetryConfig retryConfig, DeadLetterStore deadLetterStore) {
+        this.storage = storage;
+        this.writeInterval = Math.max(1, config.getWriteInterval());
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(this.writeInterval);
+        this.batchBytes = Math.max(1, config.getBatchBytes());
+        int batchSize = Math.max(1, config.getBatchSize());
+        this.batchController = new AdaptiveBatchController(batchSize, Math.max(1, batchSize / 10),
+                Math.max(batchSize, config.getMaxBatchSize()), config.getTargetLatency());
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, config.getQueueCapacity()));
+        this.maxInFlight = Math.max(1, config.getMaxInFlight());
+        this.inFlight = new Semaphore(this.maxInFlight);
+        this.retryConfig = retryConfig;
+        this.deadLetterStore = deadLetterStore;
+    }
+
+    /**
+     * 提交数据（非阻塞），队列满时丢弃并计数
+     */
+    public boolean offer(ProtocolData data) {
+        if (queue.offer(data)) {
+            accepted.increment();
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    /**
+     * 启动写入线程
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::flushLoop, "data-storage-" + storage.getStorageType());
+        worker.setDaemon(true);
+        worker.start();
+        logger.info("Storage sink {} started: batchSize={}, batchBytes={}, linger={}ms, queueCapacity={}, maxInFlight={}",
+                storage.getStorageType(), batchController.limit(), batchBytes, writeInterval,
+                queue.remainingCapacity(), maxInFlight);
+    }
+
+    /**
+     * 停止写入线程，在deadline（毫秒时间戳）前写出队列中剩余的数据和等待重试的批次
+     *
+     * 只清除running标志，写入线程在下一次等待超时时退出循环，不中断它：
+     * 中断会让正在做文件I/O的后端抛出ClosedByInterruptException，也会让排空阶段的等待立即失败。
+     *
+     * @return 到期仍未写入成功的数据，包括已提交但未确认的批次（之后可能仍会写入成功，重放时可能重复）
+     */
+    public synchronized List<ProtocolData> stop(long deadline) {
+        drainDeadline = deadline;
+        running = false;
+        if (worker != null) {
+            try {
+                worker.join(Math.max(1, deadline - System.currentTimeMillis()) + 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+        }
+        List<ProtocolData> remaining;
+        synchronized (unacknowledged) {
+            stopped = true;
+            remaining = new ArrayList<>(leftovers);
+            for (List<ProtocolData> batch : unacknowledged) {
+                remaining.addAll(batch);
+            }
+            leftovers.clear();
+        }
+        return remaining;
+    }
+
+    public DataStorage getStorage() {
+        return storage;
+    }
+
+    private void flushLoop() {
+        List<ProtocolData> batch = new ArrayList<>(batchController.limit());
+        long bytes = 0;
+        long deadline = 0;
+        while (running) {
+            try {
+                // 到期的重试优先；等待重试的批次太多时不再写入新批次
+                PendingBatch retry = retries.size() >= retryConfig.getMaxPendingBatches()
+                        ? retries.poll(IDLE_POLL_NANOS, TimeUnit.NANOSECONDS) : retries.poll();
+                if (retry != null) {
+                    if (!acquireWhileRunning()) {
+                        // 停机中没拿到在写名额，放回重试队列，由排空阶段收走
+                        retries.add(retry);
+                        break;
+                    }
+                    retriedBatches.increment();
+                    submit(retry.records, retry.attempt, false);
+                    continue;
+                }
+                if (retries.size() >= retryConfig.getMaxPendingBatches()) {
+                    continue;
+                }
+                long timeout = batch.isEmpty() ? IDLE_POLL_NANOS : deadline - System.nanoTime();
+                PendingBatch nextRetry = retries.peek();
+                if (nextRetry != null) {
+                    timeout = Math.min(timeout, nextRetry.getDelay(TimeUnit.NANOSECONDS));
+                }
+                if (inFlight.availablePermits() < maxInFlight) {
+                    timeout = Math.min(timeout, IN_FLIGHT_POLL_NANOS);
+                }
+                ProtocolData data = timeout > 0 ? queue.poll(timeout, TimeUnit.NANOSECONDS) : queue.poll();
+                int limit = batchController.limit();
+                while (data != null) {
+                    if (batch.isEmpty()) {
+                        // linger从批次第一条数据到达时开始计时
+                        deadline = System.nanoTime() + lingerNanos;
+                    }
+                    batch.add(data);
+                    bytes += estimateBytes(data);
+                    data = batch.size() < limit && bytes < batchBytes ? queue.poll() : null;
+                }
+                boolean full = batch.size() >= limit || bytes >= batchBytes;
+                if (!batch.isEmpty() && (full || System.nanoTime() - deadline >= 0)) {
+                    (full ? fullFlushes : lingerFlushes).increment();
+                    // 在写批次达到上限时等待确认；停机时批次留在batch中由排空阶段写出
+                    if (!acquireWhileRunning()) {
+                        break;
+                    }
+                    submit(batch, 0, full);
+                    batch = new ArrayList<>(batchController.limit());
+                    bytes = 0;
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        // 停机：在期限内写出剩余数据和等待重试的批次，写不完的和失败的交给检查点。
+        // 清除可能残留的中断标志，否则排空阶段的等待会立即失败
+        Thread.interrupted();
+        synchronized (unacknowledged) {
+            for (PendingBatch pending : retries) {
+                batch.addAll(pending.records);
+            }
+            retries.clear();
+        }
+        queue.drainTo(batch);
+        int chunkSize = batchController.limit();
+        int from = 0;
+        for (; from < batch.size(); from += chunkSize) {
+            if (!acquireBefore(drainDeadline, 1)) {
+                break;
+            }
+            submit(new ArrayList<>(batch.subList(from, Math.min(from + chunkSize, batch.size()))), 0, false);
+        }
+        if (from < batch.size()) {
+            synchronized (unacknowledged) {
+                leftovers.addAll(batch.subList(from, batch.size()));
+            }
+            logger.warn("Drain deadline reached for {}, {} data points left for checkpoint",
+                    storage.getStorageType(), batch.size() - from);
+        }
+        // 等待在写的批次确认
+        if (acquireBefore(drainDeadline, maxInFlight)) {
+            inFlight.release(maxInFlight);
+        } else {
+            logger.warn("{} batches to {} still unacknowledged at drain deadline",
+                    maxInFlight - inFlight.availablePermits(), storage.getStorageType());
+        }
+    }
+
+    /**
+     * 估算一条数据写入后端时的字节数：原始负载、设备ID、主题和字段，不必精确
+     */
+    private static int estimateBytes(ProtocolData data) {
+        int size = 64;
+        if (data.getDeviceId() != null) {
+            size += data.getDeviceId().length();
+        }
+        if (data.getAddress() != null) {
+            size += data.getAddress().length();
+        }
+        Object orgData = data.getOrgData();
+        if (orgData instanceof String) {
+            size += ((String) orgData).length();
+        } else if (orgData instanceof byte[]) {
+            size += ((byte[]) orgData).length;
+        }
+        if (data.getFields() != null) {
+            size += data.getFields().size() * 24;
+        }
+        return size;
+    }
+
+    /**
+     * 等待一个在写名额，停机时返回false
+     */
+    private boolean acquireWhileRunning() {
+        try {
+            while (running) {
+                if (inFlight.tryAcquire(IDLE_POLL_NANOS, TimeUnit.NANOSECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            return false;
+        }
+        return false;
+    }
+
+    private boolean acquireBefore(long deadline, int permits) {
+        try {
+            return inFlight.tryAcquire(permits, Math.max(0, deadline - System.currentTimeMillis()),
+                    TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 提交一个批次，调用前已占用一个在写名额，确认后释放
+     *
+     * @param attempt 已重试的次数
+     * @param full 批次是否因攒满而写出，用于调整批量大小
+     */
+    private void submit(List<ProtocolData> batch, int attempt, boolean full) {
+        long start = System.nanoTime();
+        synchronized (unacknowledged) {
+            unacknowledged.add(batch);
+        }
+        CompletionStage<Void> stage;
+        try {
+            stage = storage.storeBatchAsync(batch);
+        } catch (Exception e) {
+            CompletableFuture<Void> failedStage = new CompletableFuture<>();
+            failedStage.completeExceptionally(e);
+            stage = failedStage;
+        }
+        stage.whenComplete((ignored, error) -> {
+            inFlight.release();
+            long latency = System.nanoTime() - start;
+            ackNanos.add(latency);
+            batchController.onAck(batch.size(), full, latency, error == null);
+            if (error == null) {
+                synchronized (unacknowledged) {
+                    unacknowledged.remove(batch);
+                }
+                written.add(batch.size());
+                batches.increment();
+                lastFlushTime = System.currentTimeMillis();
+                logger.debug("Flushed {} data points to {}", batch.size(), storage.getStorageType());
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            failed.add(batch.size());
+            failedBatches.increment();
+            lastError = cause.getMessage();
+            logger.error("Failed to flush {} data points to {} (attempt {}): {}", batch.size(), storage.getStorageType(),
+                    attempt + 1, cause.getMessage());
+            // 判断错误类型可能要访问后端，在锁外进行；这期间批次仍在unacknowledged中，停机时会进入检查点
+            List<PendingBatch> next = running ? plan(batch, attempt, cause) : null;
+            // 与停机时收集剩余数据互斥，失败的批次要么进入重试队列被写入线程收走，要么进入检查点，要么进入死信
+            synchronized (unacknowledged) {
+                unacknowledged.remove(batch);
+                if (!running) {
+                    // 停机期间失败的批次交给检查点，下次启动再写
+                    if (!stopped) {
+                        leftovers.addAll(batch);
+                    }
+                    return;
+                }
+                if (next != null) {
+                    retries.addAll(next);
+                    return;
+                }
+            }
+            // 死信要写磁盘，不在锁内进行
+            quarantine(batch, attempt, cause);
+        });
+    }
+
+    /**
+     * 决定失败批次的去向
+     *
+     * @return 要加入重试队列的批次，返回null表示单条数据被拒绝，应放入死信
+     */
+    private List<PendingBatch> plan(List<ProtocolData> batch, int attempt, Throwable error) {
+        if (storage.isRetryable(error) || !storage.isConnected()) {
+            // 暂时性错误或后端不可用，不是数据的问题，只退避不拆分；退避maxRetries次后按maxBackoff重试
+            long delay = backoff(attempt < retryConfig.getMaxRetries() ? attempt : Integer.SIZE);
+            return Collections.singletonList(new PendingBatch(batch, attempt + 1, delay));
+        }
+        if (batch.size() > 1) {
+            // 数据被拒绝，原样重试没有意义，拆成两半立即重试，找出坏数据
+            int middle = batch.size() / 2;
+            bisections.increment();
+            return Arrays.asList(
+                    new PendingBatch(new ArrayList<>(batch.subList(0, middle)), attempt + 1, 0),
+                    new PendingBatch(new ArrayList<>(batch.subList(middle, batch.size())), attempt + 1, 0));
+        }
+        return null;
+    }
+
+    /**
+     * 退避时间：initialBackoff * 2^attempt，不超过maxBackoff，在其一半到全部之间随机，避免多个批次同时重试
+     */
+    private long backoff(int attempt) {
+        long ceiling = Math.min(Math.max(1, retryConfig.getMaxBackoff()),
+                Math.max(1, retryConfig.getInitialBackoff()) << Math.min(attempt, 30));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    private void quarantine(List<ProtocolData> batch, int attempt, Throwable error) {
+        if (deadLetterStore == null || !deadLetterStore.isEnabled()) {
+            dropped.add(batch.size());
+            return;
+        }
+        deadLetterStore.add(storage.getStorageType(), batch, attempt + 1, error.getMessage());
+        quarantined.add(batch.size());
+        logger.warn("Quarantined {} data points for {} after {} attempts", batch.size(), storage.getStorageType(),
+                attempt + 1);
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("type", storage.getStorageType());
+        stats.put("running", running);
+        stats.putAll(batchController.getStatistics());
+        stats.put("batchBytes", batchBytes);
+        stats.put("linger", writeInterval);
+        stats.put("fullFlushes", fullFlushes.sum());
+        stats.put("lingerFlushes", lingerFlushes.sum());
+        stats.put("accepted", accepted.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("written", written.sum());
+        stats.put("failed", failed.sum());
+        stats.put("batches", batches.sum());
+        stats.put("failedBatches", failedBatches.sum());
+        stats.put("retriedBatches", retriedBatches.sum());
+        stats.put("bisections", bisections.sum());
+        stats.put("quarantined", quarantined.sum());
+        stats.put("pendingRetries", retries.size());
+        long acknowledged = batches.sum() + failedBatches.sum();
+        stats.put("avgBatchSize", batches.sum() > 0 ? written.sum() / batches.sum() : 0);
+        stats.put("maxInFlight", maxInFlight);
+        stats.put("inFlight", maxInFlight - inFlight.availablePermits());
+        stats.put("avgAckMillis", acknowledged > 0 ? Math.round(ackNanos.sum() / 1000.0 / acknowledged) / 1000.0 : 0.0);
+        stats.put("queued", queue.size());
+        stats.put("remainingCapacity", queue.remainingCapacity());
+        stats.put("lastFlushTime", lastFlushTime);
+        stats.put("lastError", lastError);
+        return stats;
+    }
+}
@@ -0,0 +1,302 @@
+package com.noodle.app.collect.storage.archive;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.noodle.app.collect.protocol.config.DataStorageConfig;
+import com.noodle.app.collect.storage.ConditionalOnStorageType;
+import com.noodle.app.collect.storage.DataStorage;
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * 冷数据归档存储
+ *
+ * 作为存储后端之一接在存储管道上（通常与InfluxDB同时配置在sinks中），
+ * 把解码出的数值字段按小时和设备前缀写入压缩列式文件，清单记录每个行组的时间范围。
+ * 归档数据可以按时间范围回放到任意已启用的存储后端，用于补数据。
+ */
+@Component
+@ConditionalOnStorageType("archive")
+public class ArchiveDataStorage implements DataStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveDataStorage.class);
+
+    private static final int MAX_REPLAY_HISTORY = 20;
+
+    @Autowired
+    private DataStorageConfig storageConfig;
+
+    private ArchiveManifest manifest;
+    private ArchiveWriter writer;
+    private ArchiveReader reader;
+    private ScheduledExecutorService flushExecutor;
+    private ExecutorService replayExecutor;
+    private final LongAdder skipped = new LongAdder();
+    private final AtomicInteger replaySequence = new AtomicInteger();
+    private final Deque<ReplayJob> replayJobs = new ConcurrentLinkedDeque<>();
+
+    /**
+     * 回放任务
+     */
+    private static class ReplayJob {
+        private final int id;
+        private final long from;
+        private final long to;
+        private final String prefix;
+        private final String target;
+        private final long startTime = System.currentTimeMillis();
+        private final LongAdder replayed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder failedBatches = new LongAdder();
+        private volatile String status = "running";
+        private volatile String error;
+        private volatile long endTime;
+
+        ReplayJob(int id, long from, long to, String prefix, String target) {
+            this.id = id;
+            this.from = from;
+            this.to = to;
+            this.prefix = prefix;
+            this.target = target;
+        }
+
+        Map<String, Object> snapshot() {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("id", id);
+            stats.put("from", from);
+            stats.put("to", to);
+            stats.put("prefix", prefix);
+            stats.put("target", target);
+            stats.put("status", status);
+            stats.put("replayed", replayed.sum());
+            stats.put("failed", failed.sum());
+            stats.put("failedBatches", failedBatches.sum());
+            stats.put("startTime", startTime);
+            stats.put("endTime", endTime);
+            if (error != null) {
+                stats.put("error", error);
+            }
+            return stats;
+        }
+    }
+
+    @PostConstruct
+    @Override
+    public synchronized void initialize() {
+        if (writer != null) {
+            return;
+        }
+        DataStorageConfig.ArchiveConfig config = storageConfig.getArchive();
+        Path root = Paths.get(config.getPath());
+        logger.info("Initializing archive storage at {}", root);
+        try {
+            manifest = new ArchiveManifest(root);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open archive manifest: " + e.getMessage(), e);
+        }
+        writer = new ArchiveWriter(root, manifest, config.getPrefixLength(), config.getRowGroupRows(),
+                config.getCompressionLevel());
+        reader = new ArchiveReader(root, manifest);
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "archive-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        replayExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "archive-replay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1000, config.getFlushInterval());
+        long closeDelay = TimeUnit.MINUTES.toMillis(config.getCloseDelayMinutes());
+        flushExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                writer.flush(System.currentTimeMillis(), closeDelay);
+            } catch (Exception e) {
+                logger.error("Failed to flush archive: {}", e.getMessage());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    @Override
+    public synchronized void destroy() {
+        logger.info("Destroying archive storage...");
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+        }
+        if (replayExecutor != null) {
+            replayExecutor.shutdownNow();
+        }
+        if (writer != null) {
+            try {
+                writer.close();
+                manifest.close();
+            } catch (IOException e) {
+                logger.error("Failed to close archive: {}", e.getMessage());
+            }
+            writer = null;
+        }
+    }
+
+    @Override
+    public void store(ProtocolData data) {
+        try {
+            append(data);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to archive data: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void storeBatch(List<ProtocolData> dataList) {
+        if (dataList == null || dataList.isEmpty()) {
+            return;
+        }
+        try {
+            for (ProtocolData data : dataList) {
+                append(data);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to archive batch: " + e.getMessage(), e);
+        }
+    }
+
+    private void append(ProtocolData data) throws IOException {
+        Map<String, Object> fields = data.getFields();
+        if (fields == null || fields.isEmpty()) {
+            skipped.increment();
+            return;
+        }
+        long timestamp = data.getTimestamp() != null ? data.getTimestamp().toEpochMilli() : System.currentTimeMillis();
+        for (Map.Entry<String, Object> entry : fields.entrySet()) {
+            Object value = entry.getValue();
+            byte type = RowGroup.typeOf(value);
+            if (type >= 0) {
+                writer.append(data.getProtocol(), data.getDeviceId(), data.getAddress(), entry.getKey(),
+                        timestamp, type, value);
+            }
+        }
+    }
+
+    /**
+     * 把[from, to]内的归档数据回放到目标存储，在后台线程中按批写入，每批等待写入确认后再读下一批。
+     * 目标存储拒绝某一批（例如字段类型冲突）时记录失败条数和最近的错误，继续回放后续批次
+     *
+     * @param prefix 设备前缀，为空时回放所有设备
+     * @return 回放任务状态
+     */
+    public Map<String, Object> replay(long from, long to, String prefix, DataStorage target) {
+        if (target == this) {
+            throw new IllegalArgumentException("不能回放到归档存储自身");
+        }
+        ReplayJob job = new ReplayJob(replaySequence.incrementAndGet(), from, to, prefix, target.getStorageType());
+        replayJobs.addFirst(job);
+        while (replayJobs.size() > MAX_REPLAY_HISTORY) {
+            replayJobs.pollLast();
+        }
+        int batchSize = Math.max(1, storageConfig.getArchive().getReplayBatchSize());
+        replayExecutor.execute(() -> {
+            logger.info("Replaying archive [{}, {}] prefix {} into {}", from, to, prefix, job.target);
+            try {
+                reader.read(from, to, prefix, batchSize, batch -> {
+                    try {
+                        target.storeBatchAsync(batch).toCompletableFuture().join();
+                        job.replayed.add(batch.size());
+                    } catch (CompletionException | IllegalStateException e) {
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        job.failed.add(batch.size());
+                        job.failedBatches.increment();
+                        job.error = cause.getMessage();
+                        logger.warn("Archive replay {} batch of {} records rejected by {}: {}",
+                                job.id, batch.size(), job.target, cause.getMessage());
+                    }
+                });
+                job.status = job.failedBatches.sum() > 0 ? "completed_with_errors" : "completed";
+            } catch (Exception e) {
+                job.status = "failed";
+                job.error = e.getMessage();
+                logger.error("Archive replay {} failed: {}", job.id, e.getMessage());
+            }
+            job.endTime = System.currentTimeMillis();
+            logger.info("Archive replay {} {}: {} records, {} failed", job.id, job.status,
+                    job.replayed.sum(), job.failed.sum());
+        });
+        return job.snapshot();
+    }
+
+    /**
+     * 最近的回放任务，新任务在前
+     */
+    public List<Map<String, Object>> getReplayJobs() {
+        List<Map<String, Object>> jobs = new ArrayList<>();
+        for (ReplayJob job : replayJobs) {
+            jobs.add(job.snapshot());
+        }
+        return jobs;
+    }
+
+    /**
+     * 查询与时间范围有交集的行组
+     */
+    public List<Map<String, Object>> findRowGroups(long from, long to, String prefix, int limit) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (ArchiveManifest.Entry entry : manifest.find(from, to, prefix)) {
+            if (result.size() >= limit) {
+                break;
+            }
+            Map<String, Object> group = new HashMap<>();
+            group.put("file", entry.file);
+            group.put("offset", entry.offset);
+            group.put("bytes", entry.length);
+            group.put("minTimestamp", entry.minTimestamp);
+            group.put("maxTimestamp", entry.maxTimestamp);
+            group.put("rows", entry.rows);
+            group.put("series", entry.series);
+            result.add(group);
+        }
+        return result;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = manifest.getStatistics();
+        stats.putAll(writer.getStatistics());
+        stats.put("skipped", skipped.sum());
+        return stats;
+    }
+
+    @Override
+    public String getStorageType() {
+        return "archive";
+    }
+
+    @Override
+    public boolean isConnected() {
+        return writer != null;
+    }
+}
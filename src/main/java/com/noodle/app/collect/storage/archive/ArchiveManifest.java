@@ -0,0 +1,228 @@
+package com.noodle.app.collect.storage.archive;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 归档清单：记录每个行组所在的文件、偏移和时间范围
+ *
+ * 每写完一个行组追加一行"文件\t设备前缀\t偏移\t长度\t最小时间\t最大时间\t行数\t序列数"，
+ * 启动时加载到按小时分区的有序索引，按时间范围查询时只读命中的行组，不用打开其他文件。
+ * 行组已写入但清单未追加（进程在两步之间退出）时，启动时扫描文件尾部补录，不完整的尾部截掉。
+ */
+final class ArchiveManifest implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveManifest.class);
+
+    static final String FILE_NAME = "manifest.tsv";
+    static final String FILE_SUFFIX = ".ncol";
+    static final long HOUR_MILLIS = 3600_000L;
+
+    /**
+     * 清单条目，对应一个行组
+     */
+    static final class Entry {
+        final String file;
+        final String prefix;
+        final long offset;
+        final int length;
+        final long minTimestamp;
+        final long maxTimestamp;
+        final int rows;
+        final int series;
+
+        Entry(String file, String prefix, long offset, int length, long minTimestamp, long maxTimestamp,
+              int rows, int series) {
+            this.file = file;
+            this.prefix = prefix;
+            this.offset = offset;
+            this.length = length;
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+            this.rows = rows;
+            this.series = series;
+        }
+
+        String toLine() {
+            return file + "\t" + prefix + "\t" + offset + "\t" + length + "\t" + minTimestamp + "\t"
+                    + maxTimestamp + "\t" + rows + "\t" + series;
+        }
+
+        static Entry parse(String line) {
+            String[] parts = line.split("\t");
+            if (parts.length < 8) {
+                return null;
+            }
+            return new Entry(parts[0], parts[1], Long.parseLong(parts[2]), Integer.parseInt(parts[3]),
+                    Long.parseLong(parts[4]), Long.parseLong(parts[5]),
+                    Integer.parseInt(parts[6]), Integer.parseInt(parts[7]));
+        }
+    }
+
+    private final Path root;
+    /**
+     * 小时起点 -> 该小时的行组，行组不跨小时
+     */
+    private final TreeMap<Long, List<Entry>> hours = new TreeMap<>();
+    private final Map<String, Long> fileEnds = new HashMap<>();
+    private final BufferedWriter writer;
+    private long rows;
+    private long bytes;
+    private int rowGroups;
+
+    ArchiveManifest(Path root) throws IOException {
+        this.root = root;
+        Files.createDirectories(root);
+        Path file = root.resolve(FILE_NAME);
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                Entry entry = line.isEmpty() ? null : Entry.parse(line);
+                if (entry != null) {
+                    index(entry);
+                }
+            }
+        }
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        recover();
+    }
+
+    /**
+     * 补录清单中没有的行组
+     */
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.walk(root)) {
+            files = stream.filter(path -> path.getFileName().toString().endsWith(FILE_SUFFIX))
+                    .collect(Collectors.toList());
+        }
+        for (Path path : files) {
+            String file = root.relativize(path).toString().replace('\\', '/');
+            String prefix = prefixOf(file);
+            long position = fileEnds.getOrDefault(file, 0L);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = channel.size();
+                int recovered = 0;
+                while (position + RowGroup.HEADER_SIZE <= size) {
+                    ByteBuffer headerBuffer = ByteBuffer.allocate(RowGroup.HEADER_SIZE);
+                    readFully(channel, headerBuffer, position);
+                    headerBuffer.flip();
+                    RowGroup.Header header = RowGroup.Header.read(headerBuffer);
+                    if (header == null || header.length < 0
+                            || position + RowGroup.HEADER_SIZE + header.length > size) {
+                        break;
+                    }
+                    ByteBuffer body = ByteBuffer.allocate(header.length);
+                    readFully(channel, body, position + RowGroup.HEADER_SIZE);
+                    if (!RowGroup.verify(header, body.array())) {
+                        break;
+                    }
+                    append(new Entry(file, prefix, position, RowGroup.HEADER_SIZE + header.length,
+                            header.minTimestamp, header.maxTimestamp, header.rows, header.series));
+                    position += RowGroup.HEADER_SIZE + header.length;
+                    recovered++;
+                }
+                if (recovered > 0) {
+                    logger.info("Recovered {} archived row groups missing from manifest in {}", recovered, file);
+                }
+                if (position < size) {
+                    logger.warn("Truncating incomplete archive tail of {} at {} ({} bytes)", file, position, size - position);
+                    channel.truncate(position);
+                }
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of archive file");
+            }
+        }
+    }
+
+    private void index(Entry entry) {
+        long hour = Math.floorDiv(entry.minTimestamp, HOUR_MILLIS) * HOUR_MILLIS;
+        hours.computeIfAbsent(hour, h -> new ArrayList<>()).add(entry);
+        fileEnds.merge(entry.file, entry.offset + entry.length, Math::max);
+        rows += entry.rows;
+        bytes += entry.length;
+        rowGroups++;
+    }
+
+    /**
+     * 记录新写入的行组
+     */
+    synchronized void append(Entry entry) throws IOException {
+        writer.write(entry.toLine());
+        writer.write('\n');
+        writer.flush();
+        index(entry);
+    }
+
+    /**
+     * 查找与[from, to]有交集的行组，prefix为空时不按设备前缀过滤，按时间顺序返回
+     */
+    synchronized List<Entry> find(long from, long to, String prefix) {
+        List<Entry> result = new ArrayList<>();
+        long fromHour = Math.floorDiv(from, HOUR_MILLIS) * HOUR_MILLIS;
+        for (List<Entry> entries : hours.subMap(fromHour, true, to, true).values()) {
+            for (Entry entry : entries) {
+                if (entry.maxTimestamp >= from && entry.minTimestamp <= to
+                        && (prefix == null || prefix.isEmpty() || entry.prefix.equals(prefix))) {
+                    result.add(entry);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取统计信息
+     */
+    synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("files", fileEnds.size());
+        stats.put("rowGroups", rowGroups);
+        stats.put("rows", rows);
+        stats.put("bytes", bytes);
+        stats.put("bytesPerRow", rows > 0 ? Math.round(bytes * 100.0 / rows) / 100.0 : 0.0);
+        stats.put("from", hours.isEmpty() ? null : hours.firstKey());
+        stats.put("to", hours.isEmpty() ? null : hours.lastKey() + HOUR_MILLIS);
+        return stats;
+    }
+
+    /**
+     * 文件路径 date=yyyy-MM-dd/prefix=xxx/HH.ncol 中的设备前缀
+     */
+    static String prefixOf(String file) {
+        int start = file.indexOf("prefix=");
+        if (start < 0) {
+            return "";
+        }
+        int end = file.indexOf('/', start);
+        return file.substring(start + "prefix=".length(), end > 0 ? end : file.length());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
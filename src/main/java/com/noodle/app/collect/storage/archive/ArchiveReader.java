@@ -0,0 +1,114 @@
+package com.noodle.app.collect.storage.archive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * 归档读取器
+ *
+ * 按清单找出与时间范围有交集的行组，逐个解码后还原成ProtocolData：
+ * 同一协议、设备、主题和时间戳的字段合并成一条数据（跨行组边界时可能拆成两条），按批交给调用方。
+ * 一次只解码一个行组，内存占用与范围大小无关。
+ */
+final class ArchiveReader {
+
+    /**
+     * 批量处理回调
+     */
+    interface BatchHandler {
+        void handle(List<ProtocolData> batch) throws Exception;
+    }
+
+    private final Path root;
+    private final ArchiveManifest manifest;
+
+    ArchiveReader(Path root, ArchiveManifest manifest) {
+        this.root = root;
+        this.manifest = manifest;
+    }
+
+    /**
+     * 读取[from, to]内的数据，每凑够batchSize条调用一次handler
+     *
+     * @return 读取的数据条数
+     */
+    long read(long from, long to, String prefix, int batchSize, BatchHandler handler) throws Exception {
+        List<ProtocolData> batch = new ArrayList<>(batchSize);
+        long total = 0;
+        for (ArchiveManifest.Entry entry : manifest.find(from, to, prefix)) {
+            for (ProtocolData data : readRowGroup(entry, from, to)) {
+                batch.add(data);
+                if (batch.size() >= batchSize) {
+                    handler.handle(batch);
+                    total += batch.size();
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            handler.handle(batch);
+            total += batch.size();
+        }
+        return total;
+    }
+
+    private List<ProtocolData> readRowGroup(ArchiveManifest.Entry entry, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+        try (FileChannel channel = FileChannel.open(root.resolve(entry.file), StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, entry.offset + buffer.position()) < 0) {
+                    throw new IOException("Archive file " + entry.file + " is shorter than its manifest");
+                }
+            }
+        }
+        buffer.flip();
+        RowGroup.Header header = RowGroup.Header.read(buffer);
+        byte[] body = new byte[entry.length - RowGroup.HEADER_SIZE];
+        buffer.get(body);
+        if (header == null || !RowGroup.verify(header, body)) {
+            throw new IOException("Corrupted archive row group at " + entry.file + ":" + entry.offset);
+        }
+
+        // 协议+设备+主题 -> 时间戳 -> 字段
+        Map<String, TreeMap<Long, Map<String, Object>>> rows = new LinkedHashMap<>();
+        Map<String, RowGroup.Column> owners = new HashMap<>();
+        for (RowGroup.Column column : RowGroup.decode(header, body)) {
+            String key = column.protocol + '\u0000' + column.deviceId + '\u0000' + column.address;
+            TreeMap<Long, Map<String, Object>> byTime = rows.computeIfAbsent(key, k -> new TreeMap<>());
+            owners.putIfAbsent(key, column);
+            for (int i = 0; i < column.count; i++) {
+                long timestamp = column.timestamps[i];
+                if (timestamp >= from && timestamp <= to) {
+                    byTime.computeIfAbsent(timestamp, t -> new LinkedHashMap<>()).put(column.field, column.value(i));
+                }
+            }
+        }
+
+        List<ProtocolData> result = new ArrayList<>();
+        for (Map.Entry<String, TreeMap<Long, Map<String, Object>>> series : rows.entrySet()) {
+            RowGroup.Column owner = owners.get(series.getKey());
+            for (Map.Entry<Long, Map<String, Object>> sample : series.getValue().entrySet()) {
+                ProtocolData data = new ProtocolData();
+                data.setProtocol(owner.protocol);
+                data.setDeviceId(owner.deviceId);
+                data.setAddress(owner.address);
+                data.setTimestamp(Instant.ofEpochMilli(sample.getKey()));
+                data.setFields(sample.getValue());
+                result.add(data);
+            }
+        }
+        return result;
+    }
+}
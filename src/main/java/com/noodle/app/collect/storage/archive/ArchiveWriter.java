@@ -0,0 +1,173 @@
+package com.noodle.app.collect.storage.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 归档写入器
+ *
+ * 样本按UTC小时和设备前缀分区，每个分区对应一个文件 date=yyyy-MM-dd/prefix=xxx/HH.ncol。
+ * 分区在内存中按序列攒列，攒够rowGroupRows行或定时刷新时压缩成一个行组追加到文件并记入清单。
+ * 小时结束超过closeDelay后分区从内存中移除，之后迟到的样本会重新打开分区，追加新的行组。
+ */
+final class ArchiveWriter implements Closeable {
+
+    private final Path root;
+    private final ArchiveManifest manifest;
+    private final int prefixLength;
+    private final int rowGroupRows;
+    private final int compressionLevel;
+
+    private final Map<String, Partition> partitions = new HashMap<>();
+    private long rowsWritten;
+    private long rowGroupsWritten;
+    private long bytesWritten;
+
+    private static final class Partition {
+        final String file;
+        final String prefix;
+        final long hour;
+        final Map<String, RowGroup.Column> columns = new LinkedHashMap<>();
+        int rows;
+
+        Partition(String file, String prefix, long hour) {
+            this.file = file;
+            this.prefix = prefix;
+            this.hour = hour;
+        }
+    }
+
+    ArchiveWriter(Path root, ArchiveManifest manifest, int prefixLength, int rowGroupRows, int compressionLevel) {
+        this.root = root;
+        this.manifest = manifest;
+        this.prefixLength = Math.max(1, prefixLength);
+        this.rowGroupRows = Math.max(1, rowGroupRows);
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * 追加一个样本，分区攒够一个行组时立即写出
+     *
+     * @param type  RowGroup.typeOf(value)，同一字段换了类型时写成另一个序列
+     */
+    synchronized void append(String protocol, String deviceId, String address, String field,
+                             long timestamp, byte type, Object value) throws IOException {
+        long hour = Math.floorDiv(timestamp, ArchiveManifest.HOUR_MILLIS) * ArchiveManifest.HOUR_MILLIS;
+        String prefix = devicePrefix(deviceId);
+        String key = hour + "/" + prefix;
+        Partition partition = partitions.get(key);
+        if (partition == null) {
+            partition = new Partition(fileName(hour, prefix), prefix, hour);
+            partitions.put(key, partition);
+        }
+        String seriesKey = protocol + '\u0000' + deviceId + '\u0000' + address + '\u0000' + field + '\u0000' + type;
+        RowGroup.Column column = partition.columns.get(seriesKey);
+        if (column == null) {
+            column = new RowGroup.Column(protocol, deviceId, address, field, type, 16);
+            partition.columns.put(seriesKey, column);
+        }
+        column.add(timestamp, value);
+        if (++partition.rows >= rowGroupRows) {
+            writeRowGroup(partition);
+        }
+    }
+
+    /**
+     * 把所有分区中攒下的样本写成行组，并移除小时结束超过closeDelayMillis的分区
+     */
+    synchronized void flush(long now, long closeDelayMillis) throws IOException {
+        Iterator<Partition> iterator = partitions.values().iterator();
+        while (iterator.hasNext()) {
+            Partition partition = iterator.next();
+            if (partition.rows > 0) {
+                writeRowGroup(partition);
+            }
+            if (partition.hour + ArchiveManifest.HOUR_MILLIS + closeDelayMillis < now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void writeRowGroup(Partition partition) throws IOException {
+        byte[] group = RowGroup.encode(partition.columns.values(), compressionLevel);
+        Path path = root.resolve(partition.file);
+        Files.createDirectories(path.getParent());
+        long offset;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            offset = channel.size();
+            ByteBuffer buffer = ByteBuffer.wrap(group);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, offset + buffer.position());
+            }
+            channel.force(false);
+        }
+        ByteBuffer header = ByteBuffer.wrap(group, 0, RowGroup.HEADER_SIZE);
+        RowGroup.Header written = RowGroup.Header.read(header);
+        manifest.append(new ArchiveManifest.Entry(partition.file, partition.prefix, offset, group.length,
+                written.minTimestamp, written.maxTimestamp, written.rows, written.series));
+        rowsWritten += partition.rows;
+        rowGroupsWritten++;
+        bytesWritten += group.length;
+        // 序列在下一个行组中大概率还会出现，保留列对象，只清空计数
+        for (RowGroup.Column column : partition.columns.values()) {
+            column.count = 0;
+        }
+        partition.rows = 0;
+    }
+
+    /**
+     * 设备ID的前prefixLength个字符，文件名中不安全的字符替换为下划线
+     */
+    String devicePrefix(String deviceId) {
+        if (deviceId == null || deviceId.isEmpty()) {
+            return "_";
+        }
+        String prefix = deviceId.length() > prefixLength ? deviceId.substring(0, prefixLength) : deviceId;
+        StringBuilder safe = new StringBuilder(prefix.length());
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            safe.append(Character.isLetterOrDigit(c) || c == '-' ? c : '_');
+        }
+        return safe.toString();
+    }
+
+    private static String fileName(long hour, String prefix) {
+        ZonedDateTime time = Instant.ofEpochMilli(hour).atZone(ZoneOffset.UTC);
+        return String.format("date=%04d-%02d-%02d/prefix=%s/%02d%s", time.getYear(), time.getMonthValue(),
+                time.getDayOfMonth(), prefix, time.getHour(), ArchiveManifest.FILE_SUFFIX);
+    }
+
+    /**
+     * 获取统计信息
+     */
+    synchronized Map<String, Object> getStatistics() {
+        int bufferedRows = 0;
+        for (Partition partition : partitions.values()) {
+            bufferedRows += partition.rows;
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("openPartitions", partitions.size());
+        stats.put("bufferedRows", bufferedRows);
+        stats.put("rowsWritten", rowsWritten);
+        stats.put("rowGroupsWritten", rowGroupsWritten);
+        stats.put("bytesWritten", bytesWritten);
+        return stats;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush(Long.MAX_VALUE, 0);
+    }
+}
@@ -0,0 +1,295 @@
+package com.noodle.app.collect.storage.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.github.luben.zstd.Zstd;
+import com.noodle.app.collect.storage.local.BitInput;
+import com.noodle.app.collect.storage.local.BitOutput;
+import com.noodle.app.collect.storage.local.BlockCodec;
+
+/**
+ * 行组：归档文件的写入和压缩单位
+ *
+ * 归档文件由若干行组顺序拼接而成，每个行组是定长头加zstd压缩的正文：
+ * magic(4) rows(4) series(4) minTs(8) maxTs(8) rawLength(4) length(4) crc(4)，crc按压缩后的正文计算。
+ * 正文按序列存放：协议、设备ID、主题、字段名、值类型、样本数、时间戳列和数值列。
+ * 浮点和布尔列按Gorilla异或编码，整数列按二阶差分编码，读取时还原成写入时的类型，
+ * 回放到有字段类型约束的存储时不会因为整数变成浮点而冲突。
+ * 同一序列的样本连续存放，读取时按序列整列解码。
+ */
+final class RowGroup {
+
+    static final int MAGIC = 0x4e415243; // "NARC"
+    static final int HEADER_SIZE = 40;
+
+    static final byte TYPE_DOUBLE = 0;
+    static final byte TYPE_LONG = 1;
+    static final byte TYPE_BOOLEAN = 2;
+
+    private RowGroup() {
+    }
+
+    /**
+     * 字段值对应的列类型，不能归档的值返回-1
+     */
+    static byte typeOf(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return TYPE_LONG;
+        }
+        if (value instanceof Number) {
+            return TYPE_DOUBLE;
+        }
+        if (value instanceof Boolean) {
+            return TYPE_BOOLEAN;
+        }
+        return -1;
+    }
+
+    /**
+     * 一个序列在行组中的列数据
+     */
+    static final class Column {
+        final String protocol;
+        final String deviceId;
+        final String address;
+        final String field;
+        final byte type;
+        long[] timestamps;
+        /** 浮点和布尔列的值，布尔存为0/1 */
+        double[] values;
+        /** 整数列的值 */
+        long[] longs;
+        int count;
+
+        Column(String protocol, String deviceId, String address, String field, byte type, int capacity) {
+            this.protocol = protocol;
+            this.deviceId = deviceId;
+            this.address = address;
+            this.field = field;
+            this.type = type;
+            this.timestamps = new long[capacity];
+            if (type == TYPE_LONG) {
+                this.longs = new long[capacity];
+            } else {
+                this.values = new double[capacity];
+            }
+        }
+
+        /**
+         * 追加一个样本，value必须是typeOf返回本列类型的值
+         */
+        void add(long timestamp, Object value) {
+            if (count == timestamps.length) {
+                int capacity = Math.max(16, count * 2);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                if (type == TYPE_LONG) {
+                    longs = Arrays.copyOf(longs, capacity);
+                } else {
+                    values = Arrays.copyOf(values, capacity);
+                }
+            }
+            timestamps[count] = timestamp;
+            if (type == TYPE_LONG) {
+                longs[count] = ((Number) value).longValue();
+            } else if (type == TYPE_BOOLEAN) {
+                values[count] = (Boolean) value ? 1 : 0;
+            } else {
+                values[count] = ((Number) value).doubleValue();
+            }
+            count++;
+        }
+
+        /**
+         * 第i个样本按写入时的类型还原
+         */
+        Object value(int i) {
+            if (type == TYPE_LONG) {
+                return longs[i];
+            }
+            if (type == TYPE_BOOLEAN) {
+                return values[i] != 0;
+            }
+            return values[i];
+        }
+
+        /**
+         * 按时间戳排序，乱序到达的样本排序后二阶差分仍然很小
+         */
+        void sort() {
+            boolean sorted = true;
+            for (int i = 1; i < count && sorted; i++) {
+                sorted = timestamps[i - 1] <= timestamps[i];
+            }
+            if (sorted) {
+                return;
+            }
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(timestamps[a], timestamps[b]));
+            long[] sortedTimestamps = new long[count];
+            for (int i = 0; i < count; i++) {
+                sortedTimestamps[i] = timestamps[order[i]];
+            }
+            timestamps = sortedTimestamps;
+            if (type == TYPE_LONG) {
+                long[] sortedLongs = new long[count];
+                for (int i = 0; i < count; i++) {
+                    sortedLongs[i] = longs[order[i]];
+                }
+                longs = sortedLongs;
+            } else {
+                double[] sortedValues = new double[count];
+                for (int i = 0; i < count; i++) {
+                    sortedValues[i] = values[order[i]];
+                }
+                values = sortedValues;
+            }
+        }
+    }
+
+    /**
+     * 行组头
+     */
+    static final class Header {
+        final int rows;
+        final int series;
+        final long minTimestamp;
+        final long maxTimestamp;
+        final int rawLength;
+        final int length;
+        final int crc;
+
+        Header(int rows, int series, long minTimestamp, long maxTimestamp, int rawLength, int length, int crc) {
+            this.rows = rows;
+            this.series = series;
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+            this.rawLength = rawLength;
+            this.length = length;
+            this.crc = crc;
+        }
+
+        /**
+         * 从缓冲区读取行组头，魔数不匹配时返回null
+         */
+        static Header read(ByteBuffer buffer) {
+            int magic = buffer.getInt();
+            if (magic != MAGIC) {
+                return null;
+            }
+            return new Header(buffer.getInt(), buffer.getInt(), buffer.getLong(), buffer.getLong(),
+                    buffer.getInt(), buffer.getInt(), buffer.getInt());
+        }
+    }
+
+    /**
+     * 编码并压缩行组，返回包含行组头的完整字节
+     */
+    static byte[] encode(Collection<Column> columns, int compressionLevel) throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream out = new DataOutputStream(raw);
+        BitOutput bits = new BitOutput(4096);
+        int rows = 0;
+        int series = 0;
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        for (Column column : columns) {
+            if (column.count == 0) {
+                continue;
+            }
+            column.sort();
+            out.writeUTF(column.protocol != null ? column.protocol : "");
+            out.writeUTF(column.deviceId != null ? column.deviceId : "");
+            out.writeUTF(column.address != null ? column.address : "");
+            out.writeUTF(column.field);
+            out.writeByte(column.type);
+            out.writeInt(column.count);
+            BlockCodec.encodeTimestamps(column.timestamps, column.count, bits);
+            writeBits(out, bits);
+            if (column.type == TYPE_LONG) {
+                // 计数器和状态码这类整数按二阶差分编码比异或更紧凑，也不会丢失超过2^53的精度
+                BlockCodec.encodeTimestamps(column.longs, column.count, bits);
+            } else {
+                BlockCodec.encodeValues(column.values, column.count, bits);
+            }
+            writeBits(out, bits);
+            rows += column.count;
+            series++;
+            minTimestamp = Math.min(minTimestamp, column.timestamps[0]);
+            maxTimestamp = Math.max(maxTimestamp, column.timestamps[column.count - 1]);
+        }
+        out.flush();
+        byte[] body = Zstd.compress(raw.toByteArray(), compressionLevel);
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        ByteBuffer group = ByteBuffer.allocate(HEADER_SIZE + body.length);
+        group.putInt(MAGIC).putInt(rows).putInt(series).putLong(minTimestamp).putLong(maxTimestamp)
+                .putInt(raw.size()).putInt(body.length).putInt((int) crc.getValue());
+        group.put(body);
+        return group.array();
+    }
+
+    private static void writeBits(DataOutputStream out, BitOutput bits) throws IOException {
+        int length = bits.finish();
+        out.writeInt(length);
+        out.write(bits.buffer(), 0, length);
+    }
+
+    /**
+     * 校验正文
+     */
+    static boolean verify(Header header, byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        return (int) crc.getValue() == header.crc;
+    }
+
+    /**
+     * 解压并解码行组正文
+     */
+    static List<Column> decode(Header header, byte[] body) throws IOException {
+        byte[] raw = Zstd.decompress(body, header.rawLength);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+        List<Column> columns = new ArrayList<>(header.series);
+        for (int s = 0; s < header.series; s++) {
+            String protocol = in.readUTF();
+            String deviceId = in.readUTF();
+            String address = in.readUTF();
+            String field = in.readUTF();
+            byte type = in.readByte();
+            if (type != TYPE_DOUBLE && type != TYPE_LONG && type != TYPE_BOOLEAN) {
+                throw new IOException("Unknown archive value type " + type);
+            }
+            int count = in.readInt();
+            Column column = new Column(protocol.isEmpty() ? null : protocol,
+                    deviceId.isEmpty() ? null : deviceId, address, field, type, count);
+            column.count = count;
+            BlockCodec.decodeTimestamps(readBits(in), column.timestamps, count);
+            if (type == TYPE_LONG) {
+                BlockCodec.decodeTimestamps(readBits(in), column.longs, count);
+            } else {
+                BlockCodec.decodeValues(readBits(in), column.values, count);
+            }
+            columns.add(column);
+        }
+        return columns;
+    }
+
+    private static BitInput readBits(DataInputStream in) throws IOException {
+        byte[] buffer = new byte[in.readInt()];
+        in.readFully(buffer);
+        return new BitInput(buffer, 0, buffer.length);
+    }
+}
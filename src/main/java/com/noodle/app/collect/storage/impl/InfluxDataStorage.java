@@ -1,10 +1,13 @@
 package com.noodle.app.collect.storage.impl;
 
-import java.time.Instant;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -12,45 +15,48 @@ import javax.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
-import com.alibaba.fastjson.JSON;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.google.gson.JsonPrimitive;
 import com.influxdb.client.InfluxDBClient;
 import com.influxdb.client.InfluxDBClientFactory;
 import com.influxdb.client.QueryApi;
 import com.influxdb.client.WriteApiBlocking;
-import com.influxdb.client.domain.WritePrecision;
 import com.influxdb.client.write.Point;
+import com.influxdb.exceptions.InfluxException;
 import com.influxdb.query.FluxRecord;
 import com.influxdb.query.FluxTable;
 import com.noodle.app.collect.protocol.config.DataStorageConfig;
+import com.noodle.app.collect.storage.ConditionalOnStorageType;
 import com.noodle.app.collect.storage.DataStorage;
 import com.noodle.app.collect.storage.model.ProtocolData;
 
 /**
  * InfluxDB数据存储实现
+ *
+ * 点的时间取数据的时间戳（解码器从负载中取出的设备时间或接收时间），按配置的精度写入。
+ * 表结构（每字段一点或每消息一点）见{@link InfluxPointEncoder}。
  */
 @Component
-@ConditionalOnProperty(name = "data.storage.type", havingValue = "influxdb")
+@ConditionalOnStorageType("influxdb")
 public class InfluxDataStorage implements DataStorage {
-	 private final String TAG = "tag";
-	    private final String FIELD_VALUE = "value";
     private static final Logger logger = LoggerFactory.getLogger(InfluxDataStorage.class);
 
     @Autowired
     private DataStorageConfig storageConfig;
 
     private InfluxDBClient influxDBClient;
+    // 异步写入的I/O线程，编码在调用线程完成
+    private ExecutorService writeExecutor;
+    private InfluxPointEncoder encoder;
     DataStorageConfig.InfluxConfig config;
     @PostConstruct
     @Override
     public void initialize() {
         logger.info("Initializing InfluxDB data storage...");
+        // 表结构或精度配置错误时启动失败，不等到写入时才发现
+        encoder = new InfluxPointEncoder(storageConfig.getInflux());
+        logger.info("InfluxDB schema: {}, precision: {}", storageConfig.getInflux().getSchema(),
+                storageConfig.getInflux().getPrecision());
         try {
             DataStorageConfig.InfluxConfig config = storageConfig.getInflux();
             influxDBClient = InfluxDBClientFactory.create(
@@ -60,6 +66,14 @@ public class InfluxDataStorage implements DataStorage {
                     config.getBucket()
             );
             this.config=config;
+            if (writeExecutor == null) {
+                AtomicInteger threadIndex = new AtomicInteger();
+                writeExecutor = Executors.newFixedThreadPool(Math.max(1, config.getWriteThreads()), r -> {
+                    Thread thread = new Thread(r, "influx-write-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
             if (isConnected()) {
                 logger.info("InfluxDB data storage initialized successfully");
             } else {
@@ -74,6 +88,9 @@ public class InfluxDataStorage implements DataStorage {
     @Override
     public void destroy() {
         logger.info("Destroying InfluxDB data storage...");
+        if (writeExecutor != null) {
+            writeExecutor.shutdown();
+        }
         if (influxDBClient != null) {
             influxDBClient.close();
         }
@@ -81,16 +98,13 @@ public class InfluxDataStorage implements DataStorage {
 
     @Override
     public void store(ProtocolData data) {
-        try {
-        	List<Point> points = createSingleTagPoint(data);
-            WriteApiBlocking writeApi = influxDBClient.getWriteApiBlocking();
-            writeApi.writePoints(points);
-            
-            logger.info("Stored data to InfluxDB: {}", data);
-            
-        } catch (Exception e) {
-            logger.error("Failed to store data to InfluxDB: {}", e.getMessage(), e);
+        List<Point> points = createPoints(Collections.singletonList(data));
+        if (points.isEmpty()) {
+            return;
         }
+        WriteApiBlocking writeApi = influxDBClient.getWriteApiBlocking();
+        writeApi.writePoints(points);
+        logger.debug("Stored data to InfluxDB: {}", data);
     }
 
     @Override
@@ -98,19 +112,53 @@ public class InfluxDataStorage implements DataStorage {
         if (dataList == null || dataList.isEmpty()) {
             return;
         }
-        logger.info("===========dataList:"+dataList.size()+"============"+JSON.toJSONString(dataList));
+        List<Point> points = createPoints(dataList);
+        WriteApiBlocking writeApi = influxDBClient.getWriteApiBlocking();
+        if (points.size() > 0) writeApi.writePoints(points);
+        logger.debug("Stored {} data points to InfluxDB in batch", dataList.size());
+    }
+
+    @Override
+    public CompletionStage<Void> storeBatchAsync(List<ProtocolData> dataList) {
+        if (dataList == null || dataList.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<Point> points;
         try {
-            List<Point> points = new ArrayList<>();
-            for (ProtocolData data : dataList) {
-                points.addAll(createSingleTagPoint(data));
-            }
-            WriteApiBlocking writeApi = influxDBClient.getWriteApiBlocking();
-           if(points.size()>0) writeApi.writePoints(points);
-            logger.info("Stored {} data points to InfluxDB in batch", dataList.size());
-            
+            points = createPoints(dataList);
         } catch (Exception e) {
-            logger.error("Failed to store batch data to InfluxDB: {}", e.getMessage(), e);
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        if (points.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> {
+            influxDBClient.getWriteApiBlocking().writePoints(points);
+            logger.debug("Stored {} data points to InfluxDB in batch", dataList.size());
+        }, writeExecutor);
+    }
+
+    /**
+     * 把一批数据编码为Point，单条数据格式错误时跳过
+     */
+    private List<Point> createPoints(List<ProtocolData> dataList) {
+        return encoder.encode(dataList);
+    }
+
+    /**
+     * 400、413、422是数据本身被拒绝（行协议错误、字段类型冲突、批次过大），其他状态码（认证、限流、5xx）和网络错误都可以重试
+     */
+    @Override
+    public boolean isRetryable(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause() != cause ? cause.getCause() : null) {
+            if (cause instanceof InfluxException) {
+                int status = ((InfluxException) cause).status();
+                return status != 400 && status != 413 && status != 422;
+            }
         }
+        return DataStorage.super.isRetryable(error);
     }
 
     @Override
@@ -134,67 +182,5 @@ public class InfluxDataStorage implements DataStorage {
             return false;
         }
     }
-    /**
-     * 创建InfluxDB Point
-     */
-    private  List<Point> createSingleTagPoint(ProtocolData data) {
-    	 List<Point> points = new ArrayList<>();
-         if(data.getOrgData()==null) {
-            logger.info("===========数据为空=======");
-    		return new  ArrayList<Point>();
-    	 }
-        if (!JSON.isValid(data.getOrgData().toString())) {
-            logger.info("===========数据不是JSON格式=======");
-            return new ArrayList<Point>();
-        }
-    	 JsonObject allObject = JsonParser.parseString(data.getOrgData().toString()).getAsJsonObject();
-    	 if(allObject.get("deviceId")==null) {
-    		return new  ArrayList<Point>();
-    	 }
-    	 String deviceId= allObject.get("deviceId").getAsString();
-    	 JsonElement pointDataStr= allObject.get("data");
-    	 JsonObject jsonObject = pointDataStr.getAsJsonObject();
-    	for (Map.Entry<String, JsonElement> entry : jsonObject.entrySet()) {
-            String key =deviceId+"_"+entry.getKey();
-            logger.info("===========key:"+key);
-            JsonElement value = entry.getValue();
-            logger.info("===========value:"+value);
-            if (value == null || value.isJsonNull()) {
-                System.out.println("值为 null");
-                continue;
-            }
-            Point point = Point
-                    .measurement(this.config.getTable())
-                    .addTag(TAG, key)
-                    .time(Instant.now(), WritePrecision.S);
-            if (value.isJsonPrimitive()) {
-                JsonPrimitive primitive = value.getAsJsonPrimitive();
-                if (primitive.isNumber()) {
-                	try {
-                        // 尝试获取数字值
-                        double doubleValue = primitive.getAsDouble();
-                        System.out.println("数字值: " + doubleValue);
-                        // 判断是否是整数
-                        if (doubleValue == Math.floor(doubleValue) && !Double.isInfinite(doubleValue)) {
-                            System.out.println("这是一个整数");
-                            long longValue = primitive.getAsLong();
-                            point.addField(FIELD_VALUE, new Double(longValue));
-                        } else {
-                            System.out.println("这是一个浮点数");
-                            point.addField(FIELD_VALUE, doubleValue);
-                        }
-                        points.add(point);
-                    } catch (NumberFormatException e) {
-                        System.out.println("数字格式错误");
-                    }
-               } else if (primitive.isString()) {
-                    String stringValue = primitive.getAsString();
-                    System.out.println("字符串值: " + stringValue);
-               }
-          }
-    	}
-    	 logger.info("===========points:"+points.size()+"============"+JSON.toJSONString(points));
-    	 return points;
-    }
 
 }
\ No newline at end of file
@@ -0,0 +1,224 @@
+package com.noodle.app.collect.storage.impl;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.fastjson.JSON;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.influxdb.client.domain.WritePrecision;
+import com.influxdb.client.write.Point;
+import com.noodle.app.collect.protocol.config.DataStorageConfig;
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * 把ProtocolData编码为InfluxDB Point
+ *
+ * 两种表结构：
+ * narrow（默认）每个数值字段一个点，tag为 设备ID_字段名，字段固定为value，每个设备的每个字段是一个序列；
+ * wide 每条消息一个点，tag为deviceId和按主题层级配置的tag，所有数值字段写入同一个点，每个设备一个序列。
+ * dual同时写两种结构，用于迁移期间新旧查询并存，wide写入单独的measurement。
+ * 一批数据按序列分组、组内按时间排序后写出，同一序列的点在请求中连续且有序。
+ */
+final class InfluxPointEncoder {
+
+    private static final Logger logger = LoggerFactory.getLogger(InfluxPointEncoder.class);
+
+    static final String SCHEMA_NARROW = "narrow";
+    static final String SCHEMA_WIDE = "wide";
+    static final String SCHEMA_DUAL = "dual";
+
+    private static final String TAG = "tag";
+    private static final String FIELD_VALUE = "value";
+    private static final String TAG_DEVICE_ID = "deviceId";
+
+    private final boolean narrow;
+    private final boolean wide;
+    private final String narrowTable;
+    private final String wideTable;
+    private final WritePrecision precision;
+    // 主题第i层对应的tag名，为空的层不作为tag
+    private final String[] topicTags;
+
+    InfluxPointEncoder(DataStorageConfig.InfluxConfig config) {
+        String schema = config.getSchema() != null ? config.getSchema().trim().toLowerCase() : SCHEMA_NARROW;
+        if (!SCHEMA_NARROW.equals(schema) && !SCHEMA_WIDE.equals(schema) && !SCHEMA_DUAL.equals(schema)) {
+            throw new IllegalArgumentException("Unsupported InfluxDB schema: " + config.getSchema());
+        }
+        this.narrow = !SCHEMA_WIDE.equals(schema);
+        this.wide = !SCHEMA_NARROW.equals(schema);
+        this.narrowTable = config.getTable();
+        String table = config.getWideTable();
+        if (table == null || table.trim().isEmpty()) {
+            table = SCHEMA_DUAL.equals(schema) ? config.getTable() + "_wide" : config.getTable();
+        }
+        this.wideTable = table.trim();
+        this.precision = parsePrecision(config.getPrecision());
+        List<String> tags = config.getTopicTags() != null ? config.getTopicTags() : Collections.emptyList();
+        this.topicTags = tags.toArray(new String[0]);
+    }
+
+    private static WritePrecision parsePrecision(String name) {
+        if (name == null) {
+            return WritePrecision.MS;
+        }
+        switch (name.trim().toLowerCase()) {
+            case "s":
+                return WritePrecision.S;
+            case "us":
+                return WritePrecision.US;
+            case "ns":
+                return WritePrecision.NS;
+            case "ms":
+                return WritePrecision.MS;
+            default:
+                throw new IllegalArgumentException("Unsupported InfluxDB precision: " + name);
+        }
+    }
+
+    /**
+     * 编码一批数据
+     */
+    List<Point> encode(List<ProtocolData> dataList) {
+        List<SeriesPoint> series = encodeSeries(dataList);
+        List<Point> points = new ArrayList<>(series.size());
+        for (SeriesPoint point : series) {
+            points.add(point.point);
+        }
+        return points;
+    }
+
+    /**
+     * 编码一批数据，返回按序列键和时间排序的点，单条数据格式错误时跳过
+     */
+    List<SeriesPoint> encodeSeries(List<ProtocolData> dataList) {
+        List<SeriesPoint> series = new ArrayList<>();
+        for (ProtocolData data : dataList) {
+            try {
+                encode(data, series);
+            } catch (Exception e) {
+                logger.warn("Skipped malformed data on {}: {}", data.getAddress(), e.getMessage());
+            }
+        }
+        series.sort(SeriesPoint.ORDER);
+        return series;
+    }
+
+    void encode(ProtocolData data, List<SeriesPoint> out) {
+        String deviceId = data.getDeviceId();
+        Map<String, Object> fields = data.getFields();
+        // 未解码的数据按旧格式 {"deviceId": ..., "data": {...}} 解析
+        if (fields == null) {
+            if (data.getOrgData() == null || !JSON.isValid(data.getOrgData().toString())) {
+                return;
+            }
+            JsonObject allObject = JsonParser.parseString(data.getOrgData().toString()).getAsJsonObject();
+            if (allObject.get("deviceId") == null || !(allObject.get("data") instanceof JsonObject)) {
+                return;
+            }
+            deviceId = allObject.get("deviceId").getAsString();
+            fields = numericFields(allObject.getAsJsonObject("data"));
+        }
+        if (deviceId == null || fields.isEmpty()) {
+            return;
+        }
+        Instant timestamp = data.getTimestamp() != null ? data.getTimestamp() : Instant.now();
+        if (narrow) {
+            encodeNarrow(deviceId, fields, timestamp, out);
+        }
+        if (wide) {
+            encodeWide(deviceId, data.getAddress(), fields, timestamp, out);
+        }
+    }
+
+    private void encodeNarrow(String deviceId, Map<String, Object> fields, Instant timestamp, List<SeriesPoint> out) {
+        for (Map.Entry<String, Object> entry : fields.entrySet()) {
+            if (!(entry.getValue() instanceof Number)) {
+                continue;
+            }
+            String tag = deviceId + "_" + entry.getKey();
+            Point point = Point
+                    .measurement(narrowTable)
+                    .addTag(TAG, tag)
+                    .addField(FIELD_VALUE, ((Number) entry.getValue()).doubleValue())
+                    .time(timestamp, precision);
+            out.add(new SeriesPoint(narrowTable + "," + TAG + "=" + tag, timestamp, point));
+        }
+    }
+
+    private void encodeWide(String deviceId, String topic, Map<String, Object> fields, Instant timestamp,
+                            List<SeriesPoint> out) {
+        Point point = Point.measurement(wideTable).addTag(TAG_DEVICE_ID, deviceId);
+        StringBuilder key = new StringBuilder(wideTable).append(',').append(TAG_DEVICE_ID).append('=').append(deviceId);
+        if (topicTags.length > 0 && topic != null) {
+            int level = 0;
+            int start = 0;
+            while (level < topicTags.length && start <= topic.length()) {
+                int end = topic.indexOf('/', start);
+                if (end < 0) {
+                    end = topic.length();
+                }
+                String tag = topicTags[level];
+                if (tag != null && !tag.isEmpty() && end > start) {
+                    String value = topic.substring(start, end);
+                    point.addTag(tag, value);
+                    key.append(',').append(tag).append('=').append(value);
+                }
+                level++;
+                start = end + 1;
+            }
+        }
+        boolean hasField = false;
+        for (Map.Entry<String, Object> entry : fields.entrySet()) {
+            if (entry.getValue() instanceof Number) {
+                point.addField(entry.getKey(), ((Number) entry.getValue()).doubleValue());
+                hasField = true;
+            }
+        }
+        if (hasField) {
+            out.add(new SeriesPoint(key.toString(), timestamp, point.time(timestamp, precision)));
+        }
+    }
+
+    private static Map<String, Object> numericFields(JsonObject data) {
+        Map<String, Object> fields = new HashMap<>();
+        for (Map.Entry<String, JsonElement> entry : data.entrySet()) {
+            JsonElement value = entry.getValue();
+            if (value != null && value.isJsonPrimitive()) {
+                JsonPrimitive primitive = value.getAsJsonPrimitive();
+                if (primitive.isNumber()) {
+                    fields.put(entry.getKey(), primitive.getAsDouble());
+                }
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * 带序列键和时间的Point，序列键为 measurement,tag=value...
+     */
+    static final class SeriesPoint {
+        static final Comparator<SeriesPoint> ORDER = Comparator.<SeriesPoint, String>comparing(p -> p.key)
+                .thenComparing(p -> p.time);
+
+        final String key;
+        final Instant time;
+        final Point point;
+
+        SeriesPoint(String key, Instant time, Point point) {
+            this.key = key;
+            this.time = time;
+            this.point = point;
+        }
+    }
+}
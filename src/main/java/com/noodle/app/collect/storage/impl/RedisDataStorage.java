@@ -1,10 +1,16 @@
 package com.noodle.app.collect.storage.impl;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
@@ -13,13 +19,15 @@ import javax.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.noodle.app.collect.protocol.config.DataStorageConfig;
+import com.noodle.app.collect.storage.ConditionalOnStorageType;
 import com.noodle.app.collect.storage.DataStorage;
 import com.noodle.app.collect.storage.model.ProtocolData;
 
@@ -27,7 +35,7 @@ import com.noodle.app.collect.storage.model.ProtocolData;
  * Redis数据存储实现
  */
 @Component
-@ConditionalOnProperty(name = "data.storage.type", havingValue = "redis")
+@ConditionalOnStorageType("redis")
 public class RedisDataStorage implements DataStorage {
 
     private static final Logger logger = LoggerFactory.getLogger(RedisDataStorage.class);
@@ -41,10 +49,21 @@ public class RedisDataStorage implements DataStorage {
     @Autowired
     private ObjectMapper objectMapper;
 
+    // 异步写入的I/O线程，序列化在调用线程完成
+    private ExecutorService writeExecutor;
+
     @PostConstruct
     @Override
     public void initialize() {
         logger.info("Initializing Redis data storage...");
+        if (writeExecutor == null) {
+            AtomicInteger threadIndex = new AtomicInteger();
+            writeExecutor = Executors.newFixedThreadPool(Math.max(1, storageConfig.getRedis().getWriteThreads()), r -> {
+                Thread thread = new Thread(r, "redis-write-" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
         if (isConnected()) {
             logger.info("Redis data storage initialized successfully");
         } else {
@@ -56,6 +75,9 @@ public class RedisDataStorage implements DataStorage {
     @Override
     public void destroy() {
         logger.info("Destroying Redis data storage...");
+        if (writeExecutor != null) {
+            writeExecutor.shutdown();
+        }
     }
 
     @Override
@@ -83,7 +105,7 @@ public class RedisDataStorage implements DataStorage {
             logger.debug("Stored data to Redis: {}", data);
             
         } catch (Exception e) {
-            logger.error("Failed to store data to Redis: {}", e.getMessage(), e);
+            throw new IllegalStateException("Failed to store data to Redis: " + e.getMessage(), e);
         }
     }
 
@@ -92,64 +114,87 @@ public class RedisDataStorage implements DataStorage {
         if (dataList == null || dataList.isEmpty()) {
             return;
         }
+        write(encode(dataList));
+        logger.debug("Stored {} data points to Redis in batch", dataList.size());
+    }
 
-        try {
-            // 按key分组批量操作
-            Map<String, List<ProtocolData>> groupedData = dataList.stream()
-                    .collect(Collectors.groupingBy(data -> 
-                            buildKey(data.getProtocol(), data.getDeviceId(), data.getAddress())));
-
-            for (Map.Entry<String, List<ProtocolData>> entry : groupedData.entrySet()) {
-                String key = entry.getKey();
-                List<ProtocolData> dataGroup = entry.getValue();
-                
-                // 批量添加到ZSet
-                Set<ZSetOperations.TypedTuple<Object>> tuples = new HashSet<>();
-                ProtocolData latestData = null;
-                
-                for (ProtocolData data : dataGroup) {
-                    try {
-                        String jsonData = objectMapper.writeValueAsString(data);
-                        double score = data.getTimestamp().toEpochMilli();
-                        tuples.add(ZSetOperations.TypedTuple.of(jsonData, score));
-                        
-                        if (latestData == null || data.getTimestamp().isAfter(latestData.getTimestamp())) {
-                            latestData = data;
-                        }
-                    } catch (Exception e) {
-                        logger.error("Failed to serialize data: {}", e.getMessage());
-                    }
-                }
-                
-                if (!tuples.isEmpty()) {
-                    redisTemplate.opsForZSet().add(key, tuples);
+    @Override
+    public CompletionStage<Void> storeBatchAsync(List<ProtocolData> dataList) {
+        if (dataList == null || dataList.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<KeyBatch> batches = encode(dataList);
+        if (batches.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> {
+            write(batches);
+            logger.debug("Stored {} data points to Redis in batch", dataList.size());
+        }, writeExecutor);
+    }
+
+    /**
+     * 按key分组并序列化，单条数据序列化失败时跳过
+     */
+    private List<KeyBatch> encode(List<ProtocolData> dataList) {
+        Map<String, List<ProtocolData>> groupedData = dataList.stream()
+                .collect(Collectors.groupingBy(data -> 
+                        buildKey(data.getProtocol(), data.getDeviceId(), data.getAddress())));
+
+        List<KeyBatch> batches = new ArrayList<>(groupedData.size());
+        for (Map.Entry<String, List<ProtocolData>> entry : groupedData.entrySet()) {
+            Set<ZSetOperations.TypedTuple<Object>> tuples = new HashSet<>();
+            ProtocolData latestData = null;
+            String latestJsonData = null;
+            
+            for (ProtocolData data : entry.getValue()) {
+                try {
+                    String jsonData = objectMapper.writeValueAsString(data);
+                    double score = data.getTimestamp().toEpochMilli();
+                    tuples.add(ZSetOperations.TypedTuple.of(jsonData, score));
                     
-                    // 更新最新值
-                    if (latestData != null) {
-                        try {
-                            String latestKey = buildLatestKey(latestData.getProtocol(), 
-                                    latestData.getDeviceId(), latestData.getAddress());
-                            String latestJsonData = objectMapper.writeValueAsString(latestData);
-                            redisTemplate.opsForValue().set(latestKey, latestJsonData);
-                            
-                            // 设置过期时间
-                            if (storageConfig.getRedis().isUseKeyExpiration()) {
-                                long ttl = storageConfig.getRedis().getTimeToLive();
-                                redisTemplate.expire(key, ttl, TimeUnit.SECONDS);
-                                redisTemplate.expire(latestKey, ttl, TimeUnit.SECONDS);
-                            }
-                        } catch (Exception e) {
-                            logger.error("Failed to store latest data: {}", e.getMessage());
-                        }
+                    if (latestData == null || data.getTimestamp().isAfter(latestData.getTimestamp())) {
+                        latestData = data;
+                        latestJsonData = jsonData;
                     }
+                } catch (Exception e) {
+                    logger.error("Failed to serialize data: {}", e.getMessage());
                 }
             }
             
-            logger.debug("Stored {} data points to Redis in batch", dataList.size());
-            
-        } catch (Exception e) {
-            logger.error("Failed to store batch data to Redis: {}", e.getMessage(), e);
+            if (!tuples.isEmpty()) {
+                String latestKey = buildLatestKey(latestData.getProtocol(), 
+                        latestData.getDeviceId(), latestData.getAddress());
+                batches.add(new KeyBatch(entry.getKey(), tuples, latestKey, latestJsonData));
+            }
         }
+        return batches;
+    }
+
+    /**
+     * 以管道方式写入，一个批次只有一次网络往返；任一命令失败时抛出异常
+     */
+    private void write(List<KeyBatch> batches) {
+        boolean expire = storageConfig.getRedis().isUseKeyExpiration();
+        long ttl = storageConfig.getRedis().getTimeToLive();
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                for (KeyBatch batch : batches) {
+                    // 批量添加到ZSet并更新最新值
+                    ops.opsForZSet().add(batch.key, batch.tuples);
+                    ops.opsForValue().set(batch.latestKey, batch.latestJsonData);
+                    // 设置过期时间
+                    if (expire) {
+                        ops.expire(batch.key, ttl, TimeUnit.SECONDS);
+                        ops.expire(batch.latestKey, ttl, TimeUnit.SECONDS);
+                    }
+                }
+                return null;
+            }
+        });
     }
 
     @Override
@@ -192,4 +237,21 @@ public class RedisDataStorage implements DataStorage {
         return String.format("%s%s:*", 
                 storageConfig.getRedis().getKeyPrefix(), protocol);
     }
-}
\ No newline at end of file
+
+    /**
+     * 同一个key的序列化结果
+     */
+    private static class KeyBatch {
+        private final String key;
+        private final Set<ZSetOperations.TypedTuple<Object>> tuples;
+        private final String latestKey;
+        private final String latestJsonData;
+
+        KeyBatch(String key, Set<ZSetOperations.TypedTuple<Object>> tuples, String latestKey, String latestJsonData) {
+            this.key = key;
+            this.tuples = tuples;
+            this.latestKey = latestKey;
+            this.latestJsonData = latestJsonData;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.noodle.app.collect.storage.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.rocketmq.client.exception.MQBrokerException;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.message.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.noodle.app.collect.config.RocketMqConfig;
+import com.noodle.app.collect.mq.AsyncBatchProducer;
+import com.noodle.app.collect.protocol.config.DataStorageConfig;
+import com.noodle.app.collect.storage.ConditionalOnStorageType;
+import com.noodle.app.collect.storage.DataStorage;
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * 遥测数据转发到RocketMQ
+ *
+ * 每个数据点编码为一条JSON消息，tag为协议，key为设备ID，经{@link AsyncBatchProducer}批量、压缩发送。
+ * 开启ordered时按设备ID选择队列，同一设备的数据按写入顺序进入同一个队列，每个队列同时只有一个批次在途。
+ * 批次整组进入生产者队列，放不下时一条都不提交，整批以可重试的错误失败。
+ * 批次中所有消息确认后storeBatchAsync才完成，任一条失败时整批异常完成，由StorageSink退避重试，
+ * 重试会重发已成功的消息，下游按 设备ID + 时间戳 去重；重试的批次会排在之后写入的批次后面。
+ * 连接状态取自生产者最近的发送结果，Broker不可达时StorageSink只退避不拆分批次。
+ */
+@Component
+@ConditionalOnStorageType("rocketmq")
+public class RocketMqDataStorage implements DataStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(RocketMqDataStorage.class);
+
+    private static final String PROTOCOL_PLACEHOLDER = "{protocol}";
+    // Broker的ResponseCode.MESSAGE_ILLEGAL
+    private static final int MESSAGE_ILLEGAL = 13;
+
+    @Autowired
+    private DataStorageConfig storageConfig;
+
+    @Autowired
+    private RocketMqConfig rocketMqConfig;
+
+    @Autowired
+    private AsyncBatchProducer producer;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder encodeFailures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    @PostConstruct
+    @Override
+    public void initialize() {
+        logger.info("Initializing RocketMQ data storage...");
+        if (!rocketMqConfig.isAvailable()) {
+            logger.error("RocketMQ is disabled, telemetry will not be forwarded until rocketmq.enabled is true");
+            return;
+        }
+        DataStorageConfig.RocketMqSinkConfig config = storageConfig.getRocketmq();
+        logger.info("RocketMQ data storage initialized: topic={}, ordered={}", config.getTopic(), config.isOrdered());
+    }
+
+    @PreDestroy
+    @Override
+    public void destroy() {
+        // 生产者由AsyncBatchProducer自己关闭，其他模块也在使用
+        logger.info("Destroying RocketMQ data storage...");
+    }
+
+    @Override
+    public void store(ProtocolData data) {
+        storeBatch(Collections.singletonList(data));
+    }
+
+    @Override
+    public void storeBatch(List<ProtocolData> dataList) {
+        if (dataList == null || dataList.isEmpty()) {
+            return;
+        }
+        try {
+            storeBatchAsync(dataList).toCompletableFuture()
+                    .get(rocketMqConfig.getProducer().getSendMessageTimeout() * 2L, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to publish data to RocketMQ: " + e.getCause().getMessage(),
+                    e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Timed out publishing data to RocketMQ", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while publishing data to RocketMQ", e);
+        }
+    }
+
+    @Override
+    public CompletionStage<Void> storeBatchAsync(List<ProtocolData> dataList) {
+        if (dataList == null || dataList.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        DataStorageConfig.RocketMqSinkConfig config = storageConfig.getRocketmq();
+        List<Message> messages = new ArrayList<>(dataList.size());
+        List<String> keys = new ArrayList<>(dataList.size());
+        for (ProtocolData data : dataList) {
+            try {
+                messages.add(encode(data, config));
+                keys.add(config.isOrdered() ? shardingKey(data) : null);
+            } catch (Exception e) {
+                encodeFailures.increment();
+                logger.error("Failed to serialize data: {}", e.getMessage());
+            }
+        }
+        if (messages.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        BatchAck ack = new BatchAck(messages.size());
+        try {
+            if (!producer.sendAll(messages, keys, ack)) {
+                rejected.add(messages.size());
+                ack.future.completeExceptionally(new RejectedExecutionException(producer.isRunning()
+                        ? "RocketMQ producer queue is full" : "RocketMQ producer is not running"));
+            }
+        } catch (IllegalArgumentException e) {
+            // 批次比生产者队列还大，StorageSink拆分后再写
+            rejected.add(messages.size());
+            ack.future.completeExceptionally(e);
+        }
+        return ack.future;
+    }
+
+    /**
+     * 规范化的遥测消息：时间戳为毫秒数，不足一毫秒的部分另存为纳秒数
+     */
+    private Message encode(ProtocolData data, DataStorageConfig.RocketMqSinkConfig config) throws Exception {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("deviceId", data.getDeviceId());
+        record.put("protocol", data.getProtocol());
+        record.put("client", data.getClient());
+        record.put("address", data.getAddress());
+        record.put("timestamp", data.getTimestamp() != null ? data.getTimestamp().toEpochMilli() : null);
+        if (data.getTimestamp() != null && data.getTimestamp().getNano() % 1_000_000 != 0) {
+            record.put("timestampNanos", data.getTimestamp().getNano() % 1_000_000);
+        }
+        record.put("decoder", data.getDecoder());
+        record.put("fields", data.getFields());
+        if (config.isIncludeRaw() && data.getOrgData() instanceof String) {
+            record.put("raw", data.getOrgData());
+        }
+        Message message = new Message(topic(data, config), data.getProtocol(), objectMapper.writeValueAsBytes(record));
+        String key = shardingKey(data);
+        if (key != null) {
+            message.setKeys(key);
+        }
+        return message;
+    }
+
+    private static String topic(ProtocolData data, DataStorageConfig.RocketMqSinkConfig config) {
+        String topic = config.getTopic();
+        if (topic.contains(PROTOCOL_PLACEHOLDER)) {
+            topic = topic.replace(PROTOCOL_PLACEHOLDER, data.getProtocol() != null ? data.getProtocol() : "unknown");
+        }
+        return topic;
+    }
+
+    private static String shardingKey(ProtocolData data) {
+        return data.getDeviceId() != null ? data.getDeviceId() : data.getAddress();
+    }
+
+    /**
+     * 一个批次的确认：全部成功时正常完成，第一条失败时异常完成
+     */
+    private final class BatchAck implements SendCallback {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final AtomicInteger remaining;
+
+        BatchAck(int count) {
+            this.remaining = new AtomicInteger(count);
+        }
+
+        @Override
+        public void onSuccess(SendResult result) {
+            published.increment();
+            if (remaining.decrementAndGet() == 0) {
+                future.complete(null);
+            }
+        }
+
+        @Override
+        public void onException(Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 获取转发统计，包括生产者的批量发送统计
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("topic", storageConfig.getRocketmq().getTopic());
+        stats.put("ordered", storageConfig.getRocketmq().isOrdered());
+        stats.put("published", published.sum());
+        stats.put("encodeFailures", encodeFailures.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("producer", producer.getStatistics());
+        return stats;
+    }
+
+    @Override
+    public String getStorageType() {
+        return "rocketmq";
+    }
+
+    /**
+     * 只有消息本身不合法（超过大小限制、Broker返回MESSAGE_ILLEGAL）时不可重试，
+     * 生产者队列满、超时、网络和路由错误都是暂时的
+     */
+    @Override
+    public boolean isRetryable(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause() != cause ? cause.getCause() : null) {
+            if (cause instanceof IllegalArgumentException) {
+                return false;
+            }
+            if (cause instanceof MQBrokerException) {
+                return ((MQBrokerException) cause).getResponseCode() != MESSAGE_ILLEGAL;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return producer.isReachable();
+    }
+}
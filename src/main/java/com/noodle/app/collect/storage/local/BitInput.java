@@ -0,0 +1,40 @@
+package com.noodle.app.collect.storage.local;
+
+/**
+ * 按位读取，高位在前
+ */
+public final class BitInput {
+
+    private final byte[] buffer;
+    private int position;
+    private final int limit;
+    private long accumulator;
+    private int accumulatedBits;
+
+    public BitInput(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public boolean readBit() {
+        return readBits(1) != 0;
+    }
+
+    /**
+     * 读取bits位，bits不超过64
+     */
+    public long readBits(int bits) {
+        if (bits > 32) {
+            long high = readBits(bits - 32);
+            return (high << 32) | readBits(32);
+        }
+        while (accumulatedBits < bits) {
+            int next = position < limit ? buffer[position++] & 0xFF : 0;
+            accumulator = (accumulator << 8) | next;
+            accumulatedBits += 8;
+        }
+        accumulatedBits -= bits;
+        return (accumulator >>> accumulatedBits) & ((1L << bits) - 1);
+    }
+}
@@ -0,0 +1,67 @@
+package com.noodle.app.collect.storage.local;
+
+import java.util.Arrays;
+
+/**
+ * 按位写入的可复用缓冲区，高位在前
+ */
+public final class BitOutput {
+
+    private byte[] buffer;
+    private int position;
+    private long accumulator;
+    private int accumulatedBits;
+
+    public BitOutput(int initialCapacity) {
+        this.buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    public void reset() {
+        position = 0;
+        accumulator = 0;
+        accumulatedBits = 0;
+    }
+
+    public void writeBit(boolean bit) {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * 写入value的低bits位，bits不超过64
+     */
+    public void writeBits(long value, int bits) {
+        if (bits > 32) {
+            writeBits(value >>> 32, bits - 32);
+            writeBits(value & 0xFFFFFFFFL, 32);
+            return;
+        }
+        // 累加器中最多留7位，加上本次最多32位，不会溢出
+        accumulator = (accumulator << bits) | (value & ((1L << bits) - 1));
+        accumulatedBits += bits;
+        if (position + 5 > buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        while (accumulatedBits >= 8) {
+            accumulatedBits -= 8;
+            buffer[position++] = (byte) (accumulator >>> accumulatedBits);
+        }
+    }
+
+    /**
+     * 补齐最后一个字节，返回总字节数
+     */
+    public int finish() {
+        if (accumulatedBits > 0) {
+            if (position + 1 > buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            buffer[position++] = (byte) (accumulator << (8 - accumulatedBits));
+            accumulatedBits = 0;
+        }
+        return position;
+    }
+
+    public byte[] buffer() {
+        return buffer;
+    }
+}
@@ -0,0 +1,121 @@
+package com.noodle.app.collect.storage.local;
+
+/**
+ * 数据块编码（Gorilla）
+ *
+ * 时间戳列按二阶差分变长编码：采样间隔固定时每个时间戳只占1位；
+ * 数值列与前一个值异或，只写有效位：数值不变时每个值只占1位。
+ * 两列分别编码，读取时可以只解时间戳判断范围。本地时序存储和冷数据归档共用。
+ */
+public final class BlockCodec {
+
+    private BlockCodec() {
+    }
+
+    public static void encodeTimestamps(long[] timestamps, int count, BitOutput out) {
+        out.reset();
+        out.writeBits(timestamps[0], 64);
+        long previous = timestamps[0];
+        long previousDelta = 0;
+        for (int i = 1; i < count; i++) {
+            long delta = timestamps[i] - previous;
+            long dod = delta - previousDelta;
+            if (dod == 0) {
+                out.writeBit(false);
+            } else if (dod >= -63 && dod <= 64) {
+                out.writeBits(0b10, 2);
+                out.writeBits(dod + 63, 7);
+            } else if (dod >= -255 && dod <= 256) {
+                out.writeBits(0b110, 3);
+                out.writeBits(dod + 255, 9);
+            } else if (dod >= -2047 && dod <= 2048) {
+                out.writeBits(0b1110, 4);
+                out.writeBits(dod + 2047, 12);
+            } else {
+                out.writeBits(0b1111, 4);
+                out.writeBits(dod, 64);
+            }
+            previous = timestamps[i];
+            previousDelta = delta;
+        }
+    }
+
+    public static void decodeTimestamps(BitInput in, long[] timestamps, int count) {
+        long previous = in.readBits(64);
+        timestamps[0] = previous;
+        long previousDelta = 0;
+        for (int i = 1; i < count; i++) {
+            long dod;
+            if (!in.readBit()) {
+                dod = 0;
+            } else if (!in.readBit()) {
+                dod = in.readBits(7) - 63;
+            } else if (!in.readBit()) {
+                dod = in.readBits(9) - 255;
+            } else if (!in.readBit()) {
+                dod = in.readBits(12) - 2047;
+            } else {
+                dod = in.readBits(64);
+            }
+            long delta = previousDelta + dod;
+            previous += delta;
+            timestamps[i] = previous;
+            previousDelta = delta;
+        }
+    }
+
+    public static void encodeValues(double[] values, int count, BitOutput out) {
+        out.reset();
+        long previous = Double.doubleToRawLongBits(values[0]);
+        out.writeBits(previous, 64);
+        int previousLeading = -1;
+        int previousTrailing = 0;
+        for (int i = 1; i < count; i++) {
+            long bits = Double.doubleToRawLongBits(values[i]);
+            long xor = bits ^ previous;
+            if (xor == 0) {
+                out.writeBit(false);
+            } else {
+                out.writeBit(true);
+                int leading = Math.min(31, Long.numberOfLeadingZeros(xor));
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                    // 有效位落在上一个窗口内，沿用窗口
+                    out.writeBit(false);
+                    out.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                } else {
+                    int significant = 64 - leading - trailing;
+                    out.writeBit(true);
+                    out.writeBits(leading, 5);
+                    out.writeBits(significant == 64 ? 0 : significant, 6);
+                    out.writeBits(xor >>> trailing, significant);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+            previous = bits;
+        }
+    }
+
+    public static void decodeValues(BitInput in, double[] values, int count) {
+        long previous = in.readBits(64);
+        values[0] = Double.longBitsToDouble(previous);
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 1; i < count; i++) {
+            if (in.readBit()) {
+                if (in.readBit()) {
+                    leading = (int) in.readBits(5);
+                    int significant = (int) in.readBits(6);
+                    if (significant == 0) {
+                        significant = 64;
+                    }
+                    trailing = 64 - leading - significant;
+                }
+                long xor = in.readBits(64 - leading - trailing) << trailing;
+                previous ^= xor;
+            }
+            values[i] = Double.longBitsToDouble(previous);
+        }
+    }
+}
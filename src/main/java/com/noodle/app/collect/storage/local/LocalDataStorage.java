@@ -0,0 +1,196 @@
+package com.noodle.app.collect.storage.local;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.noodle.app.collect.protocol.config.DataStorageConfig;
+import com.noodle.app.collect.storage.ConditionalOnStorageType;
+import com.noodle.app.collect.storage.DataStorage;
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * 本地时序存储实现
+ *
+ * 每个数值字段是一个序列，序列名与InfluxDB的标签一致（设备ID_字段名），
+ * 没有设备ID时用主题代替。只写入解码器解出的数值字段。
+ * 序列ID按 设备 -> 字段名 缓存，写入时不拼接序列名。关闭后写入和查询抛出IllegalStateException。
+ */
+@Component
+@ConditionalOnStorageType("local")
+public class LocalDataStorage implements DataStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalDataStorage.class);
+
+    private final DataStorageConfig storageConfig;
+    private final LocalTsdb tsdb;
+    private final Map<String, Map<String, Integer>> seriesIds = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flushExecutor;
+    private final LongAdder skipped = new LongAdder();
+
+    @Autowired
+    public LocalDataStorage(DataStorageConfig storageConfig) {
+        this.storageConfig = storageConfig;
+        DataStorageConfig.LocalConfig config = storageConfig.getLocal();
+        logger.info("Opening local time-series storage at {}", config.getPath());
+        try {
+            this.tsdb = new LocalTsdb(Paths.get(config.getPath()),
+                    TimeUnit.MINUTES.toMillis(config.getSegmentMinutes()),
+                    TimeUnit.HOURS.toMillis(config.getRetentionHours()),
+                    config.getBlockSize(), config.getMapChunkSize());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open local time-series storage: " + e.getMessage(), e);
+        }
+    }
+
+    @PostConstruct
+    @Override
+    public synchronized void initialize() {
+        if (flushExecutor != null || tsdb.isClosed()) {
+            return;
+        }
+        DataStorageConfig.LocalConfig config = storageConfig.getLocal();
+        logger.info("Initializing local time-series storage at {}", config.getPath());
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "local-tsdb-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(100, config.getFlushInterval());
+        flushExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                tsdb.flush();
+            } catch (Exception e) {
+                logger.error("Failed to flush local time-series storage: {}", e.getMessage());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    @Override
+    public synchronized void destroy() {
+        logger.info("Destroying local time-series storage...");
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+        }
+        try {
+            tsdb.close();
+        } catch (IOException e) {
+            logger.error("Failed to close local time-series storage: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void store(ProtocolData data) {
+        try {
+            append(data);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to store data locally: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void storeBatch(List<ProtocolData> dataList) {
+        if (dataList == null || dataList.isEmpty()) {
+            return;
+        }
+        try {
+            for (ProtocolData data : dataList) {
+                append(data);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to store batch locally: " + e.getMessage(), e);
+        }
+    }
+
+    private void append(ProtocolData data) throws IOException {
+        Map<String, Object> fields = data.getFields();
+        if (fields == null || fields.isEmpty()) {
+            skipped.increment();
+            return;
+        }
+        String device = String.valueOf(data.getDeviceId() != null ? data.getDeviceId() : data.getAddress());
+        Map<String, Integer> deviceSeries = seriesIds.get(device);
+        if (deviceSeries == null) {
+            deviceSeries = seriesIds.computeIfAbsent(device, k -> new ConcurrentHashMap<>());
+        }
+        long timestamp = data.getTimestamp() != null ? data.getTimestamp().toEpochMilli() : System.currentTimeMillis();
+        for (Map.Entry<String, Object> entry : fields.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Number) {
+                tsdb.append(seriesId(device, deviceSeries, entry.getKey()), timestamp, ((Number) value).doubleValue());
+            } else if (value instanceof Boolean) {
+                tsdb.append(seriesId(device, deviceSeries, entry.getKey()), timestamp, (Boolean) value ? 1 : 0);
+            }
+        }
+    }
+
+    private int seriesId(String device, Map<String, Integer> deviceSeries, String field) throws IOException {
+        Integer id = deviceSeries.get(field);
+        if (id == null) {
+            id = tsdb.seriesId(device + "_" + field);
+            deviceSeries.put(field, id);
+        }
+        return id;
+    }
+
+    /**
+     * 查询序列在时间范围内的样本
+     */
+    public Map<String, Object> query(String series, long from, long to, int limit) throws IOException {
+        LocalTsdb.SeriesData data = tsdb.query(series, from, to, limit);
+        List<Object[]> points = new ArrayList<>(data.size());
+        for (int i = 0; i < data.size(); i++) {
+            points.add(new Object[]{data.getTimestamp(i), data.getValue(i)});
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("series", series);
+        result.put("from", from);
+        result.put("to", to);
+        result.put("count", points.size());
+        result.put("points", points);
+        return result;
+    }
+
+    /**
+     * 按前缀列出序列
+     */
+    public List<String> listSeries(String prefix, int limit) {
+        return tsdb.listSeries(prefix, limit);
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = tsdb.getStatistics();
+        stats.put("skipped", skipped.sum());
+        return stats;
+    }
+
+    @Override
+    public String getStorageType() {
+        return "local";
+    }
+
+    @Override
+    public boolean isConnected() {
+        return !tsdb.isClosed();
+    }
+}
@@ -0,0 +1,428 @@
+package com.noodle.app.collect.storage.local;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 嵌入式本地时序存储引擎
+ *
+ * 每个序列在内存中有一个原始数组缓冲区（时间戳long[]和数值double[]），从16个样本开始按需翻倍，最多blockSize个，
+ * 内存与未刷新的样本数成正比而不是与序列数成正比。写满blockSize个样本、跨时间分区或定时刷新时，
+ * 把两列分别压缩成一个数据块追加到所属分区的段文件。段按时间分区，超过保留期的段整体删除。
+ * 写入路径只有一个锁，缓冲区按序列ID放在数组中，不为每个样本分配对象。
+ * 关闭后所有读写调用抛出IllegalStateException。
+ *
+ * 未刷新的缓冲区在进程崩溃时丢失，丢失窗口不超过刷新间隔。
+ */
+public class LocalTsdb implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalTsdb.class);
+
+    private final Path directory;
+    private final long segmentMillis;
+    private final long retentionMillis;
+    private final int blockSize;
+    private final int chunkSize;
+
+    private final SeriesIndex seriesIndex;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    // 按序列ID索引，ID从0开始连续分配
+    private SeriesBuffer[] buffers = new SeriesBuffer[64];
+
+    // 编码缓冲区，只在持有锁时使用
+    private final BitOutput timestampOutput;
+    private final BitOutput valueOutput;
+    private byte[] payload = new byte[4096];
+
+    private long appended;
+    private long expired;
+    private volatile boolean closed;
+
+    public LocalTsdb(Path directory, long segmentMillis, long retentionMillis, int blockSize, int chunkSize)
+            throws IOException {
+        this.directory = directory;
+        this.segmentMillis = Math.max(60_000L, segmentMillis);
+        this.retentionMillis = retentionMillis;
+        this.blockSize = Math.max(2, blockSize);
+        this.chunkSize = Math.max(1 << 20, chunkSize);
+        this.timestampOutput = new BitOutput(this.blockSize * 2);
+        this.valueOutput = new BitOutput(this.blockSize * 2);
+        Files.createDirectories(directory);
+        this.seriesIndex = new SeriesIndex(directory.resolve("series.idx"));
+        openSegments();
+    }
+
+    /**
+     * 写入一个样本
+     */
+    public void append(String series, long timestamp, double value) throws IOException {
+        append(seriesId(series), timestamp, value);
+    }
+
+    /**
+     * 获取或创建序列ID，调用方可以缓存ID，之后按ID写入，省去每个样本的序列名查找
+     */
+    public int seriesId(String series) throws IOException {
+        ensureOpen();
+        return seriesIndex.getOrCreate(series);
+    }
+
+    /**
+     * 按{@link #seriesId}返回的ID写入一个样本
+     */
+    public synchronized void append(int id, long timestamp, double value) throws IOException {
+        ensureOpen();
+        if (retentionMillis > 0 && timestamp < System.currentTimeMillis() - retentionMillis) {
+            expired++;
+            return;
+        }
+        if (id >= buffers.length) {
+            buffers = Arrays.copyOf(buffers, Math.max(id + 1, buffers.length * 2));
+        }
+        SeriesBuffer buffer = buffers[id];
+        if (buffer == null) {
+            buffer = new SeriesBuffer(id, Math.min(SeriesBuffer.INITIAL_CAPACITY, blockSize));
+            buffers[id] = buffer;
+        }
+        long partition = partitionOf(timestamp);
+        if (buffer.count > 0 && buffer.partition != partition) {
+            flushBuffer(buffer);
+        }
+        if (buffer.count == buffer.timestamps.length) {
+            buffer.ensureCapacity(Math.min(blockSize, buffer.count * 2));
+        }
+        buffer.partition = partition;
+        buffer.timestamps[buffer.count] = timestamp;
+        buffer.values[buffer.count] = value;
+        buffer.count++;
+        appended++;
+        if (buffer.count == blockSize) {
+            flushBuffer(buffer);
+        }
+    }
+
+    /**
+     * 把所有缓冲区写成数据块并刷盘，同时删除过期的段
+     */
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        for (SeriesBuffer buffer : buffers) {
+            if (buffer != null && buffer.count > 0) {
+                flushBuffer(buffer);
+            }
+        }
+        for (Segment segment : segments.values()) {
+            segment.force();
+        }
+        applyRetention(System.currentTimeMillis());
+    }
+
+    /**
+     * 查询序列在[from, to]内的样本，按时间排序
+     */
+    public SeriesData query(String series, long from, long to, int limit) throws IOException {
+        ensureOpen();
+        SeriesData result = new SeriesData(series);
+        int id = seriesIndex.find(series);
+        if (id < 0) {
+            return result;
+        }
+        List<Segment> overlapping = new ArrayList<>();
+        synchronized (this) {
+            ensureOpen();
+            for (Segment segment : segments.subMap(partitionOf(from), true, to, true).values()) {
+                overlapping.add(segment);
+            }
+            // 未刷新的样本
+            SeriesBuffer buffer = id < buffers.length ? buffers[id] : null;
+            if (buffer != null) {
+                for (int i = 0; i < buffer.count; i++) {
+                    result.add(buffer.timestamps[i], buffer.values[i], from, to);
+                }
+            }
+        }
+        // 解码用的临时数组按数据块的样本数增长，只查少量样本时不按blockSize分配
+        SeriesBuffer scratch = new SeriesBuffer(id, 0);
+        for (Segment segment : overlapping) {
+            try {
+                readSegment(segment, id, from, to, result, scratch);
+            } catch (ClosedChannelException e) {
+                // 查询期间段因过期被删除
+                logger.debug("Segment {} expired during query", segment.getStart());
+            }
+        }
+        result.sortAndLimit(limit);
+        return result;
+    }
+
+    private void readSegment(Segment segment, int id, long from, long to, SeriesData result,
+                             SeriesBuffer scratch) throws IOException {
+        segment.read(id, from, to, (count, bytes, length) -> {
+            scratch.ensureCapacity(count);
+            long[] ts = scratch.timestamps;
+            double[] vs = scratch.values;
+            BitInput input = new BitInput(bytes, 4, length - 4);
+            BlockCodec.decodeTimestamps(input, ts, count);
+            int timestampBytes = (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16
+                    | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF);
+            BlockCodec.decodeValues(new BitInput(bytes, 4 + timestampBytes, length - 4 - timestampBytes),
+                    vs, count);
+            for (int i = 0; i < count; i++) {
+                result.add(ts[i], vs[i], from, to);
+            }
+        });
+    }
+
+    /**
+     * 按前缀列出序列
+     */
+    public List<String> listSeries(String prefix, int limit) {
+        ensureOpen();
+        return seriesIndex.list(prefix, limit);
+    }
+
+    /**
+     * 删除结束时间早于保留期的段
+     */
+    public synchronized void applyRetention(long now) {
+        if (retentionMillis <= 0) {
+            return;
+        }
+        long cutoff = now - retentionMillis;
+        while (!segments.isEmpty() && segments.firstEntry().getValue().getEnd() <= cutoff) {
+            Segment segment = segments.pollFirstEntry().getValue();
+            try {
+                segment.delete();
+                logger.info("Deleted expired segment starting at {}", segment.getStart());
+            } catch (IOException e) {
+                logger.error("Failed to delete expired segment {}: {}", segment.getStart(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public synchronized Map<String, Object> getStatistics() {
+        ensureOpen();
+        Map<String, Object> stats = new HashMap<>();
+        long bytes = 0;
+        long samples = 0;
+        long blocks = 0;
+        for (Segment segment : segments.values()) {
+            bytes += segment.getSizeBytes();
+            samples += segment.getSamples();
+            blocks += segment.getBlocks();
+        }
+        long buffered = 0;
+        for (SeriesBuffer buffer : buffers) {
+            if (buffer != null) {
+                buffered += buffer.count;
+            }
+        }
+        stats.put("directory", directory.toString());
+        stats.put("series", seriesIndex.size());
+        stats.put("segments", segments.size());
+        stats.put("blocks", blocks);
+        stats.put("storedSamples", samples);
+        stats.put("bufferedSamples", buffered);
+        stats.put("appended", appended);
+        stats.put("expired", expired);
+        stats.put("diskBytes", bytes);
+        stats.put("bytesPerSample", samples > 0 ? Math.round(bytes * 100.0 / samples) / 100.0 : 0.0);
+        if (!segments.isEmpty()) {
+            stats.put("oldestSegment", segments.firstKey());
+            stats.put("newestSegment", segments.lastKey());
+        }
+        return stats;
+    }
+
+    /**
+     * 刷新并关闭，重复调用时直接返回
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+            segments.clear();
+            seriesIndex.close();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Local time-series storage is closed");
+        }
+    }
+
+    private long partitionOf(long timestamp) {
+        return Math.floorDiv(timestamp, segmentMillis) * segmentMillis;
+    }
+
+    private void flushBuffer(SeriesBuffer buffer) throws IOException {
+        int count = buffer.count;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(min, buffer.timestamps[i]);
+            max = Math.max(max, buffer.timestamps[i]);
+        }
+        BlockCodec.encodeTimestamps(buffer.timestamps, count, timestampOutput);
+        int timestampBytes = timestampOutput.finish();
+        BlockCodec.encodeValues(buffer.values, count, valueOutput);
+        int valueBytes = valueOutput.finish();
+        int length = 4 + timestampBytes + valueBytes;
+        if (payload.length < length) {
+            payload = new byte[Math.max(length, payload.length * 2)];
+        }
+        payload[0] = (byte) (timestampBytes >>> 24);
+        payload[1] = (byte) (timestampBytes >>> 16);
+        payload[2] = (byte) (timestampBytes >>> 8);
+        payload[3] = (byte) timestampBytes;
+        System.arraycopy(timestampOutput.buffer(), 0, payload, 4, timestampBytes);
+        System.arraycopy(valueOutput.buffer(), 0, payload, 4 + timestampBytes, valueBytes);
+        segmentFor(buffer.partition).append(buffer.id, count, min, max, payload, length);
+        buffer.count = 0;
+    }
+
+    private Segment segmentFor(long partition) throws IOException {
+        Segment segment = segments.get(partition);
+        if (segment == null) {
+            segment = Segment.open(directory, partition, segmentMillis, chunkSize);
+            segments.put(partition, segment);
+        }
+        return segment;
+    }
+
+    private void openSegments() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "seg-*.tsd")) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                long start = Long.parseLong(name.substring(4, name.length() - 4));
+                segments.put(start, Segment.open(directory, start, segmentMillis, chunkSize));
+            }
+        }
+        applyRetention(System.currentTimeMillis());
+        logger.info("Opened local time-series storage at {}: {} series, {} segments",
+                directory, seriesIndex.size(), segments.size());
+    }
+
+    /**
+     * 序列写入缓冲区，也用作查询时的解码数组
+     */
+    private static final class SeriesBuffer {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final int id;
+        private long[] timestamps;
+        private double[] values;
+        private int count;
+        private long partition;
+
+        SeriesBuffer(int id, int capacity) {
+            this.id = id;
+            this.timestamps = new long[capacity];
+            this.values = new double[capacity];
+        }
+
+        void ensureCapacity(int capacity) {
+            if (timestamps.length < capacity) {
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+        }
+    }
+
+    /**
+     * 查询结果
+     */
+    public static final class SeriesData {
+        private final String series;
+        private long[] timestamps = new long[64];
+        private double[] values = new double[64];
+        private int size;
+
+        SeriesData(String series) {
+            this.series = series;
+        }
+
+        void add(long timestamp, double value, long from, long to) {
+            if (timestamp < from || timestamp > to) {
+                return;
+            }
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            timestamps[size] = timestamp;
+            values[size] = value;
+            size++;
+        }
+
+        void sortAndLimit(int limit) {
+            boolean sorted = true;
+            for (int i = 1; i < size && sorted; i++) {
+                sorted = timestamps[i - 1] <= timestamps[i];
+            }
+            if (!sorted) {
+                Integer[] order = new Integer[size];
+                for (int i = 0; i < size; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, (a, b) -> Long.compare(timestamps[a], timestamps[b]));
+                long[] sortedTimestamps = new long[size];
+                double[] sortedValues = new double[size];
+                for (int i = 0; i < size; i++) {
+                    sortedTimestamps[i] = timestamps[order[i]];
+                    sortedValues[i] = values[order[i]];
+                }
+                timestamps = sortedTimestamps;
+                values = sortedValues;
+            }
+            if (limit > 0 && size > limit) {
+                size = limit;
+            }
+        }
+
+        public String getSeries() {
+            return series;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long getTimestamp(int index) {
+            return timestamps[index];
+        }
+
+        public double getValue(int index) {
+            return values[index];
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.noodle.app.collect.storage.local;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 时间分区段
+ *
+ * 一个段对应一个时间分区，数据文件只追加：按固定大小的块把文件映射到内存，
+ * 数据块依次写入映射区，写满后映射下一块。每个数据块自带头部：
+ * 魔数、序列ID、样本数、最小/最大时间戳、负载长度和CRC，打开段时顺序扫描头部重建索引，
+ * 遇到魔数或CRC不符（写入中断）时截止。索引只保存块的位置和时间范围，不保存样本。
+ */
+final class Segment implements Closeable {
+
+    static final int HEADER_SIZE = 36;
+    private static final int MAGIC = 0x4E545344; // "NTSD"
+
+    private final long start;
+    private final long end;
+    private final Path file;
+    private final FileChannel channel;
+    private final int chunkSize;
+    private final Map<Integer, BlockList> index = new HashMap<>();
+    private final CRC32 crc = new CRC32();
+
+    private MappedByteBuffer chunk;
+    private long chunkStart;
+    private long writePosition;
+    private long samples;
+    private long blocks;
+
+    private Segment(long start, long end, Path file, int chunkSize) throws IOException {
+        this.start = start;
+        this.end = end;
+        this.file = file;
+        this.chunkSize = chunkSize;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * 打开或创建段，已有数据时扫描重建块索引
+     */
+    static Segment open(Path directory, long start, long duration, int chunkSize) throws IOException {
+        Segment segment = new Segment(start, start + duration, directory.resolve(fileName(start)), chunkSize);
+        segment.recover();
+        return segment;
+    }
+
+    static String fileName(long start) {
+        return "seg-" + start + ".tsd";
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    long getEnd() {
+        return end;
+    }
+
+    synchronized long getSizeBytes() {
+        return writePosition;
+    }
+
+    synchronized long getSamples() {
+        return samples;
+    }
+
+    synchronized long getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * 追加一个数据块，payload为时间戳列和数值列的编码
+     */
+    synchronized void append(int seriesId, int count, long minTimestamp, long maxTimestamp,
+                             byte[] payload, int length) throws IOException {
+        int size = HEADER_SIZE + length;
+        if (chunk == null || writePosition + size > chunkStart + chunk.capacity()) {
+            chunkStart = writePosition;
+            chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart, Math.max(chunkSize, size));
+        }
+        crc.reset();
+        crc.update(payload, 0, length);
+        chunk.position((int) (writePosition - chunkStart));
+        chunk.putInt(MAGIC);
+        chunk.putInt(seriesId);
+        chunk.putInt(count);
+        chunk.putLong(minTimestamp);
+        chunk.putLong(maxTimestamp);
+        chunk.putInt(length);
+        chunk.putInt((int) crc.getValue());
+        chunk.put(payload, 0, length);
+        index.computeIfAbsent(seriesId, id -> new BlockList())
+                .add(writePosition, minTimestamp, maxTimestamp);
+        writePosition += size;
+        samples += count;
+        blocks++;
+    }
+
+    /**
+     * 读取序列在时间范围内的块
+     */
+    void read(int seriesId, long from, long to, BlockVisitor visitor) throws IOException {
+        long[] offsets;
+        synchronized (this) {
+            BlockList list = index.get(seriesId);
+            if (list == null) {
+                return;
+            }
+            offsets = list.overlapping(from, to);
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        for (long offset : offsets) {
+            header.clear();
+            readFully(header, offset);
+            header.flip();
+            header.getInt();
+            header.getInt();
+            int count = header.getInt();
+            header.getLong();
+            header.getLong();
+            int length = header.getInt();
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, offset + HEADER_SIZE);
+            visitor.visit(count, payload.array(), length);
+        }
+    }
+
+    /**
+     * 把映射区写回磁盘
+     */
+    synchronized void force() {
+        if (chunk != null) {
+            chunk.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        chunk = null;
+        channel.close();
+    }
+
+    /**
+     * 关闭并删除数据文件（保留期到期）
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    private void recover() throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long position = 0;
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                break;
+            }
+            int seriesId = header.getInt();
+            int count = header.getInt();
+            long minTimestamp = header.getLong();
+            long maxTimestamp = header.getLong();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < 0 || position + HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position + HEADER_SIZE);
+            crc.reset();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            index.computeIfAbsent(seriesId, id -> new BlockList()).add(position, minTimestamp, maxTimestamp);
+            position += HEADER_SIZE + length;
+            samples += count;
+            blocks++;
+        }
+        writePosition = position;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of segment " + file);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * 数据块回调
+     */
+    interface BlockVisitor {
+        void visit(int count, byte[] payload, int length);
+    }
+
+    /**
+     * 单个序列的块位置，三个并行的long数组
+     */
+    private static final class BlockList {
+        private long[] offsets = new long[4];
+        private long[] minTimestamps = new long[4];
+        private long[] maxTimestamps = new long[4];
+        private int size;
+
+        void add(long offset, long minTimestamp, long maxTimestamp) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                minTimestamps = Arrays.copyOf(minTimestamps, size * 2);
+                maxTimestamps = Arrays.copyOf(maxTimestamps, size * 2);
+            }
+            offsets[size] = offset;
+            minTimestamps[size] = minTimestamp;
+            maxTimestamps[size] = maxTimestamp;
+            size++;
+        }
+
+        long[] overlapping(long from, long to) {
+            long[] result = new long[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (maxTimestamps[i] >= from && minTimestamps[i] <= to) {
+                    result[count++] = offsets[i];
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+    }
+}
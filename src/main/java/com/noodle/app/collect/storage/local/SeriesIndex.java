@@ -0,0 +1,138 @@
+package com.noodle.app.collect.storage.local;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 序列索引：序列名 -> 序列ID
+ *
+ * 新序列以"ID\t名称"追加到索引文件，启动时按行加载；数据块中只保存序列ID。
+ * 名称来自设备ID和负载中的字段名，其中的反斜杠、制表符和换行符转义后写入，不会破坏行格式。
+ */
+final class SeriesIndex implements Closeable {
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final BufferedWriter writer;
+
+    SeriesIndex(Path file) throws IOException {
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                if (tab <= 0) {
+                    continue;
+                }
+                int id = Integer.parseInt(line.substring(0, tab));
+                String name = unescape(line.substring(tab + 1));
+                ids.put(name, id);
+                while (names.size() <= id) {
+                    names.add(null);
+                }
+                names.set(id, name);
+            }
+        }
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * 查找序列ID，不存在时返回-1
+     */
+    int find(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * 获取或创建序列ID
+     */
+    synchronized int getOrCreate(String name) throws IOException {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        int newId = names.size();
+        writer.write(newId + "\t" + escape(name) + "\n");
+        writer.flush();
+        names.add(name);
+        ids.put(name, newId);
+        return newId;
+    }
+
+    /**
+     * 按前缀列出序列名
+     */
+    List<String> list(String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        for (String name : ids.keySet()) {
+            if (prefix == null || name.startsWith(prefix)) {
+                result.add(name);
+                if (result.size() >= limit) {
+                    break;
+                }
+            }
+        }
+        result.sort(null);
+        return result;
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    /**
+     * 转义反斜杠、制表符和换行符，没有需要转义的字符时返回原字符串
+     */
+    static String escape(String name) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            String replacement = c == '\\' ? "\\\\" : c == '\t' ? "\\t" : c == '\n' ? "\\n" : c == '\r' ? "\\r" : null;
+            if (replacement == null) {
+                if (escaped != null) {
+                    escaped.append(c);
+                }
+                continue;
+            }
+            if (escaped == null) {
+                escaped = new StringBuilder(name.length() + 8).append(name, 0, i);
+            }
+            escaped.append(replacement);
+        }
+        return escaped != null ? escaped.toString() : name;
+    }
+
+    /**
+     * 还原escape转义的名称
+     */
+    static String unescape(String escaped) {
+        if (escaped.indexOf('\\') < 0) {
+            return escaped;
+        }
+        StringBuilder name = new StringBuilder(escaped.length());
+        for (int i = 0; i < escaped.length(); i++) {
+            char c = escaped.charAt(i);
+            if (c != '\\' || i + 1 == escaped.length()) {
+                name.append(c);
+                continue;
+            }
+            char next = escaped.charAt(++i);
+            name.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+        }
+        return name.toString();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
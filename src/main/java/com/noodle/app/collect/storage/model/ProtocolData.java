@@ -1,6 +1,7 @@
 package com.noodle.app.collect.storage.model;
 
 import java.time.Instant;
+import java.util.Map;
 
 import lombok.Data;
 
@@ -27,5 +28,17 @@ public class ProtocolData {
      * 时间戳
      */
     private Instant timestamp;
+    /**
+     * 解码器（由主题路由决定）
+     */
+    private String decoder;
+    /**
+     * 存储目标（由主题路由决定，为空表示默认存储）
+     */
+    private String storage;
+    /**
+     * 解码后的字段值（字段名 -> Long/Double/Boolean/String），由解码器填充
+     */
+    private Map<String, Object> fields;
     
 }
\ No newline at end of file
@@ -0,0 +1,285 @@
+package com.noodle.app.collect.mq;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
+
+import com.noodle.app.collect.config.RocketMqConfig;
+
+/**
+ * 异步批量生产者性能测试
+ *
+ * 用进程内的Name Server/Broker替身代替真实集群：每次发送在rtt毫秒后回调，
+ * 按批量编码检查大小不超过maxMessageSize，记录同时在途的最大发送数，并可按比例注入发送失败。
+ * 分别以逐条发送（maxMessageSize小于两条消息、maxInFlight=1，相当于逐条同步发送）和批量参数发送遥测消息，
+ * 输出吞吐、平均批大小、在途上限和失败数；再按设备ID作为顺序键发送，检查同一设备的消息都进入同一个队列且顺序不变；
+ * 最后发送一组超过压缩阈值和maxMessageSize的消息，检查其走单条发送或被拒绝。
+ * 用法: AsyncBatchProducerBenchmark [rttMillis] [failureRate]
+ */
+public class AsyncBatchProducerBenchmark {
+
+    private static final int MESSAGES = 200_000;
+    private static final String TOPIC = "telemetry-topic";
+
+    public static void main(String[] args) throws Exception {
+        int rtt = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        double failureRate = args.length > 1 ? Double.parseDouble(args[1]) : 0.001;
+
+        run("逐条发送", config(0, 1, 256), rtt, failureRate, MESSAGES / 100);
+        run("批量发送", config(5, 64, 64 * 1024), rtt, failureRate, MESSAGES);
+        runOrdered(rtt);
+        runLarge(rtt);
+    }
+
+    private static RocketMqConfig config(int linger, int maxInFlight, int maxMessageSize) {
+        RocketMqConfig config = new RocketMqConfig();
+        config.getProducer().setBatchLinger(linger);
+        config.getProducer().setMaxInFlight(maxInFlight);
+        config.getProducer().setMaxMessageSize(maxMessageSize);
+        config.getProducer().setCompressMessageBodyThreshold(4096);
+        config.getProducer().setQueueCapacity(10000);
+        return config;
+    }
+
+    private static void run(String name, RocketMqConfig config, int rtt, double failureRate, int count)
+            throws Exception {
+        LocalBroker broker = new LocalBroker(config.getProducer().getMaxMessageSize(), rtt, failureRate);
+        AsyncBatchProducer producer = new AsyncBatchProducer(config, broker);
+        CountDownLatch done = new CountDownLatch(count);
+        LongAdder acked = new LongAdder();
+        LongAdder errors = new LongAdder();
+        SendCallback callback = new SendCallback() {
+            @Override
+            public void onSuccess(SendResult result) {
+                acked.increment();
+                done.countDown();
+            }
+
+            @Override
+            public void onException(Throwable e) {
+                errors.increment();
+                done.countDown();
+            }
+        };
+
+        long retries = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            Message message = telemetry(i);
+            // 队列满时调用方自行退避
+            while (!producer.send(message, callback)) {
+                retries++;
+                Thread.sleep(0, 100_000);
+            }
+        }
+        done.await(60, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+        Map<String, Object> stats = producer.getStatistics();
+        producer.shutdown();
+        broker.close();
+
+        System.out.println("== " + name + " (rtt=" + rtt + "ms, 失败率=" + failureRate + ") ==");
+        System.out.printf("消息: %d, 耗时: %.0f ms, 吞吐: %.0f msg/s%n",
+                count, elapsed / 1e6, count / (elapsed / 1e9));
+        System.out.println("成功: " + acked.sum() + ", 失败回调: " + errors.sum() + ", 队列满重试: " + retries);
+        System.out.println("Broker收到: " + broker.messages.sum() + " 条 / " + broker.requests.sum()
+                + " 次发送, 超限批次: " + broker.tooLarge.sum()
+                + ", 最大在途: " + broker.maxInFlight.get() + " (上限 " + config.getProducer().getMaxInFlight() + ")");
+        System.out.println("统计: " + stats);
+        System.out.println();
+    }
+
+    /**
+     * 1000台设备各发送100条，消息带序号，由替身检查每台设备的队列和顺序
+     */
+    private static void runOrdered(int rtt) throws Exception {
+        RocketMqConfig config = config(5, 64, 64 * 1024);
+        LocalBroker broker = new LocalBroker(config.getProducer().getMaxMessageSize(), rtt, 0);
+        AsyncBatchProducer producer = new AsyncBatchProducer(config, broker);
+        int devices = 1000;
+        int perDevice = 100;
+        CountDownLatch done = new CountDownLatch(devices * perDevice);
+        SendCallback callback = new SendCallback() {
+            @Override
+            public void onSuccess(SendResult result) {
+                done.countDown();
+            }
+
+            @Override
+            public void onException(Throwable e) {
+                done.countDown();
+            }
+        };
+        for (int seq = 0; seq < perDevice; seq++) {
+            for (int d = 0; d < devices; d++) {
+                Message message = telemetry(d);
+                message.putUserProperty("seq", String.valueOf(seq));
+                while (!producer.send(message, "meter-" + d, callback)) {
+                    Thread.sleep(0, 100_000);
+                }
+            }
+        }
+        done.await(60, TimeUnit.SECONDS);
+        Map<String, Object> stats = producer.getStatistics();
+        producer.shutdown();
+        broker.close();
+
+        int[] perQueue = new int[broker.queues.size()];
+        for (int queueId : broker.deviceQueues.values()) {
+            perQueue[queueId]++;
+        }
+        System.out.println("== 顺序发送 (" + devices + "台设备 × " + perDevice + "条, " + perQueue.length + "个队列) ==");
+        System.out.println("顺序键发送: " + stats.get("ordered") + ", 批次: " + stats.get("batches")
+                + ", 平均批大小: " + stats.get("averageBatchSize"));
+        System.out.println("换队列: " + broker.queueChanges.sum() + " (期望0), 乱序: " + broker.reordered.sum()
+                + " (期望0), 每个队列的设备数: " + Arrays.toString(perQueue));
+        System.out.println();
+    }
+
+    /**
+     * 超过压缩阈值的消息应单条发送，超过maxMessageSize的消息应被拒绝
+     */
+    private static void runLarge(int rtt) throws Exception {
+        RocketMqConfig config = config(5, 8, 16 * 1024);
+        LocalBroker broker = new LocalBroker(config.getProducer().getMaxMessageSize(), rtt, 0);
+        AsyncBatchProducer producer = new AsyncBatchProducer(config, broker);
+        int[] sizes = {200, 200, 8 * 1024, 200, 32 * 1024, 200};
+        CountDownLatch done = new CountDownLatch(sizes.length);
+        LongAdder errors = new LongAdder();
+        for (int size : sizes) {
+            producer.send(new Message(TOPIC, new byte[size]), new SendCallback() {
+                @Override
+                public void onSuccess(SendResult result) {
+                    done.countDown();
+                }
+
+                @Override
+                public void onException(Throwable e) {
+                    errors.increment();
+                    done.countDown();
+                }
+            });
+        }
+        done.await(10, TimeUnit.SECONDS);
+        Map<String, Object> stats = producer.getStatistics();
+        producer.shutdown();
+        broker.close();
+
+        System.out.println("== 大消息 (压缩阈值=4096, maxMessageSize=16384) ==");
+        System.out.println("单条发送: " + stats.get("singles") + " (期望1), 批次: " + stats.get("batches")
+                + ", 超限拒绝: " + stats.get("oversize") + " (期望1), 失败回调: " + errors.sum());
+    }
+
+    private static Message telemetry(int i) {
+        String body = "{\"deviceId\":\"meter-" + (i % 10000) + "\",\"timestamp\":" + (1700000000000L + i)
+                + ",\"data\":{\"ua\":220.1,\"ub\":219.8,\"uc\":221.3,\"ia\":12.5,\"ib\":12.7,\"ic\":12.4,"
+                + "\"p\":8.25,\"q\":1.02,\"pf\":0.99,\"temperature\":41.5}}";
+        Message message = new Message(TOPIC, "telemetry", body.getBytes(StandardCharsets.UTF_8));
+        message.setKeys("meter-" + (i % 10000));
+        return message;
+    }
+
+    /**
+     * 进程内的Name Server/Broker替身
+     */
+    static final class LocalBroker implements MqSender {
+        private final int maxMessageSize;
+        private final int rtt;
+        private final double failureRate;
+        private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+        final List<MessageQueue> queues = new ArrayList<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong offset = new AtomicLong();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final LongAdder requests = new LongAdder();
+        final LongAdder messages = new LongAdder();
+        final LongAdder tooLarge = new LongAdder();
+        // 有序号的消息：每个键最后的序号和所在队列
+        final Map<String, Integer> lastSeq = new ConcurrentHashMap<>();
+        final Map<String, Integer> deviceQueues = new ConcurrentHashMap<>();
+        final LongAdder queueChanges = new LongAdder();
+        final LongAdder reordered = new LongAdder();
+
+        LocalBroker(int maxMessageSize, int rtt, double failureRate) {
+            this.maxMessageSize = maxMessageSize;
+            this.rtt = rtt;
+            this.failureRate = failureRate;
+            for (int i = 0; i < 8; i++) {
+                queues.add(new MessageQueue(TOPIC, "local-broker", i));
+            }
+        }
+
+        @Override
+        public List<MessageQueue> queues(String topic) {
+            return queues;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void send(String topic, MessageQueue target, List<Message> batch, SendCallback callback) {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            requests.increment();
+            int size = 0;
+            for (Message message : batch) {
+                String seq = message.getUserProperty("seq");
+                if (seq != null && target != null) {
+                    Integer previousQueue = deviceQueues.put(message.getKeys(), target.getQueueId());
+                    if (previousQueue != null && previousQueue != target.getQueueId()) {
+                        queueChanges.increment();
+                    }
+                    Integer previous = lastSeq.put(message.getKeys(), Integer.valueOf(seq));
+                    if (previous != null && previous >= Integer.parseInt(seq)) {
+                        reordered.increment();
+                    }
+                }
+                // 批量编码：总长、魔数、CRC、标志、体长、属性长，加上消息体和属性
+                size += 20 + message.getBody().length;
+                for (Map.Entry<String, String> property : message.getProperties().entrySet()) {
+                    size += property.getKey().length() + property.getValue().length() + 2;
+                }
+            }
+            boolean oversize = batch.size() > 1 && size > maxMessageSize;
+            boolean fail = Math.random() < failureRate;
+            executor.schedule(() -> {
+                inFlight.decrementAndGet();
+                if (oversize) {
+                    tooLarge.increment();
+                    callback.onException(new IllegalArgumentException("Batch too large: " + batch.size()));
+                } else if (fail) {
+                    callback.onException(new IllegalStateException("Injected broker failure"));
+                } else {
+                    messages.add(batch.size());
+                    callback.onSuccess(new SendResult(SendStatus.SEND_OK, "local", "local",
+                            target != null ? target : queues.get(0), offset.getAndAdd(batch.size())));
+                }
+            }, rtt, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        void close() {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.noodle.app.collect.protocol.alarm;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.noodle.app.collect.protocol.config.AlarmConfig;
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * 阈值报警性能测试
+ *
+ * 10万台电表、每条消息12个数据点、4条规则（其中一条只匹配部分设备），
+ * 输出每秒检查的消息数、每条消息分配的字节数和报警/恢复次数。
+ * 数值在阈值附近带噪声波动，对比有无回差时的报警次数。
+ */
+public class AlarmEngineBenchmark {
+
+    private static final int DEVICES = 100_000;
+    private static final int MESSAGES = 5_000_000;
+    private static final String[] POINTS = {
+            "ua", "ub", "uc", "ia", "ib", "ic", "p", "q", "pf", "freq", "energy", "temperature"};
+
+    public static void main(String[] args) {
+        ProtocolData[] messages = messages();
+        System.out.println("=== 阈值报警性能测试 ===");
+        run("无回差", messages, 0);
+        run("回差=2", messages, 2);
+    }
+
+    private static void run(String name, ProtocolData[] messages, double hysteresis) {
+        List<AlarmConfig.AlarmRule> rules = new ArrayList<>();
+        rules.add(new AlarmConfig.AlarmRule("temperature-high", "*", "temperature", ">", 80.0, 95.0));
+        rules.add(new AlarmConfig.AlarmRule("voltage-low", "*", "ua", "<", 198.0, 187.0));
+        rules.add(new AlarmConfig.AlarmRule("current-high", "*", "ia", ">=", 60.0, null));
+        rules.add(new AlarmConfig.AlarmRule("freq-low", "meter-1*", "freq", "<", null, 49.5));
+        AlarmConfig config = new AlarmConfig();
+        config.setEnabled(true);
+        config.setHysteresis(hysteresis);
+        config.setRules(rules);
+        AlarmEngine engine = new AlarmEngine(config);
+
+        // 预热并完成所有设备的绑定
+        for (ProtocolData message : messages) {
+            engine.evaluate(message);
+        }
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        Map<String, Object> before = engine.getStatistics();
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            engine.evaluate(messages[i % messages.length]);
+        }
+        long nanos = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        Map<String, Object> after = engine.getStatistics();
+        long raised = (Long) after.get("raised") - (Long) before.get("raised");
+        long cleared = (Long) after.get("cleared") - (Long) before.get("cleared");
+
+        System.out.printf("[%s] %.0f 消息/秒, %.1f ns/消息, 分配 %.2f 字节/消息, 报警 %d 次, 恢复 %d 次, 当前报警 %s%n",
+                name, MESSAGES * 1e9 / nanos, nanos / (double) MESSAGES, allocated / (double) MESSAGES,
+                raised, cleared, after.get("active"));
+    }
+
+    // 每台设备5条消息，1%的设备温度在80°C附近波动
+    private static ProtocolData[] messages() {
+        Random random = new Random(42);
+        ProtocolData[] messages = new ProtocolData[DEVICES * 5];
+        for (int i = 0; i < messages.length; i++) {
+            int d = i % DEVICES;
+            ProtocolData data = new ProtocolData();
+            data.setDeviceId("meter-" + d);
+            data.setAddress("meter/meter-" + d + "/telemetry");
+            data.setTimestamp(Instant.ofEpochMilli(1_700_000_000_000L + i));
+            Map<String, Object> fields = new HashMap<>();
+            for (String point : POINTS) {
+                fields.put(point, 50.0 + random.nextDouble());
+            }
+            fields.put("ua", 220.0 + random.nextGaussian() * 3);
+            fields.put("freq", 50.0 + random.nextGaussian() * 0.05);
+            fields.put("temperature", d % 100 == 0 ? 80.0 + random.nextGaussian() : 40.0 + random.nextDouble());
+            data.setFields(fields);
+            messages[i] = data;
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,157 @@
+package com.noodle.app.collect.protocol.alarm;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.noodle.app.collect.protocol.config.AlarmConfig;
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * 报警风暴抑制测试
+ *
+ * 50个站点，每个站点1台进线表和200台电表，电表按站点分组、父设备为进线表，每10秒上报一次电压，模拟15分钟：
+ * 第60秒起40个站点停电，站内设备在10秒内按随机顺序上报0V（部分电表早于进线表），第600秒恢复供电；
+ * 另有100台电表的电压在报警阈值附近来回波动（每30秒越过一次阈值）。每秒推送一次通知，时钟由测试推进。
+ * 输出报警事件数、通知条数、消息数和被抑制、去重、限速的报警数，每秒推送的耗时；
+ * 最后把风暴中的报警事件重放给通知模块，输出入库线程上每个报警事件的处理耗时。
+ */
+public class AlarmStormBenchmark {
+
+    private static final int SITES = 50;
+    private static final int METERS = 200;
+    private static final int OUTAGE_SITES = 40;
+    private static final int FLAPPING = 100;
+    private static final int INTERVAL_SECONDS = 10;
+    private static final int DURATION_SECONDS = 900;
+
+    public static void main(String[] args) {
+        List<AlarmEvent> recorded = new ArrayList<>();
+        run(false, recorded);
+        run(true, new ArrayList<>());
+        replay(recorded);
+    }
+
+    private static void run(boolean notify, List<AlarmEvent> recorded) {
+        AlarmConfig config = new AlarmConfig();
+        config.setEnabled(true);
+        AlarmConfig.AlarmRule rule = new AlarmConfig.AlarmRule("voltage-low", "site-*", "ua", "<", 198.0, 187.0);
+        config.setRules(new ArrayList<>(Collections.singletonList(rule)));
+        List<AlarmConfig.DeviceGroup> groups = new ArrayList<>();
+        for (int s = 0; s < SITES; s++) {
+            groups.add(new AlarmConfig.DeviceGroup("site-" + s, "site-" + s + "-incomer",
+                    Collections.singletonList("site-" + s + "-meter-*")));
+        }
+        config.setGroups(groups);
+        config.getNotify().setEnabled(notify);
+        config.getNotify().setDedupWindow(300);
+        config.getNotify().setMaxPerSecond(100);
+        config.getNotify().setBurst(500);
+
+        AlarmEngine engine = new AlarmEngine(config);
+        engine.addListener(recorded::add);
+        int[] published = new int[3];
+        AlarmNotifier notifier = notify ? new AlarmNotifier(config, engine, message -> {
+            published[0]++;
+            published[1] += ((List<?>) message.get("alarms")).size();
+            published[2] = Math.max(published[2], (Integer) message.get("pending"));
+        }) : null;
+
+        // 设备按站点排列，每个站点第一台是进线表
+        List<ProtocolData> devices = new ArrayList<>();
+        for (int s = 0; s < SITES; s++) {
+            devices.add(device("site-" + s + "-incomer"));
+            for (int m = 0; m < METERS; m++) {
+                devices.add(device("site-" + s + "-meter-" + m));
+            }
+        }
+        // 每台设备在上报周期内随机的一秒上报：同一站点内进线表不一定先于电表
+        int perSite = METERS + 1;
+        List<List<Integer>> slots = new ArrayList<>();
+        for (int i = 0; i < INTERVAL_SECONDS; i++) {
+            slots.add(new ArrayList<>());
+        }
+        Random random = new Random(7);
+        for (int d = 0; d < devices.size(); d++) {
+            slots.get(random.nextInt(INTERVAL_SECONDS)).add(d);
+        }
+        Double normal = 220.0;
+        Double dead = 0.0;
+        Double[] flap = {197.0, 199.0};
+
+        long base = 1_700_000_000_000L;
+        long evaluateNanos = 0;
+        long flushNanos = 0;
+        long samples = 0;
+        for (int second = 0; second <= DURATION_SECONDS; second++) {
+            long now = base + second * 1000L;
+            Instant timestamp = Instant.ofEpochMilli(now);
+            long start = System.nanoTime();
+            for (int d : slots.get(second % INTERVAL_SECONDS)) {
+                int site = d / perSite;
+                int meter = d % perSite - 1;
+                boolean outage = site < OUTAGE_SITES && second >= 60 && second < 600;
+                Double value = outage ? dead
+                        : site >= OUTAGE_SITES && meter >= 0 && meter < FLAPPING / (SITES - OUTAGE_SITES)
+                                ? flap[(second / 30) % 2] : normal;
+                ProtocolData data = devices.get(d);
+                data.getFields().put("ua", value);
+                data.setTimestamp(timestamp);
+                engine.evaluate(data, now);
+                samples++;
+            }
+            evaluateNanos += System.nanoTime() - start;
+            if (notifier != null) {
+                start = System.nanoTime();
+                notifier.flush(now);
+                flushNanos += System.nanoTime() - start;
+            }
+        }
+
+        System.out.println(notify ? "=== 挂报警通知 ===" : "=== 不挂报警通知 ===");
+        System.out.printf("样本: %d, %.1f ns/样本, 报警事件: %d%n", samples, evaluateNanos / (double) samples,
+                recorded.size());
+        if (notifier != null) {
+            Map<String, Object> stats = notifier.getStatistics();
+            System.out.printf("通知: %d 条报警 / %d 条消息, 最大积压: %d, 推送耗时: %.2f ms/秒%n", published[1],
+                    published[0], published[2], flushNanos / 1e6 / (DURATION_SECONDS + 1));
+            System.out.printf("被父设备抑制: %s, 去重: %s, 限速顺延: %s, 未恢复: %d%n", stats.get("suppressed"),
+                    stats.get("deduplicated"), stats.get("rateLimited"), notifier.getIncidents(null, 100_000).size());
+            notifier.shutdown();
+        }
+        engine.shutdown();
+        System.out.println();
+    }
+
+    /**
+     * 只计入库线程上的onAlarm，不推送
+     */
+    private static void replay(List<AlarmEvent> events) {
+        AlarmConfig config = new AlarmConfig();
+        config.setEnabled(true);
+        AlarmEngine engine = new AlarmEngine(config);
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < 20; round++) {
+            // 每轮用新的通知器：onReload之后引擎产生的旧规则事件会被丢弃
+            AlarmNotifier notifier = new AlarmNotifier(config, engine, message -> { });
+            long start = System.nanoTime();
+            for (AlarmEvent event : events) {
+                notifier.onAlarm(event);
+            }
+            best = Math.min(best, (System.nanoTime() - start) / (double) events.size());
+        }
+        System.out.printf("重放 %d 个报警事件: %.1f ns/事件（入库线程）%n", events.size(), best);
+        engine.shutdown();
+    }
+
+    private static ProtocolData device(String deviceId) {
+        ProtocolData data = new ProtocolData();
+        data.setDeviceId(deviceId);
+        data.setFields(new HashMap<>());
+        return data;
+    }
+}
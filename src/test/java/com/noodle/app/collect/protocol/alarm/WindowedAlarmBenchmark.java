@@ -0,0 +1,131 @@
+package com.noodle.app.collect.protocol.alarm;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.noodle.app.collect.protocol.config.AlarmConfig;
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * 窗口类报警规则性能测试
+ *
+ * 10万台设备每10秒上报一次，模拟15分钟（时钟由测试推进，不需要真的等待）：
+ * 1%的设备从第60秒起温度保持85°C（duration: 80°C以上持续5分钟），
+ * 1%的设备在第300秒电流上升15%（rate: 30秒内上升10%），1%的设备在第400秒后停止上报（absence: 2分钟无数据）。
+ * 输出每秒检查的消息数、每条消息分配的字节数、各规则的报警次数和时间轮中的定时器数。
+ */
+public class WindowedAlarmBenchmark {
+
+    private static final int DEVICES = 100_000;
+    private static final int INTERVAL_SECONDS = 10;
+    private static final int DURATION_SECONDS = 900;
+
+    public static void main(String[] args) {
+        List<AlarmConfig.AlarmRule> rules = new ArrayList<>();
+        AlarmConfig.AlarmRule hot = new AlarmConfig.AlarmRule("overheat", "*", "temperature", ">", 80.0, null);
+        hot.setType("duration");
+        hot.setWindow(300);
+        rules.add(hot);
+        AlarmConfig.AlarmRule surge = new AlarmConfig.AlarmRule("current-surge", "*", "ia", ">", 10.0, 50.0);
+        surge.setType("rate");
+        surge.setWindow(30);
+        rules.add(surge);
+        AlarmConfig.AlarmRule offline = new AlarmConfig.AlarmRule("offline", "*", "*", ">", null, null);
+        offline.setType("absence");
+        offline.setWindow(120);
+        offline.setLevel("critical");
+        rules.add(offline);
+
+        AlarmConfig config = new AlarmConfig();
+        config.setEnabled(true);
+        config.setRules(rules);
+        AlarmEngine engine = new AlarmEngine(config);
+        Map<String, LongAdder> raisedByRule = new ConcurrentHashMap<>();
+        engine.addListener(event -> {
+            if (event.isEscalation()) {
+                raisedByRule.computeIfAbsent(event.getRuleId(), k -> new LongAdder()).increment();
+            }
+        });
+
+        // 数值预先装箱，计时部分只有报警检查本身的分配
+        Double hotTemperature = 85.0;
+        Double surgeCurrent = 57.5;
+        Double[] temperatures = new Double[7];
+        for (int i = 0; i < temperatures.length; i++) {
+            temperatures[i] = 40.0 + i;
+        }
+        Double[] currents = {50.0, 50.1, 50.2};
+
+        ProtocolData[] devices = new ProtocolData[DEVICES];
+        for (int d = 0; d < DEVICES; d++) {
+            ProtocolData data = new ProtocolData();
+            data.setDeviceId("meter-" + d);
+            data.setAddress("meter/meter-" + d + "/telemetry");
+            data.setFields(new HashMap<>());
+            devices[d] = data;
+        }
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        Runtime runtime = Runtime.getRuntime();
+        long base = System.currentTimeMillis();
+        long messages = 0;
+        long evaluateNanos = 0;
+        long allocated = 0;
+        long heapBefore = 0;
+
+        System.out.println("=== 窗口类报警规则性能测试 ===");
+        for (int second = 0; second <= DURATION_SECONDS; second++) {
+            long now = base + second * 1000L;
+            engine.advance(now);
+            if (second % INTERVAL_SECONDS != 0) {
+                continue;
+            }
+            // 第一轮完成设备绑定，之后再统计
+            boolean measure = second > 0;
+            if (second == 0) {
+                System.gc();
+                heapBefore = runtime.totalMemory() - runtime.freeMemory();
+            }
+            long start = System.nanoTime();
+            long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+            for (int d = 0; d < DEVICES; d++) {
+                if (d % 100 == 2 && second > 400) {
+                    continue;
+                }
+                ProtocolData data = devices[d];
+                Map<String, Object> fields = data.getFields();
+                // 设备复用同一个字段表，只有数值变化
+                fields.put("temperature", d % 100 == 0 && second >= 60 ? hotTemperature : temperatures[d % 7]);
+                fields.put("ia", d % 100 == 1 && second >= 300 ? surgeCurrent : currents[second / 10 % 3]);
+                engine.evaluate(data, now);
+            }
+            if (measure) {
+                allocated += threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+                evaluateNanos += System.nanoTime() - start;
+                messages += DEVICES;
+            }
+            if (second == 0) {
+                System.gc();
+                long heap = runtime.totalMemory() - runtime.freeMemory() - heapBefore;
+                System.out.printf("规则实例: %d, 状态内存约 %.0f 字节/实例%n", DEVICES * 3, heap / (DEVICES * 3.0));
+            }
+        }
+
+        Map<String, Object> stats = engine.getStatistics();
+        System.out.printf("消息: %d, %.0f 消息/秒, %.1f ns/消息, 分配 %.2f 字节/消息%n",
+                messages, messages * 1e9 / evaluateNanos, evaluateNanos / (double) messages,
+                allocated / (double) messages);
+        System.out.printf("报警: overheat=%s, current-surge=%s, offline=%s（各预期1000）%n",
+                raisedByRule.get("overheat"), raisedByRule.get("current-surge"), raisedByRule.get("offline"));
+        System.out.printf("当前报警: %s, 定时器: %s, 已触发定时器: %s%n",
+                stats.get("active"), stats.get("timers"), stats.get("timersFired"));
+        engine.shutdown();
+    }
+}
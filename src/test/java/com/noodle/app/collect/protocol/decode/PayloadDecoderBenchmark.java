@@ -0,0 +1,94 @@
+package com.noodle.app.collect.protocol.decode;
+
+import java.io.ByteArrayOutputStream;
+
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.DynamicMessage;
+import com.noodle.app.collect.protocol.config.PayloadDecoderConfig;
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * 负载解码性能对比
+ *
+ * 同一条电表遥测（设备ID + 12个数据点）分别编码为JSON、CBOR、MessagePack和Protobuf，
+ * 比较负载大小和解码耗时。
+ */
+public class PayloadDecoderBenchmark {
+
+    private static final int ITERATIONS = 1_000_000;
+    private static final String[] POINTS = {
+            "ua", "ub", "uc", "ia", "ib", "ic", "p", "q", "pf", "freq", "energy", "temperature"};
+
+    public static void main(String[] args) throws Exception {
+        PayloadDecoderConfig config = new PayloadDecoderConfig();
+        PayloadDecoders decoders = new PayloadDecoders(config);
+
+        byte[] json = encode(new JsonFactory());
+        byte[] cbor = encode(new CBORFactory());
+        byte[] msgpack = encode(new MessagePackFactory());
+        byte[] protobuf = encodeProtobuf();
+
+        System.out.println("=== 负载解码对比 ===");
+        System.out.println("迭代次数: " + ITERATIONS);
+        run(decoders, PayloadDecoders.JSON, json);
+        run(decoders, PayloadDecoders.CBOR, cbor);
+        run(decoders, PayloadDecoders.MSGPACK, msgpack);
+        run(decoders, PayloadDecoders.PROTOBUF, protobuf);
+    }
+
+    private static void run(PayloadDecoders decoders, String decoder, byte[] payload) {
+        ProtocolData data = new ProtocolData();
+        data.setDecoder(decoder);
+        // 预热
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            decoders.decode(data, payload);
+        }
+        int decoded = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            if (decoders.decode(data, payload)) {
+                decoded++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("[%-8s] 负载: %4d 字节, 解码: %d, 平均耗时: %.0f ns/msg, 字段: %s%n",
+                decoder, payload.length, decoded, elapsed / (double) ITERATIONS, data.getFields());
+    }
+
+    private static byte[] encode(JsonFactory factory) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("deviceId", "meter-000123");
+            generator.writeNumberField("timestamp", System.currentTimeMillis());
+            generator.writeObjectFieldStart("data");
+            for (int i = 0; i < POINTS.length; i++) {
+                generator.writeNumberField(POINTS[i], 220.5 + i);
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encodeProtobuf() {
+        Descriptors.Descriptor telemetry = ProtobufPayloadDecoder.telemetryDescriptor();
+        Descriptors.FieldDescriptor dataField = telemetry.findFieldByName("data");
+        Descriptors.Descriptor entryType = dataField.getMessageType();
+        DynamicMessage.Builder builder = DynamicMessage.newBuilder(telemetry)
+                .setField(telemetry.findFieldByName("device_id"), "meter-000123")
+                .setField(telemetry.findFieldByName("timestamp"), System.currentTimeMillis());
+        for (int i = 0; i < POINTS.length; i++) {
+            builder.addRepeatedField(dataField, DynamicMessage.newBuilder(entryType)
+                    .setField(entryType.findFieldByNumber(1), POINTS[i])
+                    .setField(entryType.findFieldByNumber(2), 220.5 + i)
+                    .build());
+        }
+        return builder.build().toByteArray();
+    }
+}
@@ -0,0 +1,173 @@
+package com.noodle.app.collect.protocol.mqtt;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallback;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import io.moquette.broker.Server;
+import io.moquette.broker.config.IConfig;
+import io.moquette.broker.config.MemoryConfig;
+import io.moquette.interception.AbstractInterceptHandler;
+import io.moquette.interception.messages.InterceptPublishMessage;
+
+/**
+ * 进程内订阅与TCP回环订阅对比测试
+ *
+ * 两种模式下发布端相同（Paho通过TCP发布），区别在于接收端：
+ * - loopback: Paho客户端通过TCP回环订阅内置Broker（原有方式）
+ * - embedded: 直接在Broker拦截器中接收（进程内订阅）
+ * 统计端到端延迟和进程CPU时间。
+ */
+public class EmbeddedBridgeBenchmark {
+
+    private static final int PORT = 18840;
+    private static final int MESSAGES = 50000;
+    private static final String TOPIC = "bench/meter001/data";
+
+    private static volatile boolean embeddedMode;
+    private static volatile long[] latencies;
+    private static volatile CountDownLatch latch;
+    private static final AtomicInteger received = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(IConfig.PORT_PROPERTY_NAME, String.valueOf(PORT));
+        properties.setProperty(IConfig.HOST_PROPERTY_NAME, "127.0.0.1");
+        properties.setProperty(IConfig.ALLOW_ANONYMOUS_PROPERTY_NAME, "true");
+        properties.setProperty(IConfig.ENABLE_TELEMETRY_NAME, "false");
+
+        Server broker = new Server();
+        broker.startServer(new MemoryConfig(properties), Collections.singletonList(new AbstractInterceptHandler() {
+            @Override
+            public String getID() {
+                return "EmbeddedBridgeBenchmark";
+            }
+
+            @Override
+            public void onPublish(InterceptPublishMessage msg) {
+                if (embeddedMode) {
+                    byte[] payload = new byte[msg.getPayload().readableBytes()];
+                    msg.getPayload().getBytes(msg.getPayload().readerIndex(), payload);
+                    record(payload);
+                }
+            }
+
+            @Override
+            public void onSessionLoopError(Throwable error) {
+                error.printStackTrace();
+            }
+        }));
+
+        try {
+            System.out.println("=== 进程内订阅 vs TCP回环订阅 ===");
+            System.out.println("消息数: " + MESSAGES);
+            // 预热
+            run(false, MESSAGES / 5);
+            run(true, MESSAGES / 5);
+
+            report("loopback", run(false, MESSAGES));
+            report("embedded", run(true, MESSAGES));
+        } finally {
+            broker.stopServer();
+        }
+    }
+
+    private static long run(boolean embedded, int count) throws Exception {
+        embeddedMode = embedded;
+        latencies = new long[count];
+        received.set(0);
+        latch = new CountDownLatch(count);
+
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(true);
+        options.setMaxInflight(1000);
+
+        MqttClient subscriber = null;
+        if (!embedded) {
+            subscriber = new MqttClient("tcp://127.0.0.1:" + PORT, "bench-sub-" + UUID.randomUUID(), new MemoryPersistence());
+            subscriber.setCallback(new MqttCallback() {
+                @Override
+                public void connectionLost(Throwable cause) {
+                }
+
+                @Override
+                public void messageArrived(String topic, MqttMessage message) {
+                    record(message.getPayload());
+                }
+
+                @Override
+                public void deliveryComplete(IMqttDeliveryToken token) {
+                }
+            });
+            subscriber.connect(options);
+            subscriber.subscribe("bench/#", 0);
+        }
+
+        MqttClient publisher = new MqttClient("tcp://127.0.0.1:" + PORT, "bench-pub-" + UUID.randomUUID(), new MemoryPersistence());
+        publisher.connect(options);
+
+        long cpuStart = processCpuTime();
+        for (int i = 0; i < count; i++) {
+            ByteBuffer buffer = ByteBuffer.allocate(64);
+            buffer.putLong(System.nanoTime());
+            MqttMessage message = new MqttMessage(buffer.array());
+            message.setQos(0);
+            publisher.publish(TOPIC, message);
+        }
+        latch.await(60, TimeUnit.SECONDS);
+        long cpuNanos = processCpuTime() - cpuStart;
+
+        publisher.disconnect();
+        publisher.close();
+        if (subscriber != null) {
+            subscriber.disconnect();
+            subscriber.close();
+        }
+        return cpuNanos;
+    }
+
+    private static void record(byte[] payload) {
+        long sent = ByteBuffer.wrap(payload).getLong();
+        int index = received.getAndIncrement();
+        long[] target = latencies;
+        if (index < target.length) {
+            target[index] = System.nanoTime() - sent;
+            latch.countDown();
+        }
+    }
+
+    private static void report(String mode, long cpuNanos) {
+        int count = Math.min(received.get(), latencies.length);
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long latency : sorted) {
+            sum += latency;
+        }
+        System.out.printf("[%s] 接收: %d, CPU: %.1f ms (%.2f us/msg), 平均延迟: %.1f us, p99: %.1f us%n",
+                mode, count, cpuNanos / 1e6, count > 0 ? cpuNanos / 1e3 / count : 0.0,
+                count > 0 ? sum / 1e3 / count : 0.0,
+                count > 0 ? sorted[Math.min(count - 1, (int) (count * 0.99))] / 1e3 : 0.0);
+    }
+
+    private static long processCpuTime() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,270 @@
+package com.noodle.app.collect.protocol.mqtt;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.paho.mqttv5.client.IMqttToken;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.client.MqttDisconnectResponse;
+import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+import org.eclipse.paho.mqttv5.common.packet.UserProperty;
+
+/**
+ * MQTT 3.1.1与MQTT 5带宽和CPU对比测试
+ *
+ * 发布端和订阅端都经过本地计数代理连接服务器，统计线路上的实际字节数。
+ * 主题较长且在有限集合内重复，MQTT 5下发布端由Paho分配主题别名，
+ * 订阅端声明Topic Alias Maximum和Receive Maximum，消息携带ts用户属性。
+ * 需要支持MQTT 5的本地服务器，地址通过第一个参数指定，默认 tcp://127.0.0.1:1883
+ */
+public class Mqtt5BandwidthBenchmark {
+
+    private static final int MESSAGES = 50000;
+    private static final int DEVICES = 50;
+    private static final int QOS = 1;
+    private static final String TOPIC_PREFIX = "factory/building-a/floor-3/line-07/sensor/";
+    private static final String TOPIC_SUFFIX = "/telemetry/temperature";
+
+    private static final LongAdder upstream = new LongAdder();
+    private static final LongAdder downstream = new LongAdder();
+
+    public static void main(String[] args) throws Exception {
+        URI broker = URI.create(args.length > 0 ? args[0] : "tcp://127.0.0.1:1883");
+        ServerSocket proxy = startProxy(broker.getHost(), broker.getPort());
+        String url = "tcp://127.0.0.1:" + proxy.getLocalPort();
+
+        System.out.println("=== MQTT 3.1.1 vs MQTT 5 ===");
+        System.out.println("服务器: " + broker + ", 消息数: " + MESSAGES + ", 主题数: " + DEVICES + ", QoS: " + QOS);
+        byte[] payload = "{\"value\":23.5,\"unit\":\"C\"}".getBytes(StandardCharsets.UTF_8);
+        // 预热
+        runV3(url, payload, MESSAGES / 5);
+        runV5(url, payload, MESSAGES / 5);
+
+        report("3.1.1", runV3(url, payload, MESSAGES));
+        report("5", runV5(url, payload, MESSAGES));
+        proxy.close();
+    }
+
+    private static long[] runV3(String url, byte[] payload, int count) throws Exception {
+        CountDownLatch latch = new CountDownLatch(count);
+        org.eclipse.paho.client.mqttv3.MqttConnectOptions options = new org.eclipse.paho.client.mqttv3.MqttConnectOptions();
+        options.setCleanSession(true);
+        options.setMaxInflight(1000);
+        options.setMqttVersion(org.eclipse.paho.client.mqttv3.MqttConnectOptions.MQTT_VERSION_3_1_1);
+
+        org.eclipse.paho.client.mqttv3.MqttAsyncClient subscriber = new org.eclipse.paho.client.mqttv3.MqttAsyncClient(
+                url, "bench-sub-" + UUID.randomUUID(), new org.eclipse.paho.client.mqttv3.persist.MemoryPersistence());
+        subscriber.setCallback(new org.eclipse.paho.client.mqttv3.MqttCallback() {
+            @Override
+            public void connectionLost(Throwable cause) {
+            }
+
+            @Override
+            public void messageArrived(String topic, org.eclipse.paho.client.mqttv3.MqttMessage message) {
+                latch.countDown();
+            }
+
+            @Override
+            public void deliveryComplete(org.eclipse.paho.client.mqttv3.IMqttDeliveryToken token) {
+            }
+        });
+        subscriber.connect(options).waitForCompletion();
+        subscriber.subscribe(TOPIC_PREFIX + "+" + TOPIC_SUFFIX, QOS).waitForCompletion();
+
+        org.eclipse.paho.client.mqttv3.MqttAsyncClient publisher = new org.eclipse.paho.client.mqttv3.MqttAsyncClient(
+                url, "bench-pub-" + UUID.randomUUID(), new org.eclipse.paho.client.mqttv3.persist.MemoryPersistence());
+        publisher.connect(options).waitForCompletion();
+
+        long[] result = measure(() -> {
+            for (int i = 0; i < count; i++) {
+                org.eclipse.paho.client.mqttv3.MqttMessage message = new org.eclipse.paho.client.mqttv3.MqttMessage(payload);
+                message.setQos(QOS);
+                String topic = topic(i);
+                publishWithRetry(() -> publisher.publish(topic, message));
+            }
+            latch.await(120, TimeUnit.SECONDS);
+        });
+
+        publisher.disconnect().waitForCompletion();
+        publisher.close();
+        subscriber.disconnect().waitForCompletion();
+        subscriber.close();
+        return result;
+    }
+
+    private static long[] runV5(String url, byte[] payload, int count) throws Exception {
+        CountDownLatch latch = new CountDownLatch(count);
+        MqttConnectionOptions options = new MqttConnectionOptions();
+        options.setCleanStart(true);
+        options.setReceiveMaximum(1000);
+        options.setTopicAliasMaximum(DEVICES);
+
+        org.eclipse.paho.mqttv5.client.MqttAsyncClient subscriber = new org.eclipse.paho.mqttv5.client.MqttAsyncClient(
+                url, "bench-sub-" + UUID.randomUUID(), new org.eclipse.paho.mqttv5.client.persist.MemoryPersistence());
+        subscriber.setCallback(new org.eclipse.paho.mqttv5.client.MqttCallback() {
+            @Override
+            public void disconnected(MqttDisconnectResponse disconnectResponse) {
+            }
+
+            @Override
+            public void mqttErrorOccurred(MqttException exception) {
+            }
+
+            @Override
+            public void messageArrived(String topic, org.eclipse.paho.mqttv5.common.MqttMessage message) {
+                latch.countDown();
+            }
+
+            @Override
+            public void deliveryComplete(IMqttToken token) {
+            }
+
+            @Override
+            public void connectComplete(boolean reconnect, String serverURI) {
+            }
+
+            @Override
+            public void authPacketArrived(int reasonCode, MqttProperties properties) {
+            }
+        });
+        subscriber.connect(options).waitForCompletion();
+        subscriber.subscribe(TOPIC_PREFIX + "+" + TOPIC_SUFFIX, QOS).waitForCompletion();
+
+        org.eclipse.paho.mqttv5.client.MqttAsyncClient publisher = new org.eclipse.paho.mqttv5.client.MqttAsyncClient(
+                url, "bench-pub-" + UUID.randomUUID(), new org.eclipse.paho.mqttv5.client.persist.MemoryPersistence());
+        publisher.connect(options).waitForCompletion();
+
+        long[] result = measure(() -> {
+            for (int i = 0; i < count; i++) {
+                org.eclipse.paho.mqttv5.common.MqttMessage message = new org.eclipse.paho.mqttv5.common.MqttMessage(payload);
+                message.setQos(QOS);
+                MqttProperties properties = new MqttProperties();
+                properties.setUserProperties(Collections.singletonList(
+                        new UserProperty("ts", String.valueOf(System.currentTimeMillis()))));
+                message.setProperties(properties);
+                String topic = topic(i);
+                publishWithRetry(() -> publisher.publish(topic, message));
+            }
+            latch.await(120, TimeUnit.SECONDS);
+        });
+
+        publisher.disconnect().waitForCompletion();
+        publisher.close();
+        subscriber.disconnect().waitForCompletion();
+        subscriber.close();
+        return result;
+    }
+
+    private static String topic(int i) {
+        return TOPIC_PREFIX + "device-" + (i % DEVICES) + TOPIC_SUFFIX;
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * 在飞窗口满时客户端抛出异常，稍后重试
+     */
+    private static void publishWithRetry(Task publish) throws Exception {
+        while (true) {
+            try {
+                publish.run();
+                return;
+            } catch (org.eclipse.paho.client.mqttv3.MqttException | MqttException e) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    /**
+     * 返回 {上行字节, 下行字节, CPU纳秒, 耗时纳秒}
+     */
+    private static long[] measure(Task task) throws Exception {
+        long up = upstream.sum();
+        long down = downstream.sum();
+        long cpu = processCpuTime();
+        long start = System.nanoTime();
+        task.run();
+        return new long[]{upstream.sum() - up, downstream.sum() - down, processCpuTime() - cpu, System.nanoTime() - start};
+    }
+
+    private static void report(String version, long[] result) {
+        System.out.printf("[MQTT %s] 上行: %.1f KB (%.1f B/msg), 下行: %.1f KB (%.1f B/msg), CPU: %.1f ms (%.2f us/msg), 耗时: %.1f ms%n",
+                version,
+                result[0] / 1024.0, result[0] / (double) MESSAGES,
+                result[1] / 1024.0, result[1] / (double) MESSAGES,
+                result[2] / 1e6, result[2] / 1e3 / MESSAGES,
+                result[3] / 1e6);
+    }
+
+    /**
+     * 本地计数代理，每个连接两个转发线程
+     */
+    private static ServerSocket startProxy(String host, int port) throws Exception {
+        ServerSocket server = new ServerSocket();
+        server.bind(new InetSocketAddress("127.0.0.1", 0));
+        Thread acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket client = server.accept();
+                    Socket upstreamSocket = new Socket(host, port);
+                    client.setTcpNoDelay(true);
+                    upstreamSocket.setTcpNoDelay(true);
+                    pipe(client, upstreamSocket, upstream);
+                    pipe(upstreamSocket, client, downstream);
+                } catch (Exception e) {
+                    if (!server.isClosed()) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }, "bench-proxy");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server;
+    }
+
+    private static void pipe(Socket from, Socket to, LongAdder counter) {
+        Thread thread = new Thread(() -> {
+            byte[] buffer = new byte[16384];
+            try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    counter.add(n);
+                    out.write(buffer, 0, n);
+                }
+            } catch (Exception e) {
+                // 连接关闭
+            } finally {
+                try {
+                    from.close();
+                    to.close();
+                } catch (Exception ignored) {
+                }
+            }
+        }, "bench-proxy-pipe");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static long processCpuTime() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return 0;
+    }
+}
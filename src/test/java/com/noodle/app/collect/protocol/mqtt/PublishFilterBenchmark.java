@@ -0,0 +1,100 @@
+package com.noodle.app.collect.protocol.mqtt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.noodle.app.collect.protocol.topic.TopicFilter;
+
+/**
+ * 主题过滤与消息封装性能测试
+ * 模拟拦截器中每条发布消息的开销：过滤器匹配 + 复制payload + 创建PublishEnvelope
+ */
+public class PublishFilterBenchmark {
+
+    private static final int FILTER_COUNT = 5000;
+    private static final int TOPIC_COUNT = 10000;
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+
+        // 构造过滤器：精确主题、单层通配、多层通配混合
+        List<String> includes = new ArrayList<>();
+        List<String> excludes = new ArrayList<>();
+        for (int i = 0; i < FILTER_COUNT; i++) {
+            switch (i % 4) {
+                case 0:
+                    includes.add("sensor/device" + i + "/temperature");
+                    break;
+                case 1:
+                    includes.add("site" + (i % 200) + "/+/meter/" + i);
+                    break;
+                case 2:
+                    includes.add("telemetry/group" + i + "/#");
+                    break;
+                default:
+                    excludes.add("device/+/command/" + i);
+                    break;
+            }
+        }
+        excludes.add("cmd/#");
+
+        long compileStart = System.nanoTime();
+        TopicFilter filter = TopicFilter.compile(includes, excludes);
+        long compileNanos = System.nanoTime() - compileStart;
+
+        String[] topics = new String[TOPIC_COUNT];
+        for (int i = 0; i < TOPIC_COUNT; i++) {
+            int n = random.nextInt(FILTER_COUNT);
+            switch (i % 5) {
+                case 0:
+                    topics[i] = "sensor/device" + n + "/temperature";
+                    break;
+                case 1:
+                    topics[i] = "site" + (n % 200) + "/gw" + i + "/meter/" + n;
+                    break;
+                case 2:
+                    topics[i] = "telemetry/group" + n + "/a/b/c";
+                    break;
+                case 3:
+                    topics[i] = "device/d" + n + "/command/" + n;
+                    break;
+                default:
+                    topics[i] = "unknown/" + n + "/x";
+                    break;
+            }
+        }
+        byte[] payload = "{\"deviceId\":\"meter001\",\"data\":{\"voltage\":220.1,\"current\":5.2}}".getBytes();
+
+        System.out.println("=== 主题过滤性能测试 ===");
+        System.out.println("过滤器数量: " + FILTER_COUNT + ", 编译耗时: " + compileNanos / 1000 + " us");
+
+        // 预热
+        long sink = run(filter, topics, payload, 20);
+
+        long start = System.nanoTime();
+        sink += run(filter, topics, payload, ROUNDS);
+        long elapsed = System.nanoTime() - start;
+        long ops = (long) TOPIC_COUNT * ROUNDS;
+
+        System.out.println("消息数: " + ops + ", 接受: " + sink);
+        System.out.printf("平均耗时: %.1f ns/msg%n", (double) elapsed / ops);
+        System.out.printf("吞吐量: %.0f msg/s%n", ops * 1e9 / elapsed);
+    }
+
+    private static long run(TopicFilter filter, String[] topics, byte[] payload, int rounds) {
+        long accepted = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (String topic : topics) {
+                if (filter.accept(topic)) {
+                    byte[] copy = new byte[payload.length];
+                    System.arraycopy(payload, 0, copy, 0, payload.length);
+                    PublishEnvelope envelope = new PublishEnvelope("bench", topic, copy, System.currentTimeMillis());
+                    accepted += envelope.getPayload().length > 0 ? 1 : 0;
+                }
+            }
+        }
+        return accepted;
+    }
+}
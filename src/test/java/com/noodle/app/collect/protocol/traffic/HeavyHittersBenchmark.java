@@ -0,0 +1,86 @@
+package com.noodle.app.collect.protocol.traffic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 热点统计准确度与吞吐测试
+ *
+ * 30万个主题按Zipf分布发布消息，对比Sketch给出的Top 20与精确计数，
+ * 并输出单线程每条消息的记录耗时和Sketch内存。
+ */
+public class HeavyHittersBenchmark {
+
+    private static final int TOPICS = 300_000;
+    private static final int MESSAGES = 5_000_000;
+    private static final int TOP = 20;
+
+    public static void main(String[] args) {
+        String[] topics = new String[TOPICS];
+        for (int i = 0; i < TOPICS; i++) {
+            topics[i] = "sensor/device-" + i + "/telemetry";
+        }
+        int[] samples = zipf(MESSAGES, TOPICS, 1.1, new Random(42));
+
+        HeavyHitters hitters = new HeavyHitters(12, 10_000, 4, 4096, 64);
+        long now = System.currentTimeMillis();
+        Map<String, Long> exact = new HashMap<>();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            String topic = topics[samples[i]];
+            hitters.add(topic, CountMinSketch.hash(topic), 64, now);
+        }
+        long elapsed = System.nanoTime() - start;
+        for (int i = 0; i < MESSAGES; i++) {
+            exact.merge(topics[samples[i]], 1L, Long::sum);
+        }
+
+        List<Map.Entry<String, Long>> expected = new ArrayList<>(exact.entrySet());
+        expected.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        List<HeavyHitters.Hitter> top = hitters.top(TOP, 120_000, now);
+
+        int hits = 0;
+        double maxError = 0;
+        for (HeavyHitters.Hitter hitter : top) {
+            for (int i = 0; i < TOP; i++) {
+                if (expected.get(i).getKey().equals(hitter.getKey())) {
+                    hits++;
+                    break;
+                }
+            }
+            long actual = exact.get(hitter.getKey());
+            maxError = Math.max(maxError, (hitter.getMessages() - actual) / (double) actual);
+        }
+
+        System.out.println("=== 热点统计 ===");
+        System.out.printf("主题数: %d, 消息数: %d, 实际出现的主题: %d%n", TOPICS, MESSAGES, exact.size());
+        System.out.printf("记录耗时: %.0f ns/msg%n", elapsed / (double) MESSAGES);
+        System.out.printf("Sketch内存: %d KB%n", hitters.memoryBytes() / 1024);
+        System.out.printf("Top %d 命中: %d, 最大相对误差: %.4f%%%n", TOP, hits, maxError * 100);
+        for (int i = 0; i < 5; i++) {
+            System.out.printf("  %-32s 估计 %8d  精确 %8d%n", top.get(i).getKey(), top.get(i).getMessages(),
+                    exact.get(top.get(i).getKey()));
+        }
+    }
+
+    // 按Zipf分布生成样本（逆CDF查表）
+    private static int[] zipf(int count, int n, double s, Random random) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, s);
+            cdf[i] = sum;
+        }
+        int[] samples = new int[count];
+        for (int i = 0; i < count; i++) {
+            double u = random.nextDouble() * sum;
+            int index = java.util.Arrays.binarySearch(cdf, u);
+            samples[i] = index >= 0 ? index : Math.min(n - 1, -index - 1);
+        }
+        return samples;
+    }
+}
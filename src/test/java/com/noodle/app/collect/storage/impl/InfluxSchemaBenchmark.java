@@ -0,0 +1,127 @@
+package com.noodle.app.collect.storage.impl;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.influxdb.client.InfluxDBClient;
+import com.influxdb.client.InfluxDBClientFactory;
+import com.influxdb.client.WriteApiBlocking;
+import com.influxdb.client.write.Point;
+import com.influxdb.query.FluxTable;
+import com.noodle.app.collect.protocol.config.DataStorageConfig;
+import com.noodle.app.collect.storage.model.ProtocolData;
+
+/**
+ * InfluxDB表结构对比：narrow（每字段一个点）与wide（每条消息一个点）
+ *
+ * 1000台电表各上报100条遥测（12个数据点），比较两种结构的点数、序列数、行协议字节数和编码耗时。
+ * 传入InfluxDB地址时同时写入数据库，输出写入速率和服务端统计的序列基数：
+ * InfluxSchemaBenchmark http://127.0.0.1:8086 token org bucket
+ */
+public class InfluxSchemaBenchmark {
+
+    private static final int DEVICES = 1000;
+    private static final int MESSAGES_PER_DEVICE = 100;
+    private static final int WRITE_BATCH = 5000;
+    private static final String[] POINTS = {
+            "ua", "ub", "uc", "ia", "ib", "ic", "p", "q", "pf", "freq", "energy", "temperature"};
+
+    public static void main(String[] args) throws Exception {
+        List<ProtocolData> messages = messages();
+        InfluxDBClient client = args.length >= 4
+                ? InfluxDBClientFactory.create(args[0], args[1].toCharArray(), args[2], args[3]) : null;
+
+        System.out.println("=== InfluxDB表结构对比 ===");
+        System.out.printf("消息数: %d（%d台设备 × %d条，每条%d个数据点）%n",
+                messages.size(), DEVICES, MESSAGES_PER_DEVICE, POINTS.length);
+        run("narrow", messages, client, args);
+        run("wide", messages, client, args);
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    private static void run(String schema, List<ProtocolData> messages, InfluxDBClient client, String[] args) {
+        DataStorageConfig.InfluxConfig config = new DataStorageConfig.InfluxConfig();
+        config.setTable("bench_" + schema);
+        config.setSchema(schema);
+        config.setTopicTags(Arrays.asList("", "", "metric"));
+        InfluxPointEncoder encoder = new InfluxPointEncoder(config);
+
+        // 预热
+        encoder.encodeSeries(messages.subList(0, 10_000));
+        long start = System.nanoTime();
+        List<InfluxPointEncoder.SeriesPoint> points = encoder.encodeSeries(messages);
+        long encodeNanos = System.nanoTime() - start;
+
+        Set<String> series = new HashSet<>();
+        long bytes = 0;
+        for (InfluxPointEncoder.SeriesPoint point : points) {
+            series.add(point.key);
+            bytes += point.point.toLineProtocol().length() + 1;
+        }
+        System.out.printf("[%-6s] 点数: %d, 序列数: %d, 行协议: %.1f MB (%.0f 字节/消息), 编码: %.0f 消息/秒%n",
+                schema, points.size(), series.size(), bytes / 1048576.0, bytes / (double) messages.size(),
+                messages.size() * 1e9 / encodeNanos);
+
+        if (client == null) {
+            return;
+        }
+        WriteApiBlocking writeApi = client.getWriteApiBlocking();
+        List<Point> batch = new ArrayList<>(WRITE_BATCH);
+        start = System.nanoTime();
+        for (InfluxPointEncoder.SeriesPoint point : points) {
+            batch.add(point.point);
+            if (batch.size() == WRITE_BATCH) {
+                writeApi.writePoints(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeApi.writePoints(batch);
+        }
+        long writeNanos = System.nanoTime() - start;
+        System.out.printf("[%-6s] 写入: %.0f 消息/秒, %.0f 点/秒, 服务端序列基数: %s%n",
+                schema, messages.size() * 1e9 / writeNanos, points.size() * 1e9 / writeNanos,
+                cardinality(client, args[3], config.getTable()));
+    }
+
+    private static Object cardinality(InfluxDBClient client, String bucket, String measurement) {
+        String flux = "import \"influxdata/influxdb\"\n"
+                + "influxdb.cardinality(bucket: \"" + bucket + "\", start: -30d, "
+                + "predicate: (r) => r._measurement == \"" + measurement + "\")";
+        List<FluxTable> tables = client.getQueryApi().query(flux);
+        if (tables == null || tables.isEmpty() || tables.get(0).getRecords().isEmpty()) {
+            return "N/A";
+        }
+        return tables.get(0).getRecords().get(0).getValue();
+    }
+
+    // 电表遥测，主题 meter/{deviceId}/telemetry，每秒一条
+    private static List<ProtocolData> messages() {
+        long base = System.currentTimeMillis() - MESSAGES_PER_DEVICE * 1000L;
+        List<ProtocolData> messages = new ArrayList<>(DEVICES * MESSAGES_PER_DEVICE);
+        for (int i = 0; i < MESSAGES_PER_DEVICE; i++) {
+            for (int d = 0; d < DEVICES; d++) {
+                ProtocolData data = new ProtocolData();
+                data.setProtocol("mqtt");
+                data.setDeviceId("meter-" + d);
+                data.setAddress("meter/meter-" + d + "/telemetry");
+                data.setTimestamp(Instant.ofEpochMilli(base + i * 1000L));
+                Map<String, Object> fields = new HashMap<>();
+                for (int p = 0; p < POINTS.length; p++) {
+                    fields.put(POINTS[p], Math.round((220 + d % 10 + p + Math.sin(i / 30.0)) * 100) / 100.0);
+                }
+                data.setFields(fields);
+                messages.add(data);
+            }
+        }
+        return messages;
+    }
+}
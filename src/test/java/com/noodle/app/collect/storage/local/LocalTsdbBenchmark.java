@@ -0,0 +1,71 @@
+package com.noodle.app.collect.storage.local;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * 本地时序存储写入吞吐与压缩率测试
+ *
+ * 1000个序列、每秒一个采样点，共写入1000万个样本，输出写入速率、每样本字节数，
+ * 然后关闭并重新打开，按时间范围查询一个序列并校验结果。
+ */
+public class LocalTsdbBenchmark {
+
+    private static final int SERIES = 1000;
+    private static final int SAMPLES_PER_SERIES = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("local-tsdb");
+        String[] names = new String[SERIES];
+        for (int s = 0; s < SERIES; s++) {
+            names[s] = "meter-" + s + "_power";
+        }
+        long base = System.currentTimeMillis() - SAMPLES_PER_SERIES * 1000L;
+
+        LocalTsdb tsdb = new LocalTsdb(directory, 3600_000L, 0, 1024, 64 * 1024 * 1024);
+        long start = System.nanoTime();
+        for (int i = 0; i < SAMPLES_PER_SERIES; i++) {
+            long timestamp = base + i * 1000L;
+            for (int s = 0; s < SERIES; s++) {
+                tsdb.append(names[s], timestamp, value(s, i));
+            }
+        }
+        tsdb.flush();
+        long elapsed = System.nanoTime() - start;
+        long total = (long) SERIES * SAMPLES_PER_SERIES;
+
+        System.out.println("=== 本地时序存储 ===");
+        System.out.printf("样本数: %d, 耗时: %d ms, 写入速率: %.0f 样本/秒%n",
+                total, elapsed / 1_000_000, total * 1e9 / elapsed);
+        System.out.println("统计: " + tsdb.getStatistics());
+        tsdb.close();
+
+        LocalTsdb reopened = new LocalTsdb(directory, 3600_000L, 0, 1024, 64 * 1024 * 1024);
+        long from = base + 2000 * 1000L;
+        long to = base + 2999 * 1000L;
+        long queryStart = System.nanoTime();
+        LocalTsdb.SeriesData data = reopened.query(names[42], from, to, 0);
+        long queryMicros = (System.nanoTime() - queryStart) / 1000;
+        int errors = 0;
+        for (int i = 0; i < data.size(); i++) {
+            int index = 2000 + i;
+            if (data.getTimestamp(i) != base + index * 1000L || data.getValue(i) != value(42, index)) {
+                errors++;
+            }
+        }
+        System.out.printf("重新打开后查询: %d 个样本（期望1000）, 错误: %d, 耗时: %d us%n",
+                data.size(), errors, queryMicros);
+        reopened.close();
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    // 电表功率：缓慢变化，保留两位小数
+    private static double value(int series, int index) {
+        return Math.round((1000 + series + 50 * Math.sin(index / 300.0)) * 100) / 100.0;
+    }
+}